@@ -0,0 +1,134 @@
+/*
+ * Copyright 2007 Sebastien Brunot (sbrunot@gmail.com)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *   
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sourceforge.buildmonitor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of the work done by BuildMonitorImpl for each build status update
+ * (change detection, sort and menu item labels).
+ * @author vegarwe
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BuildMonitorImplBenchmark
+{
+	private static final long ONE_HOUR = 3600 * 1000L;
+
+	@Param({"10", "100", "1000", "10000"})
+	public int numberOfBuilds;
+
+	private List<BuildReport> previousBuildReports;
+	private List<BuildReport> currentBuildReports;
+	private BuildReport failedBuildReport;
+	private NotificationAggregator notificationAggregator;
+	private BuildMonitorImpl.BuildSituationChanges notifiedChanges;
+
+	@Setup
+	public void generateBuildReports()
+	{
+		long now = System.currentTimeMillis();
+		this.previousBuildReports = new ArrayList<BuildReport>();
+		this.currentBuildReports = new ArrayList<BuildReport>();
+		for (int i = 0; i < this.numberOfBuilds; i++)
+		{
+			// one build out of ten changes its status between the two updates
+			boolean previouslyFailed = (i % 10) == 0;
+			boolean currentlyFailed = (i % 10) == 1;
+			this.previousBuildReports.add(createBuildReport(i, new Date(now - (i + 1) * ONE_HOUR), previouslyFailed));
+			this.currentBuildReports.add(createBuildReport(i, new Date(now - i * ONE_HOUR), currentlyFailed));
+		}
+		Collections.shuffle(this.currentBuildReports);
+		this.failedBuildReport = createBuildReport(0, new Date(now - 3 * ONE_HOUR), true);
+	}
+
+	/**
+	 * Start each change detection with an empty aggregator, so that the changes of an
+	 * invocation are not merged with those of the previous ones
+	 */
+	@Setup(Level.Invocation)
+	public void createNotificationAggregator()
+	{
+		this.notifiedChanges = null;
+		this.notificationAggregator = new NotificationAggregator(new NotificationAggregator.Listener()
+		{
+			public void notifyBuildSituationChanges(BuildMonitorImpl.BuildSituationChanges changes)
+			{
+				BuildMonitorImplBenchmark.this.notifiedChanges = changes;
+			}
+		});
+	}
+
+	@Benchmark
+	public BuildMonitorImpl.BuildSituationChanges detectChanges()
+	{
+		// Without a quiet window, the changes are notified as soon as they are detected
+		this.notificationAggregator.update(this.previousBuildReports, this.currentBuildReports, 0);
+		return this.notifiedChanges;
+	}
+
+	@Benchmark
+	public List<BuildReport> sortByName()
+	{
+		List<BuildReport> buildReports = new ArrayList<BuildReport>(this.currentBuildReports);
+		Collections.sort(buildReports, new BuildReport.NameComparator());
+		return buildReports;
+	}
+
+	@Benchmark
+	public List<BuildReport> sortByAge()
+	{
+		List<BuildReport> buildReports = new ArrayList<BuildReport>(this.currentBuildReports);
+		Collections.sort(buildReports, new BuildReport.AgeComparator());
+		return buildReports;
+	}
+
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.NANOSECONDS)
+	public String menuItemLabel()
+	{
+		return BuildMonitorImpl.getMenuItemLabelForBuildReport(this.failedBuildReport);
+	}
+
+	private static BuildReport createBuildReport(int index, Date date, boolean failed)
+	{
+		BuildReport report = new BuildReport("PROJ-PLAN" + index, date, failed ? BuildReport.Status.FAILED : BuildReport.Status.OK);
+		report.setName("Project - Plan " + index);
+		return report;
+	}
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2007 Sebastien Brunot (sbrunot@gmail.com)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *   
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sourceforge.buildmonitor.monitors;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.sourceforge.buildmonitor.BuildReport;
+
+/**
+ * Benchmarks of the parsing of the Bamboo REST api documents.
+ * @author vegarwe
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BambooResponseParserBenchmark
+{
+	@Param({"10", "100", "1000", "10000"})
+	public int numberOfPlans;
+
+	private byte[] planList;
+	private byte[] results;
+
+	@Setup
+	public void generateFixtures()
+	{
+		this.planList = BambooXmlFixtures.getPlanList(this.numberOfPlans).getBytes(StandardCharsets.UTF_8);
+		this.results = BambooXmlFixtures.getResults(this.numberOfPlans).getBytes(StandardCharsets.UTF_8);
+	}
+
+	@Benchmark
+	public List<BuildPlan> parsePlans() throws Exception
+	{
+		return BambooResponseParser.parsePlans(BambooResponseParser.parseDocument(new ByteArrayInputStream(this.planList)));
+	}
+
+	@Benchmark
+	public List<BuildReport> parseResults() throws Exception
+	{
+		return BambooResponseParser.parseResults(BambooResponseParser.parseDocument(new ByteArrayInputStream(this.results)), "Plan");
+	}
+
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.NANOSECONDS)
+	public Date parseDate() throws Exception
+	{
+		return BambooResponseParser.parseDate("2011-08-12T11:25:48.000+02:00");
+	}
+}
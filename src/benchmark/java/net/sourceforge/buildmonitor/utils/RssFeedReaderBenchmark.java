@@ -0,0 +1,60 @@
+/*
+ * Copyright 2007 Sebastien Brunot (sbrunot@gmail.com)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *   
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sourceforge.buildmonitor.utils;
+
+import java.net.URL;
+import java.text.SimpleDateFormat;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark of the RSS feed reader on the bamboo-feed.xml test document.
+ * @author vegarwe
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RssFeedReaderBenchmark
+{
+	private RssFeedReader reader;
+
+	@Setup
+	public void createReader()
+	{
+		URL bambooFeed = getClass().getClassLoader().getResource("bamboo-feed.xml");
+		this.reader = new RssFeedReader(bambooFeed, new SimpleDateFormat("EEE, d MMM yyyy HH:mm:ss z"));
+	}
+
+	@Benchmark
+	public RssFeedDocument readBambooFeed() throws Exception
+	{
+		return this.reader.getRssFeedDocument();
+	}
+}
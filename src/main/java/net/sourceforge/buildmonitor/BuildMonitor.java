@@ -27,12 +27,23 @@ public interface BuildMonitor
 	static final String MESSAGEKEY_TRAYICON_MENUITEM_SORT_BY_NAME = "trayIcon.menuItem.sortByName";
 	static final String MESSAGEKEY_TRAYICON_MENUITEM_SORT_BY_AGE = "trayIcon.menuItem.sortByAge";
 	static final String MESSAGEKEY_TRAYICON_MENUITEM_UPDATE_STATUS_NOW = "trayIcon.menuItem.update";
+	static final String MESSAGEKEY_TRAYICON_MENUITEM_REFRESH_PENDING = "trayIcon.menuItem.refreshPending";
 	static final String MESSAGEKEY_TRAYICON_MENUITEM_BUILD_SERVER_HOME_PAGE_SUFFIX = "trayIcon.menuItem.buildServerHomePageSuffix";
+	static final String MESSAGEKEY_TRAYICON_MENUITEM_OPEN_IN_BROWSER = "trayIcon.menuItem.openInBrowser";
+	static final String MESSAGEKEY_TRAYICON_MENUITEM_LOG_TAIL = "trayIcon.menuItem.logTail";
+	static final String MESSAGEKEY_TRAYICON_MENUITEM_SHOW_FAILURE_DETAILS = "trayIcon.menuItem.showFailureDetails";
+	static final String MESSAGEKEY_TRAYICON_MENUITEM_LOADING_FAILURE_DETAILS = "trayIcon.menuItem.loadingFailureDetails";
+	static final String MESSAGEKEY_TRAYICON_MENUITEM_FAILURE_DETAILS_UNAVAILABLE = "trayIcon.menuItem.failureDetailsUnavailable";
+	static final String MESSAGEKEY_TRAYICON_MENUITEM_FAILED_TESTS = "trayIcon.menuItem.failedTests";
+	static final String MESSAGEKEY_TRAYICON_MENUITEM_FAILED_STAGE = "trayIcon.menuItem.failedStage";
+	static final String MESSAGEKEY_TRAYICON_MENUITEM_FAILED_JOB = "trayIcon.menuItem.failedJob";
 	static final String MESSAGEKEY_TRAYICON_MENUITEM_ABOUT = "trayIcon.menuItem.about";
 	static final String MESSAGEKEY_TRAYICON_MENUITEM_OPTIONS = "trayIcon.menuItem.options";
 	static final String MESSAGEKEY_ERROR_DIALOG_TITLE = "errorDialog.title";
 	static final String MESSAGEKEY_UNEXPECTED_ERROR_MESSAGE = "unexpectedError.message";
 	static final String MESSAGEKEY_ERROR_SYSTEMTRAY_NOT_SUPPORTED = "error.systemTray.not.supported";
+	static final String MESSAGEKEY_LOG_TAIL_TITLE = "logTail.title";
+	static final String MESSAGEKEY_LOG_TAIL_UNAVAILABLE = "logTail.unavailable";
 	static final String MESSAGEKEY_ABOUT_TITLE = "about.title";
 	static final String MESSAGEKEY_ABOUT_MESSAGE = "about.message";
 
@@ -18,6 +18,7 @@ package net.sourceforge.buildmonitor;
 import java.awt.CheckboxMenuItem;
 import java.awt.Desktop;
 import java.awt.Font;
+import java.awt.Frame;
 import java.awt.Image;
 import java.awt.Menu;
 import java.awt.MenuItem;
@@ -30,6 +31,8 @@ import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.ItemEvent;
 import java.awt.event.ItemListener;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
 import java.io.IOException;
 import java.lang.reflect.Constructor;
 import java.net.URI;
@@ -38,13 +41,23 @@ import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.ResourceBundle;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import javax.swing.ImageIcon;
+import javax.swing.JDialog;
 import javax.swing.JOptionPane;
+import javax.swing.JScrollPane;
+import javax.swing.JTextArea;
+import javax.swing.Timer;
 
+import net.sourceforge.buildmonitor.logging.MonitorLogging;
+import net.sourceforge.buildmonitor.metrics.MonitorMetrics;
 import net.sourceforge.buildmonitor.monitors.Monitor;
 import net.sourceforge.buildmonitor.monitors.MonitorFactory;
 
@@ -62,6 +75,7 @@ public class BuildMonitorImpl implements Runnable, BuildMonitor
 	// Constants
 	//////////////////////////////
 	
+	private static final Logger LOGGER = Logger.getLogger(BuildMonitorImpl.class.getName());
 	private static final String MESSAGES_BASE_NAME = "messages/GUIStrings";
 	private static final String IMAGE_MONITORING_EXCEPTION = "images/network-offline.png";
 	private static final String IMAGE_INITIAL_ICON = "images/utilities-system-monitor.png";
@@ -80,6 +94,7 @@ public class BuildMonitorImpl implements Runnable, BuildMonitor
 	private static final String TRUNCATED_MESSAGE_SUFFIX = " [...]";
 	private static final int SORT_BY_NAME = 1;
 	private static final int SORT_BY_AGE = 2;
+	private static final int LOG_TAIL_FOLLOW_PERIOD_IN_MILLIS = 5000;
 	
 	///////////////////////////////////
 	// Nested classes
@@ -126,7 +141,7 @@ public class BuildMonitorImpl implements Runnable, BuildMonitor
 				}
 				catch (IOException err)
 				{
-					// Nothing can be done here...
+					MonitorLogging.log(LOGGER, Level.WARNING, "Cannot open the browser", err, "uri", this.uri);
 				}
 			}
 		}
@@ -145,6 +160,7 @@ public class BuildMonitorImpl implements Runnable, BuildMonitor
 			{
 				monitor.stop();
 			}
+			notificationAggregator.stop();
 		}
 	}
 
@@ -222,6 +238,9 @@ public class BuildMonitorImpl implements Runnable, BuildMonitor
 		
 		List<BuildReport> listOfBuildReportsOrderedByName = null;
 		int numberOfFailedBuilds = 0;
+		int numberOfStaleBuilds = 0;
+		int numberOfBuildsInProgress = 0;
+		Map<String, Menu> failureDetailsMenus = new HashMap<String, Menu>();
 		
 		//////////////////////////
 		// Constuctor
@@ -247,6 +266,7 @@ public class BuildMonitorImpl implements Runnable, BuildMonitor
 		 */
 		public void run()
 		{
+			long startTime = System.nanoTime();
 			PopupMenu trayIconPopupMenu = trayIcon.getPopupMenu();
 			
 			// If the build results menu entries exists, delete them all
@@ -268,6 +288,7 @@ public class BuildMonitorImpl implements Runnable, BuildMonitor
 			}
 			// Add the separator at the end
 			trayIconPopupMenu.insertSeparator(newMenuItemIndex);
+			BuildMonitorImpl.this.failureDetailsMenus = this.failureDetailsMenus;
 
 			// update action listener (that might have been changed when previously reporting a monitoring exception)
 			ActionListener[] listeners = trayIcon.getActionListeners();
@@ -287,7 +308,18 @@ public class BuildMonitorImpl implements Runnable, BuildMonitor
 				trayIcon.setImage(buildSuccessIcon);
 			}
 			SimpleDateFormat timeFormat = new SimpleDateFormat("HH'h'mm");
-			trayIcon.setToolTip(monitor.getSystemTrayIconTooltipHeader() + "\nLast update at " + timeFormat.format(new Date()) + "\n" + this.numberOfFailedBuilds + " failed builds out of " + this.listOfBuildReportsOrderedByName.size());
+			String tooltip = monitor.getSystemTrayIconTooltipHeader() + "\nLast update at " + timeFormat.format(new Date()) + "\n" + this.numberOfFailedBuilds + " failed builds out of " + this.listOfBuildReportsOrderedByName.size();
+			if (this.numberOfStaleBuilds > 0)
+			{
+				tooltip += "\n" + this.numberOfStaleBuilds + " builds could not be updated";
+			}
+			if (this.numberOfBuildsInProgress > 0)
+			{
+				tooltip += "\n" + this.numberOfBuildsInProgress + " builds in progress";
+			}
+			trayIcon.setToolTip(tooltip);
+
+			MonitorMetrics.getInstance().recordEdtApply(System.nanoTime() - startTime, this.listOfBuildReportsOrderedByName.size());
 		}
 
 		/////////////////////////////////
@@ -313,8 +345,14 @@ public class BuildMonitorImpl implements Runnable, BuildMonitor
 			{
 				newMenuItem.setFont(buildSucessFont);
 			}
-			newMenuItem.setActionCommand(buildReport.getId());
-			newMenuItem.setName(buildReport.getName());
+			if (buildReport.isStale())
+			{
+				this.numberOfStaleBuilds++;
+			}
+			if (buildReport.isInProgress())
+			{
+				this.numberOfBuildsInProgress++;
+			}
 			ActionListener newMenuItemActionListener = new ActionListener() {
 				public void actionPerformed(ActionEvent e)
 				{
@@ -326,104 +364,70 @@ public class BuildMonitorImpl implements Runnable, BuildMonitor
 						}
 						catch (IOException err)
 						{
-							// Nothing can be done here...
+							MonitorLogging.log(LOGGER, Level.WARNING, "Cannot open the browser", err, "build", e.getActionCommand());
 						}
 					}
 				}
 			};
+			newMenuItem.setActionCommand(buildReport.getId());
+			newMenuItem.setName(buildReport.getName());
 			newMenuItem.addActionListener(newMenuItemActionListener);		
+			if (buildReport.hasFailed())
+			{
+				return createNewMenuForFailedBuild(buildReport, newMenuItem);
+			}
 			return newMenuItem;
 		}
-		
+
 		/**
-		 * Build a MenuItem label for a build report.
-		 * @param buildReport the build report
-		 * @return a MenuItem label for buildReport
+		 * Create a new menu for a failed build: it opens the build in the browser, and shows the
+		 * details of the failure once they are asked for (see {@link BuildMonitorImpl#showFailureDetails(String)})
+		 * @param buildReport the build report of the failed build
+		 * @param buildMenuItem the menu item that opens the build in the browser
+		 * @return the menu of the failed build
 		 */
-		private String getMenuItemLabelForBuildReport(BuildReport buildReport)
+		private Menu createNewMenuForFailedBuild(BuildReport buildReport, MenuItem buildMenuItem)
 		{
-			String howLongAgo = null;
-			Period ageOfTheBuild = new Period(new LocalDateTime(buildReport.getDate()), new LocalDateTime());
-			// is it more than one year ago ?
-			if (ageOfTheBuild.getYears() > 0)
-			{
-				if (ageOfTheBuild.getYears() > 1)
-				{
-					howLongAgo = ageOfTheBuild.getYears() + " years ago";					
-				}
-				else
-				{
-					howLongAgo = "1 year ago";					
-				}
-			}
-			else if (ageOfTheBuild.getMonths() > 0)
+			Menu failedBuildMenu = new Menu(buildMenuItem.getLabel());
+			failedBuildMenu.setFont(buildMenuItem.getFont());
+			failedBuildMenu.setName(buildReport.getName());
+			buildMenuItem.setLabel(getMessage(MESSAGEKEY_TRAYICON_MENUITEM_OPEN_IN_BROWSER));
+			failedBuildMenu.add(buildMenuItem);
+			MenuItem logTailMenuItem = new MenuItem(getMessage(MESSAGEKEY_TRAYICON_MENUITEM_LOG_TAIL));
+			logTailMenuItem.setActionCommand(buildReport.getId());
+			logTailMenuItem.addActionListener(new ActionListener()
 			{
-				if (ageOfTheBuild.getMonths() > 1)
-				{
-					howLongAgo = ageOfTheBuild.getMonths() + " months ago";											
-				}
-				else
-				{
-					howLongAgo = "1 month ago";											
-				}
-			}
-			else if (ageOfTheBuild.getWeeks() > 0)
-			{
-				if (ageOfTheBuild.getWeeks() > 1)
-				{
-					howLongAgo = ageOfTheBuild.getWeeks() + " weeks ago";
-				}
-				else
-				{
-					howLongAgo = "1 week ago";
-				}
-			}
-			else if (ageOfTheBuild.getDays() > 0)
-			{
-				if (ageOfTheBuild.getDays() > 1)
-				{
-					howLongAgo = ageOfTheBuild.getDays() + " days ago";
-				}
-				else
-				{
-					howLongAgo = "yesterday";
-				}
-			}
-			else if (ageOfTheBuild.getHours() > 0)
-			{
-				if (ageOfTheBuild.getHours() > 1)
-				{
-					howLongAgo = ageOfTheBuild.getHours() + " hours ago";
-				}
-				else
+				public void actionPerformed(ActionEvent e)
 				{
-					howLongAgo = "one hour ago";
+					showLogTail(e.getActionCommand());
 				}
-			}
-			else if (ageOfTheBuild.getMinutes() > 5)
-			{
-				howLongAgo = ageOfTheBuild.getMinutes() + " minutes ago";
-			}
-			else if (ageOfTheBuild.getMinutes() > 1)
-			{
-				howLongAgo = "a few minutes ago";
-			}
-			else
-			{
-				howLongAgo = "a few seconds ago";
-			}
-			
-			String failedIndicator = "";
-			if(buildReport.hasFailed())
-         {
-			   failedIndicator = "- ";
-         }
-         else
-         {
-            failedIndicator = "+ ";
-         }
-			
-			return failedIndicator+ buildReport.getName() + "  (" + howLongAgo + ")";
+			});
+			failedBuildMenu.add(logTailMenuItem);
+			failedBuildMenu.addSeparator();
+			failedBuildMenu.add(createShowFailureDetailsMenuItem(buildReport.getId(), getMessage(MESSAGEKEY_TRAYICON_MENUITEM_SHOW_FAILURE_DETAILS)));
+			this.failureDetailsMenus.put(buildReport.getId(), failedBuildMenu);
+			return failedBuildMenu;
+		}
+	}
+
+	/**
+	 * The changes of the build situation over a notification window.
+	 * 
+	 * @author sbrunot
+	 *
+	 */
+	static class BuildSituationChanges
+	{
+		StringBuffer newFailingBuilds = new StringBuffer();
+		StringBuffer fixedBuilds = new StringBuffer();
+
+		/**
+		 * Has the build situation changed ?
+		 * @return true if at least one build is newly failing or fixed
+		 */
+		boolean hasChanged()
+		{
+			return (this.newFailingBuilds.length() > 0) || (this.fixedBuilds.length() > 0);
 		}
 	}
 
@@ -434,6 +438,7 @@ public class BuildMonitorImpl implements Runnable, BuildMonitor
 	private ResourceBundle messages = null;
 	private Monitor monitor = null;
 	private Thread monitorThread = null;
+	private MenuItem updateStatusNowMenuItem = null;
 	private TrayIcon trayIcon = null;
 	private Image initialIcon = null;
 	private Image buildSuccessIcon = null;
@@ -463,6 +468,28 @@ public class BuildMonitorImpl implements Runnable, BuildMonitor
 	 * The previous build reports (that we use to detect if the situation have changed)
 	 */
 	private List<BuildReport> previousBuildReports = new ArrayList<BuildReport>();
+
+	/**
+	 * The menus of the failed builds whose details are not shown yet, by build id (only
+	 * accessed from the event dispatch thread)
+	 */
+	private Map<String, Menu> failureDetailsMenus = new HashMap<String, Menu>();
+
+	/**
+	 * Merges the changes of the build situation into one notification per quiet window
+	 */
+	private NotificationAggregator notificationAggregator = new NotificationAggregator(new NotificationAggregator.Listener()
+	{
+		public void notifyBuildSituationChanges(BuildSituationChanges changes)
+		{
+			MessageType messageType = MessageType.INFO;
+			if (changes.newFailingBuilds.length() > 0)
+			{
+				messageType = MessageType.WARNING;
+			}
+			javax.swing.SwingUtilities.invokeLater(new TrayIconUpdater(null, null, "Build situation have changed !", changes.newFailingBuilds.toString() + changes.fixedBuilds.toString() + "Right click the tray icon to display the detailed build status.", messageType, null));
+		}
+	});
 	
 	//////////////////////////////
 	// Constructor
@@ -526,7 +553,7 @@ public class BuildMonitorImpl implements Runnable, BuildMonitor
 							}
 							catch (IOException err)
 							{
-								// Nothing can be done here...
+								MonitorLogging.log(LOGGER, Level.WARNING, "Cannot open the browser", err, "uri", monitor.getMainPageURI());
 							}
 						}
 					}
@@ -544,16 +571,18 @@ public class BuildMonitorImpl implements Runnable, BuildMonitor
 				trayMenu.add(buildServerHomePageMenuItem);
 				
 				// Update status now menu item
-				MenuItem updateStatusNowMenuItem = new MenuItem(getMessage(MESSAGEKEY_TRAYICON_MENUITEM_UPDATE_STATUS_NOW));
+				this.updateStatusNowMenuItem = new MenuItem(getMessage(MESSAGEKEY_TRAYICON_MENUITEM_UPDATE_STATUS_NOW));
 				ActionListener updateStatusNowMenuItemActionListener = new ActionListener()
 				{
 					public void actionPerformed(ActionEvent e)
 					{
-						monitorThread.interrupt();
+						// The update in progress, if any, is not interrupted: the refresh follows it
+						monitor.refresh();
+						showRefreshPending(true);
 					}
 				};
-				updateStatusNowMenuItem.addActionListener(updateStatusNowMenuItemActionListener);
-				trayMenu.add(updateStatusNowMenuItem);
+				this.updateStatusNowMenuItem.addActionListener(updateStatusNowMenuItemActionListener);
+				trayMenu.add(this.updateStatusNowMenuItem);
 				
 				// Sort sub menu
 				Menu sortMenu = new Menu(getMessage(MESSAGEKEY_TRAYICON_MENU_SORT));
@@ -687,6 +716,7 @@ public class BuildMonitorImpl implements Runnable, BuildMonitor
 	 */
 	public void panic(String errorMessage)
 	{
+		MonitorLogging.log(LOGGER, Level.SEVERE, "Unrecoverable error", null, "message", errorMessage);
 		showErrorMessage(errorMessage);
 		// TODO: OPEN NEW EMAIL WITH ERROR MESSAGE ?
 		System.exit(1);
@@ -697,6 +727,7 @@ public class BuildMonitorImpl implements Runnable, BuildMonitor
 	 */
 	public void panic(Throwable unexpectedError)
 	{
+		MonitorLogging.log(LOGGER, Level.SEVERE, "Unexpected error", unexpectedError);
 		MessageFormat errorMessage = new MessageFormat(getMessage(MESSAGEKEY_UNEXPECTED_ERROR_MESSAGE));
 		panic(errorMessage.format(new Object[] {unexpectedError.getMessage(), getStackTrace(unexpectedError)}));
 	}
@@ -722,6 +753,7 @@ public class BuildMonitorImpl implements Runnable, BuildMonitor
 	 */
 	public void reportMonitoringException(MonitoringException monitoringException)
 	{
+		showRefreshPending(this.monitor.isRefreshPending());
 		// We only display the message if it is a new one (not the one currently displayed)
 		if ((this.currentlyReportedMonitoringException == null) || (!this.currentlyReportedMonitoringException.equals(monitoringException.getMessage())))
 		{
@@ -771,10 +803,179 @@ public class BuildMonitorImpl implements Runnable, BuildMonitor
 	 */
 	public void reportConfigurationUpdatedToBeTakenIntoAccountImmediately()
 	{
-		// Interrupt the monitor thread so that it takes into account its new configuration
-		if (this.monitorThread != null)
+		// Refresh the build status so that the new configuration is taken into account (the
+		// update in progress, if any, is not interrupted)
+		if (this.monitor != null)
 		{
-			this.monitorThread.interrupt();
+			this.monitor.refresh();
+		}
+	}
+
+	/**
+	 * Create the menu item that asks for the details of a failed build (AWT does not tell when
+	 * a submenu opens: the details are only fetched when the user selects this item)
+	 * @param idOfTheBuild the id of the failed build
+	 * @param label the label of the menu item
+	 * @return the menu item
+	 */
+	private MenuItem createShowFailureDetailsMenuItem(String idOfTheBuild, String label)
+	{
+		MenuItem showFailureDetailsMenuItem = new MenuItem(label);
+		showFailureDetailsMenuItem.setActionCommand(idOfTheBuild);
+		showFailureDetailsMenuItem.addActionListener(new ActionListener()
+		{
+			public void actionPerformed(ActionEvent e)
+			{
+				showFailureDetails(e.getActionCommand());
+			}
+		});
+		return showFailureDetailsMenuItem;
+	}
+
+	/**
+	 * Ask the monitor for the details of a failed build of the tray menu, and show them in its
+	 * menu once they are fetched. The monitor caches the details, so that a build whose details
+	 * are fetched already costs no request.
+	 * @param idOfTheBuild the id of the failed build
+	 */
+	private void showFailureDetails(final String idOfTheBuild)
+	{
+		final Menu failedBuildMenu = this.failureDetailsMenus.get(idOfTheBuild);
+		if (failedBuildMenu == null)
+		{
+			return;
+		}
+		// The details are shown after the "open in browser" and "log" items and their separator
+		while (failedBuildMenu.getItemCount() > 3)
+		{
+			failedBuildMenu.remove(3);
+		}
+		addDisabledMenuItem(failedBuildMenu, getMessage(MESSAGEKEY_TRAYICON_MENUITEM_LOADING_FAILURE_DETAILS));
+		this.monitor.getFailureDetails(idOfTheBuild).whenComplete((details, failure) -> javax.swing.SwingUtilities.invokeLater(new Runnable()
+		{
+			public void run()
+			{
+				showFailureDetails(idOfTheBuild, failedBuildMenu, details);
+			}
+		}));
+	}
+
+	/**
+	 * Show the details of a failed build in its menu (it is left as is if the tray menu has
+	 * been updated in the meantime)
+	 * @param idOfTheBuild the id of the failed build
+	 * @param failedBuildMenu the menu of the failed build
+	 * @param details the details of the failed build, or null if they could not be fetched
+	 */
+	private void showFailureDetails(String idOfTheBuild, Menu failedBuildMenu, FailureDetails details)
+	{
+		if (this.failureDetailsMenus.get(idOfTheBuild) != failedBuildMenu)
+		{
+			return;
+		}
+		// The details are shown after the "open in browser" and "log" items and their separator
+		while (failedBuildMenu.getItemCount() > 3)
+		{
+			failedBuildMenu.remove(3);
+		}
+		if (details == null)
+		{
+			// The user can ask for the details again
+			failedBuildMenu.add(createShowFailureDetailsMenuItem(idOfTheBuild, getMessage(MESSAGEKEY_TRAYICON_MENUITEM_FAILURE_DETAILS_UNAVAILABLE)));
+			return;
+		}
+		this.failureDetailsMenus.remove(idOfTheBuild);
+		addDisabledMenuItem(failedBuildMenu, MessageFormat.format(getMessage(MESSAGEKEY_TRAYICON_MENUITEM_FAILED_TESTS), details.getFailedTestCount(), details.getFailedTestCount() + details.getSuccessfulTestCount()));
+		for (String stage : details.getFailedStages())
+		{
+			addDisabledMenuItem(failedBuildMenu, MessageFormat.format(getMessage(MESSAGEKEY_TRAYICON_MENUITEM_FAILED_STAGE), stage));
+		}
+		for (String job : details.getFailedJobs())
+		{
+			addDisabledMenuItem(failedBuildMenu, MessageFormat.format(getMessage(MESSAGEKEY_TRAYICON_MENUITEM_FAILED_JOB), job));
+		}
+		if (!details.getFailedTests().isEmpty())
+		{
+			failedBuildMenu.addSeparator();
+			for (String test : details.getFailedTests())
+			{
+				addDisabledMenuItem(failedBuildMenu, test);
+			}
+		}
+	}
+
+	/**
+	 * Show the end of the log of a failed build in a window, and follow the log while the
+	 * window is open (only the bytes appended to the log are fetched)
+	 * @param idOfTheBuild the id of the failed build
+	 */
+	private void showLogTail(String idOfTheBuild)
+	{
+		final LogTail logTail = this.monitor.getLogTail(idOfTheBuild);
+		final JTextArea logTextArea = new JTextArea(25, 100);
+		logTextArea.setEditable(false);
+		logTextArea.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+		final JDialog logTailDialog = new JDialog((Frame) null, MessageFormat.format(getMessage(MESSAGEKEY_LOG_TAIL_TITLE), idOfTheBuild));
+		logTailDialog.setDefaultCloseOperation(JDialog.DISPOSE_ON_CLOSE);
+		logTailDialog.getContentPane().add(new JScrollPane(logTextArea));
+		logTailDialog.pack();
+		final ActionListener logTailUpdater = new ActionListener()
+		{
+			public void actionPerformed(ActionEvent e)
+			{
+				logTail.update().whenComplete((lines, failure) -> javax.swing.SwingUtilities.invokeLater(new Runnable()
+				{
+					public void run()
+					{
+						if (failure != null)
+						{
+							Throwable cause = (failure.getCause() != null) ? failure.getCause() : failure;
+							logTextArea.setText(MessageFormat.format(getMessage(MESSAGEKEY_LOG_TAIL_UNAVAILABLE), cause.getMessage()));
+						}
+						else
+						{
+							logTextArea.setText(String.join("\n", lines));
+							logTextArea.setCaretPosition(logTextArea.getDocument().getLength());
+						}
+					}
+				}));
+			}
+		};
+		final Timer logTailTimer = new Timer(LOG_TAIL_FOLLOW_PERIOD_IN_MILLIS, logTailUpdater);
+		logTailDialog.addWindowListener(new WindowAdapter()
+		{
+			public void windowClosed(WindowEvent e)
+			{
+				logTailTimer.stop();
+			}
+		});
+		logTailUpdater.actionPerformed(null);
+		logTailTimer.start();
+		logTailDialog.setVisible(true);
+	}
+
+	private static void addDisabledMenuItem(Menu menu, String label)
+	{
+		MenuItem menuItem = new MenuItem(label);
+		menuItem.setEnabled(false);
+		menu.add(menuItem);
+	}
+
+	/**
+	 * Show on the "update now" menu item whether a refresh is pending
+	 * @param refreshPending true if a refresh has been asked for and has not started yet
+	 */
+	private void showRefreshPending(final boolean refreshPending)
+	{
+		if (this.updateStatusNowMenuItem != null)
+		{
+			javax.swing.SwingUtilities.invokeLater(new Runnable()
+			{
+				public void run()
+				{
+					updateStatusNowMenuItem.setLabel(getMessage(refreshPending ? MESSAGEKEY_TRAYICON_MENUITEM_REFRESH_PENDING : MESSAGEKEY_TRAYICON_MENUITEM_UPDATE_STATUS_NOW));
+				}
+			});
 		}
 	}
 
@@ -784,6 +985,8 @@ public class BuildMonitorImpl implements Runnable, BuildMonitor
 	 */
 	public void updateBuildStatus(List<BuildReport> buildsStatus)
 	{
+		showRefreshPending(this.monitor.isRefreshPending());
+
 		// 1) Sort the list of build reports according to user preferences (as set using the sort menu)
 		// TODO: POUVOIR AUSSI TRIER LA LISTE PAR AGE, EN FONCTION DE L'OPTION CHOISIE PAR L'UTILISATEUR
 		buildsStatus = new ArrayList<BuildReport>(buildsStatus);
@@ -803,41 +1006,121 @@ public class BuildMonitorImpl implements Runnable, BuildMonitor
 		// 3) Status has been updated, so there is no current monitoring exception...
 		this.currentlyReportedMonitoringException = null;
 		
-		// 4) If situation have changed, notify the end user !
-		StringBuffer newFailingBuilds = new StringBuffer();
-		StringBuffer fixedBuilds = new StringBuffer();
-		for (BuildReport currentBuildReport : buildsStatus)
+		// 4) If situation have changed, notify the end user (once per quiet window) !
+		this.notificationAggregator.update(this.previousBuildReports, buildsStatus, this.monitor.getNotificationQuietWindowInMillis());
+		this.previousBuildReports = buildsStatus;
+	}
+
+	/**
+	 * Build a MenuItem label for a build report.
+	 * @param buildReport the build report
+	 * @return a MenuItem label for buildReport
+	 */
+	static String getMenuItemLabelForBuildReport(BuildReport buildReport)
+	{
+		String howLongAgo = null;
+		Period ageOfTheBuild = new Period(new LocalDateTime(buildReport.getDate()), new LocalDateTime());
+		// is it more than one year ago ?
+		if (ageOfTheBuild.getYears() > 0)
 		{
-			for (BuildReport previousBuildReport : this.previousBuildReports)
+			if (ageOfTheBuild.getYears() > 1)
 			{
-				if (previousBuildReport.getId().equals(currentBuildReport.getId()))
-				{
-					if (previousBuildReport.getStatus() != currentBuildReport.getStatus())
-					{
-						if (currentBuildReport.getStatus() == BuildReport.Status.OK)
-						{
-							fixedBuilds.append(currentBuildReport.getName() + " is fixed.\n");
-						}
-						else
-						{
-							newFailingBuilds.append(currentBuildReport.getName() + " is failing.\n");
-						}
-					}
-				}
+				howLongAgo = ageOfTheBuild.getYears() + " years ago";					
+			}
+			else
+			{
+				howLongAgo = "1 year ago";					
 			}
 		}
-		if ((newFailingBuilds.length() > 0) || (fixedBuilds.length() > 0))
+		else if (ageOfTheBuild.getMonths() > 0)
 		{
-			MessageType messageType = MessageType.INFO;
-			if (newFailingBuilds.length() > 0)
+			if (ageOfTheBuild.getMonths() > 1)
 			{
-				messageType = MessageType.WARNING;
+				howLongAgo = ageOfTheBuild.getMonths() + " months ago";											
+			}
+			else
+			{
+				howLongAgo = "1 month ago";											
 			}
-			javax.swing.SwingUtilities.invokeLater(new TrayIconUpdater(null, null, "Build situation have changed !", newFailingBuilds.toString() + fixedBuilds.toString() + "Right click the tray icon to display the detailed build status.", messageType, null));
 		}
-		this.previousBuildReports = buildsStatus;
-	}
+		else if (ageOfTheBuild.getWeeks() > 0)
+		{
+			if (ageOfTheBuild.getWeeks() > 1)
+			{
+				howLongAgo = ageOfTheBuild.getWeeks() + " weeks ago";
+			}
+			else
+			{
+				howLongAgo = "1 week ago";
+			}
+		}
+		else if (ageOfTheBuild.getDays() > 0)
+		{
+			if (ageOfTheBuild.getDays() > 1)
+			{
+				howLongAgo = ageOfTheBuild.getDays() + " days ago";
+			}
+			else
+			{
+				howLongAgo = "yesterday";
+			}
+		}
+		else if (ageOfTheBuild.getHours() > 0)
+		{
+			if (ageOfTheBuild.getHours() > 1)
+			{
+				howLongAgo = ageOfTheBuild.getHours() + " hours ago";
+			}
+			else
+			{
+				howLongAgo = "one hour ago";
+			}
+		}
+		else if (ageOfTheBuild.getMinutes() > 5)
+		{
+			howLongAgo = ageOfTheBuild.getMinutes() + " minutes ago";
+		}
+		else if (ageOfTheBuild.getMinutes() > 1)
+		{
+			howLongAgo = "a few minutes ago";
+		}
+		else
+		{
+			howLongAgo = "a few seconds ago";
+		}
+		
+		String failedIndicator = "";
+		if(buildReport.hasFailed())
+		{
+			failedIndicator = "- ";
+		}
+		else if (buildReport.isInProgress())
+		{
+			failedIndicator = "> ";
+		}
+		else
+		{
+			failedIndicator = "+ ";
+		}
+		
+		String staleIndicator = "";
+		if (buildReport.isStale())
+		{
+			staleIndicator = ", stale";
+		}
 
+		String progressIndicator = "";
+		if (buildReport.getStatus() == BuildReport.Status.RUNNING)
+		{
+			progressIndicator = ", running";
+		}
+		else if (buildReport.getStatus() == BuildReport.Status.QUEUED)
+		{
+			progressIndicator = ", queued";
+		}
+		
+		return failedIndicator+ buildReport.getName() + "  (" + howLongAgo + progressIndicator + staleIndicator + ")";
+	}
 
 	/**
 	 * displays an error message in a dialog.
@@ -113,11 +113,11 @@ public class BuildReport
 	}
 
 	/**
-	 * Status of a build
+	 * Status of a build (RUNNING and QUEUED are the status of the builds that are not finished yet)
 	 * @author sbrunot
 	 *
 	 */
-	public enum Status {OK, FAILED, EMPTY};
+	public enum Status {OK, FAILED, EMPTY, RUNNING, QUEUED};
 
 	/**
 	 * Id of the build
@@ -139,6 +139,11 @@ public class BuildReport
 	 */
 	private Date date;
 
+	/**
+	 * Is this build report a last known one, that could not be updated ?
+	 */
+	private boolean stale = false;
+
 	/**
 	 * No args constructor
 	 */
@@ -232,6 +237,24 @@ public class BuildReport
 		this.status = statusOfTheBuild;
 	}
 
+	/**
+	 * Is this build report a last known one, that could not be updated ?
+	 * @return true if the build report could not be updated
+	 */
+	public boolean isStale()
+	{
+		return this.stale;
+	}
+
+	/**
+	 * Set the stale flag of the build report
+	 * @param stale true if the build report could not be updated
+	 */
+	public void setStale(boolean stale)
+	{
+		this.stale = stale;
+	}
+
 	/**
 	 * Does this build report signal a failed build ?
 	 * @return
@@ -240,4 +263,13 @@ public class BuildReport
 	{
 		return Status.FAILED.equals(this.status);
 	}
+
+	/**
+	 * Does this build report signal a build that is not finished yet (running or queued) ?
+	 * @return true if the build is running or queued
+	 */
+	public boolean isInProgress()
+	{
+		return Status.RUNNING.equals(this.status) || Status.QUEUED.equals(this.status);
+	}
 }
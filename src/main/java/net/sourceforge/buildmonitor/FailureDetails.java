@@ -0,0 +1,133 @@
+/*
+ * Copyright 2007 Sebastien Brunot (sbrunot@gmail.com)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *   
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sourceforge.buildmonitor;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Details of a failed build: its test counts, the stages and jobs that have failed, and
+ * the names of its first failed tests.
+ * @author vegarwe
+ *
+ */
+public class FailureDetails
+{
+	/**
+	 * Number of failed tests of the build
+	 */
+	private final int failedTestCount;
+
+	/**
+	 * Number of successful tests of the build
+	 */
+	private final int successfulTestCount;
+
+	/**
+	 * Names of the failed stages of the build
+	 */
+	private final List<String> failedStages;
+
+	/**
+	 * Names of the failed jobs of the build
+	 */
+	private final List<String> failedJobs;
+
+	/**
+	 * Keys of the results of the failed jobs of the build (in the order of their names)
+	 */
+	private final List<String> failedJobKeys;
+
+	/**
+	 * Names of the first failed tests of the build ("class.method")
+	 */
+	private final List<String> failedTests;
+
+	/**
+	 * Create a new instance
+	 * @param failedTestCount the number of failed tests of the build
+	 * @param successfulTestCount the number of successful tests of the build
+	 * @param failedStages the names of the failed stages of the build
+	 * @param failedJobs the names of the failed jobs of the build
+	 * @param failedJobKeys the keys of the results of the failed jobs of the build
+	 * @param failedTests the names of the first failed tests of the build
+	 */
+	public FailureDetails(int failedTestCount, int successfulTestCount, List<String> failedStages, List<String> failedJobs, List<String> failedJobKeys, List<String> failedTests)
+	{
+		this.failedTestCount = failedTestCount;
+		this.successfulTestCount = successfulTestCount;
+		this.failedStages = Collections.unmodifiableList(failedStages);
+		this.failedJobs = Collections.unmodifiableList(failedJobs);
+		this.failedJobKeys = Collections.unmodifiableList(failedJobKeys);
+		this.failedTests = Collections.unmodifiableList(failedTests);
+	}
+
+	/**
+	 * Get the number of failed tests of the build
+	 * @return the number of failed tests of the build
+	 */
+	public int getFailedTestCount()
+	{
+		return this.failedTestCount;
+	}
+
+	/**
+	 * Get the number of successful tests of the build
+	 * @return the number of successful tests of the build
+	 */
+	public int getSuccessfulTestCount()
+	{
+		return this.successfulTestCount;
+	}
+
+	/**
+	 * Get the names of the failed stages of the build
+	 * @return the names of the failed stages of the build
+	 */
+	public List<String> getFailedStages()
+	{
+		return this.failedStages;
+	}
+
+	/**
+	 * Get the names of the failed jobs of the build
+	 * @return the names of the failed jobs of the build
+	 */
+	public List<String> getFailedJobs()
+	{
+		return this.failedJobs;
+	}
+
+	/**
+	 * Get the keys of the results of the failed jobs of the build (their logs are the ones
+	 * that tell what went wrong)
+	 * @return the keys of the results of the failed jobs of the build
+	 */
+	public List<String> getFailedJobKeys()
+	{
+		return this.failedJobKeys;
+	}
+
+	/**
+	 * Get the names of the first failed tests of the build (at most
+	 * the number asked for when the details have been fetched)
+	 * @return the names of the first failed tests of the build ("class.method")
+	 */
+	public List<String> getFailedTests()
+	{
+		return this.failedTests;
+	}
+}
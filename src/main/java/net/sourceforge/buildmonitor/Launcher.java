@@ -15,9 +15,9 @@
  */
 package net.sourceforge.buildmonitor;
 
-import java.security.Security;
 import javax.swing.UIManager;
 
+import net.sourceforge.buildmonitor.logging.MonitorLogging;
 import net.sourceforge.buildmonitor.monitors.Monitor;
 import net.sourceforge.buildmonitor.monitors.MonitorFactory;
 import net.sourceforge.buildmonitor.monitors.BambooMonitor;
@@ -39,12 +39,11 @@ public class Launcher
 	 */
 	public static void main(String[] args)
 	{
+		MonitorLogging.install();
+
 		// The default monitor to use
 		String monitor = BAMBOO_MONITOR;
 		
-		System.setProperty("java.protocol.handler.pkgs", "com.sun.net.ssl.internal.www.protocol");
-		Security.addProvider(new com.sun.net.ssl.internal.ssl.Provider());
-		
 		// Check if a monitor has been specified on the command line
 		if (args.length == 2)
 		{
@@ -0,0 +1,37 @@
+/*
+ * Copyright 2007 Sebastien Brunot (sbrunot@gmail.com)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *   
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sourceforge.buildmonitor;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * The end of the log of a build, that can be followed while the build goes on. Only the end
+ * of the log is ever fetched: the first update fetches its last bytes, and the next ones
+ * only the bytes appended since the previous update.
+ * @author vegarwe
+ *
+ */
+public interface LogTail
+{
+	/**
+	 * Fetch the bytes appended to the log since the last update (the end of the log on the
+	 * first update). The updates are run one after the other, in the order they are asked for.
+	 * @return the future last lines of the log, oldest first. It completes exceptionally if the
+	 * log cannot be fetched.
+	 */
+	public CompletableFuture<List<String>> update();
+}
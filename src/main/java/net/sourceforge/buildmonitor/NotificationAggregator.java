@@ -0,0 +1,211 @@
+/*
+ * Copyright 2007 Sebastien Brunot (sbrunot@gmail.com)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *   
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sourceforge.buildmonitor;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import net.sourceforge.buildmonitor.BuildMonitorImpl.BuildSituationChanges;
+import net.sourceforge.buildmonitor.metrics.MonitorMetrics;
+
+/**
+ * Merges the build status transitions into one notification per quiet window.
+ * The window opens with the first transition and closes after its duration: the
+ * transitions of a build within the window are merged, so that only the difference
+ * between its status before the window and its last status is notified. A build that
+ * fails and is fixed within the window (or the other way round) is not notified at all,
+ * and a flapping build gives at most one notification per window instead of one per
+ * transition.
+ * @author vegarwe
+ *
+ */
+class NotificationAggregator
+{
+	/**
+	 * Receives the changes of the build situation at the end of the quiet windows
+	 */
+	interface Listener
+	{
+		/**
+		 * Notify the changes of the build situation over a quiet window (only called
+		 * when the build situation has changed)
+		 * @param changes the changes of the build situation
+		 */
+		void notifyBuildSituationChanges(BuildSituationChanges changes);
+	}
+
+	/**
+	 * The transitions of a build within the current window
+	 */
+	private static class PendingChange
+	{
+		String name;
+		BuildReport.Status statusBeforeTheWindow;
+		BuildReport.Status lastStatus;
+		int numberOfTransitions;
+	}
+
+	private final Listener listener;
+
+	/**
+	 * The builds that have changed within the current window, by id, in the order of their first transition
+	 */
+	private final Map<String, PendingChange> pendingChanges = new LinkedHashMap<String, PendingChange>();
+	private ScheduledExecutorService timer = null;
+	private ScheduledFuture<?> windowEnd = null;
+
+	/**
+	 * Create a new aggregator
+	 * @param listener the listener notified at the end of the quiet windows
+	 */
+	NotificationAggregator(Listener listener)
+	{
+		this.listener = listener;
+	}
+
+	/**
+	 * Add the transitions between two build status updates to the current window (a
+	 * new window is opened if none is open)
+	 * @param previousBuildReports the build reports of the previous update
+	 * @param currentBuildReports the build reports of the current update
+	 * @param quietWindowInMillis the duration of a new window (0 to notify the transitions
+	 * immediately)
+	 */
+	synchronized void update(List<BuildReport> previousBuildReports, List<BuildReport> currentBuildReports, long quietWindowInMillis)
+	{
+		// The builds in progress are not notified: only the status of the finished builds is
+		Map<String, BuildReport.Status> previousStatuses = new HashMap<String, BuildReport.Status>();
+		for (BuildReport previousBuildReport : previousBuildReports)
+		{
+			if (!previousBuildReport.isInProgress())
+			{
+				previousStatuses.put(previousBuildReport.getId(), previousBuildReport.getStatus());
+			}
+		}
+		int numberOfTransitions = 0;
+		for (BuildReport currentBuildReport : currentBuildReports)
+		{
+			BuildReport.Status previousStatus = previousStatuses.get(currentBuildReport.getId());
+			if (previousStatus != null && !currentBuildReport.isInProgress() && previousStatus != currentBuildReport.getStatus())
+			{
+				PendingChange pendingChange = this.pendingChanges.get(currentBuildReport.getId());
+				if (pendingChange == null)
+				{
+					pendingChange = new PendingChange();
+					pendingChange.statusBeforeTheWindow = previousStatus;
+					this.pendingChanges.put(currentBuildReport.getId(), pendingChange);
+				}
+				pendingChange.name = currentBuildReport.getName();
+				pendingChange.lastStatus = currentBuildReport.getStatus();
+				pendingChange.numberOfTransitions++;
+				numberOfTransitions++;
+			}
+		}
+		MonitorMetrics.getInstance().recordBuildTransitions(numberOfTransitions);
+
+		if (quietWindowInMillis <= 0)
+		{
+			flush();
+		}
+		else if (this.windowEnd == null && !this.pendingChanges.isEmpty())
+		{
+			this.windowEnd = getTimer().schedule(new Runnable()
+			{
+				public void run()
+				{
+					flush();
+				}
+			}, quietWindowInMillis, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * Close the current window: notify the listener of the changes of the build situation
+	 * over the window, if any
+	 * @return the changes of the build situation over the window
+	 */
+	synchronized BuildSituationChanges flush()
+	{
+		if (this.windowEnd != null)
+		{
+			this.windowEnd.cancel(false);
+			this.windowEnd = null;
+		}
+		BuildSituationChanges changes = new BuildSituationChanges();
+		int numberOfCancelledTransitions = 0;
+		for (PendingChange pendingChange : this.pendingChanges.values())
+		{
+			if (pendingChange.lastStatus == pendingChange.statusBeforeTheWindow)
+			{
+				// The transitions cancel out
+				numberOfCancelledTransitions += pendingChange.numberOfTransitions;
+			}
+			else if (pendingChange.lastStatus == BuildReport.Status.OK)
+			{
+				changes.fixedBuilds.append(pendingChange.name + " is fixed.\n");
+			}
+			else
+			{
+				changes.newFailingBuilds.append(pendingChange.name + " is failing.\n");
+			}
+		}
+		this.pendingChanges.clear();
+		MonitorMetrics.getInstance().recordNotificationWindow(changes.hasChanged(), numberOfCancelledTransitions);
+		if (changes.hasChanged())
+		{
+			this.listener.notifyBuildSituationChanges(changes);
+		}
+		return changes;
+	}
+
+	/**
+	 * Stop the aggregator: the transitions of the current window are dropped
+	 */
+	synchronized void stop()
+	{
+		this.pendingChanges.clear();
+		this.windowEnd = null;
+		if (this.timer != null)
+		{
+			this.timer.shutdownNow();
+			this.timer = null;
+		}
+	}
+
+	private ScheduledExecutorService getTimer()
+	{
+		if (this.timer == null)
+		{
+			this.timer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory()
+			{
+				public Thread newThread(Runnable runnable)
+				{
+					Thread thread = new Thread(runnable, "Notification aggregator");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		return this.timer;
+	}
+}
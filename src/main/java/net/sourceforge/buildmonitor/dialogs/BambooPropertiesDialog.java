@@ -32,6 +32,8 @@ import java.text.ParseException;
 import javax.swing.event.DocumentEvent;
 import javax.swing.event.DocumentListener;
 
+import net.sourceforge.buildmonitor.monitors.PlanKeyFilter;
+
 /**
  *
  * @author  sbrunot
@@ -71,7 +73,7 @@ public class BambooPropertiesDialog extends javax.swing.JDialog {
     private void setButtonsState()
     {
     	// Ok button
-    	if (isBaseUrlOk() && isUsernameOk() && isPasswordOk() && isUpdatePeriodOk())
+    	if (isBaseUrlOk() && isUsernameOk() && isPasswordOk() && isUpdatePeriodOk() && isProjectKeysOk() && isExcludedProjectKeysOk())
         {
             this.okButton.setEnabled(true);
         }
@@ -149,6 +151,22 @@ public class BambooPropertiesDialog extends javax.swing.JDialog {
         return true;
     }
 
+    /**
+     * Is the value in the project keys field ok ?
+     */
+    private boolean isProjectKeysOk()
+    {
+        return PlanKeyFilter.isValid(this.projectKeysField.getText());
+    }
+
+    /**
+     * Is the value in the excluded project keys field ok ?
+     */
+    private boolean isExcludedProjectKeysOk()
+    {
+        return PlanKeyFilter.isValid(this.excludedProjectKeysField.getText());
+    }
+
     /** This method is called from within the constructor to
      * initialize the form.
      * WARNING: Do NOT modify this code. The content of this method is
@@ -228,6 +246,40 @@ public class BambooPropertiesDialog extends javax.swing.JDialog {
         cancelButton = new javax.swing.JButton();
         openBaseURLButton = new javax.swing.JButton();
         javax.swing.JLabel jLabel14 = new javax.swing.JLabel();
+        javax.swing.JLabel jLabel15 = new javax.swing.JLabel();
+        projectKeysField = new javax.swing.JTextField();
+        this.projectKeysField.getDocument().addDocumentListener(new DocumentListener() {
+            public void insertUpdate(DocumentEvent evt)
+            {
+                updateProjectKeysFieldsStatus();
+                setButtonsState();
+            }
+            public void removeUpdate(DocumentEvent evt)
+            {
+                updateProjectKeysFieldsStatus();
+                setButtonsState();
+            }
+            public void changedUpdate(DocumentEvent evt)
+            {
+            }
+        });
+        javax.swing.JLabel jLabel16 = new javax.swing.JLabel();
+        excludedProjectKeysField = new javax.swing.JTextField();
+        this.excludedProjectKeysField.getDocument().addDocumentListener(new DocumentListener() {
+            public void insertUpdate(DocumentEvent evt)
+            {
+                updateProjectKeysFieldsStatus();
+                setButtonsState();
+            }
+            public void removeUpdate(DocumentEvent evt)
+            {
+                updateProjectKeysFieldsStatus();
+                setButtonsState();
+            }
+            public void changedUpdate(DocumentEvent evt)
+            {
+            }
+        });
 
         setDefaultCloseOperation(javax.swing.WindowConstants.DISPOSE_ON_CLOSE);
         setModal(true);
@@ -364,6 +416,12 @@ public class BambooPropertiesDialog extends javax.swing.JDialog {
         jLabel14.setText("Only show favourite plans:");
         jLabel14.setToolTipText("The delay between two queries of the Bamboo server to retrieve status of the last builds.");
 
+        jLabel15.setText("Monitored plans:");
+        jLabel15.setToolTipText("Keys of the monitored projects (PROJ) or plans (PROJ-PLAN), separated by commas. Wildcards * and ? are allowed. Leave empty to monitor all the plans.");
+
+        jLabel16.setText("Excluded plans:");
+        jLabel16.setToolTipText("Keys of the projects (PROJ) or plans (PROJ-PLAN) that are not monitored, separated by commas. Wildcards * and ? are allowed.");
+
         javax.swing.GroupLayout layout = new javax.swing.GroupLayout(getContentPane());
         getContentPane().setLayout(layout);
         layout.setHorizontalGroup(
@@ -407,14 +465,18 @@ public class BambooPropertiesDialog extends javax.swing.JDialog {
                                 .addGap(10, 10, 10)
                                 .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.TRAILING)
                                     .addComponent(jLabel14)
-                                    .addComponent(jLabel12))
+                                    .addComponent(jLabel12)
+                                    .addComponent(jLabel15)
+                                    .addComponent(jLabel16))
                                 .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
                                 .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
                                     .addGroup(layout.createSequentialGroup()
                                         .addComponent(updatePeriodField, javax.swing.GroupLayout.PREFERRED_SIZE, 28, javax.swing.GroupLayout.PREFERRED_SIZE)
                                         .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
                                         .addComponent(jLabel13))
-                                    .addComponent(favouriteProjectsOnly))))))
+                                    .addComponent(favouriteProjectsOnly)
+                                    .addComponent(projectKeysField, javax.swing.GroupLayout.PREFERRED_SIZE, 400, javax.swing.GroupLayout.PREFERRED_SIZE)
+                                    .addComponent(excludedProjectKeysField, javax.swing.GroupLayout.PREFERRED_SIZE, 400, javax.swing.GroupLayout.PREFERRED_SIZE))))))
                 .addContainerGap())
         );
         layout.setVerticalGroup(
@@ -460,6 +522,14 @@ public class BambooPropertiesDialog extends javax.swing.JDialog {
                         .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.TRAILING)
                             .addComponent(favouriteProjectsOnly)
                             .addComponent(jLabel14))
+                        .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                        .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
+                            .addComponent(jLabel15)
+                            .addComponent(projectKeysField, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
+                        .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                        .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
+                            .addComponent(jLabel16)
+                            .addComponent(excludedProjectKeysField, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
                         .addContainerGap())))
         );
 
@@ -581,6 +651,26 @@ public class BambooPropertiesDialog extends javax.swing.JDialog {
         }
     }
 
+    public void updateProjectKeysFieldsStatus()
+    {
+        updateProjectKeysFieldStatus(this.projectKeysField, isProjectKeysOk());
+        updateProjectKeysFieldStatus(this.excludedProjectKeysField, isExcludedProjectKeysOk());
+    }
+
+    private void updateProjectKeysFieldStatus(javax.swing.JTextField projectKeysField, boolean isProjectKeysOk)
+    {
+        if (isProjectKeysOk)
+        {
+            projectKeysField.setForeground(COLOR_TEXT_DEFAULT);
+            projectKeysField.setToolTipText(null);
+        }
+        else
+        {
+            projectKeysField.setForeground(COLOR_TEXT_IN_ERROR);
+            projectKeysField.setToolTipText("keys must be project (PROJ) or plan (PROJ-PLAN) keys, separated by commas !");
+        }
+    }
+
     private void okButtonActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_okButtonActionPerformed
         this.lastClickedButton = BUTTON_OK;
         // Hide the window
@@ -605,10 +695,12 @@ public class BambooPropertiesDialog extends javax.swing.JDialog {
     // Variables declaration - do not modify//GEN-BEGIN:variables
     public javax.swing.JTextField baseURLField;
     private javax.swing.JButton cancelButton;
+    public javax.swing.JTextField excludedProjectKeysField;
     public javax.swing.JCheckBox favouriteProjectsOnly;
     private javax.swing.JButton okButton;
     private javax.swing.JButton openBaseURLButton;
     public javax.swing.JPasswordField passwordField;
+    public javax.swing.JTextField projectKeysField;
     public javax.swing.JFormattedTextField updatePeriodField;
     public javax.swing.JTextField usernameField;
     // End of variables declaration//GEN-END:variables
@@ -0,0 +1,151 @@
+/*
+ * Copyright 2007 Sebastien Brunot (sbrunot@gmail.com)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *   
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sourceforge.buildmonitor.logging;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+/**
+ * A log handler that never blocks the threads that log: the records are put in a lock-free
+ * queue, and written by a daemon thread to the handler they are meant for (a file handler,
+ * whose writes are synchronized and may wait for the disk). When the queue is full, the
+ * records are dropped, and the number of dropped records is logged once the queue is drained.
+ * @author vegarwe
+ *
+ */
+public class AsyncLogHandler extends Handler
+{
+	/**
+	 * Time the writer waits for new records before it checks the queue again
+	 */
+	private static final long WRITER_PERIOD_IN_MILLIS = 200;
+	private static final long CLOSE_TIMEOUT_IN_MILLIS = 2000;
+	private static final AtomicInteger WRITER_THREAD_COUNTER = new AtomicInteger();
+
+	private final Handler target;
+	private final int capacity;
+	private final ConcurrentLinkedQueue<LogRecord> records = new ConcurrentLinkedQueue<LogRecord>();
+	private final AtomicInteger numberOfQueuedRecords = new AtomicInteger();
+	private final AtomicLong numberOfDroppedRecords = new AtomicLong();
+	private final Thread writer;
+	private volatile boolean closed = false;
+
+	/**
+	 * Create a handler and start its writer thread
+	 * @param target the handler that writes the records
+	 * @param capacity the maximum number of records waiting to be written
+	 */
+	public AsyncLogHandler(Handler target, int capacity)
+	{
+		this.target = target;
+		this.capacity = capacity;
+		this.writer = new Thread(() -> writeRecords(), "Log writer " + WRITER_THREAD_COUNTER.incrementAndGet());
+		this.writer.setDaemon(true);
+		this.writer.start();
+	}
+
+	/**
+	 * Get the number of records dropped so far because the queue was full
+	 * @return the number of records dropped so far
+	 */
+	public long getNumberOfDroppedRecords()
+	{
+		return this.numberOfDroppedRecords.get();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public void publish(LogRecord record)
+	{
+		if (this.closed || !isLoggable(record))
+		{
+			return;
+		}
+		if (this.numberOfQueuedRecords.incrementAndGet() > this.capacity)
+		{
+			this.numberOfQueuedRecords.decrementAndGet();
+			this.numberOfDroppedRecords.incrementAndGet();
+			return;
+		}
+		this.records.offer(record);
+		LockSupport.unpark(this.writer);
+	}
+
+	/**
+	 * The records are flushed by the writer thread as soon as it has written all the records
+	 * of the queue: this method does not wait for it.
+	 */
+	public void flush()
+	{
+		LockSupport.unpark(this.writer);
+	}
+
+	/**
+	 * Write the records left in the queue (waiting for two seconds at most), and close the
+	 * target handler.
+	 */
+	public void close()
+	{
+		this.closed = true;
+		LockSupport.unpark(this.writer);
+		try
+		{
+			this.writer.join(CLOSE_TIMEOUT_IN_MILLIS);
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+		this.target.close();
+	}
+
+	private void writeRecords()
+	{
+		long numberOfReportedDrops = 0;
+		while (true)
+		{
+			LogRecord record = this.records.poll();
+			if (record != null)
+			{
+				this.numberOfQueuedRecords.decrementAndGet();
+				this.target.publish(record);
+				continue;
+			}
+			long numberOfDrops = this.numberOfDroppedRecords.get();
+			if (numberOfDrops > numberOfReportedDrops)
+			{
+				LogRecord dropReport = new LogRecord(Level.WARNING, "Log records dropped: the log could not keep up");
+				dropReport.setLoggerName(AsyncLogHandler.class.getName());
+				dropReport.setParameters(new Object[] {"dropped", numberOfDrops - numberOfReportedDrops});
+				this.target.publish(dropReport);
+				numberOfReportedDrops = numberOfDrops;
+			}
+			this.target.flush();
+			if (this.closed)
+			{
+				return;
+			}
+			LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(WRITER_PERIOD_IN_MILLIS));
+		}
+	}
+}
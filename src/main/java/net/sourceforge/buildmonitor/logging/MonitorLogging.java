@@ -0,0 +1,116 @@
+/*
+ * Copyright 2007 Sebastien Brunot (sbrunot@gmail.com)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *   
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sourceforge.buildmonitor.logging;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.logging.FileHandler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+/**
+ * The log of the application. It is written to rolling files in the user home directory
+ * (~/.build-monitor/logs/build-monitor0.log is the current one) by a background thread, so
+ * that logging never blocks the monitor thread or the event dispatch thread. The classes of
+ * the application log with java.util.logging, and describe what happened with structured
+ * fields (cycle, plan, latencyMs...), that the log formats as name=value pairs.
+ * @author vegarwe
+ *
+ */
+public class MonitorLogging
+{
+	/**
+	 * Name of the logger of the application (the parent of the loggers of all its classes)
+	 */
+	public static final String APPLICATION_LOGGER_NAME = "net.sourceforge.buildmonitor";
+	private static final String LOG_DIRECTORY = ".build-monitor" + File.separator + "logs";
+	private static final String LOG_FILE_PATTERN = "build-monitor%g.log";
+	private static final int LOG_FILE_SIZE_LIMIT = 1024 * 1024;
+	private static final int NUMBER_OF_LOG_FILES = 5;
+	private static final int QUEUE_CAPACITY = 10000;
+	private static final int MAX_REPEATED_RECORDS_PER_WINDOW = 3;
+	private static final int REPEATED_RECORDS_WINDOW_IN_SECONDS = 300;
+
+	/**
+	 * Keeps the logger of the application (and its configuration) from being garbage collected
+	 */
+	private static Logger applicationLogger = null;
+
+	private MonitorLogging()
+	{
+	}
+
+	/**
+	 * Send the log of the application to the rolling log files of the user. If the files
+	 * cannot be opened, the log goes on going to the console. The log files are closed (and
+	 * the records still in the queue written) by the shutdown hook of the LogManager.
+	 */
+	public static synchronized void install()
+	{
+		if (applicationLogger != null)
+		{
+			return;
+		}
+		Logger logger = Logger.getLogger(APPLICATION_LOGGER_NAME);
+		try
+		{
+			File logDirectory = new File(System.getProperty("user.home"), LOG_DIRECTORY);
+			if (!logDirectory.isDirectory() && !logDirectory.mkdirs())
+			{
+				throw new IOException("Cannot create the log directory " + logDirectory);
+			}
+			FileHandler logFiles = new FileHandler(new File(logDirectory, LOG_FILE_PATTERN).getPath(), LOG_FILE_SIZE_LIMIT, NUMBER_OF_LOG_FILES, true);
+			logFiles.setEncoding("UTF-8");
+			logFiles.setFormatter(new StructuredLogFormatter());
+			AsyncLogHandler handler = new AsyncLogHandler(logFiles, QUEUE_CAPACITY);
+			handler.setFilter(new RepeatedRecordFilter(MAX_REPEATED_RECORDS_PER_WINDOW, REPEATED_RECORDS_WINDOW_IN_SECONDS));
+			logger.addHandler(handler);
+			logger.setUseParentHandlers(false);
+			logger.setLevel(Level.INFO);
+		}
+		catch (IOException | SecurityException e)
+		{
+			log(logger, Level.WARNING, "Cannot write the log files: the log goes to the console", e);
+		}
+		applicationLogger = logger;
+	}
+
+	/**
+	 * Log a record with structured fields
+	 * @param logger the logger of the class that logs
+	 * @param level the level of the record
+	 * @param message what happened (a constant message: the varying parts are fields, so that
+	 * the repeated records can be told apart from the new ones)
+	 * @param thrown the exception of the record (may be null)
+	 * @param fields the fields of the record, as name and value pairs
+	 */
+	public static void log(Logger logger, Level level, String message, Throwable thrown, Object... fields)
+	{
+		if (!logger.isLoggable(level))
+		{
+			return;
+		}
+		LogRecord record = new LogRecord(level, message);
+		record.setLoggerName(logger.getName());
+		// The source is the logger: the stack of the caller is not walked
+		record.setSourceClassName(logger.getName());
+		record.setSourceMethodName(null);
+		record.setParameters(fields);
+		record.setThrown(thrown);
+		logger.log(record);
+	}
+}
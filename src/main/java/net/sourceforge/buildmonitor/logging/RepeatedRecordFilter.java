@@ -0,0 +1,125 @@
+/*
+ * Copyright 2007 Sebastien Brunot (sbrunot@gmail.com)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *   
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sourceforge.buildmonitor.logging;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Filter;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+/**
+ * A log filter that limits the number of repeated warnings and errors: a server that is
+ * down must not fill the log with the same error at each request. The records are the same
+ * when they have the same logger, message and exception class (the varying parts of a record
+ * are its fields, see {@link MonitorLogging#log(java.util.logging.Logger, Level, String, Throwable, Object...)}).
+ * Only the first records of a window are let through; the first record of the next window
+ * tells how many records have been suppressed in the meantime.
+ * @author vegarwe
+ *
+ */
+public class RepeatedRecordFilter implements Filter
+{
+	/**
+	 * The records of a kind let through and suppressed since the start of a window
+	 */
+	private static class Window
+	{
+		final long startTime;
+		final AtomicInteger numberOfRecords = new AtomicInteger(1);
+		final AtomicInteger numberOfSuppressedRecords = new AtomicInteger();
+
+		Window(long startTime)
+		{
+			this.startTime = startTime;
+		}
+	}
+
+	/**
+	 * Maximum number of kinds of records remembered (all are forgotten beyond)
+	 */
+	private static final int MAX_NUMBER_OF_WINDOWS = 1000;
+
+	private final int maxRecordsPerWindow;
+	private final long windowInNanos;
+	private final ConcurrentHashMap<String, Window> windows = new ConcurrentHashMap<String, Window>();
+
+	/**
+	 * Create a new filter
+	 * @param maxRecordsPerWindow the number of records of a kind let through in a window
+	 * @param windowInSeconds the duration of a window
+	 */
+	public RepeatedRecordFilter(int maxRecordsPerWindow, int windowInSeconds)
+	{
+		this.maxRecordsPerWindow = maxRecordsPerWindow;
+		this.windowInNanos = TimeUnit.SECONDS.toNanos(windowInSeconds);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public boolean isLoggable(LogRecord record)
+	{
+		if (record.getLevel().intValue() < Level.WARNING.intValue())
+		{
+			return true;
+		}
+		String kind = record.getLoggerName() + "|" + record.getMessage() + "|" + ((record.getThrown() == null) ? "" : record.getThrown().getClass().getName());
+		long now = System.nanoTime();
+		Window window = this.windows.get(kind);
+		if (window == null || now - window.startTime > this.windowInNanos)
+		{
+			Window newWindow = new Window(now);
+			boolean started = (window == null) ? this.windows.putIfAbsent(kind, newWindow) == null : this.windows.replace(kind, window, newWindow);
+			if (started)
+			{
+				if (this.windows.size() > MAX_NUMBER_OF_WINDOWS)
+				{
+					this.windows.clear();
+				}
+				int numberOfSuppressedRecords = (window == null) ? 0 : window.numberOfSuppressedRecords.get();
+				if (numberOfSuppressedRecords > 0)
+				{
+					addField(record, "suppressed", numberOfSuppressedRecords);
+				}
+				return true;
+			}
+			// Another thread has started the window in the meantime
+			window = this.windows.get(kind);
+			if (window == null)
+			{
+				return true;
+			}
+		}
+		if (window.numberOfRecords.incrementAndGet() <= this.maxRecordsPerWindow)
+		{
+			return true;
+		}
+		window.numberOfSuppressedRecords.incrementAndGet();
+		return false;
+	}
+
+	private static void addField(LogRecord record, String name, Object value)
+	{
+		Object[] fields = (record.getParameters() == null) ? new Object[0] : record.getParameters();
+		Object[] newFields = Arrays.copyOf(fields, fields.length + 2);
+		newFields[fields.length] = name;
+		newFields[fields.length + 1] = value;
+		record.setParameters(newFields);
+	}
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2007 Sebastien Brunot (sbrunot@gmail.com)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *   
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sourceforge.buildmonitor.logging;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.logging.Formatter;
+import java.util.logging.LogRecord;
+
+/**
+ * Format a log record on one line, followed by the stack trace of its exception if any:
+ * <pre>2011-08-12 11:25:48.123 WARNING BambooMonitor: Plan request failed plan=PROJ-PLAN latencyMs=5012 cycle=42</pre>
+ * The parameters of the record are its fields, as name and value pairs (see
+ * {@link MonitorLogging#log(java.util.logging.Logger, java.util.logging.Level, String, Throwable, Object...)}).
+ * The values that contain spaces are quoted, so that the fields can be read back by tools.
+ * @author vegarwe
+ *
+ */
+public class StructuredLogFormatter extends Formatter
+{
+	private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS").withZone(ZoneId.systemDefault());
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public String format(LogRecord record)
+	{
+		StringBuilder line = new StringBuilder();
+		line.append(DATE_FORMAT.format(Instant.ofEpochMilli(record.getMillis())));
+		line.append(' ').append(record.getLevel().getName()).append(' ');
+		String loggerName = record.getLoggerName();
+		line.append((loggerName == null) ? "" : loggerName.substring(loggerName.lastIndexOf('.') + 1)).append(": ");
+		line.append(record.getMessage());
+		Object[] fields = record.getParameters();
+		if (fields != null)
+		{
+			for (int i = 0; i + 1 < fields.length; i += 2)
+			{
+				line.append(' ').append(fields[i]).append('=').append(formatValue(fields[i + 1]));
+			}
+		}
+		if (record.getThrown() != null)
+		{
+			line.append(" exception=").append(formatValue(record.getThrown().toString()));
+			line.append(System.lineSeparator());
+			StringWriter stackTrace = new StringWriter();
+			record.getThrown().printStackTrace(new PrintWriter(stackTrace));
+			line.append(stackTrace.toString().trim());
+		}
+		return line.append(System.lineSeparator()).toString();
+	}
+
+	private static String formatValue(Object value)
+	{
+		String text = String.valueOf(value);
+		if (text.isEmpty() || text.indexOf(' ') >= 0 || text.indexOf('"') >= 0 || text.indexOf('\n') >= 0)
+		{
+			return '"' + text.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n") + '"';
+		}
+		return text;
+	}
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2007 Sebastien Brunot (sbrunot@gmail.com)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *   
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sourceforge.buildmonitor.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free latency histogram with power of two buckets.
+ * Recording a sample never allocates: it only increments a few atomic counters,
+ * so it can be used on the polling hot path. Percentiles are approximated by the
+ * upper bound of the bucket they fall in.
+ * @author vegarwe
+ *
+ */
+public class LatencyHistogram
+{
+	/**
+	 * Bucket i counts the samples in [2^(i-1), 2^i[ nanoseconds (bucket 0 counts the 0 ns samples)
+	 */
+	private static final int NUMBER_OF_BUCKETS = 64;
+
+	private static final double NANOS_PER_MILLI = 1000000.0;
+
+	private final AtomicLongArray buckets = new AtomicLongArray(NUMBER_OF_BUCKETS);
+	private final AtomicLong totalInNanos = new AtomicLong();
+	private final AtomicLong maxInNanos = new AtomicLong();
+
+	/**
+	 * Record a sample
+	 * @param durationInNanos the duration of the sample, in nanoseconds
+	 */
+	public void record(long durationInNanos)
+	{
+		if (durationInNanos < 0)
+		{
+			durationInNanos = 0;
+		}
+		this.buckets.incrementAndGet(NUMBER_OF_BUCKETS - Long.numberOfLeadingZeros(durationInNanos));
+		this.totalInNanos.addAndGet(durationInNanos);
+		long currentMax = this.maxInNanos.get();
+		while (durationInNanos > currentMax && !this.maxInNanos.compareAndSet(currentMax, durationInNanos))
+		{
+			currentMax = this.maxInNanos.get();
+		}
+	}
+
+	/**
+	 * Get the number of recorded samples
+	 * @return the number of recorded samples
+	 */
+	public long getCount()
+	{
+		long count = 0;
+		for (int i = 0; i < NUMBER_OF_BUCKETS; i++)
+		{
+			count += this.buckets.get(i);
+		}
+		return count;
+	}
+
+	/**
+	 * Take a snapshot of the histogram (the snapshot is not atomic, samples recorded
+	 * while it is taken may or may not be part of it).
+	 * @return a snapshot of the histogram
+	 */
+	public LatencySnapshot getSnapshot()
+	{
+		long[] counts = new long[NUMBER_OF_BUCKETS];
+		long count = 0;
+		for (int i = 0; i < NUMBER_OF_BUCKETS; i++)
+		{
+			counts[i] = this.buckets.get(i);
+			count += counts[i];
+		}
+		long maxInNanos = this.maxInNanos.get();
+		double mean = (count == 0) ? 0 : this.totalInNanos.get() / (double) count / NANOS_PER_MILLI;
+		return new LatencySnapshot(count, mean,
+				percentileInMillis(counts, count, maxInNanos, 0.50),
+				percentileInMillis(counts, count, maxInNanos, 0.95),
+				percentileInMillis(counts, count, maxInNanos, 0.99),
+				maxInNanos / NANOS_PER_MILLI);
+	}
+
+	/**
+	 * Forget all the recorded samples
+	 */
+	public void reset()
+	{
+		for (int i = 0; i < NUMBER_OF_BUCKETS; i++)
+		{
+			this.buckets.set(i, 0);
+		}
+		this.totalInNanos.set(0);
+		this.maxInNanos.set(0);
+	}
+
+	private static double percentileInMillis(long[] counts, long count, long maxInNanos, double percentile)
+	{
+		if (count == 0)
+		{
+			return 0;
+		}
+		long rank = (long) Math.ceil(percentile * count);
+		long cumulatedCount = 0;
+		for (int i = 0; i < counts.length; i++)
+		{
+			cumulatedCount += counts[i];
+			if (cumulatedCount >= rank)
+			{
+				long bucketUpperBound = (i == 0) ? 0 : (i >= 63 ? Long.MAX_VALUE : (1L << i));
+				return Math.min(bucketUpperBound, maxInNanos) / NANOS_PER_MILLI;
+			}
+		}
+		return maxInNanos / NANOS_PER_MILLI;
+	}
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2007 Sebastien Brunot (sbrunot@gmail.com)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *   
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sourceforge.buildmonitor.metrics;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * An immutable snapshot of a {@link LatencyHistogram} (exposed as a CompositeData by the
+ * metrics MXBean).
+ * @author vegarwe
+ *
+ */
+public class LatencySnapshot
+{
+	private final long count;
+	private final double meanMillis;
+	private final double p50Millis;
+	private final double p95Millis;
+	private final double p99Millis;
+	private final double maxMillis;
+
+	@ConstructorProperties({"count", "meanMillis", "p50Millis", "p95Millis", "p99Millis", "maxMillis"})
+	public LatencySnapshot(long count, double meanMillis, double p50Millis, double p95Millis, double p99Millis, double maxMillis)
+	{
+		this.count = count;
+		this.meanMillis = meanMillis;
+		this.p50Millis = p50Millis;
+		this.p95Millis = p95Millis;
+		this.p99Millis = p99Millis;
+		this.maxMillis = maxMillis;
+	}
+
+	/**
+	 * Get the number of samples
+	 * @return the number of samples
+	 */
+	public long getCount()
+	{
+		return this.count;
+	}
+
+	/**
+	 * Get the mean of the samples, in milliseconds
+	 * @return the mean of the samples, in milliseconds
+	 */
+	public double getMeanMillis()
+	{
+		return this.meanMillis;
+	}
+
+	/**
+	 * Get the median of the samples, in milliseconds
+	 * @return the median of the samples, in milliseconds
+	 */
+	public double getP50Millis()
+	{
+		return this.p50Millis;
+	}
+
+	/**
+	 * Get the 95th percentile of the samples, in milliseconds
+	 * @return the 95th percentile of the samples, in milliseconds
+	 */
+	public double getP95Millis()
+	{
+		return this.p95Millis;
+	}
+
+	/**
+	 * Get the 99th percentile of the samples, in milliseconds
+	 * @return the 99th percentile of the samples, in milliseconds
+	 */
+	public double getP99Millis()
+	{
+		return this.p99Millis;
+	}
+
+	/**
+	 * Get the longest sample, in milliseconds
+	 * @return the longest sample, in milliseconds
+	 */
+	public double getMaxMillis()
+	{
+		return this.maxMillis;
+	}
+}
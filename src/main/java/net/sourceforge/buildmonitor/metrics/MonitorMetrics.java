@@ -0,0 +1,565 @@
+/*
+ * Copyright 2007 Sebastien Brunot (sbrunot@gmail.com)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *   
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sourceforge.buildmonitor.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.management.ObjectName;
+
+import net.sourceforge.buildmonitor.logging.MonitorLogging;
+
+/**
+ * Metrics of the polling pipeline (requests to the build server, parsing and GUI update).
+ * The recording methods are lock-free and never allocate, so that they can be called for
+ * every request. The single instance of the application is registered in the platform
+ * MBean server the first time it is used.
+ * @author vegarwe
+ *
+ */
+public class MonitorMetrics implements MonitorMetricsMXBean
+{
+	/**
+	 * Type of the errors counted by the metrics
+	 */
+	public enum ErrorType {UNKNOWN_HOST, CONNECT, NETWORK, AUTHENTICATION, NOT_FOUND, BAD_URL, SETUP_WIZARD, TIMEOUT, IO, PARSE, OTHER};
+
+	/**
+	 * Name of the MXBean in the platform MBean server
+	 */
+	public static final String OBJECT_NAME = "net.sourceforge.buildmonitor:type=MonitorMetrics";
+
+	private static final MonitorMetrics INSTANCE = new MonitorMetrics();
+
+	static
+	{
+		try
+		{
+			ManagementFactory.getPlatformMBeanServer().registerMBean(INSTANCE, new ObjectName(OBJECT_NAME));
+		}
+		catch (Exception e)
+		{
+			// Metrics are a diagnostic aid: they must never prevent the monitor from running
+			MonitorLogging.log(Logger.getLogger(MonitorMetrics.class.getName()), Level.WARNING, "Cannot register the metrics MBean", e, "name", OBJECT_NAME);
+		}
+	}
+
+	private final LatencyHistogram requestLatency = new LatencyHistogram();
+	private final LatencyHistogram http1RequestLatency = new LatencyHistogram();
+	private final LatencyHistogram http2RequestLatency = new LatencyHistogram();
+	private final LatencyHistogram serverResponseLatency = new LatencyHistogram();
+	private final LatencyHistogram bodyReadLatency = new LatencyHistogram();
+	private final LatencyHistogram parseLatency = new LatencyHistogram();
+	private final LatencyHistogram cycleDuration = new LatencyHistogram();
+	private final LatencyHistogram edtApplyLatency = new LatencyHistogram();
+	private final AtomicLong bytesRead = new AtomicLong();
+	private final AtomicLong compressedBytesRead = new AtomicLong();
+	private final AtomicLong decompressedBytesRead = new AtomicLong();
+	private final AtomicLong hedgedRequestCount = new AtomicLong();
+	private final AtomicLong exceededDeadlineCount = new AtomicLong();
+	private final AtomicLong stalePlanCount = new AtomicLong();
+	private final AtomicLong skippedPlanRequestCount = new AtomicLong();
+	private final AtomicLong unchangedPlanCount = new AtomicLong();
+	private final AtomicLong authenticationCount = new AtomicLong();
+	private final AtomicLong reauthenticationCount = new AtomicLong();
+	private final AtomicLong buildTransitionCount = new AtomicLong();
+	private final AtomicLong notificationCount = new AtomicLong();
+	private final AtomicLong cancelledTransitionCount = new AtomicLong();
+	private final AtomicLong circuitBreakerOpenCount = new AtomicLong();
+	private volatile String circuitBreakerState = "CLOSED";
+	private final AtomicLong healthProbeCount = new AtomicLong();
+	private volatile String serverHealth = "UNKNOWN";
+	private final AtomicLongArray errorCounts = new AtomicLongArray(ErrorType.values().length);
+	private volatile int menuItemCount = 0;
+
+	/**
+	 * Get the metrics of the application
+	 * @return the metrics of the application
+	 */
+	public static MonitorMetrics getInstance()
+	{
+		return INSTANCE;
+	}
+
+	MonitorMetrics()
+	{
+	}
+
+	//////////////////////////////
+	// Recording
+	//////////////////////////////
+
+	/**
+	 * Record the total duration of a request to the build server
+	 */
+	public void recordRequest(long durationInNanos)
+	{
+		this.requestLatency.record(durationInNanos);
+	}
+
+	/**
+	 * Record the total duration of a request answered by the build server, by protocol
+	 * @param durationInNanos the duration of the request
+	 * @param http2 true if the request has been answered with HTTP/2, false if it has been answered with HTTP/1.1
+	 */
+	public void recordRequest(long durationInNanos, boolean http2)
+	{
+		this.requestLatency.record(durationInNanos);
+		(http2 ? this.http2RequestLatency : this.http1RequestLatency).record(durationInNanos);
+	}
+
+	/**
+	 * Record the time waited for the server response headers
+	 */
+	public void recordServerResponse(long durationInNanos)
+	{
+		this.serverResponseLatency.record(durationInNanos);
+	}
+
+	/**
+	 * Record the reading of a response body
+	 */
+	public void recordBodyRead(long durationInNanos, long numberOfBytes)
+	{
+		this.bodyReadLatency.record(durationInNanos);
+		this.bytesRead.addAndGet(numberOfBytes);
+	}
+
+	/**
+	 * Record the size of a compressed response body
+	 */
+	public void recordCompressedBody(long compressedSize, long decompressedSize)
+	{
+		this.compressedBytesRead.addAndGet(compressedSize);
+		this.decompressedBytesRead.addAndGet(decompressedSize);
+	}
+
+	/**
+	 * Record a hedged request (a second request sent for a straggling one)
+	 */
+	public void recordHedgedRequest()
+	{
+		this.hedgedRequestCount.incrementAndGet();
+	}
+
+	/**
+	 * Record a poll cycle that did not get all the build results in time
+	 * @param numberOfStalePlans the number of plans that kept their last known results
+	 */
+	public void recordExceededDeadline(int numberOfStalePlans)
+	{
+		this.exceededDeadlineCount.incrementAndGet();
+		this.stalePlanCount.addAndGet(numberOfStalePlans);
+	}
+
+	/**
+	 * Record the plans that were not polled in a poll cycle because they were not due yet
+	 * @param numberOfSkippedPlans the number of plans that kept their last known results
+	 */
+	public void recordSkippedPlanRequests(int numberOfSkippedPlans)
+	{
+		this.skippedPlanRequestCount.addAndGet(numberOfSkippedPlans);
+	}
+
+	/**
+	 * Record a plan whose results were not fetched because it had no new build since the
+	 * last poll cycle
+	 */
+	public void recordUnchangedPlan()
+	{
+		this.unchangedPlanCount.incrementAndGet();
+	}
+
+	/**
+	 * Record a request authenticated with the credentials of the user (and not with a session)
+	 */
+	public void recordAuthentication()
+	{
+		this.authenticationCount.incrementAndGet();
+	}
+
+	/**
+	 * Record a session rejected by the server, that had to be renewed
+	 */
+	public void recordReauthentication()
+	{
+		this.reauthenticationCount.incrementAndGet();
+	}
+
+	/**
+	 * Record the build status transitions detected by a build status update
+	 */
+	public void recordBuildTransitions(int numberOfTransitions)
+	{
+		this.buildTransitionCount.addAndGet(numberOfTransitions);
+	}
+
+	/**
+	 * Record the end of a notification window
+	 * @param notified true if a notification has been displayed for the window
+	 * @param numberOfCancelledTransitions the number of transitions that cancelled out within the window
+	 */
+	public void recordNotificationWindow(boolean notified, int numberOfCancelledTransitions)
+	{
+		if (notified)
+		{
+			this.notificationCount.incrementAndGet();
+		}
+		this.cancelledTransitionCount.addAndGet(numberOfCancelledTransitions);
+	}
+
+	/**
+	 * Record the state of the circuit breaker of the requests, when it changes
+	 * @param state the new state of the circuit breaker
+	 */
+	public void recordCircuitBreakerState(String state)
+	{
+		if ("OPEN".equals(state))
+		{
+			this.circuitBreakerOpenCount.incrementAndGet();
+		}
+		this.circuitBreakerState = state;
+	}
+
+	/**
+	 * Record a probe of the health of the server
+	 * @param health the health of the server told by the probe
+	 */
+	public void recordHealthProbe(String health)
+	{
+		this.healthProbeCount.incrementAndGet();
+		this.serverHealth = health;
+	}
+
+	/**
+	 * Record the health of the server, when it is no longer known
+	 * @param health the health of the server
+	 */
+	public void recordServerHealth(String health)
+	{
+		this.serverHealth = health;
+	}
+
+	/**
+	 * Record the parsing of a server response
+	 */
+	public void recordParse(long durationInNanos)
+	{
+		this.parseLatency.record(durationInNanos);
+	}
+
+	/**
+	 * Record the duration of a complete polling cycle
+	 */
+	public void recordCycle(long durationInNanos)
+	{
+		this.cycleDuration.record(durationInNanos);
+	}
+
+	/**
+	 * Record the update of the tray icon menu on the event dispatch thread
+	 */
+	public void recordEdtApply(long durationInNanos, int numberOfMenuItems)
+	{
+		this.edtApplyLatency.record(durationInNanos);
+		this.menuItemCount = numberOfMenuItems;
+	}
+
+	/**
+	 * Count an error
+	 */
+	public void recordError(ErrorType type)
+	{
+		this.errorCounts.incrementAndGet(type.ordinal());
+	}
+
+	//////////////////////////////
+	// MonitorMetricsMXBean implementation
+	//////////////////////////////
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public LatencySnapshot getRequestLatency()
+	{
+		return this.requestLatency.getSnapshot();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public LatencySnapshot getHttp1RequestLatency()
+	{
+		return this.http1RequestLatency.getSnapshot();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public LatencySnapshot getHttp2RequestLatency()
+	{
+		return this.http2RequestLatency.getSnapshot();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public LatencySnapshot getServerResponseLatency()
+	{
+		return this.serverResponseLatency.getSnapshot();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public LatencySnapshot getBodyReadLatency()
+	{
+		return this.bodyReadLatency.getSnapshot();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public LatencySnapshot getParseLatency()
+	{
+		return this.parseLatency.getSnapshot();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public LatencySnapshot getCycleDuration()
+	{
+		return this.cycleDuration.getSnapshot();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public LatencySnapshot getEdtApplyLatency()
+	{
+		return this.edtApplyLatency.getSnapshot();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public long getBytesRead()
+	{
+		return this.bytesRead.get();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public long getCompressedBytesRead()
+	{
+		return this.compressedBytesRead.get();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public long getDecompressedBytesRead()
+	{
+		return this.decompressedBytesRead.get();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public long getHedgedRequestCount()
+	{
+		return this.hedgedRequestCount.get();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public long getExceededDeadlineCount()
+	{
+		return this.exceededDeadlineCount.get();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public long getStalePlanCount()
+	{
+		return this.stalePlanCount.get();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public long getSkippedPlanRequestCount()
+	{
+		return this.skippedPlanRequestCount.get();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public long getUnchangedPlanCount()
+	{
+		return this.unchangedPlanCount.get();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public long getAuthenticationCount()
+	{
+		return this.authenticationCount.get();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public long getReauthenticationCount()
+	{
+		return this.reauthenticationCount.get();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public long getBuildTransitionCount()
+	{
+		return this.buildTransitionCount.get();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public long getNotificationCount()
+	{
+		return this.notificationCount.get();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public long getCancelledTransitionCount()
+	{
+		return this.cancelledTransitionCount.get();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public String getCircuitBreakerState()
+	{
+		return this.circuitBreakerState;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public long getCircuitBreakerOpenCount()
+	{
+		return this.circuitBreakerOpenCount.get();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public String getServerHealth()
+	{
+		return this.serverHealth;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public long getHealthProbeCount()
+	{
+		return this.healthProbeCount.get();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public Map<String, Long> getErrorCountsByType()
+	{
+		Map<String, Long> returnedValue = new LinkedHashMap<String, Long>();
+		for (ErrorType type : ErrorType.values())
+		{
+			returnedValue.put(type.name(), this.errorCounts.get(type.ordinal()));
+		}
+		return returnedValue;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public long getErrorCount()
+	{
+		long returnedValue = 0;
+		for (int i = 0; i < this.errorCounts.length(); i++)
+		{
+			returnedValue += this.errorCounts.get(i);
+		}
+		return returnedValue;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public int getMenuItemCount()
+	{
+		return this.menuItemCount;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public void reset()
+	{
+		this.requestLatency.reset();
+		this.http1RequestLatency.reset();
+		this.http2RequestLatency.reset();
+		this.serverResponseLatency.reset();
+		this.bodyReadLatency.reset();
+		this.parseLatency.reset();
+		this.cycleDuration.reset();
+		this.edtApplyLatency.reset();
+		this.bytesRead.set(0);
+		this.compressedBytesRead.set(0);
+		this.decompressedBytesRead.set(0);
+		this.hedgedRequestCount.set(0);
+		this.exceededDeadlineCount.set(0);
+		this.stalePlanCount.set(0);
+		this.skippedPlanRequestCount.set(0);
+		this.unchangedPlanCount.set(0);
+		this.authenticationCount.set(0);
+		this.reauthenticationCount.set(0);
+		this.buildTransitionCount.set(0);
+		this.notificationCount.set(0);
+		this.cancelledTransitionCount.set(0);
+		this.circuitBreakerOpenCount.set(0);
+		this.healthProbeCount.set(0);
+		for (int i = 0; i < this.errorCounts.length(); i++)
+		{
+			this.errorCounts.set(i, 0);
+		}
+	}
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright 2007 Sebastien Brunot (sbrunot@gmail.com)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *   
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sourceforge.buildmonitor.metrics;
+
+import java.util.Map;
+
+/**
+ * Management interface of the build monitor metrics, registered in the platform MBean
+ * server under {@link MonitorMetrics#OBJECT_NAME}.
+ * All latencies are in milliseconds.
+ * @author vegarwe
+ *
+ */
+public interface MonitorMetricsMXBean
+{
+	/**
+	 * Total duration of the requests sent to the build server (connection, response and body).
+	 */
+	public LatencySnapshot getRequestLatency();
+
+	/**
+	 * Total duration of the requests answered with HTTP/1.1.
+	 */
+	public LatencySnapshot getHttp1RequestLatency();
+
+	/**
+	 * Total duration of the requests answered with HTTP/2 (to compare with HTTP/1.1).
+	 */
+	public LatencySnapshot getHttp2RequestLatency();
+
+	/**
+	 * Time waited for the server response headers (including the connection to the server:
+	 * the HTTP client does not report it apart).
+	 */
+	public LatencySnapshot getServerResponseLatency();
+
+	/**
+	 * Time spent receiving the response bodies into memory (they are parsed once they are
+	 * received, see the parse latency).
+	 */
+	public LatencySnapshot getBodyReadLatency();
+
+	/**
+	 * Time spent extracting the plans and results from the parsed server responses.
+	 */
+	public LatencySnapshot getParseLatency();
+
+	/**
+	 * Duration of the complete polling cycles.
+	 */
+	public LatencySnapshot getCycleDuration();
+
+	/**
+	 * Time spent on the event dispatch thread applying a new build status to the tray icon.
+	 */
+	public LatencySnapshot getEdtApplyLatency();
+
+	/**
+	 * Number of bytes read from the build server.
+	 */
+	public long getBytesRead();
+
+	/**
+	 * Number of bytes read from the build server for the compressed responses.
+	 */
+	public long getCompressedBytesRead();
+
+	/**
+	 * Size of the compressed responses once decompressed.
+	 */
+	public long getDecompressedBytesRead();
+
+	/**
+	 * Number of hedged requests (second requests sent for straggling ones).
+	 */
+	public long getHedgedRequestCount();
+
+	/**
+	 * Number of poll cycles that did not get all the build results before their deadline.
+	 */
+	public long getExceededDeadlineCount();
+
+	/**
+	 * Number of times a plan kept its last known results because they could not be updated in time.
+	 */
+	public long getStalePlanCount();
+
+	/**
+	 * Number of requests for plan results saved because the plans were not due yet (the plans
+	 * that do not change are polled less often).
+	 */
+	public long getSkippedPlanRequestCount();
+
+	/**
+	 * Number of requests for plan results saved because the plans had no new build (the
+	 * latest result of each plan is listed first, and only the plans that advanced are fetched).
+	 */
+	public long getUnchangedPlanCount();
+
+	/**
+	 * Number of requests authenticated with the credentials of the user (and not with a session).
+	 */
+	public long getAuthenticationCount();
+
+	/**
+	 * Number of times the session was rejected by the server and had to be renewed.
+	 */
+	public long getReauthenticationCount();
+
+	/**
+	 * Number of build status transitions (a build going from one status to another between
+	 * two updates).
+	 */
+	public long getBuildTransitionCount();
+
+	/**
+	 * Number of build situation notifications displayed (at most one per quiet window).
+	 */
+	public long getNotificationCount();
+
+	/**
+	 * Number of build status transitions that were not notified because they cancelled out
+	 * within their quiet window (a build failing and fixed again, for instance).
+	 */
+	public long getCancelledTransitionCount();
+
+	/**
+	 * State of the circuit breaker of the requests: CLOSED (requests sent as usual), OPEN
+	 * (only a probe request per poll cycle) or HALF_OPEN (trial poll cycle).
+	 */
+	public String getCircuitBreakerState();
+
+	/**
+	 * Number of times the circuit breaker of the requests has opened.
+	 */
+	public long getCircuitBreakerOpenCount();
+
+	/**
+	 * Health of the server, as told by the last probe of its server info: UNKNOWN (not probed
+	 * since the last failed poll cycle), HEALTHY, UNREACHABLE, AUTHENTICATION_FAILED,
+	 * SETUP_WIZARD (setup not finished) or FAILING.
+	 */
+	public String getServerHealth();
+
+	/**
+	 * Number of probes of the server info sent before the poll cycles.
+	 */
+	public long getHealthProbeCount();
+
+	/**
+	 * Number of errors, by type of error.
+	 */
+	public Map<String, Long> getErrorCountsByType();
+
+	/**
+	 * Total number of errors.
+	 */
+	public long getErrorCount();
+
+	/**
+	 * Number of build result menu items currently displayed in the tray icon menu.
+	 */
+	public int getMenuItemCount();
+
+	/**
+	 * Forget all the recorded values.
+	 */
+	public void reset();
+}
@@ -0,0 +1,426 @@
+/*
+ * Copyright 2007 Sebastien Brunot (sbrunot@gmail.com)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *   
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sourceforge.buildmonitor.monitors;
+
+import java.io.File;
+import java.net.URI;
+import java.net.URISyntaxException;
+
+import org.apache.commons.codec.binary.Base64;
+
+/**
+ * An immutable snapshot of the properties of a Bamboo monitor, with the values derived
+ * from them (URLs, Authorization header, filter of the plans) computed once.
+ * The monitor publishes a new snapshot each time its properties change: the snapshot can
+ * then be read from any thread without locking, and a poll cycle uses a single snapshot
+ * from its beginning to its end.
+ * @author vegarwe
+ *
+ */
+final class BambooConfig
+{
+	/**
+	 * Maximum number of running builds asked for in the list of the running builds
+	 */
+	private static final int MAX_RUNNING_BUILDS = 1000;
+
+	private final long version;
+	private final String serverBaseUrl;
+	private final URI mainPageURI;
+	private final String favouriteParameter;
+	private final String authorization;
+	private final int updatePeriodInSeconds;
+	private final boolean favouriteProjectsOnly;
+	private final PlanKeyFilter planKeyFilter;
+	private final String planKeyFilterProblem;
+	private final int connectTimeoutInMillis;
+	private final int readTimeoutInMillis;
+	private final int cycleDeadlineInSeconds;
+	private final boolean hedgedRequests;
+	private final int maxConcurrentRequests;
+	private final boolean virtualThreads;
+	private final boolean http2;
+	private final int notificationQuietWindowInSeconds;
+	private final int runningBuildsPollPeriodInSeconds;
+	private final int maxPlanPollPeriodInSeconds;
+	private final int maxPlanRequestsPerCycle;
+	private final boolean circuitBreaker;
+	private final boolean changeProbe;
+	private final File trafficRecordFile;
+	private final File trafficReplayFile;
+	private final int trafficReplaySpeed;
+
+	/**
+	 * Take a snapshot of properties
+	 * @param properties the properties
+	 * @param version the version of the snapshot
+	 */
+	BambooConfig(BambooProperties properties, long version)
+	{
+		this.version = version;
+		String username = null;
+		String password = null;
+		String projectKeys = null;
+		String excludedProjectKeys = null;
+		// The properties are updated under their lock
+		synchronized (properties)
+		{
+			this.serverBaseUrl = properties.getServerBaseUrl();
+			username = properties.getUsername();
+			password = properties.getPassword();
+			this.updatePeriodInSeconds = properties.getUpdatePeriodInSeconds();
+			this.favouriteProjectsOnly = properties.getFavouriteProjectsOnly();
+			projectKeys = properties.getProjectKeys();
+			excludedProjectKeys = properties.getExcludedProjectKeys();
+			this.connectTimeoutInMillis = properties.getConnectTimeoutInSeconds() * 1000;
+			this.readTimeoutInMillis = properties.getReadTimeoutInSeconds() * 1000;
+			this.cycleDeadlineInSeconds = properties.getCycleDeadlineInSeconds();
+			this.hedgedRequests = properties.getHedgedRequests();
+			this.maxConcurrentRequests = properties.getMaxConcurrentRequests();
+			this.virtualThreads = properties.getVirtualThreads();
+			this.http2 = properties.getHttp2();
+			this.notificationQuietWindowInSeconds = properties.getNotificationQuietWindowInSeconds();
+			this.runningBuildsPollPeriodInSeconds = properties.getRunningBuildsPollPeriodInSeconds();
+			this.maxPlanPollPeriodInSeconds = properties.getMaxPlanPollPeriodInSeconds();
+			this.maxPlanRequestsPerCycle = properties.getMaxPlanRequestsPerCycle();
+			this.circuitBreaker = properties.getCircuitBreaker();
+			this.changeProbe = properties.getChangeProbe();
+			this.trafficRecordFile = toFile(properties.getTrafficRecordFile());
+			this.trafficReplayFile = toFile(properties.getTrafficReplayFile());
+			this.trafficReplaySpeed = properties.getTrafficReplaySpeed();
+		}
+
+		URI uri = null;
+		try
+		{
+			uri = (this.serverBaseUrl == null) ? null : new URI(this.serverBaseUrl);
+		}
+		catch (URISyntaxException e)
+		{
+			// The base URL is reported as invalid by the requests
+		}
+		this.mainPageURI = uri;
+		this.favouriteParameter = this.favouriteProjectsOnly ? "&favourite" : "";
+		String credentials = username + ":" + password;
+		this.authorization = "Basic " + new String(Base64.encodeBase64(credentials.getBytes()));
+
+		PlanKeyFilter filter = null;
+		String filterProblem = null;
+		try
+		{
+			filter = PlanKeyFilter.compile(projectKeys, excludedProjectKeys);
+		}
+		catch (IllegalArgumentException e)
+		{
+			filterProblem = e.getMessage();
+		}
+		this.planKeyFilter = filter;
+		this.planKeyFilterProblem = filterProblem;
+	}
+
+	/**
+	 * Get the version of the snapshot (the snapshots published by a monitor have increasing versions)
+	 */
+	long getVersion()
+	{
+		return this.version;
+	}
+
+	/**
+	 * Get the base URL of the Bamboo server (without trailing /)
+	 */
+	String getServerBaseUrl()
+	{
+		return this.serverBaseUrl;
+	}
+
+	/**
+	 * Get the URI of the home page of the Bamboo server
+	 * @return the URI, or null if the base URL is not a valid URI
+	 */
+	URI getMainPageURI()
+	{
+		return this.mainPageURI;
+	}
+
+	/**
+	 * Get the URL of a page of the list of plans
+	 * @param startIndex the index of the first plan of the page
+	 * @param maxResults the maximum number of plans in the page
+	 */
+	String getPlanListUrl(int startIndex, int maxResults)
+	{
+		return this.serverBaseUrl + "/rest/api/latest/plan?start-index=" + startIndex + "&max-results=" + maxResults + this.favouriteParameter;
+	}
+
+	/**
+	 * Get the URL of a page of the plans of a project
+	 * @param projectKey the key of the project
+	 * @param startIndex the index of the first plan of the page
+	 * @param maxResults the maximum number of plans in the page
+	 */
+	String getProjectPlanListUrl(String projectKey, int startIndex, int maxResults)
+	{
+		return this.serverBaseUrl + "/rest/api/latest/project/" + projectKey + "?expand=plans&start-index=" + startIndex + "&max-results=" + maxResults;
+	}
+
+	/**
+	 * Get the URL of the results of a plan (with the details of its last result)
+	 * @param planKey the key of the plan
+	 */
+	String getPlanResultsUrl(String planKey)
+	{
+		return this.serverBaseUrl + "/rest/api/latest/result/" + planKey + "?expand=results[0].result" + this.favouriteParameter;
+	}
+
+	/**
+	 * Get the URL of a build result with its stages, jobs and failed tests
+	 * @param buildResultKey the key of the build result
+	 */
+	String getFailureDetailsUrl(String buildResultKey)
+	{
+		return this.serverBaseUrl + "/rest/api/latest/result/" + buildResultKey + "?expand=stages.stage.results.result.testResults.failedTests.testResult";
+	}
+
+	/**
+	 * Get the URL of the log of a job result
+	 * @param jobResultKey the key of the job result ("PROJ-PLAN-JOB1-42")
+	 */
+	String getJobLogUrl(String jobResultKey)
+	{
+		return this.serverBaseUrl + "/download/" + BambooResponseParser.getPlanKey(jobResultKey) + "/build_logs/" + jobResultKey + ".log";
+	}
+
+	/**
+	 * Get the URL of the information about the server (version and state), that the server
+	 * is probed with before the poll cycles
+	 */
+	String getServerInfoUrl()
+	{
+		return this.serverBaseUrl + "/rest/api/latest/info";
+	}
+
+	/**
+	 * Get the URL of a page of the list of the latest result of each plan
+	 * @param startIndex index of the first plan of the page
+	 * @param maxResults maximum number of plans in the page
+	 */
+	String getLatestResultsUrl(int startIndex, int maxResults)
+	{
+		return this.serverBaseUrl + "/rest/api/latest/result?start-index=" + startIndex + "&max-results=" + maxResults + this.favouriteParameter;
+	}
+
+	/**
+	 * Get the URL of the queue of the builds waiting for an agent
+	 */
+	String getQueueUrl()
+	{
+		return this.serverBaseUrl + "/rest/api/latest/queue";
+	}
+
+	/**
+	 * Get the URL of the list of the running builds of all the plans
+	 */
+	String getRunningBuildsUrl()
+	{
+		return this.serverBaseUrl + "/rest/api/latest/result?includeAllStates=true&lifeCycleState=InProgress&max-results=" + MAX_RUNNING_BUILDS;
+	}
+
+	/**
+	 * Get the value of the Authorization header of the requests authenticated with Basic authentication
+	 */
+	String getAuthorization()
+	{
+		return this.authorization;
+	}
+
+	/**
+	 * Get the period (in seconds) of build status update
+	 */
+	int getUpdatePeriodInSeconds()
+	{
+		return this.updatePeriodInSeconds;
+	}
+
+	/**
+	 * Are only the favourite plans of the user monitored ?
+	 */
+	boolean isFavouriteProjectsOnly()
+	{
+		return this.favouriteProjectsOnly;
+	}
+
+	/**
+	 * Get the filter of the plans
+	 * @return the filter, or null if the plan keys are not valid (see {@link #getPlanKeyFilterProblem()})
+	 */
+	PlanKeyFilter getPlanKeyFilter()
+	{
+		return this.planKeyFilter;
+	}
+
+	/**
+	 * Get the reason why the plan keys are not valid (null if they are)
+	 */
+	String getPlanKeyFilterProblem()
+	{
+		return this.planKeyFilterProblem;
+	}
+
+	/**
+	 * Get the connect timeout of the requests, in milliseconds
+	 */
+	int getConnectTimeoutInMillis()
+	{
+		return this.connectTimeoutInMillis;
+	}
+
+	/**
+	 * Get the read timeout of the requests, in milliseconds: the time to wait for the headers of a response
+	 */
+	int getReadTimeoutInMillis()
+	{
+		return this.readTimeoutInMillis;
+	}
+
+	/**
+	 * Get the deadline of a poll cycle, in seconds
+	 */
+	int getCycleDeadlineInSeconds()
+	{
+		return this.cycleDeadlineInSeconds;
+	}
+
+	/**
+	 * Are the straggling requests hedged ?
+	 */
+	boolean isHedgedRequests()
+	{
+		return this.hedgedRequests;
+	}
+
+	/**
+	 * Get the maximum number of requests sent to the server at the same time
+	 */
+	int getMaxConcurrentRequests()
+	{
+		return this.maxConcurrentRequests;
+	}
+
+	/**
+	 * Does the HTTP client handle the responses in virtual threads (if the JVM supports them) ?
+	 */
+	boolean isVirtualThreads()
+	{
+		return this.virtualThreads;
+	}
+
+	/**
+	 * Are the requests sent with HTTP/2 when the server supports it ?
+	 */
+	boolean isHttp2()
+	{
+		return this.http2;
+	}
+
+	/**
+	 * Get the quiet window of the notifications, in seconds
+	 */
+	int getNotificationQuietWindowInSeconds()
+	{
+		return this.notificationQuietWindowInSeconds;
+	}
+
+	/**
+	 * Get the poll period of the plans that have a build in progress, in seconds
+	 */
+	int getRunningBuildsPollPeriodInSeconds()
+	{
+		return this.runningBuildsPollPeriodInSeconds;
+	}
+
+	/**
+	 * Get the maximum poll period of a plan, in seconds
+	 */
+	int getMaxPlanPollPeriodInSeconds()
+	{
+		return this.maxPlanPollPeriodInSeconds;
+	}
+
+	/**
+	 * Are the plans polled at their own pace ? (otherwise all the plans are polled at each update).
+	 * The plans only back off when the change probe is on: it is what tells that a plan that is
+	 * not due has a new build.
+	 */
+	boolean isAdaptiveScheduling()
+	{
+		return this.changeProbe && this.maxPlanPollPeriodInSeconds > this.updatePeriodInSeconds;
+	}
+
+	/**
+	 * Get the maximum number of requests for plan results in an update (0 for no maximum)
+	 */
+	int getMaxPlanRequestsPerCycle()
+	{
+		return this.maxPlanRequestsPerCycle;
+	}
+
+	/**
+	 * Are the requests guarded by a circuit breaker ?
+	 */
+	boolean isCircuitBreaker()
+	{
+		return this.circuitBreaker;
+	}
+
+	/**
+	 * Are the results of a plan only fetched when the plan has a new build ?
+	 */
+	boolean isChangeProbe()
+	{
+		return this.changeProbe;
+	}
+
+	/**
+	 * Get the file the requests and their responses are recorded to (null if they are not recorded)
+	 */
+	File getTrafficRecordFile()
+	{
+		return this.trafficRecordFile;
+	}
+
+	/**
+	 * Get the file of recorded requests replayed instead of sending the requests to the
+	 * server (null if the requests are sent to the server)
+	 */
+	File getTrafficReplayFile()
+	{
+		return this.trafficReplayFile;
+	}
+
+	/**
+	 * Get the speed of the replay (1 for the recorded latencies, 0 to answer without delay)
+	 */
+	int getTrafficReplaySpeed()
+	{
+		return this.trafficReplaySpeed;
+	}
+
+	private static File toFile(String path)
+	{
+		return (path == null || path.isEmpty()) ? null : new File(path);
+	}
+}
@@ -15,41 +15,57 @@
  */
 package net.sourceforge.buildmonitor.monitors;
 
-import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.StringReader;
 import java.net.ConnectException;
-import java.net.HttpURLConnection;
-import java.net.SocketException;
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.net.URL;
-import java.net.URLEncoder;
 import java.net.UnknownHostException;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.channels.UnresolvedAddressException;
 import java.util.ArrayList;
-import java.util.Date;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
-import javax.xml.xpath.XPath;
 import javax.xml.xpath.XPathExpressionException;
-import javax.xml.xpath.XPathFactory;
-import javax.xml.xpath.XPathConstants;
 
-import org.w3c.dom.NodeList;
-import org.w3c.dom.Node;
-import org.w3c.dom.Element;
-import org.xml.sax.InputSource;
-import org.apache.commons.codec.binary.Base64;
+import org.w3c.dom.Document;
+import org.xml.sax.SAXException;
 
 import net.sourceforge.buildmonitor.BuildMonitor;
 import net.sourceforge.buildmonitor.BuildReport;
+import net.sourceforge.buildmonitor.FailureDetails;
+import net.sourceforge.buildmonitor.LogTail;
 import net.sourceforge.buildmonitor.MonitoringException;
-import net.sourceforge.buildmonitor.BuildReport.Status;
 import net.sourceforge.buildmonitor.dialogs.BambooPropertiesDialog;
+import net.sourceforge.buildmonitor.logging.MonitorLogging;
+import net.sourceforge.buildmonitor.metrics.LatencyHistogram;
+import net.sourceforge.buildmonitor.metrics.LatencySnapshot;
+import net.sourceforge.buildmonitor.metrics.MonitorMetrics;
+import net.sourceforge.buildmonitor.metrics.MonitorMetrics.ErrorType;
+import net.sourceforge.buildmonitor.monitors.BambooTransport.Request;
+import net.sourceforge.buildmonitor.utils.CountingInputStream;
+import net.sourceforge.buildmonitor.utils.HttpContentEncoding;
+import net.sourceforge.buildmonitor.utils.LogTailBuffer;
+
 
 
 /**
@@ -60,82 +76,1496 @@ import net.sourceforge.buildmonitor.dialogs.BambooPropertiesDialog;
  */
 public class BambooMonitor implements Monitor
 {
-	private class BuildPlan
+	/**
+	 * A poll cycle: the requests sent in the cycle, and what they have fetched so far
+	 */
+	private class Cycle
+	{
+		final long id = cycleCounter.incrementAndGet();
+		final BambooConfig config;
+		final PlanKeyFilter filter;
+		final BambooTransport transport;
+		final long hedgingDelay;
+		final Set<String> duePlanKeys;
+		final PlanScheduler scheduler;
+		final CircuitBreaker circuitBreaker;
+		final AtomicInteger numberOfHedgedRequestsLeft = new AtomicInteger();
+		final AtomicInteger numberOfMissingPages = new AtomicInteger();
+		final Set<String> planKeys = ConcurrentHashMap.newKeySet();
+		final List<BuildPlan> plans = Collections.synchronizedList(new ArrayList<BuildPlan>());
+		final Map<String, List<BuildReport>> results = new ConcurrentHashMap<String, List<BuildReport>>();
+		final Map<String, BuildReport> buildsInProgress = new ConcurrentHashMap<String, BuildReport>();
+		volatile boolean buildsInProgressFetched = false;
+		// With the change probe, the last known results of the plans and the key of their latest result on the server
+		Map<String, List<BuildReport>> cachedResults = null;
+		CompletableFuture<Map<String, String>> latestResultKeys = null;
+		final CompletableFuture<Void> done = new CompletableFuture<Void>();
+		private final List<Request> requests = new ArrayList<Request>();
+		private boolean cancelled = false;
+
+		Cycle(BambooConfig config, PlanKeyFilter filter, PlanScheduler scheduler, Set<String> duePlanKeys, CircuitBreaker circuitBreaker)
+		{
+			this.config = config;
+			this.filter = filter;
+			this.transport = getTransport(config);
+			this.hedgingDelay = getHedgingDelayInNanos(config);
+			this.scheduler = scheduler;
+			this.duePlanKeys = duePlanKeys;
+			this.circuitBreaker = circuitBreaker;
+		}
+
+		/**
+		 * Are the results of a plan to be fetched in this cycle ? (without schedule, the
+		 * results of all the plans are fetched)
+		 */
+		boolean isDue(String planKey)
+		{
+			return this.scheduler == null || this.duePlanKeys.contains(planKey) || !this.scheduler.contains(planKey);
+		}
+
+		/**
+		 * Create a new request of the cycle (it is cancelled at once if the cycle is over)
+		 */
+		Request newRequest()
+		{
+			Request request = new Request();
+			synchronized (this.requests)
+			{
+				this.requests.add(request);
+				if (!this.cancelled)
+				{
+					return request;
+				}
+			}
+			request.cancel();
+			return request;
+		}
+
+		/**
+		 * Settle a branch of the cycle: a branch that times out is left out of the cycle,
+		 * any other failure ends the cycle at once
+		 * @return a future completed when the branch is settled
+		 */
+		CompletableFuture<Void> settle(CompletableFuture<?> branch)
+		{
+			return branch.handle((value, failure) -> {
+				if (failure != null && !hasTimedOut(failure))
+				{
+					Throwable cause = unwrap(failure);
+					this.done.completeExceptionally(cause instanceof MonitoringException ? cause : new MonitoringException(cause, null));
+				}
+				return null;
+			});
+		}
+
+		/**
+		 * Get a copy of the plans listed so far
+		 */
+		List<BuildPlan> getPlans()
+		{
+			synchronized (this.plans)
+			{
+				return new ArrayList<BuildPlan>(this.plans);
+			}
+		}
+
+		/**
+		 * Cancel the requests still in progress. A single call stops the whole cycle.
+		 */
+		void cancel()
+		{
+			this.done.cancel(false);
+			List<Request> requestsToCancel = null;
+			synchronized (this.requests)
+			{
+				this.cancelled = true;
+				requestsToCancel = new ArrayList<Request>(this.requests);
+			}
+			for (Request request : requestsToCancel)
+			{
+				request.cancel();
+			}
+		}
+	}
+
+	/**
+	 * The end of the log of the first failed job of a build. The log is fetched with range
+	 * requests: the first update fetches its last bytes, the next ones the bytes appended since
+	 * (an update that is far behind the end of the log jumps to its last bytes).
+	 */
+	private class JobLogTail implements LogTail
+	{
+		private final String idOfTheBuild;
+		private final LogTailBuffer buffer = new LogTailBuffer(LOG_TAIL_LINES);
+		private String jobResultKey = null;
+		// Offset of the next byte of the log to fetch (-1 to fetch the last bytes of the log)
+		private long offset = -1;
+		private CompletableFuture<List<String>> lastUpdate = CompletableFuture.completedFuture(null);
+
+		JobLogTail(String idOfTheBuild)
+		{
+			this.idOfTheBuild = idOfTheBuild;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		public synchronized CompletableFuture<List<String>> update()
+		{
+			// The updates are chained, so that the bytes of the log are appended in order
+			this.lastUpdate = this.lastUpdate.handle((lines, failure) -> null).thenCompose(nothing -> getJobResultKey()).thenCompose(key -> fetch(key, MAX_LOG_TAIL_REQUESTS_PER_UPDATE));
+			return this.lastUpdate;
+		}
+
+		private CompletableFuture<String> getJobResultKey()
+		{
+			if (this.jobResultKey != null)
+			{
+				return CompletableFuture.completedFuture(this.jobResultKey);
+			}
+			return getFailureDetails(this.idOfTheBuild).thenApply(details -> {
+				if (details.getFailedJobKeys().isEmpty())
+				{
+					throw new CompletionException(new MonitoringException("Build " + this.idOfTheBuild + " has no failed job to show the log of.", null));
+				}
+				this.jobResultKey = details.getFailedJobKeys().get(0);
+				return this.jobResultKey;
+			});
+		}
+
+		/**
+		 * Fetch the next bytes of the log
+		 * @param requestsLeft the number of requests the update can still send
+		 */
+		private CompletableFuture<List<String>> fetch(String key, int requestsLeft)
+		{
+			BambooConfig config = BambooMonitor.this.config.get();
+			String range = (this.offset < 0) ? "bytes=-" + LOG_TAIL_BYTES : "bytes=" + this.offset + "-" + (this.offset + LOG_TAIL_BYTES - 1);
+			Cycle cycle = new Cycle(config, null, null, null, getCircuitBreaker(config));
+			return fetchRange(cycle, config.getJobLogUrl(key), range, cycle.newRequest()).thenCompose(response -> {
+				try
+				{
+					if (append(key, response) && requestsLeft > 1)
+					{
+						return fetch(key, requestsLeft - 1);
+					}
+					return CompletableFuture.completedFuture(this.buffer.getLines());
+				}
+				catch (MonitoringException e)
+				{
+					throw new CompletionException(e);
+				}
+			});
+		}
+
+		/**
+		 * Append the bytes of a response to the tail
+		 * @return true if the log goes on past the bytes appended
+		 */
+		private boolean append(String key, HttpResponse<byte[]> response) throws MonitoringException
+		{
+			if (response.statusCode() == 200)
+			{
+				// The body has not been read (see BambooTransport.sendRange())
+				throw new MonitoringException("Problem: the Bamboo server does not send parts of the build logs, and the log of " + key + " is not downloaded in full.", null);
+			}
+			long[] contentRange = BambooResponseParser.parseContentRange(response.headers().firstValue("Content-Range").orElse(null));
+			if (response.statusCode() == 416)
+			{
+				if (contentRange[2] >= 0 && contentRange[2] < this.offset)
+				{
+					// The log has been started again: its last bytes are fetched on the next update
+					this.buffer.clear();
+					this.offset = -1;
+				}
+				return false;
+			}
+			if (contentRange[0] != this.offset)
+			{
+				// The first bytes of the tail, or after a jump to the end of the log
+				this.buffer.clear();
+				if (contentRange[0] > 0)
+				{
+					this.buffer.skipToNextLine();
+				}
+			}
+			this.buffer.append(response.body(), 0, response.body().length);
+			this.offset = contentRange[1] + 1;
+			if (contentRange[2] - this.offset > LOG_TAIL_BYTES)
+			{
+				// The lines in between are not shown anyway
+				this.offset = -1;
+			}
+			return contentRange[2] < 0 || contentRange[2] > this.offset;
+		}
+	}
+
+	private static final Logger LOGGER = Logger.getLogger(BambooMonitor.class.getName());
+	private static final String URL_ENCODING = "UTF-8";
+	private static final String OVERLOADED_SERVER_MESSAGE = "Problem: the Bamboo server is overloaded (too many failed or slow requests). It is only probed until it recovers.";
+
+	/**
+	 * Number of plans asked for in each page of the list of plans (the server may send less)
+	 */
+	private static final int PLAN_PAGE_SIZE = 100;
+
+	/**
+	 * The straggling requests are hedged after the 95th percentile of the request latency,
+	 * once it is known well enough, and never before this delay
+	 */
+	private static final long MINIMUM_HEDGING_DELAY_IN_MILLIS = 100;
+	private static final int MINIMUM_NUMBER_OF_REQUESTS_BEFORE_HEDGING = 20;
+
+	/**
+	 * Maximum number of hedged requests in a cycle, as a fraction of the number of plans
+	 */
+	private static final double HEDGED_REQUESTS_RATIO = 0.05;
+	/**
+	 * Number of failed builds whose details are cached (the least recently used are evicted first)
+	 */
+	static final int FAILURE_DETAILS_CACHE_SIZE = 50;
+	/**
+	 * Number of failed tests named in the details of a failed build
+	 */
+	static final int MAX_FAILED_TESTS_IN_DETAILS = 5;
+	/**
+	 * Number of lines of the end of a log
+	 */
+	static final int LOG_TAIL_LINES = 200;
+	/**
+	 * Maximum number of bytes of a log fetched by a request (enough for the lines of the end
+	 * of a log, unless they are very long)
+	 */
+	static final int LOG_TAIL_BYTES = 64 * 1024;
+	/**
+	 * Maximum number of requests of an update of the end of a log (the update of a tail that
+	 * is far behind the log jumps to the end of the log)
+	 */
+	private static final int MAX_LOG_TAIL_REQUESTS_PER_UPDATE = 2;
+
+
+	private BuildMonitor buildMonitorInstance = null;
+	private boolean stop = false;
+	private volatile BambooProperties bambooProperties = new BambooProperties();
+	private BambooPropertiesWatcher propertiesWatcher = null;
+	private BambooPropertiesDialog optionsDialog = null;
+	private MonitorMetrics metrics = MonitorMetrics.getInstance();
+	private BambooTransport transport = null;
+	private PlanScheduler scheduler = null;
+	private CircuitBreaker circuitBreaker = null;
+	private ServerHealth serverHealth = null;
+	private final LatencyHistogram planRequestLatency = new LatencyHistogram();
+	/**
+	 * The details of the failed builds, by build key, in access order (a failed fetch is not kept,
+	 * so that it is tried again the next time the details are asked for)
+	 */
+	private final Map<String, CompletableFuture<FailureDetails>> failureDetails = new LinkedHashMap<String, CompletableFuture<FailureDetails>>(16, 0.75f, true)
+	{
+		private static final long serialVersionUID = 1L;
+
+		protected boolean removeEldestEntry(Map.Entry<String, CompletableFuture<FailureDetails>> eldest)
+		{
+			return size() > FAILURE_DETAILS_CACHE_SIZE;
+		}
+	};
+	private String failureDetailsServerBaseUrl = null;
+	private Map<String, List<BuildReport>> lastKnownResults = new HashMap<String, List<BuildReport>>();
+
+	/**
+	 * The last known builds in progress (running or queued) of the monitored plans, by plan key
+	 */
+	private Map<String, BuildReport> buildsInProgress = new HashMap<String, BuildReport>();
+	private final AtomicReference<BambooConfig> config = new AtomicReference<BambooConfig>();
+
+	/**
+	 * Lock of the refreshes: the monitor thread waits on it between two poll cycles
+	 */
+	private final Object refreshLock = new Object();
+	private boolean refreshPending = false;
+	private boolean sleeping = false;
+	private final AtomicLong configVersion = new AtomicLong();
+	/**
+	 * Number of the last cycle (the cycles are numbered in the log)
+	 */
+	private final AtomicLong cycleCounter = new AtomicLong();
+	
+	public BambooMonitor(BuildMonitor buildMonitorInstance) throws FileNotFoundException, IOException
+	{
+		this.buildMonitorInstance = buildMonitorInstance;
+
+		bambooProperties.loadFromFile();
+
+		if (monitorPropertiesNotDefined())
+		{
+			BambooPropertiesDialog optionsDialog = displayOptionsDialog(true);
+			if (optionsDialog.getLastClickedButton() != BambooPropertiesDialog.BUTTON_OK)
+			{
+				System.exit(0);
+			}
+		}
+		updateConfig();
+
+		try
+		{
+			this.propertiesWatcher = new BambooPropertiesWatcher(BambooProperties.getUserPropertiesFile(), BambooPropertiesWatcher.DEFAULT_DEBOUNCE_DELAY_IN_MILLIS, buildMonitorInstance);
+			this.propertiesWatcher.start();
+		}
+		catch (IOException e)
+		{
+			// The properties file is then only loaded at startup
+			MonitorLogging.log(LOGGER, Level.WARNING, "Cannot watch the properties file", e, "file", BambooProperties.getUserPropertiesFile());
+			this.propertiesWatcher = null;
+		}
+	}
+
+	/**
+	 * Create a monitor that uses the given properties instead of the ones defined in the
+	 * user home directory (no options dialog is displayed if they are not complete).
+	 * @param buildMonitorInstance the build monitor to report to
+	 * @param bambooProperties the properties of the monitored Bamboo server
+	 */
+	public BambooMonitor(BuildMonitor buildMonitorInstance, BambooProperties bambooProperties)
+	{
+		this.buildMonitorInstance = buildMonitorInstance;
+		this.bambooProperties = bambooProperties;
+		updateConfig();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public void run()
+	{
+		while (!stop)
+		{
+			// The cycle that starts now serves all the refreshes asked for so far
+			synchronized (this.refreshLock)
+			{
+				this.refreshPending = false;
+			}
+			applyChangedProperties();
+			if (pollBuildStatus() || isCircuitOpen() || isUserActionNeeded())
+			{
+				waitForNextCycle();
+			}
+			else
+			{
+				sleepInSeconds(1);
+			}
+		}
+	}
+
+	/**
+	 * Wait until the next poll cycle. In the meantime, the plans that have a build in progress
+	 * are polled in a fast lane, so that the end of their builds is reported within seconds,
+	 * while the other plans are only polled once per update period.
+	 */
+	private void waitForNextCycle()
+	{
+		BambooConfig config = this.config.get();
+		long nextCycleTime = System.nanoTime() + TimeUnit.SECONDS.toNanos(config.getUpdatePeriodInSeconds());
+		long fastLanePeriodInMillis = TimeUnit.SECONDS.toMillis(config.getRunningBuildsPollPeriodInSeconds());
+		while (!stop && !this.buildsInProgress.isEmpty() && !isCircuitOpen() && TimeUnit.NANOSECONDS.toMillis(nextCycleTime - System.nanoTime()) > fastLanePeriodInMillis)
+		{
+			if (!sleepInMillis(fastLanePeriodInMillis))
+			{
+				// A refresh has been asked for: all the plans are polled now
+				return;
+			}
+			pollBuildsInProgress();
+		}
+		sleepInMillis(Math.max(0, TimeUnit.NANOSECONDS.toMillis(nextCycleTime - System.nanoTime())));
+	}
+
+	/**
+	 * Poll the Bamboo server once, and report the build status (or the monitoring exception)
+	 * to the build monitor.
+	 * Unless it has been found healthy recently, the server is probed first: the cycle is not
+	 * run if the probe fails.
+	 * The pages of the list of plans, the results of the plans and the builds in progress are
+	 * fetched in parallel. The plans whose results are not fetched before the deadline of the
+	 * cycle keep their last known results, marked as stale.
+	 * With the change probe, the latest result of each plan is listed first, and the results
+	 * of a plan are only fetched if it has a new build (or, for a plan that is not due, as soon
+	 * as it has one).
+	 * @return true if the build status has been updated, false if a monitoring exception has been reported
+	 */
+	boolean pollBuildStatus()
+	{
+		long cycleStartTime = System.nanoTime();
+		// The whole cycle uses the same configuration
+		BambooConfig config = this.config.get();
+		CircuitBreaker circuitBreaker = getCircuitBreaker(config);
+		boolean circuitOpen = circuitBreaker != null && circuitBreaker.getState() == CircuitBreaker.State.OPEN;
+		ServerHealth serverHealth = getServerHealth(config);
+		if (circuitOpen || serverHealth.isProbeNeeded(cycleStartTime))
+		{
+			MonitoringException problem = probe(config, serverHealth, circuitOpen ? null : circuitBreaker, cycleStartTime);
+			if (circuitOpen)
+			{
+				// The probe is the only request sent while the circuit is open: it half-opens it if it succeeds
+				circuitBreaker.recordProbe(problem == null);
+			}
+			if (problem != null)
+			{
+				this.metrics.recordCycle(System.nanoTime() - cycleStartTime);
+				MonitorLogging.log(LOGGER, Level.WARNING, "Server probe failed", null, "server", config.getServerBaseUrl(), "health", serverHealth.getStatus(), "problem", problem.getMessage());
+				if (circuitOpen)
+				{
+					// The server is still overloaded: leave it alone until the next cycle
+					return reportLastKnownStatus(new MonitoringException(OVERLOADED_SERVER_MESSAGE, null));
+				}
+				buildMonitorInstance.reportMonitoringException(problem);
+				return false;
+			}
+		}
+		PlanScheduler scheduler = getScheduler(config);
+		Set<String> duePlanKeys = (scheduler == null) ? null : scheduler.takeDuePlans(cycleStartTime);
+		try
+		{
+			long deadline = cycleStartTime + TimeUnit.SECONDS.toNanos(config.getCycleDeadlineInSeconds());
+			PlanKeyFilter filter = getPlanKeyFilter(config);
+			Cycle cycle = fetchResults(config, filter, scheduler, duePlanKeys, circuitBreaker, null, deadline);
+
+			Map<String, List<BuildReport>> knownResults = new LinkedHashMap<String, List<BuildReport>>();
+			int numberOfStalePlans = 0;
+			int numberOfSkippedPlans = 0;
+			for (BuildPlan plan : cycle.getPlans())
+			{
+				List<BuildReport> planResults = cycle.results.get(plan.key);
+				if (planResults == null && !cycle.isDue(plan.key))
+				{
+					// The plan is not due yet: its last known results are still up to date
+					numberOfSkippedPlans++;
+					planResults = this.lastKnownResults.get(plan.key);
+				}
+				if (planResults == null)
+				{
+					numberOfStalePlans++;
+					planResults = getStaleResults(this.lastKnownResults.get(plan.key));
+				}
+				knownResults.put(plan.key, planResults);
+			}
+			if (cycle.numberOfMissingPages.get() > 0)
+			{
+				// Some pages of the list of plans are missing: keep the plans they may contain
+				for (Map.Entry<String, List<BuildReport>> lastKnownPlanResults : this.lastKnownResults.entrySet())
+				{
+					if (!knownResults.containsKey(lastKnownPlanResults.getKey()) && filter.accept(lastKnownPlanResults.getKey()))
+					{
+						numberOfStalePlans++;
+						knownResults.put(lastKnownPlanResults.getKey(), getStaleResults(lastKnownPlanResults.getValue()));
+					}
+				}
+			}
+			Map<String, List<BuildReport>> previousResults = this.lastKnownResults;
+			this.lastKnownResults = knownResults;
+			this.buildsInProgress = getBuildsInProgress(cycle, knownResults);
+			if (numberOfStalePlans > 0)
+			{
+				this.metrics.recordExceededDeadline(numberOfStalePlans);
+			}
+			if (scheduler != null)
+			{
+				schedule(cycle, previousResults, cycleStartTime);
+				if (cycle.numberOfMissingPages.get() == 0)
+				{
+					scheduler.retainAll(knownResults.keySet());
+				}
+				this.metrics.recordSkippedPlanRequests(numberOfSkippedPlans);
+			}
+
+			if (circuitBreaker != null)
+			{
+				circuitBreaker.recordCycle(true);
+			}
+
+			buildMonitorInstance.updateBuildStatus(getBuildStatus(knownResults, this.buildsInProgress));
+			this.metrics.recordCycle(System.nanoTime() - cycleStartTime);
+			MonitorLogging.log(LOGGER, Level.INFO, "Poll cycle done", null, "cycle", cycle.id, "plans", knownResults.size(), "fetched", cycle.results.size(), "stale", numberOfStalePlans, "skipped", numberOfSkippedPlans, "latencyMs", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - cycleStartTime));
+			return true;
+		}
+		catch (MonitoringException e)
+		{
+			if (scheduler != null)
+			{
+				// The plans taken out of the schedule are polled again at the next cycle
+				for (String planKey : duePlanKeys)
+				{
+					scheduler.recordMissedPoll(planKey, cycleStartTime);
+				}
+			}
+			// The server is probed again before the next cycle
+			serverHealth.invalidate();
+			this.metrics.recordCycle(System.nanoTime() - cycleStartTime);
+			MonitorLogging.log(LOGGER, Level.WARNING, "Poll cycle failed", e.getCause(), "problem", e.getMessage(), "latencyMs", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - cycleStartTime));
+			if (circuitBreaker != null)
+			{
+				circuitBreaker.recordCycle(false);
+				if (circuitBreaker.getState() == CircuitBreaker.State.OPEN)
+				{
+					return reportLastKnownStatus(e);
+				}
+			}
+			buildMonitorInstance.reportMonitoringException(e);
+			return false;
+		}
+	}
+
+	/**
+	 * Probe the server info, with a short timeout, and record the health of the server it
+	 * tells: an unreachable server, an authentication failure or an unfinished setup is then
+	 * reported without the fan-out of a cycle
+	 * @param config the configuration of the cycle
+	 * @param serverHealth the health of the server, that the result of the probe is recorded to
+	 * @param circuitBreaker the circuit breaker that the outcome of the probe request is
+	 * recorded to (null if the circuit is open: the probe is then not subject to it)
+	 * @param cycleStartTime the start time of the cycle, as a System.nanoTime() value
+	 * @return null if the server is healthy, the problem to report otherwise
+	 */
+	private MonitoringException probe(BambooConfig config, ServerHealth serverHealth, CircuitBreaker circuitBreaker, long cycleStartTime)
+	{
+		Cycle cycle = new Cycle(config, null, null, null, circuitBreaker);
+		Request request = cycle.newRequest();
+		URI uri = null;
+		ServerHealth.Status status = ServerHealth.Status.FAILING;
+		MonitoringException problem = null;
+		try
+		{
+			uri = new URI(config.getServerInfoUrl());
+			long timeLeft = cycleStartTime + TimeUnit.SECONDS.toNanos(config.getCycleDeadlineInSeconds()) - System.nanoTime();
+			long timeout = Math.min(TimeUnit.MILLISECONDS.toNanos(Math.min(ServerHealth.PROBE_TIMEOUT_IN_MILLIS, config.getReadTimeoutInMillis())), timeLeft);
+			HttpResponse<byte[]> response = cycle.transport.send(config, uri, request).get(Math.max(0, timeout), TimeUnit.NANOSECONDS);
+			recordRequestOutcome(cycle, request, null);
+			if (isSetupWizard(config, response))
+			{
+				status = ServerHealth.Status.SETUP_WIZARD;
+				this.metrics.recordError(ErrorType.SETUP_WIZARD);
+				problem = new MonitoringException("Your Bamboo server installation is not finished! Double click here to complete the Bamboo Setup Wizard !", config.getMainPageURI());
+			}
+			else if (BambooResponseParser.parseServerState(parseServerResponse(response)) == null)
+			{
+				// Something answers, but not the REST api of a Bamboo server
+				problem = toMonitoringException(new FileNotFoundException(uri.toString()), uri, request);
+			}
+			else
+			{
+				status = ServerHealth.Status.HEALTHY;
+			}
+		}
+		catch (URISyntaxException e)
+		{
+			problem = toMonitoringException(e, null, request);
+		}
+		catch (TimeoutException e)
+		{
+			recordRequestOutcome(cycle, request, new HttpTimeoutException("probe timed out"));
+			status = ServerHealth.Status.UNREACHABLE;
+			this.metrics.recordError(ErrorType.TIMEOUT);
+			problem = new MonitoringException("Problem: the Bamboo server did not answer in time.", e, null);
+		}
+		catch (ExecutionException | CompletionException e)
+		{
+			recordRequestOutcome(cycle, request, e);
+			status = getHealthStatus(unwrap(e));
+			problem = toMonitoringException(e, uri, request);
+		}
+		catch (XPathExpressionException e)
+		{
+			problem = new MonitoringException(e, null);
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			problem = new MonitoringException("Request cancelled.", e, null);
+		}
+		finally
+		{
+			cycle.cancel();
+		}
+		serverHealth.recordProbe(status, System.nanoTime());
+		return problem;
+	}
+
+	/**
+	 * Has a request been redirected to the setup wizard ? (until its setup is finished,
+	 * Bamboo redirects the requests to the pages of its setup wizard)
+	 * @param config the configuration of the cycle
+	 * @param response the response of the server, once the redirections have been followed
+	 */
+	private static boolean isSetupWizard(BambooConfig config, HttpResponse<byte[]> response)
+	{
+		URI mainPageURI = config.getMainPageURI();
+		String basePath = (mainPageURI == null || mainPageURI.getPath() == null) ? "" : mainPageURI.getPath();
+		String path = response.uri().getPath();
+		return path != null && path.startsWith(basePath + "/setup/");
+	}
+
+	/**
+	 * Get the health of the server told by the failure of a probe
+	 */
+	private static ServerHealth.Status getHealthStatus(Throwable cause)
+	{
+		String message = cause.getMessage();
+		if (cause instanceof IOException && message != null && message.contains("Server returned HTTP response code: 401"))
+		{
+			return ServerHealth.Status.AUTHENTICATION_FAILED;
+		}
+		if (isServerFailure(cause) || cause instanceof UnresolvedAddressException)
+		{
+			return ServerHealth.Status.UNREACHABLE;
+		}
+		return ServerHealth.Status.FAILING;
+	}
+
+	/**
+	 * Report the last known build status, marked as stale, while the circuit is open (or the
+	 * monitoring exception if no build status is known yet)
+	 * @param problem the problem to report if no build status is known
+	 * @return true if the build status has been updated, false if a monitoring exception has been reported
+	 */
+	private boolean reportLastKnownStatus(MonitoringException problem)
+	{
+		if (this.lastKnownResults.isEmpty())
+		{
+			buildMonitorInstance.reportMonitoringException(problem);
+			return false;
+		}
+		Map<String, List<BuildReport>> staleResults = new LinkedHashMap<String, List<BuildReport>>();
+		for (Map.Entry<String, List<BuildReport>> lastKnownPlanResults : this.lastKnownResults.entrySet())
+		{
+			staleResults.put(lastKnownPlanResults.getKey(), getStaleResults(lastKnownPlanResults.getValue()));
+		}
+		// The builds in progress are not known any more
+		buildMonitorInstance.updateBuildStatus(getBuildStatus(staleResults, Collections.<String, BuildReport>emptyMap()));
+		return true;
+	}
+
+	/**
+	 * Is the circuit open ? (the server is then only probed once per update period)
+	 */
+	private boolean isCircuitOpen()
+	{
+		CircuitBreaker circuitBreaker = getCircuitBreaker(this.config.get());
+		return circuitBreaker != null && circuitBreaker.getState() == CircuitBreaker.State.OPEN;
+	}
+
+	/**
+	 * Does the server need an action of the user (credentials, setup) before it can be polled ?
+	 * (it is then only probed again once per update period)
+	 */
+	private boolean isUserActionNeeded()
+	{
+		return getServerHealth(this.config.get()).isUserActionNeeded();
+	}
+
+	/**
+	 * Schedule the next poll of the plans of a cycle: the plans whose results have been fetched
+	 * are scheduled after an interval that depends on their activity, the plans that were due
+	 * but could not be fetched are due again, and the plans that have a build in progress are
+	 * woken up
+	 * @param cycle the cycle
+	 * @param previousResults the results of the plans known before the cycle, by plan key
+	 * @param now the start time of the cycle, as a System.nanoTime() value
+	 */
+	private void schedule(Cycle cycle, Map<String, List<BuildReport>> previousResults, long now)
+	{
+		for (Map.Entry<String, List<BuildReport>> planResults : cycle.results.entrySet())
+		{
+			String planKey = planResults.getKey();
+			boolean active = hasChanged(previousResults.get(planKey), planResults.getValue()) || hasFailed(planResults.getValue()) || this.buildsInProgress.containsKey(planKey);
+			cycle.scheduler.recordPoll(planKey, active, now);
+		}
+		if (cycle.duePlanKeys != null)
+		{
+			for (String planKey : cycle.duePlanKeys)
+			{
+				if (!cycle.results.containsKey(planKey))
+				{
+					cycle.scheduler.recordMissedPoll(planKey, now);
+				}
+			}
+		}
+		for (String planKey : this.buildsInProgress.keySet())
+		{
+			cycle.scheduler.wakeUp(planKey, now);
+		}
+	}
+
+	/**
+	 * Have the results of a plan changed since it was last polled ? (a plan polled for the
+	 * first time has not changed)
+	 */
+	private static boolean hasChanged(List<BuildReport> previousResults, List<BuildReport> results)
+	{
+		if (previousResults == null)
+		{
+			return false;
+		}
+		if (previousResults.size() != results.size())
+		{
+			return true;
+		}
+		for (int i = 0; i < results.size(); i++)
+		{
+			if (!previousResults.get(i).getId().equals(results.get(i).getId()) || previousResults.get(i).getStatus() != results.get(i).getStatus())
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static boolean hasFailed(List<BuildReport> results)
+	{
+		for (BuildReport result : results)
+		{
+			if (result.hasFailed())
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Poll the results of the plans that have a build in progress, and the builds in progress
+	 * of all the plans, and report the build status (the other plans keep their last known
+	 * results) or the monitoring exception to the build monitor.
+	 * @return true if the build status has been updated, false if a monitoring exception has been reported
+	 */
+	boolean pollBuildsInProgress()
+	{
+		try
+		{
+			BambooConfig config = this.config.get();
+			long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(config.getCycleDeadlineInSeconds());
+			PlanKeyFilter filter = getPlanKeyFilter(config);
+			List<BuildPlan> plansInProgress = new ArrayList<BuildPlan>();
+			for (String planKey : this.buildsInProgress.keySet())
+			{
+				BuildPlan plan = new BuildPlan();
+				plan.key = planKey;
+				List<BuildReport> lastKnownPlanResults = this.lastKnownResults.get(planKey);
+				// Without known results, the name of the plan is read from its results
+				plan.name = (lastKnownPlanResults == null || lastKnownPlanResults.isEmpty()) ? null : lastKnownPlanResults.get(0).getName();
+				plansInProgress.add(plan);
+			}
+			PlanScheduler scheduler = getScheduler(config);
+			Cycle cycle = fetchResults(config, filter, null, null, getCircuitBreaker(config), plansInProgress, deadline);
+
+			Map<String, List<BuildReport>> knownResults = new LinkedHashMap<String, List<BuildReport>>(this.lastKnownResults);
+			knownResults.putAll(cycle.results);
+			this.lastKnownResults = knownResults;
+			this.buildsInProgress = getBuildsInProgress(cycle, knownResults);
+			if (scheduler != null)
+			{
+				// The plans polled in the fast lane are active: they are polled at each update
+				long now = System.nanoTime();
+				for (String planKey : cycle.results.keySet())
+				{
+					scheduler.recordPoll(planKey, true, now);
+				}
+			}
+			buildMonitorInstance.updateBuildStatus(getBuildStatus(knownResults, this.buildsInProgress));
+			return true;
+		}
+		catch (MonitoringException e)
+		{
+			buildMonitorInstance.reportMonitoringException(e);
+			return false;
+		}
+	}
+
+	/**
+	 * Get the builds in progress of the known plans, named after their plans (the builds in
+	 * progress of the previous cycle are kept if the cycle could not fetch them)
+	 * @param cycle the cycle that has fetched the builds in progress
+	 * @param knownResults the known results of the plans, by plan key
+	 * @return the builds in progress, by plan key
+	 */
+	private Map<String, BuildReport> getBuildsInProgress(Cycle cycle, Map<String, List<BuildReport>> knownResults)
+	{
+		Map<String, BuildReport> fetchedBuildsInProgress = cycle.buildsInProgressFetched ? cycle.buildsInProgress : this.buildsInProgress;
+		Map<String, BuildReport> returnedValue = new HashMap<String, BuildReport>();
+		for (Map.Entry<String, BuildReport> buildInProgress : fetchedBuildsInProgress.entrySet())
+		{
+			List<BuildReport> planResults = knownResults.get(buildInProgress.getKey());
+			if (planResults != null && !containsBuild(planResults, buildInProgress.getValue().getId()))
+			{
+				BuildReport report = buildInProgress.getValue();
+				if (!planResults.isEmpty())
+				{
+					report.setName(planResults.get(0).getName());
+				}
+				else if (report.getName() == null)
+				{
+					report.setName(buildInProgress.getKey());
+				}
+				returnedValue.put(buildInProgress.getKey(), report);
+			}
+		}
+		return returnedValue;
+	}
+
+	/**
+	 * Get the build status to report: the known results of the plans, followed by their builds in progress
+	 */
+	private static List<BuildReport> getBuildStatus(Map<String, List<BuildReport>> knownResults, Map<String, BuildReport> buildsInProgress)
+	{
+		List<BuildReport> returnedValue = new ArrayList<BuildReport>();
+		for (Map.Entry<String, List<BuildReport>> planResults : knownResults.entrySet())
+		{
+			returnedValue.addAll(planResults.getValue());
+			BuildReport buildInProgress = buildsInProgress.get(planResults.getKey());
+			if (buildInProgress != null)
+			{
+				returnedValue.add(buildInProgress);
+			}
+		}
+		return returnedValue;
+	}
+
+	/**
+	 * Does a list of build reports contain the report of a build ? (a build that has finished
+	 * between the requests of a cycle is both in progress and in the results of its plan)
+	 */
+	private static boolean containsBuild(List<BuildReport> buildReports, String buildId)
+	{
+		for (BuildReport buildReport : buildReports)
+		{
+			if (buildReport.getId().equals(buildId))
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	public void stop()
+	{
+		stop = true;
+		synchronized (this.refreshLock)
+		{
+			this.refreshLock.notifyAll();
+		}
+		if (this.propertiesWatcher != null)
+		{
+			this.propertiesWatcher.stop();
+		}
+		synchronized (this)
+		{
+			if (this.transport != null)
+			{
+				this.transport.close();
+				this.transport = null;
+			}
+		}
+	}
+
+	/**
+	 * Publish a new configuration, that is a snapshot of the current properties of the monitor.
+	 * The poll cycle in progress, if any, goes on with the previous configuration.
+	 */
+	void updateConfig()
+	{
+		BambooConfig newConfig = new BambooConfig(this.bambooProperties, this.configVersion.incrementAndGet());
+		BambooConfig currentConfig = null;
+		do
+		{
+			currentConfig = this.config.get();
+			if (currentConfig != null && currentConfig.getVersion() > newConfig.getVersion())
+			{
+				// A more recent snapshot has been published in the meantime
+				return;
+			}
+		}
+		while (!this.config.compareAndSet(currentConfig, newConfig));
+	}
+
+	/**
+	 * Take into account the properties loaded again from the properties file since the last
+	 * poll cycle, if any. It is only called between two poll cycles, so that the requests of
+	 * a cycle all use the same properties.
+	 */
+	private void applyChangedProperties()
+	{
+		if (this.propertiesWatcher != null)
+		{
+			BambooProperties changedProperties = this.propertiesWatcher.takeChangedProperties();
+			if (changedProperties != null)
+			{
+				this.bambooProperties = changedProperties;
+				updateConfig();
+			}
+		}
+	}
+
+	/**
+	 * Fetch the pages of the list of plans, the results of the plans and the builds in progress
+	 * until they are all fetched or the deadline is reached. The cycle is a graph of futures: the
+	 * results of the plans of a page are requested as soon as the page is received, for the plans
+	 * that pass the filter, and the responses are parsed by the parse threads of the transport.
+	 * The straggling requests for plan results are hedged, and the requests still running at the
+	 * deadline are cancelled. The plans whose requests time out are left out of the results, as
+	 * the ones not fetched in time.
+	 * @param config the configuration of the cycle
+	 * @param filter the filter of the plans
+	 * @param scheduler the schedule of the plans (null to fetch the results of all the plans)
+	 * @param duePlanKeys the keys of the plans taken out of the schedule for this cycle
+	 * @param circuitBreaker the circuit breaker of the requests (may be null)
+	 * @param plansToFetch the plans whose results are fetched (null to fetch the results of all the
+	 * monitored plans)
+	 * @param deadline the deadline, as a System.nanoTime() value
+	 * @return the cycle, with the plans and the results it has fetched
+	 */
+	private Cycle fetchResults(BambooConfig config, PlanKeyFilter filter, PlanScheduler scheduler, Set<String> duePlanKeys, CircuitBreaker circuitBreaker, List<BuildPlan> plansToFetch, long deadline) throws MonitoringException
+	{
+		Cycle cycle = new Cycle(config, filter, scheduler, duePlanKeys, circuitBreaker);
+		CompletableFuture<Void> allBranches = null;
+		if (plansToFetch != null)
+		{
+			allBranches = fetchPlanList(cycle, CompletableFuture.completedFuture(getPlanPage(plansToFetch)), null);
+		}
+		else
+		{
+			if (config.isChangeProbe() && !this.lastKnownResults.isEmpty())
+			{
+				// Set before the plans are fetched: the plans that have no new build keep their last known results
+				cycle.cachedResults = this.lastKnownResults;
+				cycle.latestResultKeys = fetchLatestResultKeys(cycle);
+			}
+			if (filter.getExactPlanKeys() != null && !config.isFavouriteProjectsOnly())
+			{
+				// The monitored plans are known: there is no need to list the plans of the server
+				allBranches = fetchPlanList(cycle, CompletableFuture.completedFuture(getPlanPage(getPlans(filter.getExactPlanKeys()))), null);
+			}
+			else if (filter.getProjectKeys() != null && !config.isFavouriteProjectsOnly())
+			{
+				// Only the plans of the monitored projects are listed
+				List<CompletableFuture<Void>> projects = new ArrayList<CompletableFuture<Void>>();
+				for (String projectKey : filter.getProjectKeys())
+				{
+					cycle.numberOfMissingPages.incrementAndGet();
+					projects.add(fetchPlanList(cycle, fetchPlanPage(cycle, projectKey, 0), projectKey));
+				}
+				allBranches = CompletableFuture.allOf(projects.toArray(new CompletableFuture<?>[projects.size()]));
+			}
+			else
+			{
+				cycle.numberOfMissingPages.incrementAndGet();
+				allBranches = fetchPlanList(cycle, fetchPlanPage(cycle, null, 0), null);
+			}
+		}
+		CompletableFuture.allOf(cycle.settle(allBranches), cycle.settle(fetchBuildsInProgress(cycle))).thenRun(() -> cycle.done.complete(null));
+
+		try
+		{
+			long timeLeft = deadline - System.nanoTime();
+			cycle.done.get(Math.max(0, timeLeft), TimeUnit.NANOSECONDS);
+		}
+		catch (TimeoutException e)
+		{
+			// The deadline is reached: the plans not fetched yet keep their last known results
+		}
+		catch (InterruptedException e)
+		{
+			// The monitor thread is being stopped: publish what has been fetched so far
+			Thread.currentThread().interrupt();
+		}
+		catch (ExecutionException e)
+		{
+			// The branches of the cycle only fail with monitoring exceptions
+			throw (MonitoringException) e.getCause();
+		}
+		finally
+		{
+			cycle.cancel();
+		}
+		return cycle;
+	}
+
+	/**
+	 * Fetch the plans of a list and their results: once its first page is fetched, the other
+	 * pages of the list are fetched with the results of the plans of the first page
+	 * @param firstPage the first page of the list
+	 * @param projectKey the key of the project whose plans are listed (null for all the plans)
+	 * @return a future completed once the plans of the list and their results are fetched
+	 */
+	private CompletableFuture<Void> fetchPlanList(Cycle cycle, CompletableFuture<PlanPage> firstPage, String projectKey)
+	{
+		return firstPage.thenCompose(page -> {
+			cycle.numberOfHedgedRequestsLeft.addAndGet(cycle.hedgingDelay > 0 ? Math.max(1, (int) (page.size * HEDGED_REQUESTS_RATIO)) : 0);
+			List<CompletableFuture<Void>> branches = new ArrayList<CompletableFuture<Void>>();
+			// The remaining pages are requested first, so that they are not queued behind the results of the first page
+			if (page.maxResult > 0)
+			{
+				for (int startIndex = page.startIndex + page.maxResult; startIndex < page.size; startIndex += page.maxResult)
+				{
+					cycle.numberOfMissingPages.incrementAndGet();
+					branches.add(cycle.settle(fetchPlanPage(cycle, projectKey, startIndex).thenCompose(nextPage -> fetchPlans(cycle, nextPage))));
+				}
+			}
+			branches.add(fetchPlans(cycle, page));
+			return CompletableFuture.allOf(branches.toArray(new CompletableFuture<?>[branches.size()]));
+		});
+	}
+
+	/**
+	 * Fetch the builds in progress of all the plans: the builds waiting in the queue, and the
+	 * running builds (a running build hides the build of the same plan waiting in the queue)
+	 * @return a future completed once the builds in progress are fetched
+	 */
+	private CompletableFuture<Void> fetchBuildsInProgress(Cycle cycle)
+	{
+		CompletableFuture<List<BuildReport>> queuedBuilds = fetchBuildList(cycle, cycle.config.getQueueUrl(), true);
+		CompletableFuture<List<BuildReport>> runningBuilds = fetchBuildList(cycle, cycle.config.getRunningBuildsUrl(), false);
+		return queuedBuilds.thenAcceptBoth(runningBuilds, (queued, running) -> {
+			for (BuildReport queuedBuild : queued)
+			{
+				cycle.buildsInProgress.put(BambooResponseParser.getPlanKey(queuedBuild.getId()), queuedBuild);
+			}
+			for (BuildReport runningBuild : running)
+			{
+				cycle.buildsInProgress.put(BambooResponseParser.getPlanKey(runningBuild.getId()), runningBuild);
+			}
+			cycle.buildsInProgressFetched = true;
+		});
+	}
+
+	/**
+	 * Fetch a list of builds in progress
+	 * @param cycle the cycle of the request
+	 * @param url the URL of the list
+	 * @param queue true for the queue of the builds, false for the list of the running builds
+	 */
+	private CompletableFuture<List<BuildReport>> fetchBuildList(Cycle cycle, String url, boolean queue)
+	{
+		return fetchDocument(cycle, url, cycle.newRequest()).thenApply(serverResponse -> {
+			try
+			{
+				long parseStartTime = System.nanoTime();
+				List<BuildReport> builds = queue ? BambooResponseParser.parseQueuedBuilds(serverResponse) : BambooResponseParser.parseRunningBuilds(serverResponse);
+				this.metrics.recordParse(System.nanoTime() - parseStartTime);
+				return builds;
+			}
+			catch (XPathExpressionException e)
+			{
+				this.metrics.recordError(ErrorType.PARSE);
+				throw new CompletionException(new MonitoringException(e, null));
+			}
+			catch (MonitoringException e)
+			{
+				throw new CompletionException(e);
+			}
+		}).exceptionally(failure -> {
+			// A server too old to list its builds in progress is only polled for finished builds
+			if (isCausedBy(failure, FileNotFoundException.class))
+			{
+				return new ArrayList<BuildReport>();
+			}
+			throw failure instanceof CompletionException ? (CompletionException) failure : new CompletionException(failure);
+		});
+	}
+
+	/**
+	 * Fetch the results of the plans of a page that pass the filter, are due in the cycle, and
+	 * are not listed by another page
+	 * @return a future completed once the results of the plans are fetched or left out of the cycle
+	 */
+	private CompletableFuture<Void> fetchPlans(Cycle cycle, PlanPage page)
+	{
+		List<CompletableFuture<Void>> branches = new ArrayList<CompletableFuture<Void>>();
+		for (BuildPlan plan : page.plans)
+		{
+			if (cycle.filter.accept(plan.key) && cycle.planKeys.add(plan.key))
+			{
+				cycle.plans.add(plan);
+				if (cycle.isDue(plan.key))
+				{
+					branches.add(cycle.settle(fetchPlanIfAdvanced(cycle, plan).thenAccept(planResults -> cycle.results.put(plan.key, planResults))));
+				}
+				else if (cycle.latestResultKeys != null)
+				{
+					branches.add(cycle.settle(fetchPlanIfNewBuild(cycle, plan).thenAccept(planResults -> {
+						if (planResults != null)
+						{
+							cycle.results.put(plan.key, planResults);
+						}
+					})));
+				}
+			}
+		}
+		return CompletableFuture.allOf(branches.toArray(new CompletableFuture<?>[branches.size()]));
+	}
+
+	/**
+	 * Fetch the results of a plan, unless the change probe tells that the plan has no new
+	 * build: its last known results are then reused
+	 */
+	private CompletableFuture<List<BuildReport>> fetchPlanIfAdvanced(Cycle cycle, BuildPlan plan)
+	{
+		if (cycle.latestResultKeys == null)
+		{
+			return fetchPlan(cycle, plan);
+		}
+		return cycle.latestResultKeys.thenCompose(latestResultKeys -> {
+			List<BuildReport> lastKnownResults = cycle.cachedResults.get(plan.key);
+			if (latestResultKeys != null && isUpToDate(lastKnownResults, latestResultKeys.get(plan.key)))
+			{
+				this.metrics.recordUnchangedPlan();
+				return CompletableFuture.completedFuture(lastKnownResults);
+			}
+			return fetchPlan(cycle, plan);
+		});
+	}
+
+	/**
+	 * Fetch the results of a plan that is not due in the cycle, if the change probe tells that
+	 * the plan has a new build: a plan that has backed off is then polled at once, and its
+	 * interval is reset when its results are scheduled (see schedule())
+	 * @return the future results of the plan, or null if it has no new build
+	 */
+	private CompletableFuture<List<BuildReport>> fetchPlanIfNewBuild(Cycle cycle, BuildPlan plan)
+	{
+		return cycle.latestResultKeys.thenCompose(latestResultKeys -> {
+			String latestResultKey = (latestResultKeys == null) ? null : latestResultKeys.get(plan.key);
+			List<BuildReport> lastKnownResults = cycle.cachedResults.get(plan.key);
+			if (latestResultKey == null || (lastKnownResults != null && !lastKnownResults.isEmpty() && latestResultKey.equals(lastKnownResults.get(0).getId())))
+			{
+				return CompletableFuture.completedFuture(null);
+			}
+			return fetchPlan(cycle, plan);
+		});
+	}
+
+	/**
+	 * Are the last known results of a plan up to date ? (they are if they are not stale, and
+	 * if they start with the latest result of the plan on the server; a plan without known
+	 * results is always fetched)
+	 * @param lastKnownResults the last known results of the plan (may be null)
+	 * @param latestResultKey the key of the latest result of the plan on the server (may be null)
+	 */
+	private static boolean isUpToDate(List<BuildReport> lastKnownResults, String latestResultKey)
+	{
+		if (lastKnownResults == null || lastKnownResults.isEmpty() || latestResultKey == null)
+		{
+			return false;
+		}
+		BuildReport latestResult = lastKnownResults.get(0);
+		return !latestResult.isStale() && latestResultKey.equals(latestResult.getId());
+	}
+
+	/**
+	 * Fetch the key of the latest result of each plan: all the pages of the list of the latest
+	 * results are fetched in parallel once the first one tells their number
+	 * @return the future keys of the latest results, by plan key (null if the server cannot list them,
+	 * or if the probe fails)
+	 */
+	private CompletableFuture<Map<String, String>> fetchLatestResultKeys(Cycle cycle)
+	{
+		return fetchLatestResultPage(cycle, 0).thenCompose(firstPage -> {
+			List<CompletableFuture<LatestResultPage>> pages = new ArrayList<CompletableFuture<LatestResultPage>>();
+			pages.add(CompletableFuture.completedFuture(firstPage));
+			if (firstPage.maxResult > 0)
+			{
+				for (int startIndex = firstPage.startIndex + firstPage.maxResult; startIndex < firstPage.size; startIndex += firstPage.maxResult)
+				{
+					pages.add(fetchLatestResultPage(cycle, startIndex));
+				}
+			}
+			return CompletableFuture.allOf(pages.toArray(new CompletableFuture<?>[pages.size()])).thenApply(allPages -> {
+				Map<String, String> latestResultKeys = new HashMap<String, String>();
+				for (CompletableFuture<LatestResultPage> page : pages)
+				{
+					latestResultKeys.putAll(page.join().latestResultKeys);
+				}
+				return latestResultKeys;
+			});
+		}).exceptionally(failure -> {
+			// The probe only saves requests: when the server cannot list the latest results (or fails
+			// to, or times out), the results of all the due plans are fetched
+			return null;
+		});
+	}
+
+	/**
+	 * Fetch a page of the list of the latest result of each plan
+	 */
+	private CompletableFuture<LatestResultPage> fetchLatestResultPage(Cycle cycle, int startIndex)
+	{
+		return fetchDocument(cycle, cycle.config.getLatestResultsUrl(startIndex, PLAN_PAGE_SIZE), cycle.newRequest()).thenApply(serverResponse -> {
+			try
+			{
+				long parseStartTime = System.nanoTime();
+				LatestResultPage page = BambooResponseParser.parseLatestResultPage(serverResponse);
+				this.metrics.recordParse(System.nanoTime() - parseStartTime);
+				return page;
+			}
+			catch (XPathExpressionException e)
+			{
+				this.metrics.recordError(ErrorType.PARSE);
+				throw new CompletionException(new MonitoringException(e, null));
+			}
+		});
+	}
+
+	/**
+	 * Fetch the results of a plan. If the request is much slower than usual, it is hedged:
+	 * the same request is sent again, and the first response is used (the other request is
+	 * cancelled). A request that fails while its twin is still running is ignored.
+	 */
+	private CompletableFuture<List<BuildReport>> fetchPlan(Cycle cycle, BuildPlan plan)
+	{
+		Request request = cycle.newRequest();
+		CompletableFuture<List<BuildReport>> primaryResults = fetchPlanResults(cycle, plan, request);
+		if (cycle.hedgingDelay == 0)
+		{
+			return primaryResults;
+		}
+		CompletableFuture<List<BuildReport>> firstResults = new CompletableFuture<List<BuildReport>>();
+		AtomicInteger numberOfRunningRequests = new AtomicInteger(1);
+		AtomicReference<Request> hedgedRequest = new AtomicReference<Request>();
+		primaryResults.whenComplete((planResults, failure) -> completeHedgedFetch(firstResults, planResults, failure, numberOfRunningRequests, hedgedRequest.get()));
+		request.whenSent().thenRun(() -> cycle.transport.getParseExecutor().schedule(() -> {
+			if (!firstResults.isDone() && cycle.numberOfHedgedRequestsLeft.getAndDecrement() > 0)
+			{
+				numberOfRunningRequests.incrementAndGet();
+				hedgedRequest.set(cycle.newRequest());
+				this.metrics.recordHedgedRequest();
+				fetchPlanResults(cycle, plan, hedgedRequest.get()).whenComplete((planResults, failure) -> completeHedgedFetch(firstResults, planResults, failure, numberOfRunningRequests, request));
+			}
+		}, cycle.hedgingDelay, TimeUnit.NANOSECONDS));
+		return firstResults;
+	}
+
+	private static void completeHedgedFetch(CompletableFuture<List<BuildReport>> firstResults, List<BuildReport> planResults, Throwable failure, AtomicInteger numberOfRunningRequests, Request twinRequest)
+	{
+		boolean lastRequest = numberOfRunningRequests.decrementAndGet() == 0;
+		if (failure == null)
+		{
+			if (firstResults.complete(planResults) && twinRequest != null)
+			{
+				twinRequest.cancel();
+			}
+		}
+		else if (lastRequest)
+		{
+			firstResults.completeExceptionally(failure);
+		}
+	}
+
+	/**
+	 * Has a branch of the cycle failed because the server has not answered in time ?
+	 */
+	private static boolean hasTimedOut(Throwable failure)
+	{
+		return isCausedBy(failure, HttpTimeoutException.class);
+	}
+
+	/**
+	 * Get the filter of the plans (it is compiled with the configuration)
+	 */
+	private static PlanKeyFilter getPlanKeyFilter(BambooConfig config) throws MonitoringException
+	{
+		if (config.getPlanKeyFilter() == null)
+		{
+			throw new MonitoringException("Problem: " + config.getPlanKeyFilterProblem() + ". Please check the monitored plans in Options.", true, null);
+		}
+		return config.getPlanKeyFilter();
+	}
+
+	/**
+	 * Get the plans of a list of plan keys (their names are read from their results)
+	 * @param planKeys the keys of the plans
+	 * @return the plans
+	 */
+	private static List<BuildPlan> getPlans(List<String> planKeys)
+	{
+		List<BuildPlan> returnedValue = new ArrayList<BuildPlan>();
+		for (String planKey : planKeys)
+		{
+			BuildPlan plan = new BuildPlan();
+			plan.key = planKey;
+			returnedValue.add(plan);
+		}
+		return returnedValue;
+	}
+
+	/**
+	 * Get a page that lists known plans
+	 * @param plans the plans
+	 * @return the page that lists the plans
+	 */
+	private static PlanPage getPlanPage(List<BuildPlan> plans)
+	{
+		PlanPage returnedValue = new PlanPage();
+		returnedValue.plans = plans;
+		returnedValue.size = plans.size();
+		returnedValue.maxResult = plans.size();
+		return returnedValue;
+	}
+
+	private static boolean isCausedBy(Throwable throwable, Class<? extends Throwable> causeClass)
 	{
-		public String key;
-		public String name;
+		for (Throwable cause = throwable; cause != null; cause = cause.getCause())
+		{
+			if (causeClass.isInstance(cause))
+			{
+				return true;
+			}
+		}
+		return false;
 	}
 
-	private static final String URL_ENCODING = "UTF-8";
-
-	private BuildMonitor buildMonitorInstance = null;
-	private boolean stop = false;
-	private BambooProperties bambooProperties = new BambooProperties();
-	private BambooPropertiesDialog optionsDialog = null;
-	
-	public BambooMonitor(BuildMonitor buildMonitorInstance) throws FileNotFoundException, IOException
+	/**
+	 * Get the failure wrapped by the futures
+	 */
+	private static Throwable unwrap(Throwable failure)
 	{
-		this.buildMonitorInstance = buildMonitorInstance;
+		Throwable returnedValue = failure;
+		while ((returnedValue instanceof CompletionException || returnedValue instanceof ExecutionException) && returnedValue.getCause() != null)
+		{
+			returnedValue = returnedValue.getCause();
+		}
+		return returnedValue;
+	}
 
-		bambooProperties.loadFromFile();
+	/**
+	 * Get the time after which a request is hedged (or 0 if the requests should not be hedged)
+	 */
+	private long getHedgingDelayInNanos(BambooConfig config)
+	{
+		if (!config.isHedgedRequests() || this.planRequestLatency.getCount() < MINIMUM_NUMBER_OF_REQUESTS_BEFORE_HEDGING)
+		{
+			return 0;
+		}
+		LatencySnapshot latency = this.planRequestLatency.getSnapshot();
+		return TimeUnit.MILLISECONDS.toNanos(Math.max(MINIMUM_HEDGING_DELAY_IN_MILLIS, (long) latency.getP95Millis()));
+	}
 
-		if (monitorPropertiesNotDefined())
+	/**
+	 * Get stale copies of the last known results of a plan
+	 * @param lastKnownResults the last known results of the plan (may be null)
+	 * @return the stale copies (an empty list if there is no last known results)
+	 */
+	private static List<BuildReport> getStaleResults(List<BuildReport> lastKnownResults)
+	{
+		List<BuildReport> returnedValue = new ArrayList<BuildReport>();
+		if (lastKnownResults != null)
 		{
-			BambooPropertiesDialog optionsDialog = displayOptionsDialog(true);
-			if (optionsDialog.getLastClickedButton() != BambooPropertiesDialog.BUTTON_OK)
+			for (BuildReport lastKnownResult : lastKnownResults)
 			{
-				System.exit(0);
+				BuildReport staleResult = new BuildReport(lastKnownResult.getId(), lastKnownResult.getDate(), lastKnownResult.getStatus());
+				staleResult.setName(lastKnownResult.getName());
+				staleResult.setStale(true);
+				returnedValue.add(staleResult);
 			}
 		}
+		return returnedValue;
 	}
 
 	/**
-	 * {@inheritDoc}
+	 * Get the transport of the requests (it is created again when the connect timeout, the
+	 * threads, the concurrency limit, the protocol or the recording of the requests change).
+	 * The requests are answered by the recorded responses of an archive when it is replayed.
+	 * @param config the configuration of the cycle
 	 */
-	public void run()
+	private synchronized BambooTransport getTransport(BambooConfig config)
 	{
-		while (!stop)
+		if (this.transport != null && !this.transport.isFor(config))
 		{
-			try
-			{
-				String bambooServerBaseUrl  = bambooProperties.getServerBaseUrl();
-				List<BuildReport> lastBuildStatus = new ArrayList<BuildReport>();
-				for (BuildPlan plan : getProjects(bambooServerBaseUrl))
-				{
-					lastBuildStatus.addAll(getResultsForProject(bambooServerBaseUrl, plan));
-				}
-	
-				buildMonitorInstance.updateBuildStatus(lastBuildStatus);
-				sleepInSeconds(bambooProperties.getUpdatePeriodInSeconds());
-			}
-			catch (MonitoringException e)
+			// The requests of the previous cycles are all done or cancelled
+			this.transport.close();
+			this.transport = null;
+		}
+		if (this.transport == null)
+		{
+			this.transport = (config.getTrafficReplayFile() != null) ? new ReplayTransport(config, this.metrics) : new BambooTransport(config, this.metrics);
+		}
+		return this.transport;
+	}
+
+	/**
+	 * Get the schedule of the plans (it is created again when the update period, the maximum
+	 * poll period of a plan or the maximum number of requests per update change)
+	 * @param config the configuration of the cycle
+	 * @return the schedule, or null if all the plans are polled at each update
+	 */
+	private synchronized PlanScheduler getScheduler(BambooConfig config)
+	{
+		if (!config.isAdaptiveScheduling())
+		{
+			this.scheduler = null;
+		}
+		else if (this.scheduler == null || !this.scheduler.isFor(config))
+		{
+			this.scheduler = new PlanScheduler(config);
+		}
+		return this.scheduler;
+	}
+
+	/**
+	 * Get the circuit breaker of the requests (it is created again when the server changes)
+	 * @param config the configuration of the cycle
+	 * @return the circuit breaker, or null if the requests are not guarded by a circuit breaker
+	 */
+	private synchronized CircuitBreaker getCircuitBreaker(BambooConfig config)
+	{
+		if (!config.isCircuitBreaker())
+		{
+			if (this.circuitBreaker != null)
 			{
-				buildMonitorInstance.reportMonitoringException(e);
-				sleepInSeconds(1);
+				this.metrics.recordCircuitBreakerState(CircuitBreaker.State.CLOSED.name());
 			}
+			this.circuitBreaker = null;
+		}
+		else if (this.circuitBreaker == null || !this.circuitBreaker.isFor(config))
+		{
+			this.circuitBreaker = new CircuitBreaker(config, this.metrics);
 		}
+		return this.circuitBreaker;
 	}
-	
+
 	/**
-	 * {@inheritDoc}
+	 * Get the health of the server, as told by its last probe (it is created again when the
+	 * server or the credentials change)
+	 * @param config the configuration of the cycle
 	 */
-	public void stop()
+	private synchronized ServerHealth getServerHealth(BambooConfig config)
 	{
-		stop = true;
+		if (this.serverHealth == null || !this.serverHealth.isFor(config))
+		{
+			this.serverHealth = new ServerHealth(config, this.metrics);
+		}
+		return this.serverHealth;
 	}
 
 	/**
 	 * {@inheritDoc}
 	 */
 	public URI getMainPageURI()
+	{
+		URI returnedValue = this.config.get().getMainPageURI();
+		if (returnedValue == null)
+		{
+			throw new RuntimeException("Invalid Bamboo server base URL: " + this.config.get().getServerBaseUrl());
+		}
+		return returnedValue;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	public URI getBuildURI(String idOfTheBuild)
 	{
 		URI returnedValue = null;
 		try
 		{
-			synchronized (this.bambooProperties)
-			{
-				returnedValue = new URI(this.bambooProperties.getServerBaseUrl());
-			}
+			returnedValue = new URI(this.config.get().getServerBaseUrl() + "/browse/" + idOfTheBuild);
 		}
 		catch (URISyntaxException e)
 		{
@@ -147,31 +1577,131 @@ public class BambooMonitor implements Monitor
 	/**
 	 * {@inheritDoc}
 	 */
-	public URI getBuildURI(String idOfTheBuild)
+	public CompletableFuture<FailureDetails> getFailureDetails(String idOfTheBuild)
 	{
-		URI returnedValue = null;
-		try
+		BambooConfig config = this.config.get();
+		CompletableFuture<FailureDetails> details = null;
+		synchronized (this.failureDetails)
 		{
-			synchronized (this.bambooProperties)
+			if (this.failureDetailsServerBaseUrl == null || !this.failureDetailsServerBaseUrl.equals(config.getServerBaseUrl()))
+			{
+				// The details of the builds of another server are of no use
+				this.failureDetails.clear();
+				this.failureDetailsServerBaseUrl = config.getServerBaseUrl();
+			}
+			details = this.failureDetails.get(idOfTheBuild);
+			if (details != null)
 			{
-				returnedValue = new URI(this.bambooProperties.getServerBaseUrl() + "/browse/" + idOfTheBuild);
+				return details;
 			}
+			details = new CompletableFuture<FailureDetails>();
+			this.failureDetails.put(idOfTheBuild, details);
 		}
-		catch (URISyntaxException e)
+		CompletableFuture<FailureDetails> cachedDetails = details;
+		fetchFailureDetails(config, idOfTheBuild).whenComplete((fetchedDetails, failure) -> {
+			if (failure != null)
+			{
+				synchronized (this.failureDetails)
+				{
+					this.failureDetails.remove(idOfTheBuild, cachedDetails);
+				}
+				cachedDetails.completeExceptionally(unwrap(failure));
+			}
+			else
+			{
+				cachedDetails.complete(fetchedDetails);
+			}
+		});
+		return details;
+	}
+
+	/**
+	 * Fetch the details of a failed build, out of any poll cycle. The request is sent from a
+	 * parse thread, so that the caller (the event dispatch thread) never waits for the transport.
+	 */
+	private CompletableFuture<FailureDetails> fetchFailureDetails(BambooConfig config, String buildResultKey)
+	{
+		Cycle cycle = new Cycle(config, null, null, null, getCircuitBreaker(config));
+		return CompletableFuture.supplyAsync(() -> cycle.newRequest(), cycle.transport.getParseExecutor())
+			.thenCompose(request -> fetchDocument(cycle, config.getFailureDetailsUrl(buildResultKey), request))
+			.thenApply(serverResponse -> {
+				try
+				{
+					return BambooResponseParser.parseFailureDetails(serverResponse, MAX_FAILED_TESTS_IN_DETAILS);
+				}
+				catch (XPathExpressionException e)
+				{
+					this.metrics.recordError(ErrorType.PARSE);
+					throw new CompletionException(new MonitoringException(e, null));
+				}
+			});
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public LogTail getLogTail(String idOfTheBuild)
+	{
+		return new JobLogTail(idOfTheBuild);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public String getSystemTrayIconTooltipHeader()
+	{
+		String returnedValue = "Monitoring Bamboo server at " + this.config.get().getServerBaseUrl();
+		CircuitBreaker circuitBreaker = getCircuitBreaker(this.config.get());
+		if (circuitBreaker != null && circuitBreaker.getState() == CircuitBreaker.State.OPEN)
 		{
-			throw new RuntimeException(e);
+			returnedValue += "\nServer overloaded: polling paused, last known status shown";
+		}
+		else if (circuitBreaker != null && circuitBreaker.getState() == CircuitBreaker.State.HALF_OPEN)
+		{
+			returnedValue += "\nServer recovering: polling resumed on trial";
 		}
 		return returnedValue;
 	}
-	
+
 	/**
 	 * {@inheritDoc}
 	 */
-	public String getSystemTrayIconTooltipHeader()
+	public long getNotificationQuietWindowInMillis()
+	{
+		return this.config.get().getNotificationQuietWindowInSeconds() * 1000L;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public void refresh()
+	{
+		synchronized (this.refreshLock)
+		{
+			this.refreshPending = true;
+			this.refreshLock.notifyAll();
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public boolean isRefreshPending()
+	{
+		synchronized (this.refreshLock)
+		{
+			return this.refreshPending;
+		}
+	}
+
+	/**
+	 * Is the monitor thread idle, sleeping until its next poll with no refresh asked for ?
+	 */
+	boolean isIdle()
 	{
-		synchronized (this.bambooProperties)
+		synchronized (this.refreshLock)
 		{
-			return "Monitoring Bamboo server at " + this.bambooProperties.getServerBaseUrl();
+			return this.sleeping && !this.refreshPending;
 		}
 	}
 
@@ -198,229 +1728,286 @@ public class BambooMonitor implements Monitor
 
 		if (optionsDialog.getLastClickedButton() == BambooPropertiesDialog.BUTTON_OK)
 		{
+			updateConfig();
 			// make sure that the new properties are taken into account immediately ?
 			buildMonitorInstance.reportConfigurationUpdatedToBeTakenIntoAccountImmediately();
 		}
 		return optionsDialog;
 	}
 
-	
-	private List<BuildPlan> getProjects(String bambooServerBaseUrl) throws MonitoringException
+	/**
+	 * Fetch a page of the list of plans
+	 * @param projectKey the key of the project whose plans are listed (null to list all the plans)
+	 */
+	private CompletableFuture<PlanPage> fetchPlanPage(Cycle cycle, String projectKey, int startIndex)
 	{
-		List returnList = new ArrayList<BuildReport>();
-		try
-		{
-			String methodURL = bambooServerBaseUrl + "/rest/api/latest/plan"
-					+ "?os_authType=basic";
-			if (bambooProperties.getFavouriteProjectsOnly())
+		String url = (projectKey == null) ? cycle.config.getPlanListUrl(startIndex, PLAN_PAGE_SIZE) : cycle.config.getProjectPlanListUrl(projectKey, startIndex, PLAN_PAGE_SIZE);
+		return fetchDocument(cycle, url, cycle.newRequest()).thenApply(serverResponse -> {
+			try
 			{
-				methodURL += "&favourite";
+				long parseStartTime = System.nanoTime();
+				PlanPage page = BambooResponseParser.parsePlanPage(serverResponse);
+				this.metrics.recordParse(System.nanoTime() - parseStartTime);
+				cycle.numberOfMissingPages.decrementAndGet();
+				return page;
 			}
-			String serverResponse = callBambooApi(new URL(methodURL));
-			InputSource serverResponseIS = new InputSource(new StringReader(serverResponse));
-
-			NodeList nodes = (NodeList) XPathFactory.newInstance().newXPath().evaluate("/plans/plans/plan", serverResponseIS, XPathConstants.NODESET);
-			for (int i = 0; i < nodes.getLength(); i++)
+			catch (XPathExpressionException e)
 			{
-				Element e = (Element) nodes.item(i);
-				BuildPlan plan = new BuildPlan();
-				plan.key = e.getAttribute("key");
-				plan.name = e.getAttribute("name");
-				returnList.add(plan);
+				this.metrics.recordError(ErrorType.PARSE);
+				throw new CompletionException(new MonitoringException(e, null));
 			}
-		}
-		catch (Throwable t)
-		{
-			throw new MonitoringException(t, null);
-		}
-		return returnList;
+		}).exceptionally(failure -> {
+			// A monitored project that does not exist has no plans
+			if (projectKey != null && isCausedBy(failure, FileNotFoundException.class))
+			{
+				cycle.numberOfMissingPages.decrementAndGet();
+				return getPlanPage(new ArrayList<BuildPlan>());
+			}
+			throw failure instanceof CompletionException ? (CompletionException) failure : new CompletionException(failure);
+		});
 	}
 
-	private List<BuildReport> getResultsForProject(String bambooServerBaseUrl, BuildPlan plan) throws MonitoringException
+	/**
+	 * Fetch the results of a plan
+	 */
+	private CompletableFuture<List<BuildReport>> fetchPlanResults(Cycle cycle, BuildPlan plan, Request request)
 	{
-		List returnList = new ArrayList<BuildReport>();
-		try
-		{
-			String methodURL = bambooServerBaseUrl + "/rest/api/latest/result/" + plan.key
-					+ "?os_authType=basic"
-					+ "&expand=results[0].result";
-			if (bambooProperties.getFavouriteProjectsOnly())
+		return fetchDocument(cycle, cycle.config.getPlanResultsUrl(plan.key), request).thenApply(serverResponse -> {
+			try
 			{
-				methodURL += "&favourite";
+				long parseStartTime = System.nanoTime();
+				List<BuildReport> planResults = BambooResponseParser.parseResults(serverResponse, plan.name);
+				this.metrics.recordParse(System.nanoTime() - parseStartTime);
+				this.planRequestLatency.record(System.nanoTime() - request.getStartTime());
+				return planResults;
 			}
-			String serverResponse = callBambooApi(new URL(methodURL));
-			InputSource serverResponseIS = new InputSource(new StringReader(serverResponse));
-
-			NodeList nodes = (NodeList) XPathFactory.newInstance().newXPath().evaluate("/results/results/result", serverResponseIS, XPathConstants.NODESET);
-			for (int i = 0; i < nodes.getLength(); i++)
+			catch (XPathExpressionException e)
 			{
-				Element result = (Element) nodes.item(i);
-				String dateString = getNamedChildNodeValue(result, "buildCompletedTime");
-				String buildState = result.getAttribute("state");
-
-				BuildReport report = new BuildReport();
-				report.setId(result.getAttribute("key"));
-				report.setName(plan.name);
-				report.setDate(parseDate(dateString));
-				report.setStatus(parseBuildState(buildState));
-
-				returnList.add(report);
+				this.metrics.recordError(ErrorType.PARSE);
+				throw new CompletionException(new MonitoringException(e, null));
+			}
+			catch (MonitoringException e)
+			{
+				throw new CompletionException(e);
+			}
+		}).exceptionally(failure -> {
+			// A plan that has not been listed by the server (see PlanKeyFilter.getExactPlanKeys()) may not exist
+			if (plan.name == null && isCausedBy(failure, FileNotFoundException.class))
+			{
+				return new ArrayList<BuildReport>();
 			}
+			if (!request.isCancelled() && !(unwrap(failure) instanceof CancellationException))
+			{
+				long latency = (request.getStartTime() == 0) ? 0 : System.nanoTime() - request.getStartTime();
+				MonitorLogging.log(LOGGER, Level.WARNING, "Plan request failed", null, "cycle", cycle.id, "plan", plan.key, "latencyMs", TimeUnit.NANOSECONDS.toMillis(latency), "problem", unwrap(failure).getMessage());
+			}
+			throw failure instanceof CompletionException ? (CompletionException) failure : new CompletionException(failure);
+		});
+	}
 
+	/**
+	 * Call a bamboo REST api method and parse the response in a parse thread
+	 * @param cycle the cycle of the request
+	 * @param url the URL of the REST api method
+	 * @param request the request, to be able to cancel it
+	 * @return the future parsed response of the server. It completes exceptionally with a
+	 * MonitoringException (wrapped in a CompletionException) if the request fails.
+	 */
+	private CompletableFuture<Document> fetchDocument(Cycle cycle, String url, Request request)
+	{
+		if (cycle.circuitBreaker != null && cycle.circuitBreaker.getState() == CircuitBreaker.State.OPEN)
+		{
+			// The circuit has opened during the cycle: the requests left are not sent
+			return CompletableFuture.failedFuture(new CompletionException(new MonitoringException(OVERLOADED_SERVER_MESSAGE, null)));
 		}
-		catch (Throwable t)
+		URI uri = null;
+		CompletableFuture<HttpResponse<byte[]>> response = null;
+		try
 		{
-			throw new MonitoringException(t, null);
+			uri = new URI(url);
+			response = cycle.transport.send(cycle.config, uri, request);
 		}
-		return returnList;
-	}
-
-	private String getNamedChildNodeValue(Node node, String nodeName) throws MonitoringException
-	{
-		NodeList nodes = node.getChildNodes();
-		for (int i = 0; i < nodes.getLength(); i++)
+		catch (URISyntaxException e)
 		{
-			if (nodeName.equals(nodes.item(i).getNodeName()))
-			{
-				return nodes.item(i).getFirstChild().getNodeValue();
-			}
+			response = CompletableFuture.failedFuture(e);
 		}
-		throw new MonitoringException("Unable to find node with name" + nodeName, null);
+		URI requestUri = uri;
+		return response
+			.thenApplyAsync(serverResponse -> parseServerResponse(serverResponse), cycle.transport.getParseExecutor())
+			.handle((serverResponse, failure) -> {
+				recordRequestOutcome(cycle, request, failure);
+				if (failure != null)
+				{
+					throw new CompletionException(toMonitoringException(failure, requestUri, request));
+				}
+				return serverResponse;
+			});
 	}
 
-	private Date parseDate(String dateString) throws MonitoringException
+	/**
+	 * Fetch a range of bytes of a resource, such as a log (the response is not parsed)
+	 * @param cycle the cycle of the request
+	 * @param url the URL of the resource
+	 * @param range the value of the Range header of the request
+	 * @param request the request, to be able to cancel it
+	 * @return the future response of the server (see BambooTransport.sendRange()). It completes
+	 * exceptionally with a MonitoringException (wrapped in a CompletionException) if the request fails.
+	 */
+	private CompletableFuture<HttpResponse<byte[]>> fetchRange(Cycle cycle, String url, String range, Request request)
 	{
-		SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSZ");
-		// Strip the ':' in the timezone of "2011-08-12T11:25:48.000+02:00"
-		dateString = dateString.substring(0, 26) + dateString.substring(27);
-
+		if (cycle.circuitBreaker != null && cycle.circuitBreaker.getState() == CircuitBreaker.State.OPEN)
+		{
+			return CompletableFuture.failedFuture(new CompletionException(new MonitoringException(OVERLOADED_SERVER_MESSAGE, null)));
+		}
+		URI uri = null;
+		CompletableFuture<HttpResponse<byte[]>> response = null;
 		try
 		{
-			return dateFormat.parse(dateString);
+			uri = new URI(url);
+			response = cycle.transport.sendRange(cycle.config, uri, range, request);
 		}
-		catch (ParseException e)
+		catch (URISyntaxException e)
 		{
-			throw new MonitoringException(e, null);
+			response = CompletableFuture.failedFuture(e);
 		}
+		URI requestUri = uri;
+		return response.handle((serverResponse, failure) -> {
+			recordRequestOutcome(cycle, request, failure);
+			if (failure != null && isCausedBy(failure, FileNotFoundException.class))
+			{
+				throw new CompletionException(new MonitoringException("Problem: the Bamboo server has no log at " + requestUri + ".", null));
+			}
+			if (failure != null)
+			{
+				throw new CompletionException(toMonitoringException(failure, requestUri, request));
+			}
+			return serverResponse;
+		});
 	}
 
-	private Status parseBuildState(String buildState) throws MonitoringException
+	/**
+	 * Record the outcome of a request in the circuit breaker of its cycle (the requests that
+	 * have been cancelled or that have not been sent are not recorded)
+	 */
+	private static void recordRequestOutcome(Cycle cycle, Request request, Throwable failure)
 	{
-		if ("Successful".equals(buildState))
+		if (cycle.circuitBreaker == null || request.getStartTime() == 0 || request.isCancelled() || unwrap(failure) instanceof CancellationException)
 		{
-			return Status.OK;
+			return;
 		}
-		else if ("Failed".equals(buildState))
-		{
-			return Status.FAILED;
-		}
-		else if ("".equals(buildState))
+		cycle.circuitBreaker.recordRequest(failure != null && isServerFailure(unwrap(failure)), System.nanoTime() - request.getStartTime());
+	}
+
+	/**
+	 * Is a failure a sign of an unhealthy server ? (network errors, time outs, 5xx and 429
+	 * responses are; missing resources, authentication failures and parse errors are not)
+	 */
+	private static boolean isServerFailure(Throwable cause)
+	{
+		if (!(cause instanceof IOException) || cause instanceof FileNotFoundException)
 		{
-			//return Status.EMPTY;
-			return Status.FAILED;
+			return false;
 		}
-		else
+		String message = cause.getMessage();
+		if (message != null && message.startsWith("Server returned HTTP response code: "))
 		{
-			throw new MonitoringException("Unknown build state '" + buildState + "' returned", null);
+			return message.startsWith("Server returned HTTP response code: 5") || message.startsWith("Server returned HTTP response code: 429");
 		}
+		return true;
 	}
-	
+
 	/**
-	 * Call a bamboo REST api method and return the result (or throw a MonitoringException)
-	 * @param url
-	 * @return
-	 * ticket is not valid (anymore) and needs to be renewed.
+	 * Map the failure of a request to a MonitoringException (the error is counted, unless
+	 * the request has been cancelled)
+	 * @param failure the failure of the request
+	 * @param uri the URI of the request (null if the URL is not valid)
+	 * @param request the request
 	 */
-	private String callBambooApi(URL url) throws MonitoringException
+	private MonitoringException toMonitoringException(Throwable failure, URI uri, Request request)
 	{
-		String returnedValue = null;
-		try
+		Throwable cause = unwrap(failure);
+		if (cause instanceof MonitoringException)
 		{
-			returnedValue = getServerResponse(url);
+			return (MonitoringException) cause;
 		}
-		catch (ClassCastException e)
+		if (request.isCancelled() || cause instanceof CancellationException)
 		{
-			throw new MonitoringException("Problem: the base URL defined for the Bamboo server in Options is not an http URL.", true, null);
+			return new MonitoringException("Request cancelled.", cause, null);
 		}
-		catch (UnknownHostException e)
+		if (uri == null || cause instanceof IllegalArgumentException)
 		{
-			throw new MonitoringException("Problem: cannot find host " + url.getHost() + " on the network.", true, null);
+			this.metrics.recordError(ErrorType.BAD_URL);
+			return new MonitoringException("Problem: the base URL defined for the Bamboo server in Options is not an http URL.", true, null);
 		}
-		catch (ConnectException e)
+		if (isCausedBy(cause, UnresolvedAddressException.class) || isCausedBy(cause, UnknownHostException.class))
 		{
-			throw new MonitoringException("Problem: cannot connect to port " + url.getPort() + " on host " + url.getHost() + ".", true, null);
+			this.metrics.recordError(ErrorType.UNKNOWN_HOST);
+			return new MonitoringException("Problem: cannot find host " + uri.getHost() + " on the network.", true, null);
 		}
-		catch (FileNotFoundException e)
+		if (cause instanceof HttpTimeoutException)
 		{
-			throw new MonitoringException("Problem: cannot find the Bamboo server REST api using the base URL defined for the Bamboo server in Options. Seems that this URL is not the one to your Bamboo server home page...", true, null);
+			this.metrics.recordError(ErrorType.TIMEOUT);
+			return new MonitoringException("Problem: the Bamboo server did not answer in time.", cause, null);
 		}
-		catch(SocketException e)
+		if (cause instanceof ConnectException)
 		{
-			throw new MonitoringException("Problem: network error, connection lost.", null);
+			this.metrics.recordError(ErrorType.CONNECT);
+			return new MonitoringException("Problem: cannot connect to port " + uri.getPort() + " on host " + uri.getHost() + ".", true, null);
 		}
-		catch (IOException e)
+		if (cause instanceof FileNotFoundException)
 		{
-			if (e.getMessage().contains("Server returned HTTP response code: 401"))
+			this.metrics.recordError(ErrorType.NOT_FOUND);
+			return new MonitoringException("Problem: cannot find the Bamboo server REST api using the base URL defined for the Bamboo server in Options. Seems that this URL is not the one to your Bamboo server home page...", cause, true, null);
+		}
+		if (cause instanceof IOException)
+		{
+			String message = cause.getMessage();
+			if (message != null && message.contains("Server returned HTTP response code: 401"))
 			{
-				throw new MonitoringException("Problem: Authentication failed. Please check your username and password", null);
+				this.metrics.recordError(ErrorType.AUTHENTICATION);
+				return new MonitoringException("Problem: Authentication failed. Please check your username and password", null);
 			}
-			else
+			if (message != null && message.startsWith("Server returned HTTP response code: "))
 			{
-				throw new MonitoringException(e, null);
+				this.metrics.recordError(ErrorType.IO);
+				return new MonitoringException(cause, null);
 			}
+			// The other I/O errors of the HTTP client are errors of the connection
+			this.metrics.recordError(ErrorType.NETWORK);
+			return new MonitoringException("Problem: network error, connection lost.", null);
 		}
-
-		if (returnedValue.contains("<title>Bamboo Setup Wizard - Atlassian Bamboo</title>"))
-		{
-			throw new MonitoringException("Your Bamboo server installation is not finished! Double click here to complete the Bamboo Setup Wizard !", getMainPageURI());
-		}
-
-		return returnedValue;
+		return new MonitoringException(cause, null);
 	}
 
-	private String getServerResponse(URL url) throws IOException
+	/**
+	 * Parse the response of the server. Compressed responses are decompressed while they are parsed.
+	 * @param response the response of the server, whose body has been fully received
+	 * @return the parsed response of the server
+	 */
+	private Document parseServerResponse(HttpResponse<byte[]> response)
 	{
-		String authString = bambooProperties.getUsername() + ":" + bambooProperties.getPassword();
-		authString = new String(Base64.encodeBase64(authString.getBytes()));
-
-		String returnedValue = null;
-		HttpURLConnection urlConnection = null;
-		BufferedReader urlConnectionReader = null;
 		try
 		{
-			urlConnection = (HttpURLConnection) url.openConnection();
-			urlConnection.setDoOutput(true);
-			urlConnection.setRequestProperty("Authorization", "Basic " + authString);
-			urlConnection.connect();
-			urlConnectionReader = new BufferedReader(new InputStreamReader(urlConnection.getInputStream()));
-
-			String line = null;
-			StringBuffer serverResponse = new StringBuffer();
-			while ((line = urlConnectionReader.readLine()) != null)
+			String contentEncoding = response.headers().firstValue("Content-Encoding").orElse(null);
+			CountingInputStream decodedStream = new CountingInputStream(HttpContentEncoding.decode(new ByteArrayInputStream(response.body()), contentEncoding));
+			Document returnedValue = BambooResponseParser.parseDocument(decodedStream);
+			if (HttpContentEncoding.isCompressed(contentEncoding))
 			{
-				serverResponse.append(line);
+				this.metrics.recordCompressedBody(response.body().length, decodedStream.getCount());
 			}
-			returnedValue = serverResponse.toString();
+			return returnedValue;
 		}
-		finally
+		catch (SAXException e)
 		{
-			if (urlConnectionReader != null)
-			{
-				try
-				{
-					urlConnectionReader.close();
-				}
-				catch (IOException e)
-				{
-					// Nothing to be done here
-				}
-			}
-			if (urlConnection != null)
-			{
-				urlConnection.disconnect();
-			}
+			this.metrics.recordError(ErrorType.PARSE);
+			throw new CompletionException(new MonitoringException(e, null));
+		}
+		catch (IOException e)
+		{
+			// The body could not be decompressed
+			this.metrics.recordError(ErrorType.IO);
+			throw new CompletionException(new MonitoringException(e, null));
 		}
-		return returnedValue;
 	}
 
 	private boolean monitorPropertiesNotDefined()
@@ -432,14 +2019,45 @@ public class BambooMonitor implements Monitor
 			(bambooProperties.getPassword() == null));
 	}
 
+	/**
+	 * Sleep until the next poll cycle (the sleep ends early if a refresh is asked for)
+	 */
 	private void sleepInSeconds(Integer seconds)
 	{
-		try
-		{
-			Thread.sleep(seconds * 1000);
-		} catch (InterruptedException e)
+		sleepInMillis(seconds * 1000L);
+	}
+
+	/**
+	 * Sleep until the next poll (the sleep ends early if a refresh is asked for, for instance
+	 * because the properties file has been changed, or if the monitor is stopped)
+	 * @return true if the whole delay has elapsed
+	 */
+	private boolean sleepInMillis(long millis)
+	{
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
+		synchronized (this.refreshLock)
 		{
-			// Nothing to do: continue!
+			try
+			{
+				long remainingTimeInMillis = millis;
+				this.sleeping = true;
+				while (!this.refreshPending && !stop && remainingTimeInMillis > 0)
+				{
+					this.refreshLock.wait(remainingTimeInMillis);
+					remainingTimeInMillis = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+				}
+			}
+			catch (InterruptedException e)
+			{
+				// Nothing to do: continue!
+				MonitorLogging.log(LOGGER, Level.FINE, "Monitor thread interrupted while waiting for the next cycle", null);
+				return false;
+			}
+			finally
+			{
+				this.sleeping = false;
+			}
+			return !this.refreshPending && !stop;
 		}
 	}
 }
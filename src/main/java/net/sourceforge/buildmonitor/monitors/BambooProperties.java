@@ -20,6 +20,8 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
 import java.util.Date;
 import java.util.Properties;
 
@@ -37,7 +39,33 @@ public class BambooProperties
 	private static final String UPDATE_PERIOD_IN_SECONDS_PROPERTY_KEY = "update.period.in.seconds";
 	private static final String BAMBOO_SERVER_BASE_URL_PROPERTY_KEY = "bamboo.server.base.url";
 	private static final String BAMBOO_PROJECT_PROPERTY_KEY = "bamboo.server.project_keys";
+	private static final String BAMBOO_EXCLUDED_PROJECT_PROPERTY_KEY = "bamboo.server.excluded_project_keys";
 	private static final String BAMBOO_FAVOURITE_PROJECTS_ONLY = "bamboo.favourite.projects.only";
+	private static final String CONNECT_TIMEOUT_IN_SECONDS_PROPERTY_KEY = "connect.timeout.in.seconds";
+	private static final String READ_TIMEOUT_IN_SECONDS_PROPERTY_KEY = "read.timeout.in.seconds";
+	private static final String CYCLE_DEADLINE_IN_SECONDS_PROPERTY_KEY = "cycle.deadline.in.seconds";
+	private static final String HEDGED_REQUESTS_PROPERTY_KEY = "hedged.requests";
+	private static final String MAX_CONCURRENT_REQUESTS_PROPERTY_KEY = "max.concurrent.requests";
+	private static final String VIRTUAL_THREADS_PROPERTY_KEY = "virtual.threads";
+	private static final String HTTP2_PROPERTY_KEY = "http2";
+	private static final String NOTIFICATION_QUIET_WINDOW_IN_SECONDS_PROPERTY_KEY = "notification.quiet.window.in.seconds";
+	private static final String RUNNING_BUILDS_POLL_PERIOD_IN_SECONDS_PROPERTY_KEY = "running.builds.poll.period.in.seconds";
+	private static final String MAX_PLAN_POLL_PERIOD_IN_SECONDS_PROPERTY_KEY = "max.plan.poll.period.in.seconds";
+	private static final String MAX_PLAN_REQUESTS_PER_CYCLE_PROPERTY_KEY = "max.plan.requests.per.cycle";
+	private static final String CIRCUIT_BREAKER_PROPERTY_KEY = "circuit.breaker";
+	private static final String CHANGE_PROBE_PROPERTY_KEY = "change.probe";
+	private static final String TRAFFIC_RECORD_FILE_PROPERTY_KEY = "traffic.record.file";
+	private static final String TRAFFIC_REPLAY_FILE_PROPERTY_KEY = "traffic.replay.file";
+	private static final String TRAFFIC_REPLAY_SPEED_PROPERTY_KEY = "traffic.replay.speed";
+	private static final int DEFAULT_CONNECT_TIMEOUT_IN_SECONDS = 10;
+	private static final int DEFAULT_READ_TIMEOUT_IN_SECONDS = 30;
+	private static final int DEFAULT_CYCLE_DEADLINE_IN_SECONDS = 60;
+	private static final int DEFAULT_MAX_CONCURRENT_REQUESTS = 4;
+	private static final int DEFAULT_NOTIFICATION_QUIET_WINDOW_IN_SECONDS = 600;
+	private static final int DEFAULT_RUNNING_BUILDS_POLL_PERIOD_IN_SECONDS = 10;
+	private static final int DEFAULT_MAX_PLAN_POLL_PERIOD_IN_SECONDS = 3600;
+	private static final int DEFAULT_MAX_PLAN_REQUESTS_PER_CYCLE = 100;
+	private static final int DEFAULT_TRAFFIC_REPLAY_SPEED = 1;
 	private static final String USER_PROPERTIES_FILE = "bamboo-monitor.properties";
 
 	private String serverBaseUrl;
@@ -45,6 +73,24 @@ public class BambooProperties
 	private String password;
 	private Integer updatePeriodInSeconds;
 	private Boolean favouriteProjectsOnly;
+	private String projectKeys;
+	private String excludedProjectKeys;
+	private Integer connectTimeoutInSeconds;
+	private Integer readTimeoutInSeconds;
+	private Integer cycleDeadlineInSeconds;
+	private Boolean hedgedRequests;
+	private Integer maxConcurrentRequests;
+	private Boolean virtualThreads;
+	private Boolean http2;
+	private Integer notificationQuietWindowInSeconds;
+	private Integer runningBuildsPollPeriodInSeconds;
+	private Integer maxPlanPollPeriodInSeconds;
+	private Integer maxPlanRequestsPerCycle;
+	private Boolean circuitBreaker;
+	private Boolean changeProbe;
+	private String trafficRecordFile;
+	private String trafficReplayFile;
+	private Integer trafficReplaySpeed;
 
 	public BambooProperties()
 	{
@@ -53,6 +99,24 @@ public class BambooProperties
 		this.password = "";
 		this.updatePeriodInSeconds = 300;
 		this.favouriteProjectsOnly = new Boolean(false);
+		this.projectKeys = "";
+		this.excludedProjectKeys = "";
+		this.connectTimeoutInSeconds = DEFAULT_CONNECT_TIMEOUT_IN_SECONDS;
+		this.readTimeoutInSeconds = DEFAULT_READ_TIMEOUT_IN_SECONDS;
+		this.cycleDeadlineInSeconds = DEFAULT_CYCLE_DEADLINE_IN_SECONDS;
+		this.hedgedRequests = Boolean.TRUE;
+		this.maxConcurrentRequests = DEFAULT_MAX_CONCURRENT_REQUESTS;
+		this.virtualThreads = Boolean.FALSE;
+		this.http2 = Boolean.FALSE;
+		this.notificationQuietWindowInSeconds = DEFAULT_NOTIFICATION_QUIET_WINDOW_IN_SECONDS;
+		this.runningBuildsPollPeriodInSeconds = DEFAULT_RUNNING_BUILDS_POLL_PERIOD_IN_SECONDS;
+		this.maxPlanPollPeriodInSeconds = DEFAULT_MAX_PLAN_POLL_PERIOD_IN_SECONDS;
+		this.maxPlanRequestsPerCycle = DEFAULT_MAX_PLAN_REQUESTS_PER_CYCLE;
+		this.circuitBreaker = Boolean.TRUE;
+		this.changeProbe = Boolean.TRUE;
+		this.trafficRecordFile = "";
+		this.trafficReplayFile = "";
+		this.trafficReplaySpeed = DEFAULT_TRAFFIC_REPLAY_SPEED;
 	}
 
 	/**
@@ -61,7 +125,16 @@ public class BambooProperties
 	 */
 	public void loadFromFile() throws FileNotFoundException, IOException
 	{
-		loadFromFile(new File(System.getProperty("user.home"), USER_PROPERTIES_FILE));
+		loadFromFile(getUserPropertiesFile());
+	}
+
+	/**
+	 * Get the {@link #USER_PROPERTIES_FILE} file in the user home directory
+	 * @return the properties file of the user
+	 */
+	public static File getUserPropertiesFile()
+	{
+		return new File(System.getProperty("user.home"), USER_PROPERTIES_FILE);
 	}
 	
 	/**
@@ -86,6 +159,24 @@ public class BambooProperties
 			setUpdatePeriodInSeconds(bambooMonitorProperties.getProperty(UPDATE_PERIOD_IN_SECONDS_PROPERTY_KEY));
 			setUsername(bambooMonitorProperties.getProperty(BAMBOO_USERNAME_PROPERTY_KEY));
 			setFavouriteProjectsOnly(bambooMonitorProperties.getProperty(BAMBOO_FAVOURITE_PROJECTS_ONLY));
+			setProjectKeys(bambooMonitorProperties.getProperty(BAMBOO_PROJECT_PROPERTY_KEY));
+			setExcludedProjectKeys(bambooMonitorProperties.getProperty(BAMBOO_EXCLUDED_PROJECT_PROPERTY_KEY));
+			setConnectTimeoutInSeconds(bambooMonitorProperties.getProperty(CONNECT_TIMEOUT_IN_SECONDS_PROPERTY_KEY));
+			setReadTimeoutInSeconds(bambooMonitorProperties.getProperty(READ_TIMEOUT_IN_SECONDS_PROPERTY_KEY));
+			setCycleDeadlineInSeconds(bambooMonitorProperties.getProperty(CYCLE_DEADLINE_IN_SECONDS_PROPERTY_KEY));
+			setHedgedRequests(bambooMonitorProperties.getProperty(HEDGED_REQUESTS_PROPERTY_KEY));
+			setMaxConcurrentRequests(bambooMonitorProperties.getProperty(MAX_CONCURRENT_REQUESTS_PROPERTY_KEY));
+			setVirtualThreads(bambooMonitorProperties.getProperty(VIRTUAL_THREADS_PROPERTY_KEY));
+			setHttp2(bambooMonitorProperties.getProperty(HTTP2_PROPERTY_KEY));
+			setNotificationQuietWindowInSeconds(bambooMonitorProperties.getProperty(NOTIFICATION_QUIET_WINDOW_IN_SECONDS_PROPERTY_KEY));
+			setRunningBuildsPollPeriodInSeconds(bambooMonitorProperties.getProperty(RUNNING_BUILDS_POLL_PERIOD_IN_SECONDS_PROPERTY_KEY));
+			setMaxPlanPollPeriodInSeconds(bambooMonitorProperties.getProperty(MAX_PLAN_POLL_PERIOD_IN_SECONDS_PROPERTY_KEY));
+			setMaxPlanRequestsPerCycle(bambooMonitorProperties.getProperty(MAX_PLAN_REQUESTS_PER_CYCLE_PROPERTY_KEY));
+			setCircuitBreaker(bambooMonitorProperties.getProperty(CIRCUIT_BREAKER_PROPERTY_KEY));
+			setChangeProbe(bambooMonitorProperties.getProperty(CHANGE_PROBE_PROPERTY_KEY));
+			setTrafficRecordFile(bambooMonitorProperties.getProperty(TRAFFIC_RECORD_FILE_PROPERTY_KEY));
+			setTrafficReplayFile(bambooMonitorProperties.getProperty(TRAFFIC_REPLAY_FILE_PROPERTY_KEY));
+			setTrafficReplaySpeed(bambooMonitorProperties.getProperty(TRAFFIC_REPLAY_SPEED_PROPERTY_KEY));
 			String proppassword = bambooMonitorProperties.getProperty(BAMBOO_PASSWORD_PROPERTY_KEY);
 			if (proppassword != null && proppassword.startsWith("{base64}"))
 			{
@@ -111,16 +202,71 @@ public class BambooProperties
 			bambooMonitorProperties.setProperty(BAMBOO_USERNAME_PROPERTY_KEY, getUsername());
 			bambooMonitorProperties.setProperty(BAMBOO_PASSWORD_PROPERTY_KEY, proppassword);
 			bambooMonitorProperties.setProperty(BAMBOO_FAVOURITE_PROJECTS_ONLY, "" + getFavouriteProjectsOnly());
+			bambooMonitorProperties.setProperty(BAMBOO_PROJECT_PROPERTY_KEY, getProjectKeys());
+			bambooMonitorProperties.setProperty(BAMBOO_EXCLUDED_PROJECT_PROPERTY_KEY, getExcludedProjectKeys());
 			bambooMonitorProperties.setProperty(UPDATE_PERIOD_IN_SECONDS_PROPERTY_KEY, "" + getUpdatePeriodInSeconds());
+			bambooMonitorProperties.setProperty(CONNECT_TIMEOUT_IN_SECONDS_PROPERTY_KEY, "" + getConnectTimeoutInSeconds());
+			bambooMonitorProperties.setProperty(READ_TIMEOUT_IN_SECONDS_PROPERTY_KEY, "" + getReadTimeoutInSeconds());
+			bambooMonitorProperties.setProperty(CYCLE_DEADLINE_IN_SECONDS_PROPERTY_KEY, "" + getCycleDeadlineInSeconds());
+			bambooMonitorProperties.setProperty(HEDGED_REQUESTS_PROPERTY_KEY, "" + getHedgedRequests());
+			bambooMonitorProperties.setProperty(MAX_CONCURRENT_REQUESTS_PROPERTY_KEY, "" + getMaxConcurrentRequests());
+			bambooMonitorProperties.setProperty(VIRTUAL_THREADS_PROPERTY_KEY, "" + getVirtualThreads());
+			bambooMonitorProperties.setProperty(HTTP2_PROPERTY_KEY, "" + getHttp2());
+			bambooMonitorProperties.setProperty(NOTIFICATION_QUIET_WINDOW_IN_SECONDS_PROPERTY_KEY, "" + getNotificationQuietWindowInSeconds());
+			bambooMonitorProperties.setProperty(RUNNING_BUILDS_POLL_PERIOD_IN_SECONDS_PROPERTY_KEY, "" + getRunningBuildsPollPeriodInSeconds());
+			bambooMonitorProperties.setProperty(MAX_PLAN_POLL_PERIOD_IN_SECONDS_PROPERTY_KEY, "" + getMaxPlanPollPeriodInSeconds());
+			bambooMonitorProperties.setProperty(MAX_PLAN_REQUESTS_PER_CYCLE_PROPERTY_KEY, "" + getMaxPlanRequestsPerCycle());
+			bambooMonitorProperties.setProperty(CIRCUIT_BREAKER_PROPERTY_KEY, "" + getCircuitBreaker());
+			bambooMonitorProperties.setProperty(CHANGE_PROBE_PROPERTY_KEY, "" + getChangeProbe());
+			bambooMonitorProperties.setProperty(TRAFFIC_RECORD_FILE_PROPERTY_KEY, getTrafficRecordFile());
+			bambooMonitorProperties.setProperty(TRAFFIC_REPLAY_FILE_PROPERTY_KEY, getTrafficReplayFile());
+			bambooMonitorProperties.setProperty(TRAFFIC_REPLAY_SPEED_PROPERTY_KEY, "" + getTrafficReplaySpeed());
 		}
 		
 		// Store the Properties object in the file
-		File bambooMonitorPropertiesFile = new File(System.getProperty("user.home"), USER_PROPERTIES_FILE);
+		File bambooMonitorPropertiesFile = getUserPropertiesFile();
 		FileOutputStream buildMonitorPropertiesOutputStream = new FileOutputStream(bambooMonitorPropertiesFile);
 		bambooMonitorProperties.store(buildMonitorPropertiesOutputStream, "File last updated on " + new Date());
 		buildMonitorPropertiesOutputStream.close();
 	}
 
+	/**
+	 * Check that the properties can be used to monitor a Bamboo server
+	 * @throws IllegalArgumentException if a property is missing or invalid
+	 */
+	public synchronized void validate() throws IllegalArgumentException
+	{
+		if (getServerBaseUrl() == null)
+		{
+			throw new IllegalArgumentException(BAMBOO_SERVER_BASE_URL_PROPERTY_KEY + " is missing");
+		}
+		try
+		{
+			String protocol = new URL(getServerBaseUrl()).getProtocol();
+			if (!"http".equals(protocol) && !"https".equals(protocol))
+			{
+				throw new IllegalArgumentException(BAMBOO_SERVER_BASE_URL_PROPERTY_KEY + " is not an http URL");
+			}
+		}
+		catch (MalformedURLException e)
+		{
+			throw new IllegalArgumentException(BAMBOO_SERVER_BASE_URL_PROPERTY_KEY + " is not a valid URL");
+		}
+		if (getUsername() == null)
+		{
+			throw new IllegalArgumentException(BAMBOO_USERNAME_PROPERTY_KEY + " is missing");
+		}
+		if (getPassword() == null)
+		{
+			throw new IllegalArgumentException(BAMBOO_PASSWORD_PROPERTY_KEY + " is missing");
+		}
+		if (getUpdatePeriodInSeconds() == null || getUpdatePeriodInSeconds() <= 0)
+		{
+			throw new IllegalArgumentException(UPDATE_PERIOD_IN_SECONDS_PROPERTY_KEY + " must be a positive number of seconds");
+		}
+		PlanKeyFilter.compile(getProjectKeys(), getExcludedProjectKeys());
+	}
+
 	public BambooPropertiesDialog displayOptionsDialog(boolean isDialogOpenedForPropertiesCreation)
 	{
 
@@ -141,6 +287,8 @@ public class BambooProperties
 		optionsDialog.passwordField.setText(getPassword());
 		optionsDialog.updatePeriodField.setValue(getUpdatePeriodInSeconds() / 60);
 		optionsDialog.favouriteProjectsOnly.setSelected(getFavouriteProjectsOnly());
+		optionsDialog.projectKeysField.setText(getProjectKeys());
+		optionsDialog.excludedProjectKeysField.setText(getExcludedProjectKeys());
 
 		// If the dialog is opened for properties edition (not creation), update fields status (ok / error)
 		if (!isDialogOpenedForPropertiesCreation)
@@ -148,6 +296,7 @@ public class BambooProperties
 			optionsDialog.updateBaseURLFieldStatus();
 			optionsDialog.updateUsernameFieldStatus();
 			optionsDialog.updatePasswordFieldStatus();
+			optionsDialog.updateProjectKeysFieldsStatus();
 		}
 
 		// Show the options dialog
@@ -168,6 +317,8 @@ public class BambooProperties
 				setPassword(new String(optionsDialog.passwordField.getPassword()));
 				setUpdatePeriodInSeconds((Integer) (optionsDialog.updatePeriodField.getValue()) * 60);
 				setFavouriteProjectsOnly(optionsDialog.favouriteProjectsOnly.isSelected());
+				setProjectKeys(optionsDialog.projectKeysField.getText());
+				setExcludedProjectKeys(optionsDialog.excludedProjectKeysField.getText());
 			}
 			try
 			{
@@ -316,4 +467,551 @@ public class BambooProperties
 			setFavouriteProjectsOnly(new Boolean(false));
 		}
 	}
+
+	/**
+	 * Get the keys of the monitored projects or plans (see {@link PlanKeyFilter})
+	 * @return the keys of the monitored projects or plans (all the plans are monitored if it is empty)
+	 */
+	public String getProjectKeys()
+	{
+		return this.projectKeys;
+	}
+
+	/**
+	 * Set the keys of the monitored projects or plans (see {@link PlanKeyFilter})
+	 * @param projectKeys the keys of the monitored projects or plans
+	 */
+	public void setProjectKeys(String projectKeys)
+	{
+		this.projectKeys = (projectKeys != null) ? projectKeys.trim() : "";
+	}
+
+	/**
+	 * Get the keys of the projects or plans that are not monitored (see {@link PlanKeyFilter})
+	 * @return the keys of the projects or plans that are not monitored
+	 */
+	public String getExcludedProjectKeys()
+	{
+		return this.excludedProjectKeys;
+	}
+
+	/**
+	 * Set the keys of the projects or plans that are not monitored (see {@link PlanKeyFilter})
+	 * @param excludedProjectKeys the keys of the projects or plans that are not monitored
+	 */
+	public void setExcludedProjectKeys(String excludedProjectKeys)
+	{
+		this.excludedProjectKeys = (excludedProjectKeys != null) ? excludedProjectKeys.trim() : "";
+	}
+
+	/**
+	 * Get the timeout (in seconds) of the connection to the bamboo server
+	 * @return the timeout (in seconds) of the connection to the bamboo server
+	 */
+	public Integer getConnectTimeoutInSeconds()
+	{
+		return this.connectTimeoutInSeconds;
+	}
+
+	/**
+	 * Set the timeout (in seconds) of the connection to the bamboo server
+	 * @param connectTimeoutInSeconds the timeout (in seconds) of the connection to the bamboo server
+	 */
+	public void setConnectTimeoutInSeconds(Integer connectTimeoutInSeconds)
+	{
+		this.connectTimeoutInSeconds = connectTimeoutInSeconds;
+	}
+
+	/**
+	 * Set the timeout (in seconds) of the connection to the bamboo server
+	 * @param connectTimeoutInSeconds the timeout (in seconds) of the connection to the bamboo server
+	 */
+	public void setConnectTimeoutInSeconds(String connectTimeoutInSeconds)
+	{
+		setConnectTimeoutInSeconds(parsePositiveInteger(connectTimeoutInSeconds, DEFAULT_CONNECT_TIMEOUT_IN_SECONDS));
+	}
+
+	/**
+	 * Get the maximum time (in seconds) to wait for data from the bamboo server
+	 * @return the maximum time (in seconds) to wait for data from the bamboo server
+	 */
+	public Integer getReadTimeoutInSeconds()
+	{
+		return this.readTimeoutInSeconds;
+	}
+
+	/**
+	 * Set the maximum time (in seconds) to wait for data from the bamboo server
+	 * @param readTimeoutInSeconds the maximum time (in seconds) to wait for data from the bamboo server
+	 */
+	public void setReadTimeoutInSeconds(Integer readTimeoutInSeconds)
+	{
+		this.readTimeoutInSeconds = readTimeoutInSeconds;
+	}
+
+	/**
+	 * Set the maximum time (in seconds) to wait for data from the bamboo server
+	 * @param readTimeoutInSeconds the maximum time (in seconds) to wait for data from the bamboo server
+	 */
+	public void setReadTimeoutInSeconds(String readTimeoutInSeconds)
+	{
+		setReadTimeoutInSeconds(parsePositiveInteger(readTimeoutInSeconds, DEFAULT_READ_TIMEOUT_IN_SECONDS));
+	}
+
+	/**
+	 * Get the maximum duration (in seconds) of a build status update: the builds that are
+	 * not updated in time keep their last known status
+	 * @return the maximum duration (in seconds) of a build status update
+	 */
+	public Integer getCycleDeadlineInSeconds()
+	{
+		return this.cycleDeadlineInSeconds;
+	}
+
+	/**
+	 * Set the maximum duration (in seconds) of a build status update
+	 * @param cycleDeadlineInSeconds the maximum duration (in seconds) of a build status update
+	 */
+	public void setCycleDeadlineInSeconds(Integer cycleDeadlineInSeconds)
+	{
+		this.cycleDeadlineInSeconds = cycleDeadlineInSeconds;
+	}
+
+	/**
+	 * Set the maximum duration (in seconds) of a build status update
+	 * @param cycleDeadlineInSeconds the maximum duration (in seconds) of a build status update
+	 */
+	public void setCycleDeadlineInSeconds(String cycleDeadlineInSeconds)
+	{
+		setCycleDeadlineInSeconds(parsePositiveInteger(cycleDeadlineInSeconds, DEFAULT_CYCLE_DEADLINE_IN_SECONDS));
+	}
+
+	/**
+	 * Get the hedged requests flag: when it is set, a second request is sent for
+	 * the plans whose results are much slower to come than usual
+	 */
+	public Boolean getHedgedRequests()
+	{
+		return this.hedgedRequests;
+	}
+
+	/**
+	 * Set the hedged requests flag
+	 * @param hedgedRequests the hedged requests flag
+	 */
+	public void setHedgedRequests(Boolean hedgedRequests)
+	{
+		this.hedgedRequests = hedgedRequests;
+	}
+
+	/**
+	 * Set the hedged requests flag
+	 * @param hedgedRequests the hedged requests flag
+	 */
+	public void setHedgedRequests(String hedgedRequests)
+	{
+		if (hedgedRequests != null)
+		{
+			setHedgedRequests(Boolean.parseBoolean(hedgedRequests));
+		}
+		else
+		{
+			setHedgedRequests(Boolean.TRUE);
+		}
+	}
+
+	/**
+	 * Get the maximum number of requests sent to the bamboo server at the same time
+	 * @return the maximum number of requests sent to the bamboo server at the same time
+	 */
+	public Integer getMaxConcurrentRequests()
+	{
+		return this.maxConcurrentRequests;
+	}
+
+	/**
+	 * Set the maximum number of requests sent to the bamboo server at the same time
+	 * @param maxConcurrentRequests the maximum number of requests sent to the bamboo server at the same time
+	 */
+	public void setMaxConcurrentRequests(Integer maxConcurrentRequests)
+	{
+		this.maxConcurrentRequests = maxConcurrentRequests;
+	}
+
+	/**
+	 * Set the maximum number of requests sent to the bamboo server at the same time
+	 * @param maxConcurrentRequests the maximum number of requests sent to the bamboo server at the same time
+	 */
+	public void setMaxConcurrentRequests(String maxConcurrentRequests)
+	{
+		setMaxConcurrentRequests(parsePositiveInteger(maxConcurrentRequests, DEFAULT_MAX_CONCURRENT_REQUESTS));
+	}
+
+	/**
+	 * Get the virtual threads flag: when it is set and the JVM supports virtual threads
+	 * (Java 21 and later), the HTTP client handles the responses in virtual threads instead
+	 * of platform threads. The requests themselves are asynchronous: they do not hold a
+	 * thread while they wait for the server.
+	 */
+	public Boolean getVirtualThreads()
+	{
+		return this.virtualThreads;
+	}
+
+	/**
+	 * Set the virtual threads flag
+	 * @param virtualThreads the virtual threads flag
+	 */
+	public void setVirtualThreads(Boolean virtualThreads)
+	{
+		this.virtualThreads = virtualThreads;
+	}
+
+	/**
+	 * Set the virtual threads flag
+	 * @param virtualThreads the virtual threads flag
+	 */
+	public void setVirtualThreads(String virtualThreads)
+	{
+		if (virtualThreads != null)
+		{
+			setVirtualThreads(Boolean.parseBoolean(virtualThreads));
+		}
+		else
+		{
+			setVirtualThreads(Boolean.FALSE);
+		}
+	}
+
+	/**
+	 * Get the HTTP/2 flag: when it is set, the requests are sent with HTTP/2 if the server (or
+	 * the proxy in front of it) supports it, and with HTTP/1.1 otherwise
+	 */
+	public Boolean getHttp2()
+	{
+		return this.http2;
+	}
+
+	/**
+	 * Set the HTTP/2 flag
+	 * @param http2 the HTTP/2 flag
+	 */
+	public void setHttp2(Boolean http2)
+	{
+		this.http2 = http2;
+	}
+
+	/**
+	 * Set the HTTP/2 flag
+	 * @param http2 the HTTP/2 flag
+	 */
+	public void setHttp2(String http2)
+	{
+		if (http2 != null)
+		{
+			setHttp2(Boolean.parseBoolean(http2));
+		}
+		else
+		{
+			setHttp2(Boolean.FALSE);
+		}
+	}
+
+	/**
+	 * Get the quiet window of the notifications: the build status transitions within
+	 * the window are merged into one notification (0 to notify every transition immediately)
+	 * @return the quiet window of the notifications, in seconds
+	 */
+	public Integer getNotificationQuietWindowInSeconds()
+	{
+		return this.notificationQuietWindowInSeconds;
+	}
+
+	/**
+	 * Set the quiet window of the notifications
+	 * @param notificationQuietWindowInSeconds the quiet window of the notifications, in seconds
+	 */
+	public void setNotificationQuietWindowInSeconds(Integer notificationQuietWindowInSeconds)
+	{
+		this.notificationQuietWindowInSeconds = notificationQuietWindowInSeconds;
+	}
+
+	/**
+	 * Set the quiet window of the notifications
+	 * @param notificationQuietWindowInSeconds the quiet window of the notifications, in seconds
+	 */
+	public void setNotificationQuietWindowInSeconds(String notificationQuietWindowInSeconds)
+	{
+		int quietWindow = DEFAULT_NOTIFICATION_QUIET_WINDOW_IN_SECONDS;
+		if (notificationQuietWindowInSeconds != null)
+		{
+			try
+			{
+				quietWindow = Math.max(0, Integer.parseInt(notificationQuietWindowInSeconds.trim()));
+			}
+			catch (NumberFormatException e)
+			{
+				// Use the default value
+			}
+		}
+		setNotificationQuietWindowInSeconds(quietWindow);
+	}
+
+	/**
+	 * Get the poll period of the plans that have a build in progress (running or queued): they
+	 * are polled more often than the others, so that the end of their builds is seen early
+	 * @return the poll period of the plans that have a build in progress, in seconds
+	 */
+	public Integer getRunningBuildsPollPeriodInSeconds()
+	{
+		return this.runningBuildsPollPeriodInSeconds;
+	}
+
+	/**
+	 * Set the poll period of the plans that have a build in progress
+	 * @param runningBuildsPollPeriodInSeconds the poll period of the plans that have a build in progress, in seconds
+	 */
+	public void setRunningBuildsPollPeriodInSeconds(Integer runningBuildsPollPeriodInSeconds)
+	{
+		this.runningBuildsPollPeriodInSeconds = runningBuildsPollPeriodInSeconds;
+	}
+
+	/**
+	 * Set the poll period of the plans that have a build in progress
+	 * @param runningBuildsPollPeriodInSeconds the poll period of the plans that have a build in progress, in seconds
+	 */
+	public void setRunningBuildsPollPeriodInSeconds(String runningBuildsPollPeriodInSeconds)
+	{
+		setRunningBuildsPollPeriodInSeconds(parsePositiveInteger(runningBuildsPollPeriodInSeconds, DEFAULT_RUNNING_BUILDS_POLL_PERIOD_IN_SECONDS));
+	}
+
+	/**
+	 * Get the maximum poll period of a plan: the plans that do not change are polled less and
+	 * less often, down to once per maximum poll period, and a plan that is not due is polled
+	 * as soon as the change probe tells that it has a new build (0, or a period not longer than
+	 * the update period, to poll all the plans at each update; without the change probe, all
+	 * the plans are polled at each update)
+	 * @return the maximum poll period of a plan, in seconds
+	 */
+	public Integer getMaxPlanPollPeriodInSeconds()
+	{
+		return this.maxPlanPollPeriodInSeconds;
+	}
+
+	/**
+	 * Set the maximum poll period of a plan
+	 * @param maxPlanPollPeriodInSeconds the maximum poll period of a plan, in seconds
+	 */
+	public void setMaxPlanPollPeriodInSeconds(Integer maxPlanPollPeriodInSeconds)
+	{
+		this.maxPlanPollPeriodInSeconds = maxPlanPollPeriodInSeconds;
+	}
+
+	/**
+	 * Set the maximum poll period of a plan
+	 * @param maxPlanPollPeriodInSeconds the maximum poll period of a plan, in seconds
+	 */
+	public void setMaxPlanPollPeriodInSeconds(String maxPlanPollPeriodInSeconds)
+	{
+		setMaxPlanPollPeriodInSeconds(parseNonNegativeInteger(maxPlanPollPeriodInSeconds, DEFAULT_MAX_PLAN_POLL_PERIOD_IN_SECONDS));
+	}
+
+	/**
+	 * Get the maximum number of requests for plan results in an update, when the plans are
+	 * polled at their own pace (the plans that are due the longest are polled first, the
+	 * others wait for the next update). The plans seen for the first time are always polled.
+	 * @return the maximum number of requests for plan results in an update (0 for no maximum)
+	 */
+	public Integer getMaxPlanRequestsPerCycle()
+	{
+		return this.maxPlanRequestsPerCycle;
+	}
+
+	/**
+	 * Set the maximum number of requests for plan results in an update
+	 * @param maxPlanRequestsPerCycle the maximum number of requests for plan results in an update (0 for no maximum)
+	 */
+	public void setMaxPlanRequestsPerCycle(Integer maxPlanRequestsPerCycle)
+	{
+		this.maxPlanRequestsPerCycle = maxPlanRequestsPerCycle;
+	}
+
+	/**
+	 * Set the maximum number of requests for plan results in an update
+	 * @param maxPlanRequestsPerCycle the maximum number of requests for plan results in an update (0 for no maximum)
+	 */
+	public void setMaxPlanRequestsPerCycle(String maxPlanRequestsPerCycle)
+	{
+		setMaxPlanRequestsPerCycle(parseNonNegativeInteger(maxPlanRequestsPerCycle, DEFAULT_MAX_PLAN_REQUESTS_PER_CYCLE));
+	}
+
+	/**
+	 * Get the circuit breaker flag: when it is set, the monitor stops to poll a server that
+	 * fails or answers too slowly, and only probes it until it recovers
+	 */
+	public Boolean getCircuitBreaker()
+	{
+		return this.circuitBreaker;
+	}
+
+	/**
+	 * Set the circuit breaker flag
+	 * @param circuitBreaker the circuit breaker flag
+	 */
+	public void setCircuitBreaker(Boolean circuitBreaker)
+	{
+		this.circuitBreaker = circuitBreaker;
+	}
+
+	/**
+	 * Set the circuit breaker flag
+	 * @param circuitBreaker the circuit breaker flag
+	 */
+	public void setCircuitBreaker(String circuitBreaker)
+	{
+		if (circuitBreaker != null)
+		{
+			setCircuitBreaker(Boolean.parseBoolean(circuitBreaker));
+		}
+		else
+		{
+			setCircuitBreaker(Boolean.TRUE);
+		}
+	}
+
+	/**
+	 * Get the change probe flag: when it is set, each poll cycle lists the latest result of
+	 * every plan first, and only fetches the results of the plans that have a new build
+	 */
+	public Boolean getChangeProbe()
+	{
+		return this.changeProbe;
+	}
+
+	/**
+	 * Set the change probe flag
+	 * @param changeProbe the change probe flag
+	 */
+	public void setChangeProbe(Boolean changeProbe)
+	{
+		this.changeProbe = changeProbe;
+	}
+
+	/**
+	 * Set the change probe flag
+	 * @param changeProbe the change probe flag
+	 */
+	public void setChangeProbe(String changeProbe)
+	{
+		if (changeProbe != null)
+		{
+			setChangeProbe(Boolean.parseBoolean(changeProbe));
+		}
+		else
+		{
+			setChangeProbe(Boolean.TRUE);
+		}
+	}
+
+	/**
+	 * Get the file the requests to the server and their responses are recorded to, to be
+	 * replayed later (see {@link #getTrafficReplayFile()})
+	 * @return the file the requests are recorded to (empty if the requests are not recorded)
+	 */
+	public String getTrafficRecordFile()
+	{
+		return this.trafficRecordFile;
+	}
+
+	/**
+	 * Set the file the requests to the server and their responses are recorded to
+	 * @param trafficRecordFile the file the requests are recorded to (empty if the requests are not recorded)
+	 */
+	public void setTrafficRecordFile(String trafficRecordFile)
+	{
+		this.trafficRecordFile = (trafficRecordFile != null) ? trafficRecordFile.trim() : "";
+	}
+
+	/**
+	 * Get the file of recorded requests that is replayed instead of sending the requests to
+	 * the server: the monitor then runs without a server
+	 * @return the file of recorded requests (empty if the requests are sent to the server)
+	 */
+	public String getTrafficReplayFile()
+	{
+		return this.trafficReplayFile;
+	}
+
+	/**
+	 * Set the file of recorded requests that is replayed instead of sending the requests to the server
+	 * @param trafficReplayFile the file of recorded requests (empty if the requests are sent to the server)
+	 */
+	public void setTrafficReplayFile(String trafficReplayFile)
+	{
+		this.trafficReplayFile = (trafficReplayFile != null) ? trafficReplayFile.trim() : "";
+	}
+
+	/**
+	 * Get the speed of the replay of recorded requests: the recorded responses are delayed
+	 * by their recorded latency divided by the speed
+	 * @return the speed of the replay (1 for the recorded speed, 0 to answer without delay)
+	 */
+	public Integer getTrafficReplaySpeed()
+	{
+		return this.trafficReplaySpeed;
+	}
+
+	/**
+	 * Set the speed of the replay of recorded requests
+	 * @param trafficReplaySpeed the speed of the replay (1 for the recorded speed, 0 to answer without delay)
+	 */
+	public void setTrafficReplaySpeed(Integer trafficReplaySpeed)
+	{
+		this.trafficReplaySpeed = trafficReplaySpeed;
+	}
+
+	/**
+	 * Set the speed of the replay of recorded requests
+	 * @param trafficReplaySpeed the speed of the replay (1 for the recorded speed, 0 to answer without delay)
+	 */
+	public void setTrafficReplaySpeed(String trafficReplaySpeed)
+	{
+		setTrafficReplaySpeed(parseNonNegativeInteger(trafficReplaySpeed, DEFAULT_TRAFFIC_REPLAY_SPEED));
+	}
+
+	private static int parseNonNegativeInteger(String value, int defaultValue)
+	{
+		if (value != null)
+		{
+			try
+			{
+				return Math.max(0, Integer.parseInt(value.trim()));
+			}
+			catch (NumberFormatException e)
+			{
+				// Use the default value
+			}
+		}
+		return defaultValue;
+	}
+
+	private static int parsePositiveInteger(String value, int defaultValue)
+	{
+		if (value != null)
+		{
+			try
+			{
+				int parsedValue = Integer.parseInt(value.trim());
+				if (parsedValue > 0)
+				{
+					return parsedValue;
+				}
+			}
+			catch (NumberFormatException e)
+			{
+				// Use the default value
+			}
+		}
+		return defaultValue;
+	}
 }
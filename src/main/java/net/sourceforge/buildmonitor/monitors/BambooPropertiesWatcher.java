@@ -0,0 +1,228 @@
+/*
+ * Copyright 2007 Sebastien Brunot (sbrunot@gmail.com)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *   
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sourceforge.buildmonitor.monitors;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import net.sourceforge.buildmonitor.BuildMonitor;
+import net.sourceforge.buildmonitor.MonitoringException;
+import net.sourceforge.buildmonitor.logging.MonitorLogging;
+
+/**
+ * Watch the properties file of a Bamboo monitor and load it again when it is changed.
+ * The changes are debounced: the file is loaded once it has not been changed for a while,
+ * so that it is not read while it is being written. When the loaded properties are valid,
+ * they are published as a new version of the properties, that the monitor takes into
+ * account between two poll cycles, and the build monitor is told to refresh the build
+ * status. When they are not, the problem is reported to the build monitor and the
+ * properties in use are kept.
+ * @author vegarwe
+ *
+ */
+class BambooPropertiesWatcher implements Runnable
+{
+	/**
+	 * Default time without change of the file before it is loaded
+	 */
+	static final long DEFAULT_DEBOUNCE_DELAY_IN_MILLIS = 500;
+	private static final Logger LOGGER = Logger.getLogger(BambooPropertiesWatcher.class.getName());
+
+	private final File propertiesFile;
+	private final long debounceDelayInMillis;
+	private final BuildMonitor buildMonitorInstance;
+	private WatchService watchService = null;
+	private BambooProperties changedProperties = null;
+	private int version = 0;
+
+	/**
+	 * Create a new watcher (call {@link #start()} to start it)
+	 * @param propertiesFile the properties file
+	 * @param debounceDelayInMillis the time without change of the file before it is loaded
+	 * @param buildMonitorInstance the build monitor to report the changes and the invalid properties to
+	 */
+	BambooPropertiesWatcher(File propertiesFile, long debounceDelayInMillis, BuildMonitor buildMonitorInstance)
+	{
+		this.propertiesFile = propertiesFile.getAbsoluteFile();
+		this.debounceDelayInMillis = debounceDelayInMillis;
+		this.buildMonitorInstance = buildMonitorInstance;
+	}
+
+	/**
+	 * Start to watch the properties file, in a daemon thread
+	 */
+	void start() throws IOException
+	{
+		this.watchService = FileSystems.getDefault().newWatchService();
+		// A file cannot be watched: its directory is watched instead (editors often replace the file)
+		this.propertiesFile.getParentFile().toPath().register(this.watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+		Thread watcherThread = new Thread(this, "Bamboo properties watcher");
+		watcherThread.setDaemon(true);
+		watcherThread.start();
+	}
+
+	/**
+	 * Stop to watch the properties file
+	 */
+	void stop()
+	{
+		try
+		{
+			if (this.watchService != null)
+			{
+				this.watchService.close();
+			}
+		}
+		catch (IOException e)
+		{
+			MonitorLogging.log(LOGGER, Level.WARNING, "Cannot close the watch service of the properties file", e);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public void run()
+	{
+		try
+		{
+			while (true)
+			{
+				if (isPropertiesFileChanged(this.watchService.take()))
+				{
+					// Wait until the file has not been changed for the debounce delay
+					WatchKey watchKey = null;
+					while ((watchKey = this.watchService.poll(this.debounceDelayInMillis, TimeUnit.MILLISECONDS)) != null)
+					{
+						isPropertiesFileChanged(watchKey);
+					}
+					loadProperties();
+				}
+			}
+		}
+		catch (ClosedWatchServiceException e)
+		{
+			// The watcher has been stopped
+		}
+		catch (InterruptedException e)
+		{
+			// The watcher has been stopped
+		}
+	}
+
+	/**
+	 * Take the last version of the properties published since the last call
+	 * @return the properties, or null if no new version has been published
+	 */
+	synchronized BambooProperties takeChangedProperties()
+	{
+		BambooProperties returnedValue = this.changedProperties;
+		this.changedProperties = null;
+		return returnedValue;
+	}
+
+	/**
+	 * Wait until a new version of the properties is published
+	 * @param timeoutInMillis the maximum time to wait
+	 * @return true if a new version of the properties has been published and not taken yet
+	 */
+	synchronized boolean awaitChangedProperties(long timeoutInMillis) throws InterruptedException
+	{
+		long deadline = System.currentTimeMillis() + timeoutInMillis;
+		long remainingTimeInMillis = timeoutInMillis;
+		while (this.changedProperties == null && remainingTimeInMillis > 0)
+		{
+			wait(remainingTimeInMillis);
+			remainingTimeInMillis = deadline - System.currentTimeMillis();
+		}
+		return this.changedProperties != null;
+	}
+
+	/**
+	 * Get the number of versions of the properties published so far
+	 */
+	synchronized int getVersion()
+	{
+		return this.version;
+	}
+
+	/**
+	 * Tell if the events of a watch key are about the properties file (the key is reset)
+	 */
+	private boolean isPropertiesFileChanged(WatchKey watchKey)
+	{
+		boolean returnedValue = false;
+		for (WatchEvent<?> event : watchKey.pollEvents())
+		{
+			if (event.kind() == StandardWatchEventKinds.OVERFLOW
+					|| this.propertiesFile.getName().equals(((Path) event.context()).toString()))
+			{
+				returnedValue = true;
+			}
+		}
+		watchKey.reset();
+		return returnedValue;
+	}
+
+	/**
+	 * Load the properties file, and publish the properties if they are valid
+	 */
+	private void loadProperties()
+	{
+		if (!this.propertiesFile.exists())
+		{
+			return;
+		}
+		BambooProperties properties = new BambooProperties();
+		try
+		{
+			properties.loadFromFile(this.propertiesFile);
+			properties.validate();
+		}
+		catch (IOException e)
+		{
+			reportInvalidProperties(e.getMessage(), e);
+			return;
+		}
+		catch (IllegalArgumentException e)
+		{
+			reportInvalidProperties(e.getMessage(), e);
+			return;
+		}
+		synchronized (this)
+		{
+			this.changedProperties = properties;
+			this.version++;
+			notifyAll();
+		}
+		this.buildMonitorInstance.reportConfigurationUpdatedToBeTakenIntoAccountImmediately();
+	}
+
+	private void reportInvalidProperties(String problem, Exception cause)
+	{
+		this.buildMonitorInstance.reportMonitoringException(new MonitoringException("Problem: the changes to " + this.propertiesFile + " are not taken into account: " + problem, cause, true, null));
+	}
+}
@@ -0,0 +1,495 @@
+/*
+ * Copyright 2007 Sebastien Brunot (sbrunot@gmail.com)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *   
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sourceforge.buildmonitor.monitors;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.xpath.XPathConstants;
+import javax.xml.xpath.XPathExpressionException;
+import javax.xml.xpath.XPathFactory;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.xml.sax.ErrorHandler;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+
+import net.sourceforge.buildmonitor.BuildReport;
+import net.sourceforge.buildmonitor.FailureDetails;
+import net.sourceforge.buildmonitor.MonitoringException;
+import net.sourceforge.buildmonitor.BuildReport.Status;
+
+/**
+ * Parse the documents returned by the Bamboo REST api. This class does not do any network
+ * access, so that the parsing can be tested and benchmarked on its own.
+ * @author sbrunot
+ *
+ */
+class BambooResponseParser
+{
+	/**
+	 * Report the parsing errors as exceptions (instead of printing them on System.err)
+	 */
+	private static final ErrorHandler PARSING_ERROR_HANDLER = new ErrorHandler()
+	{
+		public void warning(SAXParseException exception)
+		{
+		}
+
+		public void error(SAXParseException exception) throws SAXException
+		{
+			throw exception;
+		}
+
+		public void fatalError(SAXParseException exception) throws SAXException
+		{
+			throw exception;
+		}
+	};
+
+	/**
+	 * DocumentBuilder instances are not thread safe but are costly to create: each thread keeps its own
+	 */
+	private static final ThreadLocal<DocumentBuilder> DOCUMENT_BUILDER = new ThreadLocal<DocumentBuilder>()
+	{
+		protected DocumentBuilder initialValue()
+		{
+			try
+			{
+				return DocumentBuilderFactory.newInstance().newDocumentBuilder();
+			}
+			catch (ParserConfigurationException e)
+			{
+				throw new RuntimeException(e);
+			}
+		}
+	};
+
+	private BambooResponseParser()
+	{
+	}
+
+	/**
+	 * Parse a server response while it is read.
+	 * @param serverResponse the (decompressed) body of the server response
+	 * @return the parsed document
+	 */
+	static Document parseDocument(InputStream serverResponse) throws IOException, SAXException
+	{
+		DocumentBuilder documentBuilder = DOCUMENT_BUILDER.get();
+		documentBuilder.reset();
+		documentBuilder.setErrorHandler(PARSING_ERROR_HANDLER);
+		return documentBuilder.parse(serverResponse);
+	}
+
+	/**
+	 * Parse the response of the /rest/api/latest/plan method (or of the
+	 * /rest/api/latest/project/{key}?expand=plans method).
+	 * @param serverResponse the parsed response of the server
+	 * @return the build plans listed in the response
+	 */
+	static List<BuildPlan> parsePlans(Document serverResponse) throws XPathExpressionException
+	{
+		List<BuildPlan> returnList = new ArrayList<BuildPlan>();
+
+		NodeList nodes = (NodeList) XPathFactory.newInstance().newXPath().evaluate("/*/plans/plan", serverResponse, XPathConstants.NODESET);
+		for (int i = 0; i < nodes.getLength(); i++)
+		{
+			Element e = (Element) nodes.item(i);
+			BuildPlan plan = new BuildPlan();
+			plan.key = e.getAttribute("key");
+			plan.name = e.getAttribute("name");
+			returnList.add(plan);
+		}
+		return returnList;
+	}
+
+	/**
+	 * Parse a page of the response of the /rest/api/latest/plan method (or of the
+	 * /rest/api/latest/project/{key}?expand=plans method).
+	 * @param serverResponse the parsed response of the server
+	 * @return the page of build plans, with its position in the complete list
+	 */
+	static PlanPage parsePlanPage(Document serverResponse) throws XPathExpressionException
+	{
+		PlanPage returnedValue = new PlanPage();
+		returnedValue.plans = parsePlans(serverResponse);
+		Element plans = (Element) XPathFactory.newInstance().newXPath().evaluate("/*/plans", serverResponse, XPathConstants.NODE);
+		// A response without paging attributes holds the complete list
+		returnedValue.startIndex = getIntegerAttribute(plans, "start-index", 0);
+		returnedValue.maxResult = getIntegerAttribute(plans, "max-result", returnedValue.plans.size());
+		returnedValue.size = getIntegerAttribute(plans, "size", returnedValue.startIndex + returnedValue.plans.size());
+		return returnedValue;
+	}
+
+	/**
+	 * Parse the response of the /rest/api/latest/result/{key} method.
+	 * @param serverResponse the parsed response of the server
+	 * @param planName the name of the plan the results belong to (if null, it is read from the results)
+	 * @return a build report for each result listed in the response
+	 */
+	static List<BuildReport> parseResults(Document serverResponse, String planName) throws XPathExpressionException, MonitoringException
+	{
+		List<BuildReport> returnList = new ArrayList<BuildReport>();
+
+		NodeList nodes = (NodeList) XPathFactory.newInstance().newXPath().evaluate("/results/results/result", serverResponse, XPathConstants.NODESET);
+		for (int i = 0; i < nodes.getLength(); i++)
+		{
+			Element result = (Element) nodes.item(i);
+			returnList.add(parseResult(result, planName != null ? planName : getPlanName(result)));
+		}
+		return returnList;
+	}
+
+	/**
+	 * Parse a page of the response of the /rest/api/latest/result method, that lists the
+	 * latest result of each plan.
+	 * @param serverResponse the parsed response of the server
+	 * @return the page of latest results, with its position in the complete list
+	 */
+	static LatestResultPage parseLatestResultPage(Document serverResponse) throws XPathExpressionException
+	{
+		LatestResultPage returnedValue = new LatestResultPage();
+		returnedValue.latestResultKeys = new HashMap<String, String>();
+		NodeList nodes = (NodeList) XPathFactory.newInstance().newXPath().evaluate("/results/results/result", serverResponse, XPathConstants.NODESET);
+		for (int i = 0; i < nodes.getLength(); i++)
+		{
+			String resultKey = ((Element) nodes.item(i)).getAttribute("key");
+			returnedValue.latestResultKeys.put(getPlanKey(resultKey), resultKey);
+		}
+		Element results = (Element) XPathFactory.newInstance().newXPath().evaluate("/results/results", serverResponse, XPathConstants.NODE);
+		// A response without paging attributes holds the complete list
+		returnedValue.startIndex = getIntegerAttribute(results, "start-index", 0);
+		returnedValue.maxResult = getIntegerAttribute(results, "max-result", nodes.getLength());
+		returnedValue.size = getIntegerAttribute(results, "size", returnedValue.startIndex + nodes.getLength());
+		return returnedValue;
+	}
+
+	/**
+	 * Parse the response of the /rest/api/latest/result method asked for the builds in progress
+	 * (includeAllStates=true&lifeCycleState=InProgress).
+	 * @param serverResponse the parsed response of the server
+	 * @return a build report for each build in progress listed in the response (with the name of
+	 * its plan if the response tells it, null otherwise)
+	 */
+	static List<BuildReport> parseRunningBuilds(Document serverResponse) throws XPathExpressionException, MonitoringException
+	{
+		List<BuildReport> returnList = new ArrayList<BuildReport>();
+
+		NodeList nodes = (NodeList) XPathFactory.newInstance().newXPath().evaluate("/results/results/result", serverResponse, XPathConstants.NODESET);
+		for (int i = 0; i < nodes.getLength(); i++)
+		{
+			Element result = (Element) nodes.item(i);
+			BuildReport report = parseResult(result, findPlanName(result));
+			if (report.isInProgress())
+			{
+				returnList.add(report);
+			}
+		}
+		return returnList;
+	}
+
+	/**
+	 * Parse the response of the /rest/api/latest/result/{buildKey} method expanded with the
+	 * stages, the jobs and the failed tests of the build. The parts missing from the response
+	 * (a build without tests, an older server that does not expand the stages...) are left empty.
+	 * @param serverResponse the parsed response of the server
+	 * @param maxFailedTests the maximum number of failed tests to keep
+	 * @return the details of the failure of the build
+	 */
+	static FailureDetails parseFailureDetails(Document serverResponse, int maxFailedTests) throws XPathExpressionException
+	{
+		Element result = serverResponse.getDocumentElement();
+		if (result == null || !"result".equals(result.getTagName()))
+		{
+			return new FailureDetails(0, 0, new ArrayList<String>(), new ArrayList<String>(), new ArrayList<String>(), new ArrayList<String>());
+		}
+		List<String> failedStages = new ArrayList<String>();
+		NodeList stages = (NodeList) XPathFactory.newInstance().newXPath().evaluate("/result/stages/stage[@state='Failed']", serverResponse, XPathConstants.NODESET);
+		for (int i = 0; i < stages.getLength(); i++)
+		{
+			failedStages.add(((Element) stages.item(i)).getAttribute("name"));
+		}
+		List<String> failedJobs = new ArrayList<String>();
+		List<String> failedJobKeys = new ArrayList<String>();
+		List<String> failedTests = new ArrayList<String>();
+		NodeList jobs = (NodeList) XPathFactory.newInstance().newXPath().evaluate("/result/stages/stage/results/result[@state='Failed']", serverResponse, XPathConstants.NODESET);
+		for (int i = 0; i < jobs.getLength(); i++)
+		{
+			Element job = (Element) jobs.item(i);
+			String jobName = findNamedChildNodeValue(job, "planName");
+			failedJobs.add(jobName != null ? jobName : job.getAttribute("key"));
+			failedJobKeys.add(job.getAttribute("key"));
+			NodeList tests = (NodeList) XPathFactory.newInstance().newXPath().evaluate("testResults/failedTests/testResult", job, XPathConstants.NODESET);
+			for (int j = 0; j < tests.getLength() && failedTests.size() < maxFailedTests; j++)
+			{
+				Element test = (Element) tests.item(j);
+				failedTests.add(test.getAttribute("className") + "." + test.getAttribute("methodName"));
+			}
+		}
+		int failedTestCount = getIntegerValue(findNamedChildNodeValue(result, "failedTestCount"), failedTests.size());
+		int successfulTestCount = getIntegerValue(findNamedChildNodeValue(result, "successfulTestCount"), 0);
+		return new FailureDetails(failedTestCount, successfulTestCount, failedStages, failedJobs, failedJobKeys, failedTests);
+	}
+
+	/**
+	 * Parse the response of the /rest/api/latest/info method.
+	 * @param serverResponse the parsed response of the server
+	 * @return the state of the server (RUNNING, PAUSED...), or null if the response is not
+	 * the information about a Bamboo server
+	 */
+	static String parseServerState(Document serverResponse) throws XPathExpressionException
+	{
+		Element info = serverResponse.getDocumentElement();
+		if (info == null || !"info".equals(info.getTagName()))
+		{
+			return null;
+		}
+		return XPathFactory.newInstance().newXPath().evaluate("/info/state", serverResponse);
+	}
+
+	/**
+	 * Parse the response of the /rest/api/latest/queue method.
+	 * @param serverResponse the parsed response of the server
+	 * @return a build report for each queued build (its id is the key of its future result, and
+	 * its date the date it has been seen in the queue)
+	 */
+	static List<BuildReport> parseQueuedBuilds(Document serverResponse) throws XPathExpressionException
+	{
+		List<BuildReport> returnList = new ArrayList<BuildReport>();
+
+		NodeList nodes = (NodeList) XPathFactory.newInstance().newXPath().evaluate("/*/queuedBuilds/queuedBuild", serverResponse, XPathConstants.NODESET);
+		Date now = new Date();
+		for (int i = 0; i < nodes.getLength(); i++)
+		{
+			Element queuedBuild = (Element) nodes.item(i);
+			returnList.add(new BuildReport(queuedBuild.getAttribute("buildResultKey"), now, Status.QUEUED));
+		}
+		return returnList;
+	}
+
+	/**
+	 * Parse the Content-Range header of a response to a range request ("bytes 1000-1999/5000",
+	 * or "bytes &#42;/5000" for a range past the end of the resource)
+	 * @param contentRange the value of the header
+	 * @return the offsets of the first and last bytes of the range, and the length of the
+	 * resource (-1 for the offsets that the header does not tell)
+	 */
+	static long[] parseContentRange(String contentRange) throws MonitoringException
+	{
+		long[] returnedValue = {-1, -1, -1};
+		if (contentRange == null || !contentRange.startsWith("bytes "))
+		{
+			throw new MonitoringException("Unexpected Content-Range header: " + contentRange, null);
+		}
+		try
+		{
+			String[] rangeAndLength = contentRange.substring("bytes ".length()).trim().split("/");
+			if (!"*".equals(rangeAndLength[0]))
+			{
+				int dash = rangeAndLength[0].indexOf('-');
+				returnedValue[0] = Long.parseLong(rangeAndLength[0].substring(0, dash));
+				returnedValue[1] = Long.parseLong(rangeAndLength[0].substring(dash + 1));
+			}
+			if (rangeAndLength.length > 1 && !"*".equals(rangeAndLength[1]))
+			{
+				returnedValue[2] = Long.parseLong(rangeAndLength[1]);
+			}
+		}
+		catch (NumberFormatException | IndexOutOfBoundsException e)
+		{
+			throw new MonitoringException("Unexpected Content-Range header: " + contentRange, null);
+		}
+		return returnedValue;
+	}
+
+	/**
+	 * Get the key of the plan of a build result ("PROJ-PLAN" for "PROJ-PLAN-42")
+	 * @param buildResultKey the key of the build result
+	 * @return the key of the plan
+	 */
+	static String getPlanKey(String buildResultKey)
+	{
+		int lastDash = buildResultKey.lastIndexOf('-');
+		return (lastDash > 0) ? buildResultKey.substring(0, lastDash) : buildResultKey;
+	}
+
+	/**
+	 * Parse a result element. The finished builds are dated when they have completed, the
+	 * builds in progress when they have started (or now if they have not started yet).
+	 * @param result the result element
+	 * @param planName the name of the plan of the result
+	 * @return the build report of the result
+	 */
+	private static BuildReport parseResult(Element result, String planName) throws MonitoringException
+	{
+		BuildReport report = new BuildReport();
+		report.setId(result.getAttribute("key"));
+		report.setName(planName);
+		Status inProgressStatus = parseLifeCycleState(result.getAttribute("lifeCycleState"));
+		if (inProgressStatus == null)
+		{
+			report.setDate(parseDate(getNamedChildNodeValue(result, "buildCompletedTime")));
+			report.setStatus(parseBuildState(result.getAttribute("state")));
+		}
+		else
+		{
+			String startedTime = findNamedChildNodeValue(result, "buildStartedTime");
+			report.setDate(startedTime != null ? parseDate(startedTime) : new Date());
+			report.setStatus(inProgressStatus);
+		}
+		return report;
+	}
+
+	/**
+	 * Convert the life cycle state of a Bamboo result into the status of a build in progress
+	 * @param lifeCycleState the life cycle state of the result
+	 * @return RUNNING or QUEUED for a build in progress, null for a finished build
+	 */
+	static Status parseLifeCycleState(String lifeCycleState)
+	{
+		if ("InProgress".equals(lifeCycleState))
+		{
+			return Status.RUNNING;
+		}
+		else if ("Queued".equals(lifeCycleState) || "Pending".equals(lifeCycleState))
+		{
+			return Status.QUEUED;
+		}
+		return null;
+	}
+
+	/**
+	 * Parse a date in the format used by the Bamboo REST api ("2011-08-12T11:25:48.000+02:00")
+	 * @param dateString the date to parse
+	 * @return the parsed date
+	 */
+	static Date parseDate(String dateString) throws MonitoringException
+	{
+		SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSZ");
+		// Strip the ':' in the timezone of "2011-08-12T11:25:48.000+02:00"
+		dateString = dateString.substring(0, 26) + dateString.substring(27);
+
+		try
+		{
+			return dateFormat.parse(dateString);
+		}
+		catch (ParseException e)
+		{
+			throw new MonitoringException(e, null);
+		}
+	}
+
+	/**
+	 * Convert a Bamboo build state into a build report status.
+	 * @param buildState the Bamboo build state
+	 * @return the corresponding status
+	 */
+	static Status parseBuildState(String buildState) throws MonitoringException
+	{
+		if ("Successful".equals(buildState))
+		{
+			return Status.OK;
+		}
+		else if ("Failed".equals(buildState))
+		{
+			return Status.FAILED;
+		}
+		else if ("".equals(buildState))
+		{
+			//return Status.EMPTY;
+			return Status.FAILED;
+		}
+		else
+		{
+			throw new MonitoringException("Unknown build state '" + buildState + "' returned", null);
+		}
+	}
+
+	private static int getIntegerAttribute(Element element, String attributeName, int defaultValue)
+	{
+		return (element != null && element.hasAttribute(attributeName)) ? getIntegerValue(element.getAttribute(attributeName), defaultValue) : defaultValue;
+	}
+
+	private static int getIntegerValue(String value, int defaultValue)
+	{
+		if (value != null)
+		{
+			try
+			{
+				return Integer.parseInt(value.trim());
+			}
+			catch (NumberFormatException e)
+			{
+				// Use the default value
+			}
+		}
+		return defaultValue;
+	}
+
+	/**
+	 * Get the name of the plan of a result, as it appears in the list of plans ("Project - Plan")
+	 */
+	private static String getPlanName(Element result) throws MonitoringException
+	{
+		return getNamedChildNodeValue(result, "projectName") + " - " + getNamedChildNodeValue(result, "planName");
+	}
+
+	/**
+	 * Get the name of the plan of a result if the result tells it, null otherwise
+	 */
+	private static String findPlanName(Element result)
+	{
+		String projectName = findNamedChildNodeValue(result, "projectName");
+		String planName = findNamedChildNodeValue(result, "planName");
+		return (projectName != null && planName != null) ? projectName + " - " + planName : null;
+	}
+
+	private static String getNamedChildNodeValue(Node node, String nodeName) throws MonitoringException
+	{
+		String returnedValue = findNamedChildNodeValue(node, nodeName);
+		if (returnedValue == null)
+		{
+			throw new MonitoringException("Unable to find node with name" + nodeName, null);
+		}
+		return returnedValue;
+	}
+
+	private static String findNamedChildNodeValue(Node node, String nodeName)
+	{
+		NodeList nodes = node.getChildNodes();
+		for (int i = 0; i < nodes.getLength(); i++)
+		{
+			if (nodeName.equals(nodes.item(i).getNodeName()) && nodes.item(i).getFirstChild() != null)
+			{
+				return nodes.item(i).getFirstChild().getNodeValue();
+			}
+		}
+		return null;
+	}
+}
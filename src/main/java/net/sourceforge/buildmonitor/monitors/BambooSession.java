@@ -0,0 +1,181 @@
+/*
+ * Copyright 2007 Sebastien Brunot (sbrunot@gmail.com)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *   
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sourceforge.buildmonitor.monitors;
+
+import java.io.IOException;
+import java.net.CookieManager;
+import java.net.CookiePolicy;
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * The session of a user on a Bamboo server. The user is authenticated once with Basic
+ * authentication, and the following requests send the session cookie set by the server in
+ * response, until the server rejects it.
+ * Only one request at a time authenticates the user: the other requests wait for it and
+ * then use the session it opened. If the server does not open a session, every request
+ * is authenticated with Basic authentication.
+ * @author vegarwe
+ *
+ */
+class BambooSession
+{
+	private final String serverBaseUrl;
+	private final String authorization;
+	private final CookieManager cookieManager = new CookieManager(null, CookiePolicy.ACCEPT_ORIGINAL_SERVER);
+	private CompletableFuture<Void> authentication = null;
+	private volatile boolean open = false;
+	private volatile int generation = 0;
+	private volatile boolean sessionsSupported = true;
+
+	/**
+	 * Create a new session, not opened yet
+	 * @param config the configuration of the monitor (server and credentials of the user)
+	 */
+	BambooSession(BambooConfig config)
+	{
+		this.serverBaseUrl = config.getServerBaseUrl();
+		this.authorization = config.getAuthorization();
+	}
+
+	/**
+	 * Is this session the one of the user on the server of a configuration ?
+	 */
+	boolean isFor(BambooConfig config)
+	{
+		return this.serverBaseUrl.equals(config.getServerBaseUrl()) && this.authorization.equals(config.getAuthorization());
+	}
+
+	/**
+	 * Get the generation of the session: it changes each time the session is opened again
+	 * @return the generation of the session, or -1 if the session is not open
+	 */
+	int getGeneration()
+	{
+		return this.open ? this.generation : -1;
+	}
+
+	/**
+	 * Add the cookies of the session to a request
+	 */
+	void addCookies(HttpRequest.Builder request, URI uri) throws IOException
+	{
+		Map<String, List<String>> cookieHeaders = this.cookieManager.get(uri, Collections.<String, List<String>>emptyMap());
+		for (Map.Entry<String, List<String>> cookieHeader : cookieHeaders.entrySet())
+		{
+			for (String value : cookieHeader.getValue())
+			{
+				request.header(cookieHeader.getKey(), value);
+			}
+		}
+	}
+
+	/**
+	 * Store the cookies set by the server in the response to a request
+	 */
+	void storeCookies(HttpResponse<?> response, URI uri) throws IOException
+	{
+		this.cookieManager.put(uri, response.headers().map());
+	}
+
+	/**
+	 * Begin the authentication of the user, unless another request is already authenticating it
+	 * or a session has been opened in the meantime. No thread is blocked while waiting.
+	 * @return null if the caller must authenticate the user (it must then call
+	 * {@link #endAuthentication(HttpResponse, URI, boolean)}), or a future completed once
+	 * the caller can use the session or try again
+	 */
+	synchronized CompletableFuture<Void> beginAuthentication()
+	{
+		if (!this.sessionsSupported)
+		{
+			return null;
+		}
+		if (this.open)
+		{
+			return CompletableFuture.completedFuture(null);
+		}
+		if (this.authentication != null)
+		{
+			return this.authentication;
+		}
+		this.authentication = new CompletableFuture<Void>();
+		return null;
+	}
+
+	/**
+	 * End the authentication of the user: the session is opened if the server has set a session
+	 * cookie, and the requests waiting for the authentication go on
+	 * @param response the response to the request that authenticated the user (null if it has failed)
+	 * @param uri the URI of the request
+	 * @param authenticated true if the server has accepted the credentials of the user
+	 */
+	void endAuthentication(HttpResponse<?> response, URI uri, boolean authenticated) throws IOException
+	{
+		CompletableFuture<Void> endedAuthentication = null;
+		try
+		{
+			synchronized (this)
+			{
+				endedAuthentication = this.authentication;
+				this.authentication = null;
+				if (authenticated && !this.open)
+				{
+					storeCookies(response, uri);
+					if (this.cookieManager.getCookieStore().get(uri).isEmpty())
+					{
+						this.sessionsSupported = false;
+					}
+					else
+					{
+						this.generation++;
+						this.open = true;
+					}
+				}
+			}
+		}
+		finally
+		{
+			// The waiting requests are resumed outside of the lock
+			if (endedAuthentication != null)
+			{
+				endedAuthentication.complete(null);
+			}
+		}
+	}
+
+	/**
+	 * Close the session after the server has rejected it (nothing is done if the session
+	 * has already been opened again since)
+	 * @param generation the generation of the rejected session
+	 * @return true if the session has been closed
+	 */
+	synchronized boolean invalidate(int generation)
+	{
+		if (this.open && this.generation == generation)
+		{
+			this.open = false;
+			this.cookieManager.getCookieStore().removeAll();
+			return true;
+		}
+		return false;
+	}
+}
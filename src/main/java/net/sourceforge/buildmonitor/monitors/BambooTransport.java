@@ -0,0 +1,676 @@
+/*
+ * Copyright 2007 Sebastien Brunot (sbrunot@gmail.com)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *   
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sourceforge.buildmonitor.monitors;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.net.http.HttpResponse.BodyHandler;
+import java.net.http.HttpResponse.BodySubscriber;
+import java.net.http.HttpResponse.BodySubscribers;
+import java.net.http.HttpResponse.ResponseInfo;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Flow;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import net.sourceforge.buildmonitor.logging.MonitorLogging;
+import net.sourceforge.buildmonitor.metrics.MonitorMetrics;
+import net.sourceforge.buildmonitor.utils.AsyncSemaphore;
+import net.sourceforge.buildmonitor.utils.HttpContentEncoding;
+import net.sourceforge.buildmonitor.utils.VirtualThreads;
+
+/**
+ * The asynchronous transport of the requests of a monitor to a Bamboo server, based on
+ * the HTTP client of Java 11. No thread waits for the server: the requests are sent and
+ * their responses received by the HTTP client, and the callers compose the returned futures.
+ * Only a few requests are sent to the server at the same time, the other ones wait for
+ * a permit without holding a thread.
+ * When HTTP/2 is enabled, the requests are multiplexed over a single connection to the
+ * server: the HTTP client negotiates HTTP/2 with ALPN over TLS, or upgrades the first
+ * request to h2c over plain HTTP, and falls back to HTTP/1.1 if the server does not
+ * support HTTP/2.
+ * The requests and their responses can be recorded to a {@link TrafficArchive}, to be
+ * replayed later by a {@link ReplayTransport}.
+ * @author vegarwe
+ *
+ */
+class BambooTransport
+{
+	/**
+	 * A request to the Bamboo server, that can be cancelled from any thread
+	 */
+	static class Request
+	{
+		private final CompletableFuture<Void> sent = new CompletableFuture<Void>();
+		private CompletableFuture<?> pendingStep = null;
+		private boolean cancelled = false;
+		private volatile long startTime = 0;
+
+		/**
+		 * Set the step of the request in progress (the wait for a permit, or the exchange with the server)
+		 * @return false if the request has already been cancelled (the step is then cancelled)
+		 */
+		boolean setPendingStep(CompletableFuture<?> step)
+		{
+			synchronized (this)
+			{
+				this.pendingStep = step;
+				if (!this.cancelled)
+				{
+					return true;
+				}
+			}
+			// The HTTP client only aborts an exchange when it may interrupt it
+			step.cancel(true);
+			return false;
+		}
+
+		/**
+		 * Cancel the request: the step in progress is cancelled (an exchange with the server is
+		 * aborted and its connection closed), and so are the futures that depend on it
+		 */
+		void cancel()
+		{
+			CompletableFuture<?> step = null;
+			synchronized (this)
+			{
+				this.cancelled = true;
+				step = this.pendingStep;
+			}
+			if (step != null)
+			{
+				step.cancel(true);
+			}
+		}
+
+		synchronized boolean isCancelled()
+		{
+			return this.cancelled;
+		}
+
+		/**
+		 * Get the time the request has first been sent, as a System.nanoTime() value (0 if it has not been sent yet)
+		 */
+		long getStartTime()
+		{
+			return this.startTime;
+		}
+
+		/**
+		 * Get a future completed when the request is first sent to the server (once it has got a permit)
+		 */
+		CompletableFuture<Void> whenSent()
+		{
+			return this.sent;
+		}
+
+		void markSent(long time)
+		{
+			if (this.startTime == 0)
+			{
+				this.startTime = time;
+			}
+			this.sent.complete(null);
+		}
+	}
+
+	/**
+	 * The empty body of a response that is not read: the body is cancelled as soon as it
+	 * comes, and the connection it uses is released
+	 */
+	private static class CancelledBody implements BodySubscriber<byte[]>
+	{
+		public CompletionStage<byte[]> getBody()
+		{
+			return CompletableFuture.completedFuture(new byte[0]);
+		}
+
+		public void onSubscribe(Flow.Subscription subscription)
+		{
+			subscription.cancel();
+		}
+
+		public void onNext(List<ByteBuffer> item)
+		{
+		}
+
+		public void onError(Throwable throwable)
+		{
+		}
+
+		public void onComplete()
+		{
+		}
+	}
+
+	/**
+	 * Number of threads that parse the responses (and run the timers of the cycles)
+	 */
+	private static final int NUMBER_OF_PARSE_THREADS = 2;
+
+	/**
+	 * Start of the path of the login pages of Bamboo (/userlogin!default.action, /userlogin!doDefault.action)
+	 */
+	private static final String LOGIN_PAGE_PATH = "/userlogin";
+
+	private static final Logger LOGGER = Logger.getLogger(BambooTransport.class.getName());
+	private static final AtomicInteger HTTP_THREAD_COUNTER = new AtomicInteger();
+	private static final AtomicInteger PARSE_THREAD_COUNTER = new AtomicInteger();
+
+	private final int connectTimeoutInMillis;
+	private final boolean virtualThreads;
+	private final int maxConcurrentRequests;
+	private final boolean http2;
+	private final File trafficRecordFile;
+	private final File trafficReplayFile;
+	private final int trafficReplaySpeed;
+	private final TrafficArchive.Recorder recorder;
+	private final ExecutorService clientExecutor;
+	private final HttpClient client;
+	private final ScheduledThreadPoolExecutor parseExecutor;
+	private final AsyncSemaphore permits;
+	private final AtomicReference<CompletableFuture<Void>> protocolNegotiation = new AtomicReference<CompletableFuture<Void>>();
+	private final AtomicReference<BambooSession> session = new AtomicReference<BambooSession>();
+	private final MonitorMetrics metrics;
+
+	/**
+	 * Create the transport of a monitor
+	 * @param config the configuration of the monitor (connect timeout, threads, concurrency limit,
+	 * protocol, and recording of the requests)
+	 * @param metrics the metrics to record the requests to
+	 */
+	BambooTransport(BambooConfig config, MonitorMetrics metrics)
+	{
+		this.connectTimeoutInMillis = config.getConnectTimeoutInMillis();
+		this.virtualThreads = config.isVirtualThreads();
+		this.maxConcurrentRequests = config.getMaxConcurrentRequests();
+		this.http2 = config.isHttp2();
+		this.trafficRecordFile = config.getTrafficRecordFile();
+		this.trafficReplayFile = config.getTrafficReplayFile();
+		this.trafficReplaySpeed = config.getTrafficReplaySpeed();
+		this.metrics = metrics;
+
+		TrafficArchive.Recorder newRecorder = null;
+		if (this.trafficRecordFile != null)
+		{
+			try
+			{
+				newRecorder = new TrafficArchive.Recorder(this.trafficRecordFile);
+				MonitorLogging.log(LOGGER, Level.INFO, "Recording the requests", null, "file", this.trafficRecordFile);
+			}
+			catch (IOException e)
+			{
+				// The requests are sent without being recorded
+				MonitorLogging.log(LOGGER, Level.WARNING, "Cannot record the requests", e, "file", this.trafficRecordFile);
+			}
+		}
+		this.recorder = newRecorder;
+
+		// The HTTP client runs its callbacks in virtual threads when the JVM supports them
+		ExecutorService executor = this.virtualThreads ? VirtualThreads.newVirtualThreadPerTaskExecutor("Bamboo HTTP ") : null;
+		if (executor == null)
+		{
+			executor = Executors.newCachedThreadPool(newDaemonThreadFactory("Bamboo HTTP ", HTTP_THREAD_COUNTER));
+		}
+		this.clientExecutor = executor;
+		this.client = HttpClient.newBuilder()
+			.version(this.http2 ? HttpClient.Version.HTTP_2 : HttpClient.Version.HTTP_1_1)
+			.connectTimeout(Duration.ofMillis(this.connectTimeoutInMillis))
+			.followRedirects(HttpClient.Redirect.NORMAL)
+			.executor(this.clientExecutor)
+			.build();
+
+		this.parseExecutor = new ScheduledThreadPoolExecutor(NUMBER_OF_PARSE_THREADS, newDaemonThreadFactory("Bamboo parse ", PARSE_THREAD_COUNTER));
+		this.parseExecutor.setRemoveOnCancelPolicy(true);
+		this.permits = new AsyncSemaphore(this.maxConcurrentRequests);
+	}
+
+	/**
+	 * Can this transport send the requests of a configuration ?
+	 */
+	boolean isFor(BambooConfig config)
+	{
+		return this.connectTimeoutInMillis == config.getConnectTimeoutInMillis()
+			&& this.virtualThreads == config.isVirtualThreads()
+			&& this.maxConcurrentRequests == config.getMaxConcurrentRequests()
+			&& this.http2 == config.isHttp2()
+			&& Objects.equals(this.trafficRecordFile, config.getTrafficRecordFile())
+			&& Objects.equals(this.trafficReplayFile, config.getTrafficReplayFile())
+			&& this.trafficReplaySpeed == config.getTrafficReplaySpeed();
+	}
+
+	/**
+	 * Get the executor that parses the responses. It also runs the timers of the poll cycles.
+	 */
+	ScheduledExecutorService getParseExecutor()
+	{
+		return this.parseExecutor;
+	}
+
+	/**
+	 * Send a request to the server, authenticated with the session of the user if it is open,
+	 * and with the credentials of the user otherwise. When the server rejects the session
+	 * (the response has a 401 status code, or redirects to the login page), the user is
+	 * authenticated again and the request is sent again.
+	 * @param config the configuration of the cycle
+	 * @param uri the URI of the request
+	 * @param request the request, to be able to cancel it
+	 * @return the future response of the server. It completes exceptionally with a
+	 * FileNotFoundException if the status of the response is 404, and with an IOException
+	 * if it is another error status, as HttpURLConnection does.
+	 */
+	CompletableFuture<HttpResponse<byte[]>> send(BambooConfig config, URI uri, Request request)
+	{
+		return record(uri, null, request, sendRequest(config, uri, null, request)).thenApply(response -> checkStatus(response, uri));
+	}
+
+	/**
+	 * Send a request for a range of bytes of a resource (the response is not compressed, so
+	 * that the range is the one of the resource itself)
+	 * @param config the configuration of the request
+	 * @param uri the URI of the resource
+	 * @param range the value of the Range header ("bytes=-65536", "bytes=1000-")
+	 * @param request the request, to be able to cancel it
+	 * @return the future response of the server: 206 with the bytes of the range, or 416 if
+	 * the range is past the end of the resource. A server that ignores the range answers with
+	 * a 200 status code: the body of the response is then left unread and empty, so that the
+	 * whole resource is never downloaded. It completes exceptionally as {@link #send(BambooConfig, URI, Request)}
+	 * does for the other error status codes.
+	 */
+	CompletableFuture<HttpResponse<byte[]>> sendRange(BambooConfig config, URI uri, String range, Request request)
+	{
+		return record(uri, range, request, sendRequest(config, uri, range, request)).thenApply(response -> (response.statusCode() == 416) ? response : checkStatus(response, uri));
+	}
+
+	/**
+	 * Send a request to the server, and receive its response whatever its status code
+	 * @param config the configuration of the request
+	 * @param uri the URI of the request
+	 * @param range the value of the Range header of the request (null to request the whole resource)
+	 * @param request the request, to be able to cancel it
+	 * @return the future response of the server
+	 */
+	CompletableFuture<HttpResponse<byte[]>> sendRequest(BambooConfig config, URI uri, String range, Request request)
+	{
+		return send(config, uri, range, request, false);
+	}
+
+	/**
+	 * Stop the transport: the requests in progress are aborted
+	 */
+	void close()
+	{
+		if (this.recorder != null)
+		{
+			this.recorder.close();
+		}
+		this.parseExecutor.shutdownNow();
+		try
+		{
+			// Java 21 and later can stop the HTTP client explicitly
+			HttpClient.class.getMethod("shutdownNow").invoke(this.client);
+		}
+		catch (ReflectiveOperationException e)
+		{
+			// The HTTP client stops once it is no longer referenced
+		}
+		this.clientExecutor.shutdownNow();
+	}
+
+	/**
+	 * Record a request and its response, when the requests are recorded
+	 */
+	private CompletableFuture<HttpResponse<byte[]>> record(URI uri, String range, Request request, CompletableFuture<HttpResponse<byte[]>> response)
+	{
+		if (this.recorder == null)
+		{
+			return response;
+		}
+		long callTime = System.nanoTime();
+		return response.whenComplete((serverResponse, failure) -> {
+			long sentTime = request.getStartTime();
+			this.recorder.record(uri, range, (sentTime == 0) ? callTime : sentTime, serverResponse, failure);
+		});
+	}
+
+	/**
+	 * Send a request with the session of the user, or authenticate the user
+	 * @param range the value of the Range header of the request (null to request the whole resource)
+	 * @param sessionRejected true if the server has already rejected a session for this request
+	 */
+	private CompletableFuture<HttpResponse<byte[]>> send(BambooConfig config, URI uri, String range, Request request, boolean sessionRejected)
+	{
+		try
+		{
+			BambooSession session = getSession(config);
+			int sessionGeneration = session.getGeneration();
+			if (sessionGeneration >= 0)
+			{
+				HttpRequest.Builder sessionRequest = newRequest(config, uri, range);
+				session.addCookies(sessionRequest, uri);
+				return exchange(sessionRequest.build(), request).thenCompose(response -> {
+					if (!isSessionRejected(response))
+					{
+						try
+						{
+							session.storeCookies(response, uri);
+						}
+						catch (IOException e)
+						{
+							throw new CompletionException(e);
+						}
+						return CompletableFuture.completedFuture(response);
+					}
+					if (session.invalidate(sessionGeneration))
+					{
+						this.metrics.recordReauthentication();
+					}
+					if (sessionRejected)
+					{
+						// The new session is rejected too: the request is authenticated with the credentials of the user
+						return sendWithCredentials(config, uri, range, request, null);
+					}
+					return send(config, uri, range, request, true);
+				});
+			}
+
+			CompletableFuture<Void> authentication = session.beginAuthentication();
+			if (authentication != null)
+			{
+				// Another request is authenticating the user: a copy is waited for, so that
+				// cancelling this request does not cancel the authentication
+				CompletableFuture<Void> authenticated = authentication.thenApply(nothing -> nothing);
+				request.setPendingStep(authenticated);
+				return authenticated.thenCompose(nothing -> send(config, uri, range, request, sessionRejected));
+			}
+			return sendWithCredentials(config, uri, range, request, session);
+		}
+		catch (IOException | IllegalArgumentException e)
+		{
+			return CompletableFuture.failedFuture(e);
+		}
+	}
+
+	/**
+	 * Send a request authenticated with the credentials of the user
+	 * @param session the session to open with the response (null if the request does not authenticate the session)
+	 */
+	private CompletableFuture<HttpResponse<byte[]>> sendWithCredentials(BambooConfig config, URI uri, String range, Request request, BambooSession session)
+	{
+		CompletableFuture<HttpResponse<byte[]>> response = null;
+		try
+		{
+			// os_authType=basic makes Bamboo check the credentials even if it allows anonymous access
+			URI basicUri = URI.create(uri.toString() + (uri.getRawQuery() == null ? "?" : "&") + "os_authType=basic");
+			HttpRequest basicRequest = newRequest(config, basicUri, range).header("Authorization", config.getAuthorization()).build();
+			this.metrics.recordAuthentication();
+			response = exchange(basicRequest, request);
+		}
+		catch (IllegalArgumentException e)
+		{
+			response = CompletableFuture.failedFuture(e);
+		}
+		if (session == null)
+		{
+			return response;
+		}
+		return response.whenComplete((basicResponse, failure) -> {
+			try
+			{
+				session.endAuthentication(basicResponse, uri, basicResponse != null && basicResponse.statusCode() >= 200 && basicResponse.statusCode() < 300);
+			}
+			catch (IOException e)
+			{
+				// The session is not opened: the next request authenticates the user again
+			}
+		});
+	}
+
+	/**
+	 * Create a new request (the timeout is the time to wait for the headers of the response,
+	 * and then for its body: see {@link #sendWithPermit(HttpRequest, Request)})
+	 * @param range the value of the Range header (null to request the whole resource, compressed)
+	 */
+	private static HttpRequest.Builder newRequest(BambooConfig config, URI uri, String range)
+	{
+		HttpRequest.Builder builder = HttpRequest.newBuilder(uri)
+			.timeout(Duration.ofMillis(config.getReadTimeoutInMillis()))
+			.GET();
+		if (range == null)
+		{
+			builder.header("Accept-Encoding", HttpContentEncoding.ACCEPT_ENCODING);
+		}
+		else
+		{
+			builder.header("Range", range);
+		}
+		return builder;
+	}
+
+	/**
+	 * Send a request once the protocol is negotiated and a permit is granted, and receive the
+	 * whole body of the response.
+	 * With HTTP/2, the first request negotiates the protocol alone: the next requests are then
+	 * multiplexed over its connection, instead of opening connections of their own.
+	 */
+	private CompletableFuture<HttpResponse<byte[]>> exchange(HttpRequest httpRequest, Request request)
+	{
+		CompletableFuture<Void> negotiation = this.protocolNegotiation.get();
+		if (this.http2 && negotiation == null)
+		{
+			CompletableFuture<Void> newNegotiation = new CompletableFuture<Void>();
+			if (this.protocolNegotiation.compareAndSet(null, newNegotiation))
+			{
+				return sendWithPermit(httpRequest, request).whenComplete((response, failure) -> newNegotiation.complete(null));
+			}
+			negotiation = this.protocolNegotiation.get();
+		}
+		if (negotiation != null && !negotiation.isDone())
+		{
+			// A copy is waited for, so that cancelling the request does not cancel the negotiation
+			CompletableFuture<Void> negotiated = negotiation.thenApply(nothing -> nothing);
+			request.setPendingStep(negotiated);
+			return negotiated.thenCompose(nothing -> sendWithPermit(httpRequest, request));
+		}
+		return sendWithPermit(httpRequest, request);
+	}
+
+	/**
+	 * Send a request once a permit is granted. The permit is only released once the exchange
+	 * with the server has ended: when the request is cancelled, the HTTP client aborts the
+	 * exchange before it completes the future of the response.
+	 * The timeout of the request only bounds the wait for the headers of the response: the
+	 * body must then be received within the same timeout, or the exchange is aborted and the
+	 * request fails with an HttpTimeoutException.
+	 */
+	private CompletableFuture<HttpResponse<byte[]>> sendWithPermit(HttpRequest httpRequest, Request request)
+	{
+		CompletableFuture<Void> permit = this.permits.acquire();
+		request.setPendingStep(permit);
+		return permit.thenCompose(nothing -> {
+			if (request.isCancelled())
+			{
+				// The request has been cancelled as the permit was granted: it is not sent
+				this.permits.release();
+				return CompletableFuture.failedFuture(new CancellationException("Request cancelled"));
+			}
+			long startTime = System.nanoTime();
+			request.markSent(startTime);
+			CompletableFuture<HttpResponse<byte[]>> result = new CompletableFuture<HttpResponse<byte[]>>();
+			CompletableFuture<HttpResponse<byte[]>> response = this.client.sendAsync(httpRequest, newBodyHandler(httpRequest, startTime, result));
+			request.setPendingStep(response);
+			response.whenComplete((serverResponse, failure) -> {
+				this.permits.release();
+				if (serverResponse != null)
+				{
+					this.metrics.recordRequest(System.nanoTime() - startTime, serverResponse.version() == HttpClient.Version.HTTP_2);
+					result.complete(serverResponse);
+				}
+				else
+				{
+					this.metrics.recordRequest(System.nanoTime() - startTime);
+					result.completeExceptionally(failure);
+				}
+			});
+			// The exchange is aborted when the body times out
+			result.whenComplete((serverResponse, failure) -> response.cancel(true));
+			return result;
+		});
+	}
+
+	/**
+	 * Create a handler that reads the body of a response in memory, and records the time to
+	 * receive the headers and the body of the response
+	 * @param result the future response, failed if the body is not received within the
+	 * timeout of the request
+	 */
+	private BodyHandler<byte[]> newBodyHandler(HttpRequest httpRequest, long startTime, CompletableFuture<HttpResponse<byte[]>> result)
+	{
+		return responseInfo -> {
+			long responseTime = System.nanoTime();
+			// The HTTP client does not tell DNS, TCP and TLS apart from the wait for the server
+			this.metrics.recordServerResponse(responseTime - startTime);
+			httpRequest.timeout().ifPresent(timeout -> startBodyTimer(result, timeout));
+			if (isIgnoredRange(httpRequest, responseInfo))
+			{
+				// The whole resource is not downloaded: the body is cancelled at once
+				return new CancelledBody();
+			}
+			return BodySubscribers.mapping(BodySubscribers.ofByteArray(), body -> {
+				this.metrics.recordBodyRead(System.nanoTime() - responseTime, body.length);
+				return body;
+			});
+		};
+	}
+
+	/**
+	 * Fail a response if its body is not received within a timeout (the HTTP client stops
+	 * the timer of a request once the headers of its response are received)
+	 */
+	private void startBodyTimer(CompletableFuture<HttpResponse<byte[]>> result, Duration timeout)
+	{
+		try
+		{
+			ScheduledFuture<?> timer = this.parseExecutor.schedule(() -> {
+				result.completeExceptionally(new HttpTimeoutException("body of the response timed out"));
+			}, timeout.toMillis(), TimeUnit.MILLISECONDS);
+			result.whenComplete((response, failure) -> timer.cancel(false));
+		}
+		catch (RejectedExecutionException e)
+		{
+			// The transport is closed: its exchanges are aborted
+		}
+	}
+
+	/**
+	 * Has the server ignored the Range header of a request ? (it then sends the whole resource)
+	 */
+	private static boolean isIgnoredRange(HttpRequest httpRequest, ResponseInfo responseInfo)
+	{
+		return responseInfo.statusCode() == 200 && httpRequest.headers().firstValue("Range").isPresent();
+	}
+
+	/**
+	 * Has the server rejected the session of a request ? Bamboo answers the requests of an
+	 * expired session with a 401 status code, or redirects them to its login page. Any other
+	 * redirection (to https, or to the context path of the server) is not a rejection.
+	 */
+	private static boolean isSessionRejected(HttpResponse<byte[]> response)
+	{
+		int statusCode = response.statusCode();
+		if (statusCode == 401)
+		{
+			return true;
+		}
+		if (statusCode >= 300 && statusCode < 400)
+		{
+			// A redirection that the HTTP client has not followed
+			return isLoginPage(response.headers().firstValue("Location").orElse(null));
+		}
+		return response.previousResponse().isPresent() && isLoginPage(response.uri().getPath());
+	}
+
+	/**
+	 * Is a location (a path or a URL) the one of a login page of Bamboo ? (the server may
+	 * have a context path)
+	 */
+	private static boolean isLoginPage(String location)
+	{
+		return location != null && location.contains(LOGIN_PAGE_PATH);
+	}
+
+	private static HttpResponse<byte[]> checkStatus(HttpResponse<byte[]> response, URI uri)
+	{
+		int statusCode = response.statusCode();
+		if (statusCode == 404 || statusCode == 410)
+		{
+			throw new CompletionException(new FileNotFoundException(uri.toString()));
+		}
+		if (statusCode >= 400)
+		{
+			throw new CompletionException(new IOException("Server returned HTTP response code: " + statusCode + " for URL: " + uri));
+		}
+		return response;
+	}
+
+	/**
+	 * Get the session of the user on the Bamboo server (a new session is created when the
+	 * server or the credentials of the user change)
+	 * @param config the configuration of the cycle
+	 */
+	private BambooSession getSession(BambooConfig config)
+	{
+		BambooSession currentSession = this.session.get();
+		while (currentSession == null || !currentSession.isFor(config))
+		{
+			this.session.compareAndSet(currentSession, new BambooSession(config));
+			currentSession = this.session.get();
+		}
+		return currentSession;
+	}
+
+	private static ThreadFactory newDaemonThreadFactory(String namePrefix, AtomicInteger counter)
+	{
+		return runnable -> {
+			Thread thread = new Thread(runnable, namePrefix + counter.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		};
+	}
+}
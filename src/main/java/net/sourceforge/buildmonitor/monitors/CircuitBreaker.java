@@ -0,0 +1,184 @@
+/*
+ * Copyright 2007 Sebastien Brunot (sbrunot@gmail.com)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *   
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sourceforge.buildmonitor.monitors;
+
+import java.util.concurrent.TimeUnit;
+
+import net.sourceforge.buildmonitor.metrics.MonitorMetrics;
+
+/**
+ * Circuit breaker of the requests sent to a Bamboo server, so that an overloaded server is
+ * not made worse by the requests of the monitor.
+ * The outcomes of the last requests are kept in a sliding window. While the circuit is
+ * closed, the requests are sent as usual; it opens when too many requests of the window have
+ * failed (network errors, time outs, 5xx or 429 responses) or have been too slow. While it is
+ * open, each poll cycle only sends a single cheap probe request, and the last known build
+ * status is shown as stale. A successful probe half-opens the circuit: the next cycle is a
+ * trial, that closes the circuit if it goes well and opens it again otherwise.
+ * @author vegarwe
+ *
+ */
+class CircuitBreaker
+{
+	/**
+	 * State of the circuit
+	 */
+	enum State {CLOSED, OPEN, HALF_OPEN};
+
+	/**
+	 * Number of requests in the sliding window
+	 */
+	static final int WINDOW_SIZE = 50;
+
+	/**
+	 * Number of requests in the window before the circuit may open
+	 */
+	static final int MINIMUM_NUMBER_OF_REQUESTS = 10;
+
+	/**
+	 * The circuit opens when at least this fraction of the requests of the window have failed
+	 */
+	static final double FAILURE_RATE_THRESHOLD = 0.5;
+
+	/**
+	 * The circuit opens when at least this fraction of the requests of the window have been slow
+	 */
+	static final double SLOW_REQUEST_RATE_THRESHOLD = 0.8;
+
+	/**
+	 * A request is slow when it takes longer than this (or than half the read timeout, if it is shorter)
+	 */
+	private static final long SLOW_REQUEST_THRESHOLD_IN_MILLIS = 5000;
+
+	private final String serverBaseUrl;
+	private final long slowRequestThresholdInNanos;
+	private final MonitorMetrics metrics;
+	private final boolean[] failedRequests = new boolean[WINDOW_SIZE];
+	private final boolean[] slowRequests = new boolean[WINDOW_SIZE];
+	private int numberOfRequests = 0;
+	private int numberOfFailedRequests = 0;
+	private int numberOfSlowRequests = 0;
+	private int nextIndex = 0;
+	private State state = State.CLOSED;
+
+	/**
+	 * Create a closed circuit breaker
+	 * @param config the configuration of the monitor (server and read timeout)
+	 * @param metrics the metrics to record the state changes to
+	 */
+	CircuitBreaker(BambooConfig config, MonitorMetrics metrics)
+	{
+		this.serverBaseUrl = config.getServerBaseUrl();
+		this.slowRequestThresholdInNanos = TimeUnit.MILLISECONDS.toNanos(Math.min(SLOW_REQUEST_THRESHOLD_IN_MILLIS, config.getReadTimeoutInMillis() / 2));
+		this.metrics = metrics;
+		this.metrics.recordCircuitBreakerState(this.state.name());
+	}
+
+	/**
+	 * Is this circuit breaker the one of the server of a configuration ?
+	 */
+	boolean isFor(BambooConfig config)
+	{
+		return this.serverBaseUrl == null ? config.getServerBaseUrl() == null : this.serverBaseUrl.equals(config.getServerBaseUrl());
+	}
+
+	/**
+	 * Get the state of the circuit
+	 */
+	synchronized State getState()
+	{
+		return this.state;
+	}
+
+	/**
+	 * Record the outcome of a request sent while the circuit is closed or half-open (the
+	 * circuit opens if the window has too many failed or slow requests)
+	 * @param failed true if the request has failed because of the server or of the network
+	 * @param durationInNanos the duration of the request
+	 */
+	synchronized void recordRequest(boolean failed, long durationInNanos)
+	{
+		if (this.state == State.OPEN)
+		{
+			return;
+		}
+		boolean slow = durationInNanos > this.slowRequestThresholdInNanos;
+		if (this.numberOfRequests == WINDOW_SIZE)
+		{
+			// The oldest request leaves the window
+			this.numberOfFailedRequests -= this.failedRequests[this.nextIndex] ? 1 : 0;
+			this.numberOfSlowRequests -= this.slowRequests[this.nextIndex] ? 1 : 0;
+		}
+		else
+		{
+			this.numberOfRequests++;
+		}
+		this.failedRequests[this.nextIndex] = failed;
+		this.slowRequests[this.nextIndex] = slow;
+		this.numberOfFailedRequests += failed ? 1 : 0;
+		this.numberOfSlowRequests += slow ? 1 : 0;
+		this.nextIndex = (this.nextIndex + 1) % WINDOW_SIZE;
+		if (this.state == State.CLOSED && this.numberOfRequests >= MINIMUM_NUMBER_OF_REQUESTS && isUnhealthy())
+		{
+			transitionTo(State.OPEN);
+		}
+	}
+
+	/**
+	 * Record the outcome of the probe request sent while the circuit is open (the circuit
+	 * half-opens if it has succeeded)
+	 * @param succeeded true if the probe has succeeded in time
+	 */
+	synchronized void recordProbe(boolean succeeded)
+	{
+		if (this.state == State.OPEN && succeeded)
+		{
+			transitionTo(State.HALF_OPEN);
+		}
+	}
+
+	/**
+	 * Record the end of a poll cycle: a trial cycle, sent while the circuit is half-open,
+	 * closes the circuit if it has succeeded without too many failed or slow requests, and
+	 * opens it again otherwise
+	 * @param succeeded true if the build status has been updated by the cycle
+	 */
+	synchronized void recordCycle(boolean succeeded)
+	{
+		if (this.state == State.HALF_OPEN)
+		{
+			transitionTo((succeeded && !isUnhealthy()) ? State.CLOSED : State.OPEN);
+		}
+	}
+
+	private boolean isUnhealthy()
+	{
+		return this.numberOfRequests > 0
+			&& (this.numberOfFailedRequests >= FAILURE_RATE_THRESHOLD * this.numberOfRequests
+				|| this.numberOfSlowRequests >= SLOW_REQUEST_RATE_THRESHOLD * this.numberOfRequests);
+	}
+
+	private void transitionTo(State newState)
+	{
+		this.state = newState;
+		// Each state starts with an empty window
+		this.numberOfRequests = 0;
+		this.numberOfFailedRequests = 0;
+		this.numberOfSlowRequests = 0;
+		this.nextIndex = 0;
+		this.metrics.recordCircuitBreakerState(newState.name());
+	}
+}
@@ -0,0 +1,34 @@
+/*
+ * Copyright 2007 Sebastien Brunot (sbrunot@gmail.com)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *   
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sourceforge.buildmonitor.monitors;
+
+import java.util.Map;
+
+/**
+ * A page of the list of the latest result of each plan defined on the Bamboo server.
+ * @author vegarwe
+ *
+ */
+class LatestResultPage
+{
+	/**
+	 * Key of the latest result of each plan of the page, by plan key
+	 */
+	public Map<String, String> latestResultKeys;
+	public int startIndex;
+	public int maxResult;
+	public int size;
+}
@@ -16,11 +16,16 @@
 package net.sourceforge.buildmonitor.monitors;
 
 import java.net.URI;
+import java.util.concurrent.CompletableFuture;
+
+import net.sourceforge.buildmonitor.FailureDetails;
+import net.sourceforge.buildmonitor.LogTail;
 
 /**
  * TODO: DOCUMENTS ME !
- * Monitor instance may be interrupted at any time by the build monitor main thread in
- * order to immediately take into account a change in the configuration.
+ * The build monitor main thread asks a Monitor instance for a refresh (see
+ * {@link #refresh()}) in order to immediately take into account a change in the
+ * configuration.
  * @author sbrunot
  *
  */
@@ -48,6 +53,23 @@ public interface Monitor extends Runnable
 	 * @return an URI to the dedicated page of a build on the monitored build system
 	 */
 	public URI getBuildURI(String idOfTheBuild);
+
+	/**
+	 * Get the details of a failed build. They are fetched in the background the first time
+	 * they are asked for, and then cached (the poll cycles never fetch them).
+	 * @param idOfTheBuild the Id of the build (as in the BuildReport)
+	 * @return the future details of the failed build. It completes exceptionally if the
+	 * details cannot be fetched.
+	 */
+	public CompletableFuture<FailureDetails> getFailureDetails(String idOfTheBuild);
+
+	/**
+	 * Get the end of the log of a failed build (the log of its first failed job). Nothing
+	 * is fetched until the tail is updated.
+	 * @param idOfTheBuild the Id of the build (as in the BuildReport)
+	 * @return the end of the log of the build
+	 */
+	public LogTail getLogTail(String idOfTheBuild);
 	
 	/**
 	 * Get the String to display as the first line of the Tooltip of the system tray icon.
@@ -55,6 +77,26 @@ public interface Monitor extends Runnable
 	 */
 	public String getSystemTrayIconTooltipHeader();
 	
+	/**
+	 * Get the quiet window of the build situation notifications: the build status changes
+	 * within the window are merged into one notification.
+	 * @return the quiet window of the notifications in milliseconds (0 to notify every change immediately)
+	 */
+	public long getNotificationQuietWindowInMillis();
+
+	/**
+	 * Ask for an update of the build status as soon as possible. If no update is running, one
+	 * starts at once; otherwise the update in progress goes on undisturbed, and one more update
+	 * starts when it is over (all the refreshes asked for in the meantime are merged into it).
+	 */
+	public void refresh();
+
+	/**
+	 * Is a refresh asked for and not started yet ? (an update is running, and another one will
+	 * follow it)
+	 */
+	public boolean isRefreshPending();
+
 	/**
 	 * Display the options dialog on screen.
 	 */
@@ -0,0 +1,207 @@
+/*
+ * Copyright 2007 Sebastien Brunot (sbrunot@gmail.com)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *   
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sourceforge.buildmonitor.monitors;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Filter of the Bamboo plans on their keys.
+ * The filter is defined by two lists of key patterns, separated by commas or spaces: the
+ * included keys (all the plans are included if it is empty) and the excluded keys. A
+ * pattern is a plan key (PROJ-PLAN) or a project key (PROJ, that stands for all the plans
+ * of the project), and may contain the * and ? wildcards. Keys are not case sensitive.
+ * Each list is compiled once into a single regular expression.
+ * @author vegarwe
+ *
+ */
+public class PlanKeyFilter
+{
+	private static final Pattern KEY_PATTERN = Pattern.compile("[A-Za-z0-9_*?]+(-[A-Za-z0-9_*?]+)?");
+	private static final Pattern SEPARATOR = Pattern.compile("[,\\s]+");
+
+	private final Pattern includedKeys;
+	private final Pattern excludedKeys;
+	private final List<String> exactPlanKeys;
+	private final List<String> projectKeys;
+
+	private PlanKeyFilter(Pattern includedKeys, Pattern excludedKeys, List<String> exactPlanKeys, List<String> projectKeys)
+	{
+		this.includedKeys = includedKeys;
+		this.excludedKeys = excludedKeys;
+		this.exactPlanKeys = exactPlanKeys;
+		this.projectKeys = projectKeys;
+	}
+
+	/**
+	 * Compile a filter
+	 * @param includedKeys the patterns of the included keys (may be null or empty)
+	 * @param excludedKeys the patterns of the excluded keys (may be null or empty)
+	 * @return the compiled filter
+	 * @throws IllegalArgumentException if a list of patterns is not valid
+	 */
+	public static PlanKeyFilter compile(String includedKeys, String excludedKeys)
+	{
+		List<String> includedKeyPatterns = split(includedKeys);
+		List<String> exactPlanKeys = getExactKeys(includedKeyPatterns, true);
+		List<String> projectKeys = getExactKeys(includedKeyPatterns, false);
+		return new PlanKeyFilter(toRegularExpression(includedKeyPatterns), toRegularExpression(split(excludedKeys)), exactPlanKeys, projectKeys);
+	}
+
+	/**
+	 * Is a list of key patterns valid ?
+	 * @param keys the list of key patterns (may be null or empty)
+	 * @return true if the list is valid
+	 */
+	public static boolean isValid(String keys)
+	{
+		try
+		{
+			split(keys);
+			return true;
+		}
+		catch (IllegalArgumentException e)
+		{
+			return false;
+		}
+	}
+
+	/**
+	 * Does a plan pass the filter ?
+	 * @param planKey the key of the plan
+	 * @return true if the plan is included and not excluded
+	 */
+	public boolean accept(String planKey)
+	{
+		return (this.includedKeys == null || this.includedKeys.matcher(planKey).matches())
+				&& (this.excludedKeys == null || !this.excludedKeys.matcher(planKey).matches());
+	}
+
+	/**
+	 * Does the filter accept every plan ?
+	 */
+	public boolean acceptsAll()
+	{
+		return this.includedKeys == null && this.excludedKeys == null;
+	}
+
+	/**
+	 * Get the included plan keys when they are all exact plan keys: the plans then do
+	 * not need to be listed
+	 * @return the included plan keys, or null if the included keys are not all exact plan keys
+	 */
+	public List<String> getExactPlanKeys()
+	{
+		return this.exactPlanKeys == null ? null : Collections.unmodifiableList(this.exactPlanKeys);
+	}
+
+	/**
+	 * Get the included project keys when they are all exact project keys: only the plans
+	 * of these projects then need to be listed
+	 * @return the included project keys, or null if the included keys are not all exact project keys
+	 */
+	public List<String> getProjectKeys()
+	{
+		return this.projectKeys == null ? null : Collections.unmodifiableList(this.projectKeys);
+	}
+
+	/**
+	 * Get the keys of a list of patterns when they are all exact plan keys, or all exact project keys
+	 * @param keyPatterns the list of key patterns
+	 * @param planKeys true for plan keys, false for project keys
+	 * @return the keys, upper-cased, or null if the list is empty or holds another kind of pattern
+	 */
+	private static List<String> getExactKeys(List<String> keyPatterns, boolean planKeys)
+	{
+		if (keyPatterns.isEmpty())
+		{
+			return null;
+		}
+		List<String> returnedValue = new ArrayList<String>();
+		for (String keyPattern : keyPatterns)
+		{
+			if (keyPattern.indexOf('*') >= 0 || keyPattern.indexOf('?') >= 0 || (keyPattern.indexOf('-') > 0) != planKeys)
+			{
+				return null;
+			}
+			if (!returnedValue.contains(keyPattern.toUpperCase()))
+			{
+				returnedValue.add(keyPattern.toUpperCase());
+			}
+		}
+		return returnedValue;
+	}
+
+	private static List<String> split(String keys)
+	{
+		List<String> returnedValue = new ArrayList<String>();
+		if (keys != null)
+		{
+			for (String keyPattern : SEPARATOR.split(keys.trim()))
+			{
+				if (keyPattern.length() > 0)
+				{
+					if (!KEY_PATTERN.matcher(keyPattern).matches())
+					{
+						throw new IllegalArgumentException("Invalid plan key pattern: " + keyPattern);
+					}
+					returnedValue.add(keyPattern);
+				}
+			}
+		}
+		return returnedValue;
+	}
+
+	private static Pattern toRegularExpression(List<String> keyPatterns)
+	{
+		if (keyPatterns.isEmpty())
+		{
+			return null;
+		}
+		StringBuffer regularExpression = new StringBuffer();
+		for (String keyPattern : keyPatterns)
+		{
+			if (regularExpression.length() > 0)
+			{
+				regularExpression.append('|');
+			}
+			for (char c : keyPattern.toCharArray())
+			{
+				if (c == '*')
+				{
+					regularExpression.append("[^-]*");
+				}
+				else if (c == '?')
+				{
+					regularExpression.append("[^-]");
+				}
+				else
+				{
+					// Keys only contain letters, digits, underscores and dashes: no need to quote them
+					regularExpression.append(c);
+				}
+			}
+			if (keyPattern.indexOf('-') < 0)
+			{
+				// A project key stands for all the plans of the project
+				regularExpression.append("-.*");
+			}
+		}
+		return Pattern.compile(regularExpression.toString(), Pattern.CASE_INSENSITIVE);
+	}
+}
@@ -0,0 +1,229 @@
+/*
+ * Copyright 2007 Sebastien Brunot (sbrunot@gmail.com)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *   
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sourceforge.buildmonitor.monitors;
+
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Schedule of the requests for plan results, when the plans are polled at their own pace.
+ * Each plan has its own poll interval, that adapts to its activity: a plan that has changed
+ * since it was last polled, that is failing or that has a build in progress is polled at each
+ * update, and the interval of a plan that does not change doubles at each poll, up to the
+ * maximum poll period. The plans wait for their next poll in a priority queue ordered by
+ * due time; an update polls the plans that are due, the ones that are due the longest
+ * first, up to the maximum number of requests per update (the others stay at the head of
+ * the queue for the next update). The plans that are not in the schedule yet are always
+ * polled.
+ * @author vegarwe
+ *
+ */
+class PlanScheduler
+{
+	/**
+	 * A plan in the schedule
+	 */
+	private static class ScheduledPlan
+	{
+		final String key;
+		long intervalInNanos = 0;
+		long dueTime = 0;
+		boolean queued = false;
+
+		ScheduledPlan(String key)
+		{
+			this.key = key;
+		}
+	}
+
+	private static final Comparator<ScheduledPlan> DUE_TIME_ORDER = new Comparator<ScheduledPlan>()
+	{
+		public int compare(ScheduledPlan o1, ScheduledPlan o2)
+		{
+			// System.nanoTime() values are only compared through their difference
+			return Long.signum(o1.dueTime - o2.dueTime);
+		}
+	};
+
+	private final int updatePeriodInSeconds;
+	private final int maxPollPeriodInSeconds;
+	private final int maxRequestsPerCycle;
+	private final long updatePeriodInNanos;
+	private final long maxPollPeriodInNanos;
+	private final Map<String, ScheduledPlan> plans = new HashMap<String, ScheduledPlan>();
+	private final PriorityQueue<ScheduledPlan> queue = new PriorityQueue<ScheduledPlan>(11, DUE_TIME_ORDER);
+
+	/**
+	 * Create an empty schedule
+	 * @param config the configuration of the monitor (update period, maximum poll period of a
+	 * plan and maximum number of requests per update)
+	 */
+	PlanScheduler(BambooConfig config)
+	{
+		this.updatePeriodInSeconds = config.getUpdatePeriodInSeconds();
+		this.maxPollPeriodInSeconds = config.getMaxPlanPollPeriodInSeconds();
+		this.maxRequestsPerCycle = config.getMaxPlanRequestsPerCycle();
+		this.updatePeriodInNanos = TimeUnit.SECONDS.toNanos(this.updatePeriodInSeconds);
+		this.maxPollPeriodInNanos = TimeUnit.SECONDS.toNanos(this.maxPollPeriodInSeconds);
+	}
+
+	/**
+	 * Is this schedule the one of a configuration ?
+	 */
+	boolean isFor(BambooConfig config)
+	{
+		return this.updatePeriodInSeconds == config.getUpdatePeriodInSeconds()
+			&& this.maxPollPeriodInSeconds == config.getMaxPlanPollPeriodInSeconds()
+			&& this.maxRequestsPerCycle == config.getMaxPlanRequestsPerCycle();
+	}
+
+	/**
+	 * Take the plans to poll in an update out of the queue: the plans that are due (or that
+	 * will be due before the middle of the next update period), up to the maximum number of
+	 * requests per update
+	 * @param now the time of the update, as a System.nanoTime() value
+	 * @return the keys of the plans to poll
+	 */
+	synchronized Set<String> takeDuePlans(long now)
+	{
+		Set<String> returnedValue = new HashSet<String>();
+		long dueLimit = now + this.updatePeriodInNanos / 2;
+		while (!this.queue.isEmpty() && this.queue.peek().dueTime - dueLimit <= 0 && (this.maxRequestsPerCycle == 0 || returnedValue.size() < this.maxRequestsPerCycle))
+		{
+			ScheduledPlan plan = this.queue.poll();
+			plan.queued = false;
+			returnedValue.add(plan.key);
+		}
+		return returnedValue;
+	}
+
+	/**
+	 * Is a plan in the schedule ?
+	 */
+	synchronized boolean contains(String planKey)
+	{
+		return this.plans.containsKey(planKey);
+	}
+
+	/**
+	 * Schedule the next poll of a plan whose results have just been fetched
+	 * @param planKey the key of the plan
+	 * @param active true if the plan has changed since it was last polled, is failing or has
+	 * a build in progress
+	 * @param now the time of the poll, as a System.nanoTime() value
+	 */
+	synchronized void recordPoll(String planKey, boolean active, long now)
+	{
+		ScheduledPlan plan = getPlan(planKey);
+		if (active || plan.intervalInNanos == 0)
+		{
+			plan.intervalInNanos = this.updatePeriodInNanos;
+		}
+		else
+		{
+			plan.intervalInNanos = Math.min(plan.intervalInNanos * 2, this.maxPollPeriodInNanos);
+		}
+		enqueue(plan, now + plan.intervalInNanos);
+	}
+
+	/**
+	 * Put back a plan whose results could not be fetched: it is due at once, and keeps its interval
+	 * @param planKey the key of the plan
+	 * @param now the time of the update, as a System.nanoTime() value
+	 */
+	synchronized void recordMissedPoll(String planKey, long now)
+	{
+		ScheduledPlan plan = this.plans.get(planKey);
+		if (plan != null)
+		{
+			enqueue(plan, now);
+		}
+	}
+
+	/**
+	 * Make a plan that has become active (a build has been queued or started) due at once,
+	 * and poll it at each update from now on
+	 * @param planKey the key of the plan
+	 * @param now the current time, as a System.nanoTime() value
+	 */
+	synchronized void wakeUp(String planKey, long now)
+	{
+		ScheduledPlan plan = this.plans.get(planKey);
+		if (plan != null && plan.intervalInNanos > this.updatePeriodInNanos)
+		{
+			plan.intervalInNanos = this.updatePeriodInNanos;
+			enqueue(plan, now);
+		}
+	}
+
+	/**
+	 * Remove the plans that are no longer monitored from the schedule
+	 * @param planKeys the keys of the monitored plans
+	 */
+	synchronized void retainAll(Collection<String> planKeys)
+	{
+		Iterator<ScheduledPlan> plansIterator = this.plans.values().iterator();
+		while (plansIterator.hasNext())
+		{
+			ScheduledPlan plan = plansIterator.next();
+			if (!planKeys.contains(plan.key))
+			{
+				plansIterator.remove();
+				if (plan.queued)
+				{
+					this.queue.remove(plan);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Get the number of plans in the schedule
+	 */
+	synchronized int size()
+	{
+		return this.plans.size();
+	}
+
+	private ScheduledPlan getPlan(String planKey)
+	{
+		ScheduledPlan returnedValue = this.plans.get(planKey);
+		if (returnedValue == null)
+		{
+			returnedValue = new ScheduledPlan(planKey);
+			this.plans.put(planKey, returnedValue);
+		}
+		return returnedValue;
+	}
+
+	private void enqueue(ScheduledPlan plan, long dueTime)
+	{
+		if (plan.queued)
+		{
+			this.queue.remove(plan);
+		}
+		plan.dueTime = dueTime;
+		plan.queued = true;
+		this.queue.add(plan);
+	}
+}
@@ -0,0 +1,237 @@
+/*
+ * Copyright 2007 Sebastien Brunot (sbrunot@gmail.com)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *   
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sourceforge.buildmonitor.monitors;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.net.ssl.SSLSession;
+
+import net.sourceforge.buildmonitor.logging.MonitorLogging;
+import net.sourceforge.buildmonitor.metrics.MonitorMetrics;
+
+/**
+ * A transport that replays a {@link TrafficArchive} instead of sending the requests to
+ * the server, to run a monitor against the recorded traffic of a server without the
+ * server. A request is answered with the next response recorded for the same path, query
+ * and Range header (the last one is repeated once they have all been replayed), and with a
+ * 404 status code if it has not been recorded. The responses are delayed by their recorded
+ * latency divided by the speed of the replay.
+ * @author vegarwe
+ *
+ */
+class ReplayTransport extends BambooTransport
+{
+	/**
+	 * A recorded response
+	 */
+	private static class ReplayedResponse implements HttpResponse<byte[]>
+	{
+		private final HttpRequest request;
+		private final int statusCode;
+		private final HttpHeaders headers;
+		private final byte[] body;
+
+		ReplayedResponse(URI uri, int statusCode, Map<String, List<String>> headers, byte[] body)
+		{
+			this.request = HttpRequest.newBuilder(uri).build();
+			this.statusCode = statusCode;
+			this.headers = HttpHeaders.of(headers, (name, value) -> true);
+			this.body = body;
+		}
+
+		public int statusCode()
+		{
+			return this.statusCode;
+		}
+
+		public HttpRequest request()
+		{
+			return this.request;
+		}
+
+		public Optional<HttpResponse<byte[]>> previousResponse()
+		{
+			return Optional.empty();
+		}
+
+		public HttpHeaders headers()
+		{
+			return this.headers;
+		}
+
+		public byte[] body()
+		{
+			return this.body;
+		}
+
+		public Optional<SSLSession> sslSession()
+		{
+			return Optional.empty();
+		}
+
+		public URI uri()
+		{
+			return this.request.uri();
+		}
+
+		public HttpClient.Version version()
+		{
+			return HttpClient.Version.HTTP_1_1;
+		}
+	}
+
+	private static final Logger LOGGER = Logger.getLogger(ReplayTransport.class.getName());
+
+	private final int speed;
+	private final MonitorMetrics metrics;
+	private final Map<String, List<TrafficArchive.Entry>> entries = new HashMap<String, List<TrafficArchive.Entry>>();
+	private final Map<String, AtomicInteger> nextEntries = new HashMap<String, AtomicInteger>();
+	private final IOException problem;
+
+	/**
+	 * Create a transport that replays the archive of a configuration
+	 * @param config the configuration of the monitor (archive and speed of the replay)
+	 * @param metrics the metrics to record the requests to
+	 */
+	ReplayTransport(BambooConfig config, MonitorMetrics metrics)
+	{
+		super(config, metrics);
+		this.speed = config.getTrafficReplaySpeed();
+		this.metrics = metrics;
+
+		File file = config.getTrafficReplayFile();
+		IOException readProblem = null;
+		try
+		{
+			List<TrafficArchive.Entry> recordedEntries = TrafficArchive.read(file);
+			for (TrafficArchive.Entry entry : recordedEntries)
+			{
+				String key = getKey(entry.target, entry.range);
+				this.entries.computeIfAbsent(key, newKey -> new ArrayList<TrafficArchive.Entry>()).add(entry);
+				this.nextEntries.putIfAbsent(key, new AtomicInteger());
+			}
+			MonitorLogging.log(LOGGER, Level.INFO, "Replaying the recorded requests", null, "file", file, "requests", recordedEntries.size(), "speed", this.speed);
+		}
+		catch (IOException e)
+		{
+			// Every request fails with the problem
+			readProblem = new IOException("Cannot replay the recorded requests of " + file + ": " + e.getMessage(), e);
+		}
+		this.problem = readProblem;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	CompletableFuture<HttpResponse<byte[]>> sendRequest(BambooConfig config, URI uri, String range, Request request)
+	{
+		if (this.problem != null)
+		{
+			return CompletableFuture.failedFuture(this.problem);
+		}
+		long startTime = System.nanoTime();
+		request.markSent(startTime);
+		TrafficArchive.Entry entry = nextEntry(TrafficArchive.getTarget(uri), (range == null) ? "" : range);
+		CompletableFuture<HttpResponse<byte[]>> response = new CompletableFuture<HttpResponse<byte[]>>();
+		if (!request.setPendingStep(response))
+		{
+			return response;
+		}
+		long delay = (entry == null || this.speed == 0) ? 0 : entry.latencyInNanos / this.speed;
+		ScheduledFuture<?> timer = getParseExecutor().schedule(() -> replay(response, uri, entry), delay, TimeUnit.NANOSECONDS);
+		return response.whenComplete((replayedResponse, failure) -> {
+			if (response.isCancelled())
+			{
+				timer.cancel(false);
+			}
+			long latency = System.nanoTime() - startTime;
+			this.metrics.recordRequest(latency);
+			if (replayedResponse != null)
+			{
+				this.metrics.recordServerResponse(latency);
+				this.metrics.recordBodyRead(0, replayedResponse.body().length);
+			}
+		});
+	}
+
+	/**
+	 * Complete a request with a recorded response
+	 * @param entry the recorded response (null if the request has not been recorded)
+	 */
+	private static void replay(CompletableFuture<HttpResponse<byte[]>> response, URI uri, TrafficArchive.Entry entry)
+	{
+		if (entry == null)
+		{
+			response.complete(new ReplayedResponse(uri, 404, Collections.<String, List<String>>emptyMap(), new byte[0]));
+			return;
+		}
+		if (entry.isFailure())
+		{
+			response.completeExceptionally(entry.newFailure());
+			return;
+		}
+		Map<String, List<String>> headers = new HashMap<String, List<String>>();
+		if (!entry.contentEncoding.isEmpty())
+		{
+			headers.put("Content-Encoding", Collections.singletonList(entry.contentEncoding));
+		}
+		if (!entry.contentRange.isEmpty())
+		{
+			headers.put("Content-Range", Collections.singletonList(entry.contentRange));
+		}
+		response.complete(new ReplayedResponse(uri, entry.statusCode, headers, entry.body));
+	}
+
+	/**
+	 * Get the next recorded response of a request
+	 * @return the next recorded response (the last one once they have all been replayed), or null
+	 * if the request has not been recorded
+	 */
+	private TrafficArchive.Entry nextEntry(String target, String range)
+	{
+		String key = getKey(target, range);
+		List<TrafficArchive.Entry> recordedEntries = this.entries.get(key);
+		if (recordedEntries == null)
+		{
+			return null;
+		}
+		int index = this.nextEntries.get(key).getAndIncrement();
+		return recordedEntries.get(Math.min(index, recordedEntries.size() - 1));
+	}
+
+	private static String getKey(String target, String range)
+	{
+		return range.isEmpty() ? target : target + " " + range;
+	}
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2007 Sebastien Brunot (sbrunot@gmail.com)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *   
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sourceforge.buildmonitor.monitors;
+
+import java.util.concurrent.TimeUnit;
+
+import net.sourceforge.buildmonitor.metrics.MonitorMetrics;
+
+/**
+ * Health of a Bamboo server, as told by the probe of its server info (/rest/api/latest/info)
+ * sent before the poll cycles. The probe is a single cheap request with a short timeout: it
+ * tells an unreachable server apart from an authentication failure or from an unfinished
+ * setup, without paying for the fan-out of a full cycle.
+ * A healthy result is cached for a while, so that the probe is not sent at each cycle; the
+ * other results are not cached, and a failed cycle clears the cached result.
+ * @author vegarwe
+ *
+ */
+class ServerHealth
+{
+	/**
+	 * Health of the server
+	 */
+	enum Status {UNKNOWN, HEALTHY, UNREACHABLE, AUTHENTICATION_FAILED, SETUP_WIZARD, FAILING};
+
+	/**
+	 * Time a healthy result is trusted without probing the server again
+	 */
+	static final long CACHE_DURATION_IN_MILLIS = TimeUnit.MINUTES.toMillis(10);
+
+	/**
+	 * Time the probe is waited for (or the read timeout, if it is shorter)
+	 */
+	static final long PROBE_TIMEOUT_IN_MILLIS = 5000;
+
+	private final String serverBaseUrl;
+	private final String authorization;
+	private final MonitorMetrics metrics;
+	private Status status = Status.UNKNOWN;
+	private long probeTime = 0;
+
+	/**
+	 * Create the health of a server that has not been probed yet
+	 * @param config the configuration of the monitor (server and credentials)
+	 * @param metrics the metrics to record the results of the probes to
+	 */
+	ServerHealth(BambooConfig config, MonitorMetrics metrics)
+	{
+		this.serverBaseUrl = config.getServerBaseUrl();
+		this.authorization = config.getAuthorization();
+		this.metrics = metrics;
+		this.metrics.recordServerHealth(this.status.name());
+	}
+
+	/**
+	 * Is this the health of the server of a configuration, probed with its credentials ?
+	 */
+	boolean isFor(BambooConfig config)
+	{
+		return equals(this.serverBaseUrl, config.getServerBaseUrl()) && equals(this.authorization, config.getAuthorization());
+	}
+
+	/**
+	 * Get the result of the last probe
+	 */
+	synchronized Status getStatus()
+	{
+		return this.status;
+	}
+
+	/**
+	 * Does the server need to be probed before a cycle ?
+	 * @param now the start time of the cycle, as a System.nanoTime() value
+	 * @return true unless the server has been found healthy recently
+	 */
+	synchronized boolean isProbeNeeded(long now)
+	{
+		return this.status != Status.HEALTHY || now - this.probeTime >= TimeUnit.MILLISECONDS.toNanos(CACHE_DURATION_IN_MILLIS);
+	}
+
+	/**
+	 * Record the result of a probe
+	 * @param status the health of the server
+	 * @param now the time of the probe, as a System.nanoTime() value
+	 */
+	synchronized void recordProbe(Status status, long now)
+	{
+		this.status = status;
+		this.probeTime = now;
+		this.metrics.recordHealthProbe(status.name());
+	}
+
+	/**
+	 * Forget the result of the last probe (a cycle has failed: the server is probed again
+	 * before the next one)
+	 */
+	synchronized void invalidate()
+	{
+		if (this.status == Status.HEALTHY)
+		{
+			this.status = Status.UNKNOWN;
+			this.metrics.recordServerHealth(this.status.name());
+		}
+	}
+
+	/**
+	 * Does the server need an action of the user before it can be polled ? (an authentication
+	 * failure or an unfinished setup is not worth probing again before the next update)
+	 */
+	synchronized boolean isUserActionNeeded()
+	{
+		return this.status == Status.AUTHENTICATION_FAILED || this.status == Status.SETUP_WIZARD;
+	}
+
+	private static boolean equals(String first, String second)
+	{
+		return first == null ? second == null : first.equals(second);
+	}
+}
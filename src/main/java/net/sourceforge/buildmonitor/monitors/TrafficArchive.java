@@ -0,0 +1,333 @@
+/*
+ * Copyright 2007 Sebastien Brunot (sbrunot@gmail.com)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *   
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sourceforge.buildmonitor.monitors;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.URI;
+import java.net.http.HttpConnectTimeoutException;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import net.sourceforge.buildmonitor.logging.MonitorLogging;
+
+/**
+ * An archive of the requests sent to a Bamboo server and of their responses, recorded to
+ * be replayed later without the server (see {@link ReplayTransport}).
+ * The archive is a gzipped sequence of entries: the path and query of the request, its
+ * Range header, the time it was sent and its latency, and the status code, the
+ * Content-Encoding and Content-Range headers and the body of its response (as received,
+ * still compressed), or the failure of the request. Neither the credentials nor the
+ * cookies of the user are recorded. The archive is flushed after each entry: a
+ * recording cut short by the end of the application can still be replayed.
+ * @author vegarwe
+ *
+ */
+final class TrafficArchive
+{
+	/**
+	 * A recorded request
+	 */
+	static final class Entry
+	{
+		final String target;
+		final String range;
+		final long timeInNanos;
+		final long latencyInNanos;
+		final int statusCode;
+		final String contentEncoding;
+		final String contentRange;
+		final String failureClass;
+		final byte[] body;
+
+		/**
+		 * Create an entry
+		 * @param target the path and query of the request
+		 * @param range the Range header of the request ("" if there is none)
+		 * @param timeInNanos the time the request was sent, since the start of the recording
+		 * @param latencyInNanos the time to receive the response
+		 * @param statusCode the status code of the response (0 if the request failed)
+		 * @param contentEncoding the Content-Encoding header of the response ("" if there is none)
+		 * @param contentRange the Content-Range header of the response ("" if there is none)
+		 * @param failureClass the class of the failure of the request ("" if it did not fail)
+		 * @param body the body of the response (the message of the failure if the request failed)
+		 */
+		Entry(String target, String range, long timeInNanos, long latencyInNanos, int statusCode, String contentEncoding, String contentRange, String failureClass, byte[] body)
+		{
+			this.target = target;
+			this.range = range;
+			this.timeInNanos = timeInNanos;
+			this.latencyInNanos = latencyInNanos;
+			this.statusCode = statusCode;
+			this.contentEncoding = contentEncoding;
+			this.contentRange = contentRange;
+			this.failureClass = failureClass;
+			this.body = body;
+		}
+
+		/**
+		 * Has the request failed (it has no response) ?
+		 */
+		boolean isFailure()
+		{
+			return this.statusCode == 0;
+		}
+
+		/**
+		 * Create the exception a failed request completed with
+		 */
+		IOException newFailure()
+		{
+			String message = new String(this.body, StandardCharsets.UTF_8);
+			if (HttpConnectTimeoutException.class.getName().equals(this.failureClass))
+			{
+				return new HttpConnectTimeoutException(message);
+			}
+			if (HttpTimeoutException.class.getName().equals(this.failureClass))
+			{
+				return new HttpTimeoutException(message);
+			}
+			if (ConnectException.class.getName().equals(this.failureClass))
+			{
+				return new ConnectException(message);
+			}
+			return new IOException(message);
+		}
+	}
+
+	/**
+	 * Records the requests of a transport to an archive. The entries are written by a
+	 * thread of their own, so that the requests never wait for the file.
+	 */
+	static final class Recorder
+	{
+		private static final long CLOSE_TIMEOUT_IN_SECONDS = 5;
+
+		private final File file;
+		private final DataOutputStream output;
+		private final ExecutorService writer;
+		private final long startTime = System.nanoTime();
+		private volatile boolean failed = false;
+
+		/**
+		 * Create a new archive (an existing file is replaced)
+		 * @param file the file of the archive
+		 * @throws IOException if the file cannot be created
+		 */
+		Recorder(File file) throws IOException
+		{
+			this.file = file;
+			this.output = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(file), true)));
+			this.output.writeInt(MAGIC_NUMBER);
+			this.output.writeByte(VERSION);
+			this.output.flush();
+			this.writer = Executors.newSingleThreadExecutor(runnable -> {
+				Thread thread = new Thread(runnable, "Traffic recorder");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+
+		/**
+		 * Record a request (the cancelled requests are not recorded)
+		 * @param uri the URI of the request
+		 * @param range the Range header of the request (null if there is none)
+		 * @param sentTime the time the request was sent, as a System.nanoTime() value
+		 * @param response the response of the server (null if the request failed)
+		 * @param failure the failure of the request (null if it has a response)
+		 */
+		void record(URI uri, String range, long sentTime, HttpResponse<byte[]> response, Throwable failure)
+		{
+			long latency = System.nanoTime() - sentTime;
+			while (failure instanceof CompletionException && failure.getCause() != null)
+			{
+				failure = failure.getCause();
+			}
+			if (this.failed || failure instanceof CancellationException)
+			{
+				return;
+			}
+			String rangeHeader = (range == null) ? "" : range;
+			Entry entry = null;
+			if (response != null)
+			{
+				entry = new Entry(getTarget(uri), rangeHeader, sentTime - this.startTime, latency, response.statusCode(),
+					response.headers().firstValue("Content-Encoding").orElse(""), response.headers().firstValue("Content-Range").orElse(""), "", response.body());
+			}
+			else
+			{
+				String message = (failure.getMessage() == null) ? "" : failure.getMessage();
+				entry = new Entry(getTarget(uri), rangeHeader, sentTime - this.startTime, latency, 0, "", "", failure.getClass().getName(), message.getBytes(StandardCharsets.UTF_8));
+			}
+			Entry recordedEntry = entry;
+			try
+			{
+				this.writer.execute(() -> write(recordedEntry));
+			}
+			catch (RejectedExecutionException e)
+			{
+				// The recorder is closed
+			}
+		}
+
+		/**
+		 * Write the entries left, and close the archive
+		 */
+		void close()
+		{
+			this.writer.shutdown();
+			try
+			{
+				this.writer.awaitTermination(CLOSE_TIMEOUT_IN_SECONDS, TimeUnit.SECONDS);
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+			}
+			try
+			{
+				this.output.close();
+			}
+			catch (IOException e)
+			{
+				MonitorLogging.log(LOGGER, Level.WARNING, "Cannot close the recording of the requests", e, "file", this.file);
+			}
+		}
+
+		private void write(Entry entry)
+		{
+			if (this.failed)
+			{
+				return;
+			}
+			try
+			{
+				writeEntry(this.output, entry);
+				this.output.flush();
+			}
+			catch (IOException e)
+			{
+				// The recording stops, the monitor goes on
+				this.failed = true;
+				MonitorLogging.log(LOGGER, Level.WARNING, "Cannot record the requests", e, "file", this.file);
+			}
+		}
+	}
+
+	private static final Logger LOGGER = Logger.getLogger(TrafficArchive.class.getName());
+	private static final int MAGIC_NUMBER = 0x424d5441;
+	private static final int VERSION = 1;
+
+	private TrafficArchive()
+	{
+	}
+
+	/**
+	 * Read the entries of an archive, in the order they were recorded
+	 * @param file the file of the archive
+	 * @return the entries of the archive
+	 * @throws IOException if the file cannot be read or is not an archive of requests
+	 */
+	static List<Entry> read(File file) throws IOException
+	{
+		List<Entry> entries = new ArrayList<Entry>();
+		try (DataInputStream input = new DataInputStream(new BufferedInputStream(new GZIPInputStream(new FileInputStream(file)))))
+		{
+			if (input.readInt() != MAGIC_NUMBER || input.readUnsignedByte() != VERSION)
+			{
+				throw new IOException("Not a recording of requests: " + file);
+			}
+			try
+			{
+				while (true)
+				{
+					entries.add(readEntry(input));
+				}
+			}
+			catch (EOFException e)
+			{
+				// The end of the archive, or the end of a recording cut short: the entries read are kept
+			}
+		}
+		catch (EOFException e)
+		{
+			throw new IOException("Not a recording of requests: " + file, e);
+		}
+		return entries;
+	}
+
+	/**
+	 * Get the target of a request, as recorded in the archives: its path and query (the
+	 * requests are replayed whatever the host of the server)
+	 * @param uri the URI of the request
+	 * @return the path and the query of the URI
+	 */
+	static String getTarget(URI uri)
+	{
+		String path = (uri.getRawPath() == null) ? "" : uri.getRawPath();
+		return (uri.getRawQuery() == null) ? path : path + "?" + uri.getRawQuery();
+	}
+
+	private static void writeEntry(DataOutputStream output, Entry entry) throws IOException
+	{
+		output.writeUTF(entry.target);
+		output.writeUTF(entry.range);
+		output.writeLong(entry.timeInNanos);
+		output.writeLong(entry.latencyInNanos);
+		output.writeShort(entry.statusCode);
+		output.writeUTF(entry.contentEncoding);
+		output.writeUTF(entry.contentRange);
+		output.writeUTF(entry.failureClass);
+		output.writeInt(entry.body.length);
+		output.write(entry.body);
+	}
+
+	private static Entry readEntry(DataInputStream input) throws IOException
+	{
+		String target = input.readUTF();
+		String range = input.readUTF();
+		long timeInNanos = input.readLong();
+		long latencyInNanos = input.readLong();
+		int statusCode = input.readUnsignedShort();
+		String contentEncoding = input.readUTF();
+		String contentRange = input.readUTF();
+		String failureClass = input.readUTF();
+		byte[] body = new byte[input.readInt()];
+		input.readFully(body);
+		return new Entry(target, range, timeInNanos, latencyInNanos, statusCode, contentEncoding, contentRange, failureClass, body);
+	}
+}
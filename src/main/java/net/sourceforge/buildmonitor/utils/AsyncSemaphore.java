@@ -0,0 +1,91 @@
+/*
+ * Copyright 2007 Sebastien Brunot (sbrunot@gmail.com)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *   
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sourceforge.buildmonitor.utils;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A semaphore whose permits are acquired without blocking: a permit is granted by
+ * completing a future, in the order of the requests.
+ * @author vegarwe
+ *
+ */
+public class AsyncSemaphore
+{
+	private final Queue<CompletableFuture<Void>> waiters = new ArrayDeque<CompletableFuture<Void>>();
+	private int numberOfPermits;
+
+	/**
+	 * Create a semaphore
+	 * @param numberOfPermits the number of permits available
+	 */
+	public AsyncSemaphore(int numberOfPermits)
+	{
+		this.numberOfPermits = numberOfPermits;
+	}
+
+	/**
+	 * Acquire a permit
+	 * @return a future completed once the permit is granted. Cancelling it before that
+	 * gives up the request of a permit.
+	 */
+	public synchronized CompletableFuture<Void> acquire()
+	{
+		if (this.numberOfPermits > 0)
+		{
+			this.numberOfPermits--;
+			return CompletableFuture.completedFuture(null);
+		}
+		CompletableFuture<Void> waiter = new CompletableFuture<Void>();
+		this.waiters.add(waiter);
+		return waiter;
+	}
+
+	/**
+	 * Release a permit: it is granted to the oldest request still waiting, if any
+	 */
+	public void release()
+	{
+		while (true)
+		{
+			CompletableFuture<Void> waiter = null;
+			synchronized (this)
+			{
+				waiter = this.waiters.poll();
+				if (waiter == null)
+				{
+					this.numberOfPermits++;
+					return;
+				}
+			}
+			// The waiter is completed outside of the lock, as it runs the task that waited for the permit
+			if (waiter.complete(null))
+			{
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Get the number of permits available
+	 */
+	public synchronized int getAvailablePermits()
+	{
+		return this.numberOfPermits;
+	}
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2007 Sebastien Brunot (sbrunot@gmail.com)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *   
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sourceforge.buildmonitor.utils;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * An InputStream that counts the bytes read through it.
+ * @author vegarwe
+ *
+ */
+public class CountingInputStream extends FilterInputStream
+{
+	private long count = 0;
+
+	public CountingInputStream(InputStream in)
+	{
+		super(in);
+	}
+
+	/**
+	 * Get the number of bytes read (or skipped) so far
+	 * @return the number of bytes read (or skipped) so far
+	 */
+	public long getCount()
+	{
+		return this.count;
+	}
+
+	public int read() throws IOException
+	{
+		int returnedValue = super.read();
+		if (returnedValue != -1)
+		{
+			this.count++;
+		}
+		return returnedValue;
+	}
+
+	public int read(byte[] buffer, int offset, int length) throws IOException
+	{
+		int returnedValue = super.read(buffer, offset, length);
+		if (returnedValue > 0)
+		{
+			this.count += returnedValue;
+		}
+		return returnedValue;
+	}
+
+	public long skip(long length) throws IOException
+	{
+		long returnedValue = super.skip(length);
+		this.count += returnedValue;
+		return returnedValue;
+	}
+
+	public boolean markSupported()
+	{
+		return false;
+	}
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2007 Sebastien Brunot (sbrunot@gmail.com)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *   
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sourceforge.buildmonitor.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Support of the compressed HTTP content encodings (gzip and deflate).
+ * @author vegarwe
+ *
+ */
+public class HttpContentEncoding
+{
+	/**
+	 * Value of the Accept-Encoding request header for the supported encodings
+	 */
+	public static final String ACCEPT_ENCODING = "gzip, deflate";
+
+	private HttpContentEncoding()
+	{
+	}
+
+	/**
+	 * Is a content encoding a compressed one ?
+	 * @param contentEncoding the value of the Content-Encoding response header (may be null)
+	 * @return true if the content is compressed
+	 */
+	public static boolean isCompressed(String contentEncoding)
+	{
+		return (contentEncoding != null) && !"identity".equalsIgnoreCase(contentEncoding.trim());
+	}
+
+	/**
+	 * Wrap a response body stream so that it is decompressed while it is read.
+	 * @param in the response body, as received
+	 * @param contentEncoding the value of the Content-Encoding response header (may be null)
+	 * @return a stream of the decompressed response body
+	 * @throws IOException if the content encoding is not supported
+	 */
+	public static InputStream decode(InputStream in, String contentEncoding) throws IOException
+	{
+		if (!isCompressed(contentEncoding))
+		{
+			return in;
+		}
+		String encoding = contentEncoding.trim().toLowerCase();
+		if ("gzip".equals(encoding) || "x-gzip".equals(encoding))
+		{
+			return new GZIPInputStream(in);
+		}
+		else if ("deflate".equals(encoding))
+		{
+			// "deflate" should be zlib wrapped, but some servers send raw deflate data:
+			// look at the zlib header to find out
+			PushbackInputStream pushbackIn = new PushbackInputStream(in, 2);
+			int firstByte = pushbackIn.read();
+			int secondByte = pushbackIn.read();
+			if (secondByte != -1)
+			{
+				pushbackIn.unread(secondByte);
+			}
+			if (firstByte != -1)
+			{
+				pushbackIn.unread(firstByte);
+			}
+			boolean zlibWrapped = (firstByte != -1) && (secondByte != -1)
+					&& ((firstByte & 0x0F) == 8) && ((((firstByte << 8) | secondByte) % 31) == 0);
+			return new InflaterInputStream(pushbackIn, new Inflater(!zlibWrapped));
+		}
+		else
+		{
+			throw new IOException("Unsupported content encoding: " + contentEncoding);
+		}
+	}
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright 2007 Sebastien Brunot (sbrunot@gmail.com)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *   
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sourceforge.buildmonitor.utils;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The last lines of a log, decoded as its bytes are appended. Only the last lines are kept:
+ * the older ones are dropped as the new ones come in. The bytes may be appended in chunks
+ * of any size: a character or a line split between two chunks is completed by the next one.
+ * A line longer than MAX_LINE_LENGTH is broken into several lines, so that a log without
+ * ends of line does not grow the buffer without limit.
+ * @author vegarwe
+ *
+ */
+public class LogTailBuffer
+{
+	/**
+	 * Maximum number of characters of a line: a longer line is broken at this length
+	 */
+	public static final int MAX_LINE_LENGTH = 4096;
+
+	private final int maxLines;
+	private final ArrayDeque<String> lines;
+	private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+		.onMalformedInput(CodingErrorAction.REPLACE)
+		.onUnmappableCharacter(CodingErrorAction.REPLACE);
+	private final StringBuilder partialLine = new StringBuilder();
+	private ByteBuffer undecodedBytes = ByteBuffer.allocate(0);
+	private boolean skippingToNextLine = false;
+
+	/**
+	 * Create a new empty buffer
+	 * @param maxLines the number of lines to keep
+	 */
+	public LogTailBuffer(int maxLines)
+	{
+		if (maxLines <= 0)
+		{
+			throw new IllegalArgumentException("The number of lines to keep must be positive.");
+		}
+		this.maxLines = maxLines;
+		this.lines = new ArrayDeque<String>(maxLines);
+	}
+
+	/**
+	 * Append bytes of the log (UTF-8 encoded)
+	 * @param bytes the bytes to append
+	 * @param offset the offset of the first byte to append
+	 * @param length the number of bytes to append
+	 */
+	public synchronized void append(byte[] bytes, int offset, int length)
+	{
+		ByteBuffer input = ByteBuffer.allocate(this.undecodedBytes.remaining() + length);
+		input.put(this.undecodedBytes).put(bytes, offset, length).flip();
+		CharBuffer output = CharBuffer.allocate(input.remaining());
+		// The bytes of a character split between two chunks are left in the input
+		this.decoder.decode(input, output, false);
+		this.undecodedBytes = input.slice();
+		output.flip();
+		while (output.hasRemaining())
+		{
+			char c = output.get();
+			if (c == '\n')
+			{
+				addLine();
+			}
+			else if (!this.skippingToNextLine && c != '\r')
+			{
+				if (this.partialLine.length() == MAX_LINE_LENGTH)
+				{
+					addLine();
+				}
+				this.partialLine.append(c);
+			}
+		}
+	}
+
+	/**
+	 * Drop everything up to the next end of line: the next bytes appended start in the
+	 * middle of a line (and maybe of a character), that is not to be shown
+	 */
+	public synchronized void skipToNextLine()
+	{
+		this.partialLine.setLength(0);
+		this.undecodedBytes = ByteBuffer.allocate(0);
+		this.decoder.reset();
+		this.skippingToNextLine = true;
+	}
+
+	/**
+	 * Drop all the lines: the next bytes appended start a log again
+	 */
+	public synchronized void clear()
+	{
+		this.lines.clear();
+		this.partialLine.setLength(0);
+		this.undecodedBytes = ByteBuffer.allocate(0);
+		this.decoder.reset();
+		this.skippingToNextLine = false;
+	}
+
+	/**
+	 * Get the last lines of the log, with the last line even if it is not complete yet
+	 * @return a copy of the last lines of the log, oldest first
+	 */
+	public synchronized List<String> getLines()
+	{
+		List<String> returnedValue = new ArrayList<String>(this.lines);
+		if (this.partialLine.length() > 0)
+		{
+			if (returnedValue.size() == this.maxLines)
+			{
+				returnedValue.remove(0);
+			}
+			returnedValue.add(this.partialLine.toString());
+		}
+		return returnedValue;
+	}
+
+	private void addLine()
+	{
+		if (this.skippingToNextLine)
+		{
+			this.skippingToNextLine = false;
+			return;
+		}
+		if (this.lines.size() == this.maxLines)
+		{
+			this.lines.removeFirst();
+		}
+		this.lines.addLast(this.partialLine.toString());
+		this.partialLine.setLength(0);
+	}
+}
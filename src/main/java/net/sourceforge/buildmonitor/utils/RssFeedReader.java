@@ -20,6 +20,8 @@ import java.io.InputStream;
 import java.net.URL;
 import java.text.DateFormat;
 import java.text.ParseException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import org.xml.sax.Attributes;
 import org.xml.sax.InputSource;
@@ -28,6 +30,8 @@ import org.xml.sax.XMLReader;
 import org.xml.sax.helpers.DefaultHandler;
 import org.xml.sax.helpers.XMLReaderFactory;
 
+import net.sourceforge.buildmonitor.logging.MonitorLogging;
+
 /**
  * A class that can parse an RSS feed and return a Feed object.
  * @author sbrunot
@@ -35,6 +39,8 @@ import org.xml.sax.helpers.XMLReaderFactory;
  */
 public class RssFeedReader
 {
+	private static final Logger LOGGER = Logger.getLogger(RssFeedReader.class.getName());
+
 	public class RssFeedContentHandler extends DefaultHandler
 	{
 		private static final int TITLE_ATTRIBUTE = 1;
@@ -141,8 +147,7 @@ public class RssFeedReader
 					catch (ParseException e)
 					{
 						this.currentItem.setPubDate(null);
-						// TODO: ADD A LOG INSTEAD OF SYSTEM.ERR OUTPUT
-						System.err.println("WARNING: publication date <" + valueOfTheAttribute + "> does not follow the expected date format.");
+						MonitorLogging.log(LOGGER, Level.WARNING, "Publication date does not follow the expected date format", null, "date", valueOfTheAttribute);
 					}
 				}
 				else
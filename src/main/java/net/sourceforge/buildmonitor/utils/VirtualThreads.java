@@ -0,0 +1,114 @@
+/*
+ * Copyright 2007 Sebastien Brunot (sbrunot@gmail.com)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *   
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sourceforge.buildmonitor.utils;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Access to the virtual threads of Java 21 and later, through reflection so that the
+ * application still runs on older JVMs.
+ * @author vegarwe
+ *
+ */
+public class VirtualThreads
+{
+	private static final Method OF_VIRTUAL = getMethod(Thread.class, "ofVirtual");
+	private static final Method NAME = getMethod("java.lang.Thread$Builder", "name", String.class, long.class);
+	private static final Method FACTORY = getMethod("java.lang.Thread$Builder", "factory");
+	private static final Method NEW_THREAD_PER_TASK_EXECUTOR = getMethod(Executors.class, "newThreadPerTaskExecutor", ThreadFactory.class);
+	private static final boolean SUPPORTED = checkSupport();
+
+	private VirtualThreads()
+	{
+	}
+
+	/**
+	 * Does the JVM support virtual threads ?
+	 * @return true if the JVM supports virtual threads
+	 */
+	public static boolean isSupported()
+	{
+		return SUPPORTED;
+	}
+
+	/**
+	 * Create an executor that runs each task in a new virtual thread
+	 * @param namePrefix the prefix of the names of the threads (followed by a counter)
+	 * @return the executor, or null if the JVM does not support virtual threads
+	 */
+	public static ExecutorService newVirtualThreadPerTaskExecutor(String namePrefix)
+	{
+		if (!isSupported())
+		{
+			return null;
+		}
+		try
+		{
+			Object builder = NAME.invoke(OF_VIRTUAL.invoke(null), namePrefix, 1L);
+			ThreadFactory threadFactory = (ThreadFactory) FACTORY.invoke(builder);
+			return (ExecutorService) NEW_THREAD_PER_TASK_EXECUTOR.invoke(null, threadFactory);
+		}
+		catch (Exception e)
+		{
+			return null;
+		}
+	}
+
+	private static boolean checkSupport()
+	{
+		if (OF_VIRTUAL == null || NAME == null || FACTORY == null || NEW_THREAD_PER_TASK_EXECUTOR == null)
+		{
+			return false;
+		}
+		try
+		{
+			OF_VIRTUAL.invoke(null);
+			return true;
+		}
+		catch (Exception e)
+		{
+			// Virtual threads are a preview feature of Java 19 and 20, that may not be enabled
+			return false;
+		}
+	}
+
+	private static Method getMethod(String className, String name, Class<?>... parameterTypes)
+	{
+		try
+		{
+			return getMethod(Class.forName(className), name, parameterTypes);
+		}
+		catch (ClassNotFoundException e)
+		{
+			return null;
+		}
+	}
+
+	private static Method getMethod(Class<?> type, String name, Class<?>... parameterTypes)
+	{
+		try
+		{
+			return type.getMethod(name, parameterTypes);
+		}
+		catch (NoSuchMethodException e)
+		{
+			return null;
+		}
+	}
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2007 Sebastien Brunot (sbrunot@gmail.com)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *   
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sourceforge.buildmonitor;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import net.sourceforge.buildmonitor.BuildMonitorImpl.BuildSituationChanges;
+import net.sourceforge.buildmonitor.metrics.MonitorMetrics;
+
+/**
+ * Unit tests for the NotificationAggregator class.
+ * @author vegarwe
+ *
+ */
+public class NotificationAggregatorTest extends TestCase
+{
+	private static final long ONE_HOUR = 60 * 60 * 1000L;
+
+	private final List<BuildSituationChanges> notifications = new ArrayList<BuildSituationChanges>();
+	private final CountDownLatch notified = new CountDownLatch(1);
+	private NotificationAggregator aggregator = null;
+
+	protected void setUp() throws Exception
+	{
+		this.aggregator = new NotificationAggregator(new NotificationAggregator.Listener()
+		{
+			public void notifyBuildSituationChanges(BuildSituationChanges changes)
+			{
+				synchronized (notifications)
+				{
+					notifications.add(changes);
+				}
+				notified.countDown();
+			}
+		});
+	}
+
+	protected void tearDown() throws Exception
+	{
+		this.aggregator.stop();
+	}
+
+	public void testTransitionsAreNotifiedImmediatelyWithoutQuietWindow()
+	{
+		this.aggregator.update(builds("A", false, "B", true), builds("A", true, "B", false), 0);
+		assertEquals(1, this.notifications.size());
+		assertEquals("A is failing.\n", this.notifications.get(0).newFailingBuilds.toString());
+		assertEquals("B is fixed.\n", this.notifications.get(0).fixedBuilds.toString());
+	}
+
+	public void testTransitionsThatCancelOutAreSuppressed()
+	{
+		MonitorMetrics metrics = MonitorMetrics.getInstance();
+		long cancelledTransitionsBefore = metrics.getCancelledTransitionCount();
+		long notificationsBefore = metrics.getNotificationCount();
+
+		// A fails and is fixed within the window
+		this.aggregator.update(builds("A", false, "B", false), builds("A", true, "B", false), ONE_HOUR);
+		this.aggregator.update(builds("A", true, "B", false), builds("A", false, "B", false), ONE_HOUR);
+		assertTrue(this.notifications.isEmpty());
+
+		BuildSituationChanges changes = this.aggregator.flush();
+		assertFalse(changes.hasChanged());
+		assertTrue(this.notifications.isEmpty());
+		assertEquals(2, metrics.getCancelledTransitionCount() - cancelledTransitionsBefore);
+		assertEquals(0, metrics.getNotificationCount() - notificationsBefore);
+	}
+
+	public void testFlappingBuildsGiveOneNotificationPerWindow()
+	{
+		MonitorMetrics metrics = MonitorMetrics.getInstance();
+		long transitionsBefore = metrics.getBuildTransitionCount();
+
+		// A flaps red/green/red, B is fixed, C fails and is fixed
+		this.aggregator.update(builds("A", false, "B", true, "C", false), builds("A", true, "B", true, "C", true), ONE_HOUR);
+		this.aggregator.update(builds("A", true, "B", true, "C", true), builds("A", false, "B", false, "C", false), ONE_HOUR);
+		this.aggregator.update(builds("A", false, "B", false, "C", false), builds("A", true, "B", false, "C", false), ONE_HOUR);
+		assertTrue(this.notifications.isEmpty());
+		this.aggregator.flush();
+
+		assertEquals(1, this.notifications.size());
+		assertEquals("A is failing.\n", this.notifications.get(0).newFailingBuilds.toString());
+		assertEquals("B is fixed.\n", this.notifications.get(0).fixedBuilds.toString());
+		assertEquals(6, metrics.getBuildTransitionCount() - transitionsBefore);
+
+		// The next window starts from the notified situation
+		this.aggregator.update(builds("A", true), builds("A", false), ONE_HOUR);
+		this.aggregator.flush();
+		assertEquals(2, this.notifications.size());
+		assertEquals("A is fixed.\n", this.notifications.get(1).fixedBuilds.toString());
+	}
+
+	public void testWindowIsClosedAfterItsDuration() throws Exception
+	{
+		this.aggregator.update(builds("A", false), builds("A", true), 50);
+		this.aggregator.update(builds("A", true), builds("A", true), 50);
+		assertTrue(this.notified.await(5, TimeUnit.SECONDS));
+		synchronized (this.notifications)
+		{
+			assertEquals(1, this.notifications.size());
+			assertEquals("A is failing.\n", this.notifications.get(0).newFailingBuilds.toString());
+		}
+	}
+
+	/**
+	 * Create build reports
+	 * @param namesAndFailures the name of each build followed by true if it has failed
+	 */
+	private static List<BuildReport> builds(Object... namesAndFailures)
+	{
+		List<BuildReport> buildReports = new ArrayList<BuildReport>();
+		for (int i = 0; i < namesAndFailures.length; i += 2)
+		{
+			String name = (String) namesAndFailures[i];
+			boolean failed = ((Boolean) namesAndFailures[i + 1]).booleanValue();
+			BuildReport buildReport = new BuildReport("PROJ-" + name, new Date(System.currentTimeMillis() - ONE_HOUR), failed ? BuildReport.Status.FAILED : BuildReport.Status.OK);
+			buildReport.setName(name);
+			buildReports.add(buildReport);
+		}
+		return buildReports;
+	}
+}
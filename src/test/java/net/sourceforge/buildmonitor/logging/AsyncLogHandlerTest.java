@@ -0,0 +1,120 @@
+/*
+ * Copyright 2007 Sebastien Brunot (sbrunot@gmail.com)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *   
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sourceforge.buildmonitor.logging;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for the AsyncLogHandler and StructuredLogFormatter classes.
+ * @author vegarwe
+ *
+ */
+public class AsyncLogHandlerTest extends TestCase
+{
+	/**
+	 * Handler that keeps the records written, and can block the writer thread
+	 */
+	private static class RecordingHandler extends Handler
+	{
+		final List<LogRecord> records = Collections.synchronizedList(new ArrayList<LogRecord>());
+		final CountDownLatch firstRecordWritten = new CountDownLatch(1);
+		final CountDownLatch released;
+
+		RecordingHandler(boolean blocking)
+		{
+			this.released = new CountDownLatch(blocking ? 1 : 0);
+		}
+
+		public void publish(LogRecord record)
+		{
+			this.records.add(record);
+			this.firstRecordWritten.countDown();
+			try
+			{
+				this.released.await();
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		public void flush()
+		{
+		}
+
+		public void close()
+		{
+		}
+	}
+
+	public void testTheRecordsAreWrittenInOrder()
+	{
+		RecordingHandler target = new RecordingHandler(false);
+		AsyncLogHandler handler = new AsyncLogHandler(target, 100);
+		for (int i = 0; i < 50; i++)
+		{
+			handler.publish(new LogRecord(Level.INFO, "record " + i));
+		}
+		handler.close();
+		assertEquals(50, target.records.size());
+		for (int i = 0; i < 50; i++)
+		{
+			assertEquals("record " + i, target.records.get(i).getMessage());
+		}
+		assertEquals(0, handler.getNumberOfDroppedRecords());
+	}
+
+	public void testTheRecordsAreDroppedRatherThanBlockingWhenTheWriterCannotKeepUp() throws Exception
+	{
+		RecordingHandler target = new RecordingHandler(true);
+		AsyncLogHandler handler = new AsyncLogHandler(target, 10);
+		handler.publish(new LogRecord(Level.INFO, "blocked"));
+		assertTrue(target.firstRecordWritten.await(5, TimeUnit.SECONDS));
+
+		// The writer thread is blocked: the queue fills up but publish() still returns at once
+		for (int i = 0; i < 13; i++)
+		{
+			handler.publish(new LogRecord(Level.INFO, "record " + i));
+		}
+		assertEquals(3, handler.getNumberOfDroppedRecords());
+
+		target.released.countDown();
+		handler.close();
+		assertEquals(12, target.records.size());
+		LogRecord dropReport = target.records.get(11);
+		assertEquals(Level.WARNING, dropReport.getLevel());
+		assertEquals(3L, dropReport.getParameters()[1]);
+	}
+
+	public void testTheFieldsAreWrittenAsKeyValuePairs()
+	{
+		LogRecord record = new LogRecord(Level.WARNING, "Plan request failed");
+		record.setLoggerName("net.sourceforge.buildmonitor.monitors.BambooMonitor");
+		record.setParameters(new Object[] {"cycle", 12L, "plan", "PRJ-PLAN", "problem", "Read timed out"});
+		String line = new StructuredLogFormatter().format(record).trim();
+		assertTrue(line, line.endsWith(" WARNING BambooMonitor: Plan request failed cycle=12 plan=PRJ-PLAN problem=\"Read timed out\""));
+	}
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2007 Sebastien Brunot (sbrunot@gmail.com)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *   
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sourceforge.buildmonitor.logging;
+
+import java.io.IOException;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for the RepeatedRecordFilter class.
+ * @author vegarwe
+ *
+ */
+public class RepeatedRecordFilterTest extends TestCase
+{
+	public void testRepeatedErrorsAreRateLimited()
+	{
+		RepeatedRecordFilter filter = new RepeatedRecordFilter(3, 300);
+		for (int i = 0; i < 3; i++)
+		{
+			assertTrue(filter.isLoggable(newRecord(Level.WARNING, "Plan request failed", new IOException("timeout " + i))));
+		}
+		assertFalse(filter.isLoggable(newRecord(Level.WARNING, "Plan request failed", new IOException("timeout"))));
+
+		// Another kind of error is not suppressed
+		assertTrue(filter.isLoggable(newRecord(Level.WARNING, "Plan request failed", new IllegalStateException())));
+		assertTrue(filter.isLoggable(newRecord(Level.WARNING, "Poll cycle failed", null)));
+	}
+
+	public void testInformationRecordsAreNeverSuppressed()
+	{
+		RepeatedRecordFilter filter = new RepeatedRecordFilter(1, 300);
+		for (int i = 0; i < 10; i++)
+		{
+			assertTrue(filter.isLoggable(newRecord(Level.INFO, "Poll cycle done", null)));
+		}
+	}
+
+	public void testTheNumberOfSuppressedRecordsIsReportedInTheNextWindow() throws InterruptedException
+	{
+		RepeatedRecordFilter filter = new RepeatedRecordFilter(1, 1);
+		assertTrue(filter.isLoggable(newRecord(Level.SEVERE, "Panic", null)));
+		assertFalse(filter.isLoggable(newRecord(Level.SEVERE, "Panic", null)));
+		assertFalse(filter.isLoggable(newRecord(Level.SEVERE, "Panic", null)));
+		Thread.sleep(1100);
+		LogRecord next = newRecord(Level.SEVERE, "Panic", null);
+		assertTrue(filter.isLoggable(next));
+		assertEquals("suppressed", next.getParameters()[0]);
+		assertEquals(2, next.getParameters()[1]);
+	}
+
+	private static LogRecord newRecord(Level level, String message, Throwable thrown)
+	{
+		LogRecord record = new LogRecord(level, message);
+		record.setLoggerName("net.sourceforge.buildmonitor.monitors.BambooMonitor");
+		record.setThrown(thrown);
+		return record;
+	}
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2007 Sebastien Brunot (sbrunot@gmail.com)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *   
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sourceforge.buildmonitor.metrics;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for the LatencyHistogram class.
+ * @author vegarwe
+ *
+ */
+public class LatencyHistogramTest extends TestCase
+{
+	private static final double DELTA = 1e-9;
+
+	public void testEmptyHistogramReportsZero()
+	{
+		LatencySnapshot snapshot = new LatencyHistogram().getSnapshot();
+		assertEquals(0, snapshot.getCount());
+		assertEquals(0, snapshot.getMeanMillis(), DELTA);
+		assertEquals(0, snapshot.getP50Millis(), DELTA);
+		assertEquals(0, snapshot.getP95Millis(), DELTA);
+		assertEquals(0, snapshot.getP99Millis(), DELTA);
+		assertEquals(0, snapshot.getMaxMillis(), DELTA);
+	}
+
+	public void testPercentilesAreTheUpperBoundOfTheirBucket()
+	{
+		// A sample just below a power of two is counted in the bucket that ends at it...
+		assertEquals(0.001024, getMedianOf(1023), DELTA);
+		// ...and a sample on a power of two in the next bucket
+		assertEquals(0.002048, getMedianOf(1024), DELTA);
+		assertEquals(0.002048, getMedianOf(2047), DELTA);
+		// The zero and negative samples have their own bucket
+		assertEquals(0, getMedianOf(0), DELTA);
+		assertEquals(0, getMedianOf(-5), DELTA);
+	}
+
+	public void testPercentilesOfAKnownDistribution()
+	{
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (int i = 0; i < 98; i++)
+		{
+			histogram.record(1000000);
+		}
+		histogram.record(100000000);
+		histogram.record(100000000);
+		LatencySnapshot snapshot = histogram.getSnapshot();
+		assertEquals(100, snapshot.getCount());
+		assertEquals(2.98, snapshot.getMeanMillis(), DELTA);
+		// 1 ms is in the [2^19, 2^20[ ns bucket
+		assertEquals(1.048576, snapshot.getP50Millis(), DELTA);
+		assertEquals(1.048576, snapshot.getP95Millis(), DELTA);
+		// The upper bound of the [2^26, 2^27[ ns bucket is capped by the largest sample
+		assertEquals(100, snapshot.getP99Millis(), DELTA);
+		assertEquals(100, snapshot.getMaxMillis(), DELTA);
+	}
+
+	public void testResetForgetsTheSamples()
+	{
+		LatencyHistogram histogram = new LatencyHistogram();
+		histogram.record(1000000);
+		assertEquals(1, histogram.getCount());
+		histogram.reset();
+		assertEquals(0, histogram.getCount());
+		assertEquals(0, histogram.getSnapshot().getMaxMillis(), DELTA);
+	}
+
+	/**
+	 * Get the median of two samples of a duration and of a larger one, that does not cap the median
+	 */
+	private static double getMedianOf(long durationInNanos)
+	{
+		LatencyHistogram histogram = new LatencyHistogram();
+		histogram.record(durationInNanos);
+		histogram.record(durationInNanos);
+		histogram.record(1000000000);
+		return histogram.getSnapshot().getP50Millis();
+	}
+}
@@ -0,0 +1,358 @@
+/*
+ * Copyright 2007 Sebastien Brunot (sbrunot@gmail.com)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *   
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sourceforge.buildmonitor.monitors;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import net.sourceforge.buildmonitor.BuildReport;
+import net.sourceforge.buildmonitor.MonitoringException;
+import net.sourceforge.buildmonitor.metrics.MonitorMetrics;
+import net.sourceforge.buildmonitor.monitors.FaultInjectingBambooServer.Fault;
+
+/**
+ * Resilience tests of BambooMonitor against a FaultInjectingBambooServer: each poll cycle
+ * must end in a bounded time, surface the failure through reportMonitoringException, and
+ * leave no thread behind.
+ * @author vegarwe
+ *
+ */
+public class BambooMonitorFaultTest extends TestCase
+{
+	private static final int NUMBER_OF_PLANS = 3;
+
+	/**
+	 * Margin allowed on top of the expected duration of a cycle
+	 */
+	private static final long CYCLE_TIME_MARGIN_IN_MILLIS = 2000;
+
+	private FaultInjectingBambooServer server = null;
+	private RecordingBuildMonitor buildMonitor = null;
+	private BambooProperties properties = null;
+	private BambooMonitor monitor = null;
+	private Set<Thread> threadsBeforeTest = null;
+
+	protected void setUp() throws Exception
+	{
+		this.threadsBeforeTest = new HashSet<Thread>(Thread.getAllStackTraces().keySet());
+		this.server = new FaultInjectingBambooServer(NUMBER_OF_PLANS);
+		this.server.start();
+		this.buildMonitor = new RecordingBuildMonitor();
+		this.properties = new BambooProperties();
+		this.properties.setServerBaseUrl(this.server.getBaseUrl());
+		this.properties.setUsername("user");
+		this.properties.setPassword("password");
+		this.properties.setMaxPlanPollPeriodInSeconds(0);
+		this.properties.setChangeProbe(false);
+		this.monitor = new BambooMonitor(this.buildMonitor, this.properties);
+	}
+
+	protected void tearDown() throws Exception
+	{
+		this.monitor.stop();
+		this.server.stop();
+		assertNoThreadLeak();
+	}
+
+	public void testLatencySpikeDelaysTheCycle() throws Exception
+	{
+		this.server.script(Fault.none(), Fault.latency(300));
+		long duration = pollAndAssertBoundedCycleTime(true, 300);
+		assertTrue("The latency spike has not been waited for", duration >= 300);
+		assertEquals(NUMBER_OF_PLANS, this.buildMonitor.getLastBuildStatus().size());
+	}
+
+	public void testSlowDripBodyIsReadCompletely() throws Exception
+	{
+		this.server.script(Fault.slowDrip(100, 10));
+		pollAndAssertBoundedCycleTime(true, 0);
+		assertEquals(NUMBER_OF_PLANS, this.buildMonitor.getLastBuildStatus().size());
+	}
+
+	public void testConnectionResetsAreReportedAsNetworkErrors() throws Exception
+	{
+		long networkErrors = getErrorCount(MonitorMetrics.ErrorType.NETWORK);
+		this.server.setDefaultFault(Fault.reset());
+		pollAndAssertBoundedCycleTime(false, 0);
+		assertEquals("Problem: network error, connection lost.", getLastMonitoringException().getMessage());
+		assertTrue(getErrorCount(MonitorMetrics.ErrorType.NETWORK) > networkErrors);
+	}
+
+	public void testHalfOpenConnectionIsReportedAsNetworkError() throws Exception
+	{
+		// The HTTP client may retry a request once when the server closes the connection
+		// without answering, hence the stall may be waited for twice.
+		this.server.setDefaultFault(Fault.stall(500, true));
+		pollAndAssertBoundedCycleTime(false, 2 * 500);
+		assertEquals("Problem: network error, connection lost.", getLastMonitoringException().getMessage());
+	}
+
+	public void testStallInTheMiddleOfTheBodyIsReported() throws Exception
+	{
+		this.server.script(Fault.none(), Fault.stall(500, false));
+		long duration = pollAndAssertBoundedCycleTime(false, 500);
+		assertTrue(duration >= 500);
+		assertNotNull(getLastMonitoringException().getMessage());
+	}
+
+	public void testTruncatedBodyIsReported() throws Exception
+	{
+		// The HTTP client notices that the connection is closed before the end of the body
+		// announced by its Content-Length
+		long networkErrors = getErrorCount(MonitorMetrics.ErrorType.NETWORK);
+		this.server.script(Fault.truncated());
+		pollAndAssertBoundedCycleTime(false, 0);
+		assertEquals("Problem: network error, connection lost.", getLastMonitoringException().getMessage());
+		assertEquals(networkErrors + 1, getErrorCount(MonitorMetrics.ErrorType.NETWORK));
+	}
+
+	public void testMalformedXmlIsReportedAsParseError() throws Exception
+	{
+		long parseErrors = getErrorCount(MonitorMetrics.ErrorType.PARSE);
+		this.server.script(Fault.none(), Fault.malformedXml());
+		pollAndAssertBoundedCycleTime(false, 0);
+		assertNotNull(getLastMonitoringException().getMessage());
+		assertEquals(parseErrors + 1, getErrorCount(MonitorMetrics.ErrorType.PARSE));
+	}
+
+	public void testUnauthorizedIsReportedAsAuthenticationProblem() throws Exception
+	{
+		this.server.setDefaultFault(Fault.httpError(401));
+		pollAndAssertBoundedCycleTime(false, 0);
+		assertEquals("Problem: Authentication failed. Please check your username and password", getLastMonitoringException().getMessage());
+	}
+
+	public void testMonitorRecoversAfterServerErrorStorm() throws Exception
+	{
+		this.server.setDefaultFault(Fault.httpError(503));
+		for (int i = 0; i < 3; i++)
+		{
+			pollAndAssertBoundedCycleTime(false, 0);
+		}
+		assertEquals(3, this.buildMonitor.getMonitoringExceptions().size());
+		assertTrue(getLastMonitoringException().getMessage().contains("503"));
+
+		this.server.setDefaultFault(Fault.none());
+		pollAndAssertBoundedCycleTime(true, 0);
+		assertEquals(NUMBER_OF_PLANS, this.buildMonitor.getLastBuildStatus().size());
+	}
+
+	public void testCircuitOpensOnServerErrorsAndOnlyProbesUntilRecovery() throws Exception
+	{
+		MonitorMetrics metrics = MonitorMetrics.getInstance();
+		pollAndAssertBoundedCycleTime(true, 0);
+		long openings = metrics.getCircuitBreakerOpenCount();
+
+		this.server.setDefaultFault(Fault.httpError(503));
+		for (int i = 0; i < 20 && !"OPEN".equals(metrics.getCircuitBreakerState()); i++)
+		{
+			this.monitor.pollBuildStatus();
+		}
+		assertEquals("OPEN", metrics.getCircuitBreakerState());
+		assertEquals(openings + 1, metrics.getCircuitBreakerOpenCount());
+
+		// While the circuit is open, a cycle sends a single probe and shows the last known status as stale
+		int requests = this.server.getNumberOfRequests();
+		pollAndAssertBoundedCycleTime(true, 0);
+		assertEquals(requests + 1, this.server.getNumberOfRequests());
+		assertEquals(NUMBER_OF_PLANS, getNumberOfStaleReports());
+		assertTrue(this.monitor.getSystemTrayIconTooltipHeader().contains("overloaded"));
+
+		// The probe succeeds: the trial cycle closes the circuit
+		this.server.setDefaultFault(Fault.none());
+		pollAndAssertBoundedCycleTime(true, 0);
+		assertEquals("CLOSED", metrics.getCircuitBreakerState());
+		assertEquals(0, getNumberOfStaleReports());
+		assertFalse(this.monitor.getSystemTrayIconTooltipHeader().contains("\n"));
+	}
+
+	public void testUnreachableServerOnlyCostsAProbePerCycle() throws Exception
+	{
+		MonitorMetrics metrics = MonitorMetrics.getInstance();
+		pollAndAssertBoundedCycleTime(true, 0);
+
+		// The healthy server is not probed again: the cycle fails on the list of plans
+		this.server.setDefaultFault(Fault.httpError(503));
+		pollAndAssertBoundedCycleTime(false, 0);
+		assertEquals("UNKNOWN", metrics.getServerHealth());
+
+		// The next cycles stop at the probe
+		for (int i = 0; i < 3; i++)
+		{
+			int requests = this.server.getNumberOfRequests();
+			pollAndAssertBoundedCycleTime(false, 0);
+			assertEquals(requests + 1, this.server.getNumberOfRequests());
+			assertEquals("UNREACHABLE", metrics.getServerHealth());
+			assertTrue(getLastMonitoringException().getMessage().contains("503"));
+		}
+
+		this.server.setDefaultFault(Fault.httpError(401));
+		pollAndAssertBoundedCycleTime(false, 0);
+		assertEquals("AUTHENTICATION_FAILED", metrics.getServerHealth());
+	}
+
+	public void testPlanStalledAtTheDeadlineKeepsItsLastKnownStatus() throws Exception
+	{
+		this.properties.setCycleDeadlineInSeconds(1);
+		this.monitor.updateConfig();
+		pollAndAssertBoundedCycleTime(true, 0);
+		long stalePlans = MonitorMetrics.getInstance().getStalePlanCount();
+
+		this.server.script(Fault.none(), Fault.stall(30000, true));
+		long duration = pollAndAssertBoundedCycleTime(true, 1000);
+		assertTrue(duration >= 1000);
+		assertEquals(NUMBER_OF_PLANS, this.buildMonitor.getLastBuildStatus().size());
+		assertEquals(1, getNumberOfStaleReports());
+		assertEquals(stalePlans + 1, MonitorMetrics.getInstance().getStalePlanCount());
+
+		pollAndAssertBoundedCycleTime(true, 0);
+		assertEquals(0, getNumberOfStaleReports());
+	}
+
+	public void testReadTimeoutKeepsTheLastKnownStatus() throws Exception
+	{
+		this.properties.setReadTimeoutInSeconds(1);
+		this.monitor.updateConfig();
+		pollAndAssertBoundedCycleTime(true, 0);
+		long timeouts = getErrorCount(MonitorMetrics.ErrorType.TIMEOUT);
+
+		this.server.script(Fault.none(), Fault.stall(30000, true));
+		pollAndAssertBoundedCycleTime(true, 1000);
+		assertEquals(NUMBER_OF_PLANS, this.buildMonitor.getLastBuildStatus().size());
+		assertEquals(1, getNumberOfStaleReports());
+		assertEquals(timeouts + 1, getErrorCount(MonitorMetrics.ErrorType.TIMEOUT));
+	}
+
+	public void testBodyStalledLongerThanTheReadTimeoutIsAborted() throws Exception
+	{
+		// No cycle deadline comes first: only the read timeout bounds the body
+		this.properties.setReadTimeoutInSeconds(1);
+		this.properties.setMaxConcurrentRequests(1);
+		this.monitor.updateConfig();
+		pollAndAssertBoundedCycleTime(true, 0);
+		long timeouts = getErrorCount(MonitorMetrics.ErrorType.TIMEOUT);
+
+		// The server sends half of the body and keeps the connection open
+		this.server.script(Fault.none(), Fault.stall(30000, false));
+		pollAndAssertBoundedCycleTime(true, 1000);
+		assertEquals(1, getNumberOfStaleReports());
+		assertEquals(timeouts + 1, getErrorCount(MonitorMetrics.ErrorType.TIMEOUT));
+
+		// The aborted exchange has given its permit back
+		pollAndAssertBoundedCycleTime(true, 0);
+		assertEquals(0, getNumberOfStaleReports());
+	}
+
+	public void testStragglingRequestIsHedged() throws Exception
+	{
+		// Hedging starts once the usual request latency is known
+		for (int i = 0; i < 7; i++)
+		{
+			pollAndAssertBoundedCycleTime(true, 0);
+		}
+		long hedgedRequests = MonitorMetrics.getInstance().getHedgedRequestCount();
+
+		this.server.script(Fault.none(), Fault.latency(30000));
+		pollAndAssertBoundedCycleTime(true, 0);
+		assertEquals(hedgedRequests + 1, MonitorMetrics.getInstance().getHedgedRequestCount());
+		assertEquals(0, getNumberOfStaleReports());
+	}
+
+	public void testFailingChangeProbeFallsBackToFetchingThePlans() throws Exception
+	{
+		this.properties.setChangeProbe(true);
+		this.monitor.updateConfig();
+		pollAndAssertBoundedCycleTime(true, 0);
+
+		for (Fault fault : new Fault[] {Fault.httpError(500), Fault.reset(), Fault.malformedXml()})
+		{
+			this.server.setChangeProbeFault(fault);
+			pollAndAssertBoundedCycleTime(true, 0);
+			assertEquals(NUMBER_OF_PLANS, this.buildMonitor.getLastBuildStatus().size());
+			assertEquals(0, getNumberOfStaleReports());
+		}
+	}
+
+	/**
+	 * Run a poll cycle and check its outcome and its duration
+	 * @param expectedSuccess true if the cycle is expected to update the build status, false
+	 * if it is expected to report a monitoring exception
+	 * @param expectedDurationInMillis the expected duration of the cycle (not including the
+	 * allowed margin)
+	 * @return the duration of the cycle, in milliseconds
+	 */
+	private long pollAndAssertBoundedCycleTime(boolean expectedSuccess, long expectedDurationInMillis)
+	{
+		int numberOfExceptions = this.buildMonitor.getMonitoringExceptions().size();
+		long startTime = System.currentTimeMillis();
+		boolean success = this.monitor.pollBuildStatus();
+		long duration = System.currentTimeMillis() - startTime;
+
+		assertEquals("Unexpected cycle outcome (exceptions: " + this.buildMonitor.getMonitoringExceptions() + ")", expectedSuccess, success);
+		assertEquals(expectedSuccess ? numberOfExceptions : numberOfExceptions + 1, this.buildMonitor.getMonitoringExceptions().size());
+		assertTrue("The cycle took " + duration + " ms", duration < expectedDurationInMillis + CYCLE_TIME_MARGIN_IN_MILLIS);
+		return duration;
+	}
+
+	private int getNumberOfStaleReports()
+	{
+		int returnedValue = 0;
+		for (BuildReport report : this.buildMonitor.getLastBuildStatus())
+		{
+			if (report.isStale())
+			{
+				returnedValue++;
+			}
+		}
+		return returnedValue;
+	}
+
+	private MonitoringException getLastMonitoringException()
+	{
+		return this.buildMonitor.getMonitoringExceptions().get(this.buildMonitor.getMonitoringExceptions().size() - 1);
+	}
+
+	private long getErrorCount(MonitorMetrics.ErrorType type)
+	{
+		return MonitorMetrics.getInstance().getErrorCountsByType().get(type.name());
+	}
+
+	private void assertNoThreadLeak() throws InterruptedException
+	{
+		Set<Thread> leakedThreads = new HashSet<Thread>();
+		long deadline = System.currentTimeMillis() + 5000;
+		do
+		{
+			leakedThreads.clear();
+			for (Thread thread : Thread.getAllStackTraces().keySet())
+			{
+				// Before Java 21, the selector thread of an HTTP client only ends once the client is garbage collected
+				if (!this.threadsBeforeTest.contains(thread) && thread.isAlive() && !(thread.getName().startsWith("HttpClient-") && thread.getName().endsWith("-SelectorManager")))
+				{
+					leakedThreads.add(thread);
+				}
+			}
+			if (!leakedThreads.isEmpty())
+			{
+				Thread.sleep(50);
+			}
+		}
+		while (!leakedThreads.isEmpty() && System.currentTimeMillis() < deadline);
+		assertTrue("Threads leaked: " + leakedThreads, leakedThreads.isEmpty());
+	}
+}
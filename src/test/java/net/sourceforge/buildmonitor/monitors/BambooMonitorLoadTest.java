@@ -0,0 +1,250 @@
+/*
+ * Copyright 2007 Sebastien Brunot (sbrunot@gmail.com)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *   
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sourceforge.buildmonitor.monitors;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import net.sourceforge.buildmonitor.BuildReport;
+import net.sourceforge.buildmonitor.metrics.MonitorMetrics;
+
+/**
+ * Load harness that runs full poll cycles of BambooMonitor against a BambooStubServer,
+ * and reports the cycle time, the requests per second, the bytes transferred and the
+ * allocations. The load can be changed with the stub.plans, stub.cycles, stub.latency
+ * (in milliseconds), stub.churn and stub.encoding (gzip or deflate) system properties, for example:
+ * mvn test -Dtest=BambooMonitorLoadTest -Dstub.plans=1000 -Dstub.cycles=20 -Dstub.latency=5
+ * @author vegarwe
+ *
+ */
+public class BambooMonitorLoadTest extends TestCase
+{
+	private BambooStubServer server = null;
+
+	protected void setUp() throws Exception
+	{
+		this.server = new BambooStubServer(Integer.getInteger("stub.plans", 50));
+		this.server.setLatencyInMillis(Long.getLong("stub.latency", 1));
+		this.server.setChurn(Double.parseDouble(System.getProperty("stub.churn", "0.05")));
+		this.server.setContentEncoding(System.getProperty("stub.encoding"));
+		this.server.start();
+	}
+
+	protected void tearDown() throws Exception
+	{
+		this.server.stop();
+	}
+
+	public void testPollCyclesAgainstStubServer() throws Exception
+	{
+		int numberOfCycles = Integer.getInteger("stub.cycles", 5);
+		RecordingBuildMonitor buildMonitor = new RecordingBuildMonitor();
+		BambooMonitor monitor = new BambooMonitor(buildMonitor, MonitorTestSupport.createProperties(this.server));
+		MonitorMetrics metrics = MonitorMetrics.getInstance();
+
+		// Warm up (class loading, first connection)
+		assertTrue(monitor.pollBuildStatus());
+
+		long requestsBefore = this.server.getNumberOfRequests();
+		long bytesSentBefore = this.server.getNumberOfBytesSent();
+		long bytesReadBefore = metrics.getBytesRead();
+		long compressedBytesBefore = metrics.getCompressedBytesRead();
+		long decompressedBytesBefore = metrics.getDecompressedBytesRead();
+		long allocatedBytesBefore = getAllocatedBytes();
+		long startTime = System.nanoTime();
+		for (int i = 0; i < numberOfCycles; i++)
+		{
+			assertTrue("Cycle " + i + " failed: " + buildMonitor.getMonitoringExceptions(), monitor.pollBuildStatus());
+		}
+		long durationInNanos = System.nanoTime() - startTime;
+		long allocatedBytes = getAllocatedBytes() - allocatedBytesBefore;
+		long requests = this.server.getNumberOfRequests() - requestsBefore;
+
+		double durationInSeconds = durationInNanos / 1e9;
+		System.out.println("BambooMonitor load test: " + this.server.getNumberOfPlans() + " plans, " + numberOfCycles + " cycles");
+		System.out.println("  cycle time:        " + String.format("%.1f ms", durationInSeconds * 1000 / numberOfCycles));
+		System.out.println("  requests/second:   " + String.format("%.1f", requests / durationInSeconds));
+		System.out.println("  bytes sent/cycle:  " + (this.server.getNumberOfBytesSent() - bytesSentBefore) / numberOfCycles);
+		System.out.println("  bytes read/cycle:  " + (metrics.getBytesRead() - bytesReadBefore) / numberOfCycles);
+		long compressedBytes = metrics.getCompressedBytesRead() - compressedBytesBefore;
+		if (compressedBytes > 0)
+		{
+			long decompressedBytes = metrics.getDecompressedBytesRead() - decompressedBytesBefore;
+			System.out.println("  compression ratio: " + String.format("%.1f", (double) decompressedBytes / compressedBytes));
+		}
+		System.out.println("  allocations/cycle: " + (allocatedBytes < 0 ? "n/a" : (allocatedBytes / numberOfCycles) + " bytes"));
+
+		assertEquals(numberOfCycles * (this.server.getNumberOfPlans() + this.server.getNumberOfPlanPages() + MonitorTestSupport.BUILDS_IN_PROGRESS_REQUESTS), requests);
+		for (BuildReport report : buildMonitor.getLastBuildStatus())
+		{
+			assertNotNull(report.getStatus());
+		}
+		assertEquals(this.server.getNumberOfPlans(), buildMonitor.getLastBuildStatus().size());
+		assertTrue(buildMonitor.getMonitoringExceptions().isEmpty());
+		monitor.stop();
+	}
+
+	public void testAllPagesOfThePlanListAreMonitored() throws Exception
+	{
+		BambooStubServer pagingServer = new BambooStubServer(230);
+		pagingServer.setMaxResults(25);
+		pagingServer.start();
+		try
+		{
+			RecordingBuildMonitor buildMonitor = new RecordingBuildMonitor();
+			BambooMonitor monitor = new BambooMonitor(buildMonitor, MonitorTestSupport.createProperties(pagingServer));
+			assertTrue(buildMonitor.getMonitoringExceptions().toString(), monitor.pollBuildStatus());
+			monitor.stop();
+
+			assertEquals(10, pagingServer.getNumberOfPlanPages());
+			assertEquals(MonitorTestSupport.HEALTH_PROBE_REQUESTS + 230 + 10 + MonitorTestSupport.BUILDS_IN_PROGRESS_REQUESTS, pagingServer.getNumberOfRequests());
+			Set<String> planNames = new HashSet<String>();
+			for (BuildReport report : buildMonitor.getLastBuildStatus())
+			{
+				planNames.add(report.getName());
+			}
+			assertEquals(230, planNames.size());
+		}
+		finally
+		{
+			pagingServer.stop();
+		}
+	}
+
+	public void testUnfinishedSetupIsToldByTheProbe() throws Exception
+	{
+		MonitorMetrics metrics = MonitorMetrics.getInstance();
+		this.server.setSetupFinished(false);
+		RecordingBuildMonitor buildMonitor = new RecordingBuildMonitor();
+		BambooMonitor monitor = new BambooMonitor(buildMonitor, MonitorTestSupport.createProperties(this.server));
+		long probesBefore = metrics.getHealthProbeCount();
+		assertFalse(monitor.pollBuildStatus());
+		assertEquals(1, buildMonitor.getMonitoringExceptions().size());
+		assertTrue(buildMonitor.getMonitoringExceptions().get(0).getMessage().contains("Setup Wizard"));
+		assertEquals("SETUP_WIZARD", metrics.getServerHealth());
+		assertEquals(probesBefore + 1, metrics.getHealthProbeCount());
+		// The plans are not requested
+		assertEquals(0, this.server.getNumberOfResultRequests(0));
+
+		// Once the setup is finished, the healthy server is not probed again at each cycle
+		this.server.setSetupFinished(true);
+		assertTrue(buildMonitor.getMonitoringExceptions().toString(), monitor.pollBuildStatus());
+		assertTrue(buildMonitor.getMonitoringExceptions().toString(), monitor.pollBuildStatus());
+		monitor.stop();
+		assertEquals("HEALTHY", metrics.getServerHealth());
+		assertEquals(probesBefore + 2, metrics.getHealthProbeCount());
+		assertEquals(this.server.getNumberOfPlans(), buildMonitor.getLastBuildStatus().size());
+	}
+
+	public void testConcurrentRequestsAreLimited() throws Exception
+	{
+		for (boolean virtualThreads : new boolean[] {false, true})
+		{
+			BambooStubServer slowServer = new BambooStubServer(40);
+			slowServer.setLatencyInMillis(20);
+			slowServer.start();
+			try
+			{
+				BambooProperties properties = MonitorTestSupport.createProperties(slowServer);
+				properties.setMaxConcurrentRequests(3);
+				properties.setVirtualThreads(virtualThreads);
+				RecordingBuildMonitor buildMonitor = new RecordingBuildMonitor();
+				BambooMonitor monitor = new BambooMonitor(buildMonitor, properties);
+				assertTrue(buildMonitor.getMonitoringExceptions().toString(), monitor.pollBuildStatus());
+				monitor.stop();
+				assertEquals(40, buildMonitor.getLastBuildStatus().size());
+				assertTrue("Virtual threads " + virtualThreads + ": " + slowServer.getPeakConcurrentRequests() + " requests at once", slowServer.getPeakConcurrentRequests() <= 3);
+				assertTrue("Virtual threads " + virtualThreads + ": the requests are not sent in parallel", slowServer.getPeakConcurrentRequests() > 1);
+			}
+			finally
+			{
+				slowServer.stop();
+			}
+		}
+	}
+
+	public void testRefreshesDuringACycleAreMergedIntoOneFollowUpCycle() throws Exception
+	{
+		this.server.setLatencyInMillis(50);
+		RecordingBuildMonitor buildMonitor = new RecordingBuildMonitor();
+		BambooMonitor monitor = new BambooMonitor(buildMonitor, MonitorTestSupport.createProperties(this.server));
+		Thread monitorThread = new Thread(monitor, "Bamboo monitor thread");
+		monitorThread.start();
+		try
+		{
+			long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+			while (this.server.getNumberOfRequests() == 0 && System.nanoTime() < deadline)
+			{
+				Thread.sleep(5);
+			}
+			for (int i = 0; i < 5; i++)
+			{
+				monitor.refresh();
+			}
+			assertTrue(monitor.isRefreshPending());
+
+			// The cycle in progress is not interrupted, and a single cycle follows it before
+			// the monitor sleeps until the next update period
+			deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+			while ((buildMonitor.getBuildStatusUpdates().size() < 2 || !monitor.isIdle()) && System.nanoTime() < deadline)
+			{
+				Thread.sleep(20);
+			}
+			assertTrue(monitor.isIdle());
+			assertEquals(2, buildMonitor.getBuildStatusUpdates().size());
+			assertFalse(monitor.isRefreshPending());
+			assertTrue(buildMonitor.getMonitoringExceptions().isEmpty());
+			assertEquals(MonitorTestSupport.HEALTH_PROBE_REQUESTS + 2 * (this.server.getNumberOfPlans() + this.server.getNumberOfPlanPages() + MonitorTestSupport.BUILDS_IN_PROGRESS_REQUESTS), this.server.getNumberOfRequests());
+		}
+		finally
+		{
+			monitor.stop();
+			monitorThread.join(5000);
+		}
+		assertFalse(monitorThread.isAlive());
+	}
+
+	/**
+	 * Get the number of bytes allocated so far by the live threads of the JVM (or -1
+	 * if the JVM cannot tell)
+	 */
+	private static long getAllocatedBytes()
+	{
+		ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+		if (threadMXBean instanceof com.sun.management.ThreadMXBean)
+		{
+			com.sun.management.ThreadMXBean allocationsMXBean = (com.sun.management.ThreadMXBean) threadMXBean;
+			if (allocationsMXBean.isThreadAllocatedMemorySupported() && allocationsMXBean.isThreadAllocatedMemoryEnabled())
+			{
+				long returnedValue = 0;
+				for (long allocatedBytes : allocationsMXBean.getThreadAllocatedBytes(threadMXBean.getAllThreadIds()))
+				{
+					if (allocatedBytes > 0)
+					{
+						returnedValue += allocatedBytes;
+					}
+				}
+				return returnedValue;
+			}
+		}
+		return -1;
+	}
+}
@@ -0,0 +1,268 @@
+/*
+ * Copyright 2007 Sebastien Brunot (sbrunot@gmail.com)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *   
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sourceforge.buildmonitor.monitors;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import net.sourceforge.buildmonitor.BuildReport;
+import net.sourceforge.buildmonitor.FailureDetails;
+import net.sourceforge.buildmonitor.LogTail;
+import net.sourceforge.buildmonitor.MonitoringException;
+import net.sourceforge.buildmonitor.metrics.MonitorMetrics;
+
+/**
+ * Tests of the features of BambooMonitor, against a BambooStubServer.
+ * @author vegarwe
+ *
+ */
+public class BambooMonitorTest extends TestCase
+{
+	private BambooStubServer server = null;
+
+	protected void setUp() throws Exception
+	{
+		this.server = new BambooStubServer(50);
+		this.server.start();
+	}
+
+	protected void tearDown() throws Exception
+	{
+		this.server.stop();
+	}
+
+	public void testBuildsInProgressArePolledInAFastLane() throws Exception
+	{
+		this.server.startBuild(3);
+		this.server.queueBuild(7);
+		BambooProperties properties = MonitorTestSupport.createProperties(this.server);
+		properties.setRunningBuildsPollPeriodInSeconds(1);
+		RecordingBuildMonitor buildMonitor = new RecordingBuildMonitor();
+		BambooMonitor monitor = new BambooMonitor(buildMonitor, properties);
+		Thread monitorThread = new Thread(monitor, "Bamboo monitor thread");
+		monitorThread.start();
+		try
+		{
+			String runningBuild = BambooXmlFixtures.getPlanKey(3) + "-2";
+			String queuedBuild = BambooXmlFixtures.getPlanKey(7) + "-2";
+			List<BuildReport> buildStatus = MonitorTestSupport.awaitBuildStatus(buildMonitor, runningBuild, BuildReport.Status.RUNNING);
+			assertEquals(BuildReport.Status.QUEUED, MonitorTestSupport.getStatus(buildStatus, queuedBuild));
+			assertEquals(this.server.getNumberOfPlans() + 2, buildStatus.size());
+
+			// The end of the running build is seen long before the next poll cycle (300 seconds)
+			long finishTime = System.nanoTime();
+			this.server.finishBuild(3, false);
+			buildStatus = MonitorTestSupport.awaitBuildStatus(buildMonitor, runningBuild, BuildReport.Status.FAILED);
+			assertTrue((System.nanoTime() - finishTime) / 1000000 + " ms", System.nanoTime() - finishTime < TimeUnit.SECONDS.toNanos(5));
+			assertEquals(1, MonitorTestSupport.countBuilds(buildStatus, runningBuild));
+			assertEquals(BuildReport.Status.QUEUED, MonitorTestSupport.getStatus(buildStatus, queuedBuild));
+			assertEquals(this.server.getNumberOfPlans() + 1, buildStatus.size());
+
+			// Only the plans that have a build in progress are polled in the fast lane
+			assertTrue(this.server.getNumberOfResultRequests(3) > 1);
+			assertTrue(this.server.getNumberOfResultRequests(7) > 1);
+			assertEquals(1, this.server.getNumberOfResultRequests(5));
+		}
+		finally
+		{
+			monitor.stop();
+			monitorThread.interrupt();
+			monitorThread.join(5000);
+		}
+		assertFalse(monitorThread.isAlive());
+	}
+
+	public void testOnlyThePlansWithANewBuildAreFetched() throws Exception
+	{
+		MonitorMetrics metrics = MonitorMetrics.getInstance();
+		BambooProperties properties = MonitorTestSupport.createProperties(this.server);
+		properties.setChangeProbe(true);
+		RecordingBuildMonitor buildMonitor = new RecordingBuildMonitor();
+		BambooMonitor monitor = new BambooMonitor(buildMonitor, properties);
+		assertTrue(buildMonitor.getMonitoringExceptions().toString(), monitor.pollBuildStatus());
+
+		this.server.finishBuild(3, false);
+		this.server.finishBuild(7, true);
+		long requestsBefore = this.server.getNumberOfRequests();
+		long unchangedPlansBefore = metrics.getUnchangedPlanCount();
+		assertTrue(buildMonitor.getMonitoringExceptions().toString(), monitor.pollBuildStatus());
+		monitor.stop();
+
+		// The pages of the plans and of the latest results, the builds in progress, and the results of the two plans that advanced
+		assertEquals(2 * this.server.getNumberOfPlanPages() + MonitorTestSupport.BUILDS_IN_PROGRESS_REQUESTS + 2, this.server.getNumberOfRequests() - requestsBefore);
+		assertEquals(this.server.getNumberOfPlans() - 2, metrics.getUnchangedPlanCount() - unchangedPlansBefore);
+		assertEquals(2, this.server.getNumberOfResultRequests(3));
+		assertEquals(1, this.server.getNumberOfResultRequests(5));
+		List<BuildReport> buildStatus = buildMonitor.getLastBuildStatus();
+		assertEquals(this.server.getNumberOfPlans(), buildStatus.size());
+		assertEquals(BuildReport.Status.FAILED, MonitorTestSupport.getStatus(buildStatus, BambooXmlFixtures.getPlanKey(3) + "-2"));
+		assertEquals(BuildReport.Status.OK, MonitorTestSupport.getStatus(buildStatus, BambooXmlFixtures.getPlanKey(7) + "-2"));
+	}
+
+	public void testANewBuildOfAPlanThatIsNotDueIsFetchedAtOnce() throws Exception
+	{
+		MonitorMetrics metrics = MonitorMetrics.getInstance();
+		BambooProperties properties = MonitorTestSupport.createProperties(this.server);
+		properties.setMaxPlanPollPeriodInSeconds(3600);
+		properties.setChangeProbe(true);
+		RecordingBuildMonitor buildMonitor = new RecordingBuildMonitor();
+		BambooMonitor monitor = new BambooMonitor(buildMonitor, properties);
+		assertTrue(buildMonitor.getMonitoringExceptions().toString(), monitor.pollBuildStatus());
+
+		// The plans are not due before the next update period
+		long skippedPlansBefore = metrics.getSkippedPlanRequestCount();
+		assertTrue(buildMonitor.getMonitoringExceptions().toString(), monitor.pollBuildStatus());
+		assertEquals(this.server.getNumberOfPlans(), metrics.getSkippedPlanRequestCount() - skippedPlansBefore);
+		assertEquals(1, this.server.getNumberOfResultRequests(3));
+
+		// The change probe tells that a plan has a new build: it is fetched without waiting for its next poll
+		this.server.finishBuild(3, false);
+		skippedPlansBefore = metrics.getSkippedPlanRequestCount();
+		assertTrue(buildMonitor.getMonitoringExceptions().toString(), monitor.pollBuildStatus());
+		assertEquals(this.server.getNumberOfPlans() - 1, metrics.getSkippedPlanRequestCount() - skippedPlansBefore);
+		assertEquals(2, this.server.getNumberOfResultRequests(3));
+		assertEquals(1, this.server.getNumberOfResultRequests(5));
+		assertEquals(BuildReport.Status.FAILED, MonitorTestSupport.getStatus(buildMonitor.getLastBuildStatus(), BambooXmlFixtures.getPlanKey(3) + "-2"));
+		monitor.stop();
+	}
+
+	public void testANewBuildOfABackedOffPlanIsReportedWithTheDefaultSettings() throws Exception
+	{
+		String planKey = BambooXmlFixtures.getPlanKey(3);
+		for (String projectKeys : new String[] {null, planKey + ", " + BambooXmlFixtures.getPlanKey(5)})
+		{
+			BambooStubServer server = new BambooStubServer(50);
+			server.start();
+			try
+			{
+				BambooProperties properties = new BambooProperties();
+				properties.setServerBaseUrl(server.getBaseUrl());
+				properties.setUsername("user");
+				properties.setPassword("password");
+				properties.setProjectKeys(projectKeys);
+				RecordingBuildMonitor buildMonitor = new RecordingBuildMonitor();
+				BambooMonitor monitor = new BambooMonitor(buildMonitor, properties);
+				try
+				{
+					// The plans have no new build: they back off
+					for (int i = 0; i < 3; i++)
+					{
+						assertTrue(buildMonitor.getMonitoringExceptions().toString(), monitor.pollBuildStatus());
+					}
+
+					server.finishBuild(3, false);
+					assertTrue(buildMonitor.getMonitoringExceptions().toString(), monitor.pollBuildStatus());
+					assertEquals("Project keys " + projectKeys, BuildReport.Status.FAILED, MonitorTestSupport.getStatus(buildMonitor.getLastBuildStatus(), planKey + "-2"));
+				}
+				finally
+				{
+					monitor.stop();
+				}
+			}
+			finally
+			{
+				server.stop();
+			}
+		}
+	}
+
+	public void testFailureDetailsAreFetchedOnDemandAndCached() throws Exception
+	{
+		RecordingBuildMonitor buildMonitor = new RecordingBuildMonitor();
+		BambooMonitor monitor = new BambooMonitor(buildMonitor, MonitorTestSupport.createProperties(this.server));
+		assertTrue(buildMonitor.getMonitoringExceptions().toString(), monitor.pollBuildStatus());
+		// The poll cycles never fetch the details of the failed builds
+		assertEquals(0, this.server.getNumberOfFailureDetailsRequests());
+
+		String failedBuildKey = BambooXmlFixtures.getPlanKey(0) + "-1";
+		FailureDetails details = monitor.getFailureDetails(failedBuildKey).get(10, TimeUnit.SECONDS);
+		assertEquals(1, details.getFailedTestCount());
+		assertEquals(11, details.getSuccessfulTestCount());
+		assertEquals(Arrays.asList("Default Stage"), details.getFailedStages());
+		assertEquals(Arrays.asList("Unit tests"), details.getFailedJobs());
+		assertEquals(Arrays.asList("net.example.FooTest.testFoo"), details.getFailedTests());
+		assertSame(details, monitor.getFailureDetails(failedBuildKey).get(10, TimeUnit.SECONDS));
+		assertTrue(buildMonitor.getMonitoringExceptions().toString(), monitor.pollBuildStatus());
+		assertEquals(1, this.server.getNumberOfFailureDetailsRequests());
+
+		// The least recently used details are evicted from the cache, and fetched again when asked for
+		for (int i = 0; i < BambooMonitor.FAILURE_DETAILS_CACHE_SIZE; i++)
+		{
+			monitor.getFailureDetails(BambooXmlFixtures.getPlanKey(1) + "-" + (i + 1)).get(10, TimeUnit.SECONDS);
+		}
+		monitor.getFailureDetails(failedBuildKey).get(10, TimeUnit.SECONDS);
+		monitor.stop();
+		assertEquals(BambooMonitor.FAILURE_DETAILS_CACHE_SIZE + 2, this.server.getNumberOfFailureDetailsRequests());
+	}
+
+	public void testOnlyTheEndOfTheLogIsFetchedAndThenFollowed() throws Exception
+	{
+		this.server.appendLogLines(20000);
+		BambooMonitor monitor = new BambooMonitor(new RecordingBuildMonitor(), MonitorTestSupport.createProperties(this.server));
+		LogTail logTail = monitor.getLogTail(BambooXmlFixtures.getPlanKey(0) + "-1");
+		List<String> lines = logTail.update().get(10, TimeUnit.SECONDS);
+		assertEquals(BambooMonitor.LOG_TAIL_LINES, lines.size());
+		assertEquals(BambooStubServer.getLogLine(20000 - BambooMonitor.LOG_TAIL_LINES + 1), lines.get(0));
+		assertEquals(BambooStubServer.getLogLine(20000), lines.get(lines.size() - 1));
+		assertTrue(this.server.getNumberOfLogBytesSent() <= BambooMonitor.LOG_TAIL_BYTES);
+
+		// Following the log only fetches the new lines
+		long bytesBefore = this.server.getNumberOfLogBytesSent();
+		this.server.appendLogLines(3);
+		lines = logTail.update().get(10, TimeUnit.SECONDS);
+		assertEquals(BambooMonitor.LOG_TAIL_LINES, lines.size());
+		assertEquals(BambooStubServer.getLogLine(20003), lines.get(lines.size() - 1));
+		assertEquals(BambooStubServer.getLogLine(20002), lines.get(lines.size() - 2));
+		long newLinesBytes = 0;
+		for (int i = 20001; i <= 20003; i++)
+		{
+			newLinesBytes += (BambooStubServer.getLogLine(i) + "\n").getBytes("UTF-8").length;
+		}
+		assertEquals(newLinesBytes, this.server.getNumberOfLogBytesSent() - bytesBefore);
+		bytesBefore = this.server.getNumberOfLogBytesSent();
+		assertEquals(lines, logTail.update().get(10, TimeUnit.SECONDS));
+		assertEquals(bytesBefore, this.server.getNumberOfLogBytesSent());
+
+		// A tail far behind the log jumps to its end
+		this.server.appendLogLines(20000);
+		lines = logTail.update().get(10, TimeUnit.SECONDS);
+		assertEquals(BambooStubServer.getLogLine(40003), lines.get(lines.size() - 1));
+		assertTrue(this.server.getNumberOfLogBytesSent() - bytesBefore <= 2 * BambooMonitor.LOG_TAIL_BYTES);
+		monitor.stop();
+	}
+
+	public void testALogIsNeverDownloadedInFull() throws Exception
+	{
+		this.server.appendLogLines(20000);
+		this.server.setRangesSupported(false);
+		BambooMonitor monitor = new BambooMonitor(new RecordingBuildMonitor(), MonitorTestSupport.createProperties(this.server));
+		try
+		{
+			monitor.getLogTail(BambooXmlFixtures.getPlanKey(0) + "-1").update().get(10, TimeUnit.SECONDS);
+			fail("The server does not send parts of the logs");
+		}
+		catch (ExecutionException e)
+		{
+			assertTrue(e.getCause() instanceof MonitoringException);
+			assertTrue(e.getCause().getMessage(), e.getCause().getMessage().contains("not downloaded in full"));
+		}
+		monitor.stop();
+	}
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2007 Sebastien Brunot (sbrunot@gmail.com)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *   
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sourceforge.buildmonitor.monitors;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Properties;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for the BambooPropertiesWatcher class.
+ * @author vegarwe
+ *
+ */
+public class BambooPropertiesWatcherTest extends TestCase
+{
+	private File directory = null;
+	private File propertiesFile = null;
+	private RecordingBuildMonitor buildMonitor = null;
+	private BambooPropertiesWatcher watcher = null;
+
+	protected void setUp() throws Exception
+	{
+		this.directory = File.createTempFile("bamboo-monitor", "");
+		this.directory.delete();
+		this.directory.mkdir();
+		this.propertiesFile = new File(this.directory, "bamboo-monitor.properties");
+		writeProperties("http://localhost:8085", "60");
+		this.buildMonitor = new RecordingBuildMonitor();
+		this.watcher = new BambooPropertiesWatcher(this.propertiesFile, 100, this.buildMonitor);
+		this.watcher.start();
+	}
+
+	protected void tearDown() throws Exception
+	{
+		this.watcher.stop();
+		for (File file : this.directory.listFiles())
+		{
+			file.delete();
+		}
+		this.directory.delete();
+	}
+
+	public void testChangedPropertiesArePublished() throws Exception
+	{
+		assertNull(this.watcher.takeChangedProperties());
+
+		// Several writes in a row are loaded once
+		writeProperties("http://bamboo:8085", "120");
+		writeProperties("http://bamboo:8085", "180");
+		assertTrue(this.watcher.awaitChangedProperties(10000));
+		Thread.sleep(300);
+		BambooProperties properties = this.watcher.takeChangedProperties();
+		assertEquals("http://bamboo:8085", properties.getServerBaseUrl());
+		assertEquals(180, properties.getUpdatePeriodInSeconds().intValue());
+		assertEquals(1, this.watcher.getVersion());
+		assertNull(this.watcher.takeChangedProperties());
+		assertTrue(this.buildMonitor.getMonitoringExceptions().isEmpty());
+	}
+
+	public void testInvalidPropertiesAreReported() throws Exception
+	{
+		writeProperties("ftp://bamboo", "120");
+		assertFalse(this.watcher.awaitChangedProperties(1000));
+		assertEquals(0, this.watcher.getVersion());
+		assertEquals(1, this.buildMonitor.getMonitoringExceptions().size());
+		assertTrue(this.buildMonitor.getMonitoringExceptions().get(0).isOptionsRelated());
+
+		// The next valid change is published
+		writeProperties("http://bamboo:8085", "120");
+		assertTrue(this.watcher.awaitChangedProperties(10000));
+		assertEquals("http://bamboo:8085", this.watcher.takeChangedProperties().getServerBaseUrl());
+	}
+
+	private void writeProperties(String serverBaseUrl, String updatePeriodInSeconds) throws IOException
+	{
+		Properties properties = new Properties();
+		properties.setProperty("bamboo.server.base.url", serverBaseUrl);
+		properties.setProperty("bamboo.username", "user");
+		properties.setProperty("bamboo.password", "password");
+		properties.setProperty("update.period.in.seconds", updatePeriodInSeconds);
+		FileOutputStream out = new FileOutputStream(this.propertiesFile);
+		try
+		{
+			properties.store(out, null);
+		}
+		finally
+		{
+			out.close();
+		}
+	}
+}
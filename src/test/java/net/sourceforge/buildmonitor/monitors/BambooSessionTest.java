@@ -0,0 +1,131 @@
+/*
+ * Copyright 2007 Sebastien Brunot (sbrunot@gmail.com)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *   
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sourceforge.buildmonitor.monitors;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+
+import junit.framework.TestCase;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import net.sourceforge.buildmonitor.metrics.MonitorMetrics;
+
+/**
+ * Tests of the session that BambooSession opens on the server.
+ * @author vegarwe
+ *
+ */
+public class BambooSessionTest extends TestCase
+{
+	public void testSessionIsReusedUntilItExpires() throws Exception
+	{
+		MonitorMetrics metrics = MonitorMetrics.getInstance();
+		for (boolean loginRedirect : new boolean[] {false, true})
+		{
+			BambooStubServer sessionServer = new BambooStubServer(60);
+			sessionServer.setLoginRedirect(loginRedirect);
+			sessionServer.start();
+			try
+			{
+				RecordingBuildMonitor buildMonitor = new RecordingBuildMonitor();
+				BambooMonitor monitor = new BambooMonitor(buildMonitor, MonitorTestSupport.createProperties(sessionServer));
+				long reauthenticationsBefore = metrics.getReauthenticationCount();
+				assertTrue(buildMonitor.getMonitoringExceptions().toString(), monitor.pollBuildStatus());
+				assertTrue(buildMonitor.getMonitoringExceptions().toString(), monitor.pollBuildStatus());
+				assertEquals(1, sessionServer.getNumberOfAuthentications());
+
+				sessionServer.expireSessions();
+				assertTrue(buildMonitor.getMonitoringExceptions().toString(), monitor.pollBuildStatus());
+				monitor.stop();
+				assertEquals(2, sessionServer.getNumberOfAuthentications());
+				assertEquals(1, metrics.getReauthenticationCount() - reauthenticationsBefore);
+				assertEquals(60, buildMonitor.getLastBuildStatus().size());
+			}
+			finally
+			{
+				sessionServer.stop();
+			}
+		}
+
+		// Without sessions, every request is authenticated
+		BambooStubServer sessionlessServer = new BambooStubServer(60);
+		sessionlessServer.setSessionsEnabled(false);
+		sessionlessServer.start();
+		try
+		{
+			RecordingBuildMonitor buildMonitor = new RecordingBuildMonitor();
+			BambooMonitor monitor = new BambooMonitor(buildMonitor, MonitorTestSupport.createProperties(sessionlessServer));
+			assertTrue(buildMonitor.getMonitoringExceptions().toString(), monitor.pollBuildStatus());
+			monitor.stop();
+			assertEquals(sessionlessServer.getNumberOfRequests(), sessionlessServer.getNumberOfAuthentications());
+			assertEquals(60, buildMonitor.getLastBuildStatus().size());
+		}
+		finally
+		{
+			sessionlessServer.stop();
+		}
+	}
+
+	public void testRedirectionsOtherThanToTheLoginPageKeepTheSession() throws Exception
+	{
+		MonitorMetrics metrics = MonitorMetrics.getInstance();
+		BambooStubServer sessionServer = new BambooStubServer(60);
+		sessionServer.start();
+		// Every request is redirected to the Bamboo server, as a redirection to https or to the context path of the server is
+		HttpServer redirectingServer = startRedirectingServer(sessionServer.getBaseUrl());
+		try
+		{
+			RecordingBuildMonitor buildMonitor = new RecordingBuildMonitor();
+			BambooMonitor monitor = new BambooMonitor(buildMonitor, MonitorTestSupport.createProperties("http://127.0.0.1:" + redirectingServer.getAddress().getPort()));
+			long reauthenticationsBefore = metrics.getReauthenticationCount();
+			assertTrue(buildMonitor.getMonitoringExceptions().toString(), monitor.pollBuildStatus());
+			assertTrue(buildMonitor.getMonitoringExceptions().toString(), monitor.pollBuildStatus());
+			monitor.stop();
+			assertEquals(1, sessionServer.getNumberOfAuthentications());
+			assertEquals(0, metrics.getReauthenticationCount() - reauthenticationsBefore);
+			assertEquals(60, buildMonitor.getLastBuildStatus().size());
+		}
+		finally
+		{
+			redirectingServer.stop(0);
+			sessionServer.stop();
+		}
+	}
+
+	/**
+	 * Start a server that redirects every request to the same path and query on another server
+	 * @param targetBaseUrl the base URL of the other server
+	 * @return the started server
+	 */
+	private static HttpServer startRedirectingServer(final String targetBaseUrl) throws IOException
+	{
+		HttpServer returnedValue = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		returnedValue.createContext("/", new HttpHandler()
+		{
+			public void handle(HttpExchange exchange) throws IOException
+			{
+				exchange.getResponseHeaders().set("Location", targetBaseUrl + exchange.getRequestURI());
+				exchange.sendResponseHeaders(302, -1);
+				exchange.close();
+			}
+		});
+		returnedValue.start();
+		return returnedValue;
+	}
+}
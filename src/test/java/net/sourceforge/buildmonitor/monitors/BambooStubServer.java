@@ -0,0 +1,804 @@
+/*
+ * Copyright 2007 Sebastien Brunot (sbrunot@gmail.com)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *   
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sourceforge.buildmonitor.monitors;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import net.sourceforge.buildmonitor.BuildReport;
+
+/**
+ * An in-process HTTP server that serves the parts of the Bamboo REST api used by
+ * BambooMonitor (/rest/api/latest/plan, the plans of a project: /rest/api/latest/project/{key},
+ * /rest/api/latest/result/{key}, the latest result of
+ * each plan: /rest/api/latest/result, the running builds and the queue:
+ * /rest/api/latest/result?lifeCycleState=InProgress and /rest/api/latest/queue, and the
+ * server info: /rest/api/latest/info) for a number of synthetic plans. As Bamboo does, the
+ * lists of plans and of latest results are paged (start-index and max-results parameters),
+ * with a maximum page size.
+ * Each request can be delayed by a fixed latency, and the status of the plans can churn:
+ * each time the result of a plan is requested, there is a given probability that a new
+ * build of the plan has completed with the opposite status.
+ * The responses can be compressed (gzip or deflate) for the clients that accept it.
+ * The requests must be authenticated, either with Basic authentication (which opens a
+ * session, unless sessions are disabled) or with the cookie of an open session. The
+ * requests that are not are answered with a 401 status code, or redirected to the login
+ * page.
+ * Until its setup is finished, the server redirects all the requests to its setup wizard.
+ * @author vegarwe
+ *
+ */
+public class BambooStubServer
+{
+	private static final String PLAN_PATH = "/rest/api/latest/plan";
+	private static final String PROJECT_PATH = "/rest/api/latest/project/";
+	private static final String RESULT_PATH = "/rest/api/latest/result/";
+	private static final String LATEST_RESULTS_PATH = "/rest/api/latest/result";
+	private static final String RUNNING_BUILDS_PATH = "/rest/api/latest/result";
+	private static final String QUEUE_PATH = "/rest/api/latest/queue";
+	private static final String SERVER_INFO_PATH = "/rest/api/latest/info";
+	private static final String LOGIN_PATH = "/userlogin!default.action";
+	private static final String SETUP_WIZARD_PATH = "/setup/setupLicense.action";
+	private static final String LOG_PATH = "/download/";
+	private static final String SESSION_COOKIE = "JSESSIONID";
+
+	static
+	{
+		// Without TCP_NODELAY, Nagle's algorithm adds ~40ms to every small response
+		System.setProperty("sun.net.httpserver.nodelay", "true");
+	}
+
+	private final int numberOfPlans;
+	private final int[] buildNumbers;
+	private final boolean[] successfulBuilds;
+	private final BuildReport.Status[] buildsInProgress;
+	private final AtomicIntegerArray numberOfResultRequests;
+	private final Random random = new Random(42);
+	private volatile long latencyInMillis = 0;
+	private volatile double churn = 0;
+	private volatile String contentEncoding = null;
+	private volatile int maxResults = 25;
+	private volatile boolean sessionsEnabled = true;
+	private volatile boolean loginRedirect = false;
+	private volatile boolean setupFinished = true;
+	private volatile boolean rangesSupported = true;
+	private final ByteArrayOutputStream jobLog = new ByteArrayOutputStream();
+	private int numberOfLogLines = 0;
+	private final AtomicLong numberOfLogBytesSent = new AtomicLong();
+	private final Set<String> sessions = Collections.synchronizedSet(new HashSet<String>());
+	private final AtomicInteger sessionCounter = new AtomicInteger();
+	private final AtomicLong numberOfAuthentications = new AtomicLong();
+	private final AtomicInteger numberOfConcurrentRequests = new AtomicInteger();
+	private final AtomicInteger peakConcurrentRequests = new AtomicInteger();
+	private final AtomicLong numberOfRequests = new AtomicLong();
+	private final AtomicInteger numberOfFailureDetailsRequests = new AtomicInteger();
+	private final AtomicLong numberOfBytesSent = new AtomicLong();
+	private HttpServer server = null;
+	private ExecutorService executor = null;
+
+	/**
+	 * Create a new stub server (call {@link #start()} to start it)
+	 * @param numberOfPlans number of plans defined on the server
+	 */
+	public BambooStubServer(int numberOfPlans)
+	{
+		this.numberOfPlans = numberOfPlans;
+		this.buildNumbers = new int[numberOfPlans];
+		this.successfulBuilds = new boolean[numberOfPlans];
+		this.buildsInProgress = new BuildReport.Status[numberOfPlans];
+		this.numberOfResultRequests = new AtomicIntegerArray(numberOfPlans);
+		for (int i = 0; i < numberOfPlans; i++)
+		{
+			this.buildNumbers[i] = 1;
+			this.successfulBuilds[i] = (i % 10) != 0;
+		}
+	}
+
+	/**
+	 * Set the latency added to each request
+	 * @param latencyInMillis the latency, in milliseconds
+	 */
+	public void setLatencyInMillis(long latencyInMillis)
+	{
+		this.latencyInMillis = latencyInMillis;
+	}
+
+	/**
+	 * Set the probability that a new build of a plan has completed with the opposite status
+	 * each time its result is requested
+	 * @param churn the probability, between 0 and 1
+	 */
+	public void setChurn(double churn)
+	{
+		this.churn = churn;
+	}
+
+	/**
+	 * Set the maximum number of plans in a page of the list of plans
+	 * @param maxResults the maximum number of plans in a page
+	 */
+	public void setMaxResults(int maxResults)
+	{
+		this.maxResults = maxResults;
+	}
+
+	/**
+	 * Get the number of pages of the list of plans
+	 * @return the number of pages of the list of plans
+	 */
+	public int getNumberOfPlanPages()
+	{
+		return Math.max(1, (this.numberOfPlans + this.maxResults - 1) / this.maxResults);
+	}
+
+	/**
+	 * Put the next build of a plan in the queue
+	 * @param planIndex index of the plan
+	 */
+	public synchronized void queueBuild(int planIndex)
+	{
+		this.buildsInProgress[planIndex] = BuildReport.Status.QUEUED;
+	}
+
+	/**
+	 * Start the next build of a plan
+	 * @param planIndex index of the plan
+	 */
+	public synchronized void startBuild(int planIndex)
+	{
+		this.buildsInProgress[planIndex] = BuildReport.Status.RUNNING;
+	}
+
+	/**
+	 * Finish the next build of a plan: it becomes the latest result of the plan
+	 * @param planIndex index of the plan
+	 * @param successful is the build successful ?
+	 */
+	public synchronized void finishBuild(int planIndex, boolean successful)
+	{
+		this.buildsInProgress[planIndex] = null;
+		this.buildNumbers[planIndex]++;
+		this.successfulBuilds[planIndex] = successful;
+	}
+
+	/**
+	 * Get the number of times the results of a plan have been requested
+	 * @param planIndex index of the plan
+	 */
+	public int getNumberOfResultRequests(int planIndex)
+	{
+		return this.numberOfResultRequests.get(planIndex);
+	}
+
+	/**
+	 * Append lines to the log of the jobs (all the jobs share the same log)
+	 * @param numberOfLines the number of lines to append
+	 */
+	public void appendLogLines(int numberOfLines)
+	{
+		synchronized (this.jobLog)
+		{
+			for (int i = 0; i < numberOfLines; i++)
+			{
+				this.numberOfLogLines++;
+				byte[] line = (getLogLine(this.numberOfLogLines) + "\n").getBytes(StandardCharsets.UTF_8);
+				this.jobLog.write(line, 0, line.length);
+			}
+		}
+	}
+
+	/**
+	 * Get a line of the log of the jobs
+	 * @param lineNumber the number of the line (the first line is 1)
+	 */
+	public static String getLogLine(int lineNumber)
+	{
+		return "simple\t12-Aug-2011 11:25:" + (lineNumber % 60) + "\tBuild log line " + lineNumber + ", with \u00e9\u00e8 to decode";
+	}
+
+	/**
+	 * Set whether the server honours the Range header of the requests for logs (when it does
+	 * not, it sends the whole log)
+	 */
+	public void setRangesSupported(boolean rangesSupported)
+	{
+		this.rangesSupported = rangesSupported;
+	}
+
+	/**
+	 * Get the number of bytes of the log sent in the responses to range requests so far
+	 */
+	public long getNumberOfLogBytesSent()
+	{
+		return this.numberOfLogBytesSent.get();
+	}
+
+	/**
+	 * Get the number of times the details of a build result have been requested
+	 */
+	public int getNumberOfFailureDetailsRequests()
+	{
+		return this.numberOfFailureDetailsRequests.get();
+	}
+
+	/**
+	 * Set the encoding used to compress the responses when the client accepts it
+	 * @param contentEncoding "gzip", "deflate" or null to never compress the responses
+	 */
+	public void setContentEncoding(String contentEncoding)
+	{
+		this.contentEncoding = contentEncoding;
+	}
+
+	/**
+	 * Set whether a session is opened when a request is authenticated with Basic authentication
+	 * @param sessionsEnabled true to open sessions
+	 */
+	public void setSessionsEnabled(boolean sessionsEnabled)
+	{
+		this.sessionsEnabled = sessionsEnabled;
+	}
+
+	/**
+	 * Set how the requests that are not authenticated are answered
+	 * @param loginRedirect true to redirect them to the login page, false to answer them
+	 * with a 401 status code
+	 */
+	public void setLoginRedirect(boolean loginRedirect)
+	{
+		this.loginRedirect = loginRedirect;
+	}
+
+	/**
+	 * Set whether the setup of the server is finished
+	 * @param setupFinished false to redirect all the requests to the setup wizard
+	 */
+	public void setSetupFinished(boolean setupFinished)
+	{
+		this.setupFinished = setupFinished;
+	}
+
+	/**
+	 * Expire all the open sessions
+	 */
+	public void expireSessions()
+	{
+		this.sessions.clear();
+	}
+
+	/**
+	 * Start the server on a free port of the loopback interface
+	 */
+	public void start() throws IOException
+	{
+		this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		this.server.createContext("/", new HttpHandler()
+		{
+			public void handle(HttpExchange exchange) throws IOException
+			{
+				handleRequest(exchange);
+			}
+		});
+		this.executor = Executors.newCachedThreadPool();
+		this.server.setExecutor(this.executor);
+		this.server.start();
+	}
+
+	/**
+	 * Stop the server
+	 */
+	public void stop()
+	{
+		if (this.server != null)
+		{
+			this.server.stop(0);
+			this.executor.shutdownNow();
+			this.server = null;
+		}
+	}
+
+	/**
+	 * Get the base URL of the server
+	 * @return the base URL of the server
+	 */
+	public String getBaseUrl()
+	{
+		return "http://127.0.0.1:" + this.server.getAddress().getPort();
+	}
+
+	/**
+	 * Get the number of plans defined on the server
+	 * @return the number of plans defined on the server
+	 */
+	public int getNumberOfPlans()
+	{
+		return this.numberOfPlans;
+	}
+
+	/**
+	 * Get the number of requests served so far
+	 * @return the number of requests served so far
+	 */
+	public long getNumberOfRequests()
+	{
+		return this.numberOfRequests.get();
+	}
+
+	/**
+	 * Get the highest number of requests served at the same time so far
+	 * @return the highest number of requests served at the same time so far
+	 */
+	public int getPeakConcurrentRequests()
+	{
+		return this.peakConcurrentRequests.get();
+	}
+
+	/**
+	 * Get the number of requests authenticated with Basic authentication so far
+	 * @return the number of requests authenticated with Basic authentication so far
+	 */
+	public long getNumberOfAuthentications()
+	{
+		return this.numberOfAuthentications.get();
+	}
+
+	/**
+	 * Get the number of response body bytes sent so far
+	 * @return the number of response body bytes sent so far
+	 */
+	public long getNumberOfBytesSent()
+	{
+		return this.numberOfBytesSent.get();
+	}
+
+	/**
+	 * Handle a request to the server
+	 * @param exchange the exchange of the request
+	 */
+	protected void handleRequest(HttpExchange exchange) throws IOException
+	{
+		this.numberOfRequests.incrementAndGet();
+		int concurrentRequests = this.numberOfConcurrentRequests.incrementAndGet();
+		int peak = this.peakConcurrentRequests.get();
+		while (concurrentRequests > peak && !this.peakConcurrentRequests.compareAndSet(peak, concurrentRequests))
+		{
+			peak = this.peakConcurrentRequests.get();
+		}
+		boolean served = false;
+		try
+		{
+			if (this.latencyInMillis > 0)
+			{
+				Thread.sleep(this.latencyInMillis);
+			}
+			String path = exchange.getRequestURI().getPath();
+			String body = getResponseBody(path, exchange.getRequestURI().getRawQuery());
+			int statusCode = 200;
+			if (SETUP_WIZARD_PATH.equals(path))
+			{
+				body = "<html><head><title>Bamboo Setup Wizard - Atlassian Bamboo</title></head></html>";
+			}
+			else if (!this.setupFinished)
+			{
+				exchange.getResponseHeaders().set("Location", getBaseUrl() + SETUP_WIZARD_PATH);
+				statusCode = 302;
+				body = "";
+			}
+			else if (LOGIN_PATH.equals(path))
+			{
+				body = "<html><head><title>Log in - Atlassian Bamboo</title></head></html>";
+			}
+			else if (!authenticate(exchange))
+			{
+				if (this.loginRedirect)
+				{
+					exchange.getResponseHeaders().set("Location", getBaseUrl() + LOGIN_PATH);
+					statusCode = 302;
+					body = "";
+				}
+				else
+				{
+					statusCode = 401;
+					body = "<html><body>Unauthorized</body></html>";
+				}
+			}
+			else if (path.startsWith(LOG_PATH) && path.endsWith(".log"))
+			{
+				served = true;
+				this.numberOfConcurrentRequests.decrementAndGet();
+				sendLog(exchange);
+				return;
+			}
+			else if (body == null)
+			{
+				statusCode = 404;
+				body = "<html><body>Not found</body></html>";
+			}
+			// The request is over for the server before the client receives the response,
+			// which may be followed at once by another request
+			served = true;
+			this.numberOfConcurrentRequests.decrementAndGet();
+			sendResponse(exchange, statusCode, body);
+		}
+		catch (InterruptedException e)
+		{
+			// The server is being stopped
+		}
+		finally
+		{
+			if (!served)
+			{
+				this.numberOfConcurrentRequests.decrementAndGet();
+			}
+			exchange.close();
+		}
+	}
+
+	/**
+	 * Authenticate a request with the cookie of its session or with Basic authentication
+	 * (a session is then opened)
+	 * @param exchange the exchange of the request
+	 * @return true if the request is authenticated
+	 */
+	private boolean authenticate(HttpExchange exchange)
+	{
+		String cookies = exchange.getRequestHeaders().getFirst("Cookie");
+		if (cookies != null)
+		{
+			for (String cookie : cookies.split(";"))
+			{
+				if (this.sessions.contains(cookie.trim()))
+				{
+					return true;
+				}
+			}
+		}
+		String authorization = exchange.getRequestHeaders().getFirst("Authorization");
+		if (authorization != null && authorization.startsWith("Basic "))
+		{
+			this.numberOfAuthentications.incrementAndGet();
+			if (this.sessionsEnabled)
+			{
+				String sessionCookie = SESSION_COOKIE + "=session" + this.sessionCounter.incrementAndGet();
+				this.sessions.add(sessionCookie);
+				exchange.getResponseHeaders().add("Set-Cookie", sessionCookie + "; Path=/");
+			}
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Tell whether a path is the one of the build queue or of the running builds
+	 * @param path the path of the requested URL
+	 * @return true if the path lists the builds in progress
+	 */
+	public static boolean isBuildsInProgressPath(String path)
+	{
+		return RUNNING_BUILDS_PATH.equals(path) || QUEUE_PATH.equals(path);
+	}
+
+	/**
+	 * Tell whether a request lists the latest result of each plan (the change probe)
+	 * @param path the path of the requested URL
+	 * @param query the query of the requested URL (may be null)
+	 * @return true if the request lists the latest results
+	 */
+	public static boolean isLatestResultsRequest(String path, String query)
+	{
+		return LATEST_RESULTS_PATH.equals(path) && (query == null || !query.contains("lifeCycleState=InProgress"));
+	}
+
+	/**
+	 * Tell whether a path is the one of the server info
+	 * @param path the path of the requested URL
+	 * @return true if the path is the one of the server info
+	 */
+	public static boolean isServerInfoPath(String path)
+	{
+		return SERVER_INFO_PATH.equals(path);
+	}
+
+	/**
+	 * Get the body of the response to a request (the server does not need to be started)
+	 * @param path the path of the requested URL
+	 * @param query the query of the requested URL (may be null)
+	 * @return the body of the response, or null if there is nothing at this path
+	 */
+	public String getResponseBody(String path, String query)
+	{
+		String body = null;
+		if (PLAN_PATH.equals(path))
+		{
+			int startIndex = Math.min(getQueryParameter(query, "start-index", 0), this.numberOfPlans);
+			int pageSize = Math.min(getQueryParameter(query, "max-results", this.maxResults), this.maxResults);
+			body = BambooXmlFixtures.getPlanList(startIndex, Math.min(pageSize, this.numberOfPlans - startIndex), this.numberOfPlans);
+		}
+		else if (path.startsWith(PROJECT_PATH))
+		{
+			// The plans of project N are the plans N * 100 to N * 100 + 99
+			int projectIndex = getProjectIndex(path.substring(PROJECT_PATH.length()));
+			int projectNumberOfPlans = Math.min(100, this.numberOfPlans - projectIndex * 100);
+			if (projectIndex >= 0 && projectNumberOfPlans > 0)
+			{
+				int startIndex = Math.min(getQueryParameter(query, "start-index", 0), projectNumberOfPlans);
+				int pageSize = Math.min(getQueryParameter(query, "max-results", this.maxResults), this.maxResults);
+				body = BambooXmlFixtures.getProjectPlanList(projectIndex, startIndex, Math.min(pageSize, projectNumberOfPlans - startIndex), projectNumberOfPlans);
+			}
+		}
+		else if (path.startsWith(RESULT_PATH))
+		{
+			String key = path.substring(RESULT_PATH.length());
+			int planIndex = getPlanIndex(key);
+			int buildPlanIndex = getPlanIndex(BambooResponseParser.getPlanKey(key));
+			if (planIndex >= 0)
+			{
+				this.numberOfResultRequests.incrementAndGet(planIndex);
+				body = getPlanResults(planIndex);
+			}
+			else if (buildPlanIndex >= 0)
+			{
+				this.numberOfFailureDetailsRequests.incrementAndGet();
+				body = BambooXmlFixtures.getFailureDetails(buildPlanIndex, Integer.parseInt(key.substring(key.lastIndexOf('-') + 1)));
+			}
+		}
+		else if (RUNNING_BUILDS_PATH.equals(path) && query != null && query.contains("lifeCycleState=InProgress"))
+		{
+			int[][] runningBuilds = getBuildsInProgress(BuildReport.Status.RUNNING);
+			body = BambooXmlFixtures.getRunningResults(runningBuilds[0], runningBuilds[1]);
+		}
+		else if (QUEUE_PATH.equals(path))
+		{
+			int[][] queuedBuilds = getBuildsInProgress(BuildReport.Status.QUEUED);
+			body = BambooXmlFixtures.getQueue(queuedBuilds[0], queuedBuilds[1]);
+		}
+		else if (LATEST_RESULTS_PATH.equals(path))
+		{
+			int startIndex = Math.min(getQueryParameter(query, "start-index", 0), this.numberOfPlans);
+			int pageSize = Math.min(getQueryParameter(query, "max-results", this.maxResults), this.maxResults);
+			body = getLatestResults(startIndex, Math.min(pageSize, this.numberOfPlans - startIndex));
+		}
+		else if (SERVER_INFO_PATH.equals(path))
+		{
+			body = BambooXmlFixtures.getServerInfo();
+		}
+		return body;
+	}
+
+	/**
+	 * Send a response (compressed if the client accepts the content encoding of the server)
+	 * @param exchange the exchange of the request
+	 * @param statusCode the HTTP status code of the response
+	 * @param body the body of the response
+	 */
+	protected void sendResponse(HttpExchange exchange, int statusCode, String body) throws IOException
+	{
+		byte[] bytes = body.getBytes("UTF-8");
+		exchange.getResponseHeaders().set("Content-Type", "application/xml;charset=UTF-8");
+		String encoding = this.contentEncoding;
+		String acceptedEncodings = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+		if (encoding != null && acceptedEncodings != null && acceptedEncodings.contains(encoding))
+		{
+			bytes = compress(bytes, encoding);
+			exchange.getResponseHeaders().set("Content-Encoding", encoding);
+		}
+		// Counted before the response is sent, so that the count is up to date once the client has read it
+		this.numberOfBytesSent.addAndGet(bytes.length);
+		exchange.sendResponseHeaders(statusCode, bytes.length);
+		OutputStream responseBody = exchange.getResponseBody();
+		responseBody.write(bytes);
+		responseBody.close();
+	}
+
+	/**
+	 * Send the log of the jobs, or the range of it asked for
+	 * @param exchange the exchange of the request
+	 */
+	private void sendLog(HttpExchange exchange) throws IOException
+	{
+		byte[] log = null;
+		synchronized (this.jobLog)
+		{
+			log = this.jobLog.toByteArray();
+		}
+		exchange.getResponseHeaders().set("Content-Type", "text/plain;charset=UTF-8");
+		String range = this.rangesSupported ? exchange.getRequestHeaders().getFirst("Range") : null;
+		OutputStream responseBody = null;
+		try
+		{
+			if (range == null)
+			{
+				exchange.sendResponseHeaders(200, log.length);
+				responseBody = exchange.getResponseBody();
+				responseBody.write(log);
+				return;
+			}
+			String[] offsets = range.substring("bytes=".length()).split("-", -1);
+			long start = offsets[0].isEmpty() ? Math.max(0, log.length - Long.parseLong(offsets[1])) : Long.parseLong(offsets[0]);
+			long end = (offsets[0].isEmpty() || offsets[1].isEmpty()) ? log.length - 1 : Math.min(Long.parseLong(offsets[1]), log.length - 1);
+			if (start >= log.length)
+			{
+				exchange.getResponseHeaders().set("Content-Range", "bytes */" + log.length);
+				exchange.sendResponseHeaders(416, -1);
+				return;
+			}
+			int length = (int) (end - start + 1);
+			exchange.getResponseHeaders().set("Content-Range", "bytes " + start + "-" + end + "/" + log.length);
+			this.numberOfLogBytesSent.addAndGet(length);
+			exchange.sendResponseHeaders(206, length);
+			responseBody = exchange.getResponseBody();
+			responseBody.write(log, (int) start, length);
+		}
+		catch (IOException e)
+		{
+			// The client has stopped reading the response
+		}
+		finally
+		{
+			if (responseBody != null)
+			{
+				try
+				{
+					responseBody.close();
+				}
+				catch (IOException e)
+				{
+					// The client has stopped reading the response
+				}
+			}
+		}
+	}
+
+	private static byte[] compress(byte[] bytes, String encoding) throws IOException
+	{
+		ByteArrayOutputStream compressedBytes = new ByteArrayOutputStream();
+		DeflaterOutputStream compressedStream = "gzip".equals(encoding) ? new GZIPOutputStream(compressedBytes) : new DeflaterOutputStream(compressedBytes);
+		compressedStream.write(bytes);
+		compressedStream.close();
+		return compressedBytes.toByteArray();
+	}
+
+	/**
+	 * Get the builds in progress with a given status
+	 * @return the indexes of their plans, and their build numbers
+	 */
+	private synchronized int[][] getBuildsInProgress(BuildReport.Status status)
+	{
+		int numberOfBuilds = 0;
+		for (int i = 0; i < this.numberOfPlans; i++)
+		{
+			if (this.buildsInProgress[i] == status)
+			{
+				numberOfBuilds++;
+			}
+		}
+		int[][] returnedValue = new int[2][numberOfBuilds];
+		int buildIndex = 0;
+		for (int i = 0; i < this.numberOfPlans; i++)
+		{
+			if (this.buildsInProgress[i] == status)
+			{
+				returnedValue[0][buildIndex] = i;
+				returnedValue[1][buildIndex] = this.buildNumbers[i] + 1;
+				buildIndex++;
+			}
+		}
+		return returnedValue;
+	}
+
+	private synchronized String getLatestResults(int firstIndex, int numberOfPlans)
+	{
+		int[] buildNumbers = new int[numberOfPlans];
+		boolean[] successfulBuilds = new boolean[numberOfPlans];
+		System.arraycopy(this.buildNumbers, firstIndex, buildNumbers, 0, numberOfPlans);
+		System.arraycopy(this.successfulBuilds, firstIndex, successfulBuilds, 0, numberOfPlans);
+		return BambooXmlFixtures.getLatestResults(firstIndex, buildNumbers, successfulBuilds, this.numberOfPlans);
+	}
+
+	private String getPlanResults(int planIndex)
+	{
+		int buildNumber;
+		boolean successful;
+		synchronized (this)
+		{
+			if (this.churn > 0 && this.random.nextDouble() < this.churn)
+			{
+				this.buildNumbers[planIndex]++;
+				this.successfulBuilds[planIndex] = !this.successfulBuilds[planIndex];
+			}
+			buildNumber = this.buildNumbers[planIndex];
+			successful = this.successfulBuilds[planIndex];
+		}
+		return BambooXmlFixtures.getPlanResults(planIndex, buildNumber, successful);
+	}
+
+	private static int getQueryParameter(String query, String name, int defaultValue)
+	{
+		if (query != null)
+		{
+			for (String parameter : query.split("&"))
+			{
+				if (parameter.startsWith(name + "="))
+				{
+					try
+					{
+						return Integer.parseInt(parameter.substring(name.length() + 1));
+					}
+					catch (NumberFormatException e)
+					{
+						// Use the default value
+					}
+				}
+			}
+		}
+		return defaultValue;
+	}
+
+	private int getPlanIndex(String planKey)
+	{
+		int indexOfPlanNumber = planKey.lastIndexOf("-PLAN");
+		if (indexOfPlanNumber >= 0)
+		{
+			try
+			{
+				int planIndex = Integer.parseInt(planKey.substring(indexOfPlanNumber + "-PLAN".length()));
+				if (planIndex < this.numberOfPlans && BambooXmlFixtures.getPlanKey(planIndex).equals(planKey))
+				{
+					return planIndex;
+				}
+			}
+			catch (NumberFormatException e)
+			{
+				// Not a plan of the server
+			}
+		}
+		return -1;
+	}
+
+	private static int getProjectIndex(String projectKey)
+	{
+		if (projectKey.startsWith("PROJ"))
+		{
+			try
+			{
+				return Integer.parseInt(projectKey.substring("PROJ".length()));
+			}
+			catch (NumberFormatException e)
+			{
+				// Not a project of the server
+			}
+		}
+		return -1;
+	}
+}
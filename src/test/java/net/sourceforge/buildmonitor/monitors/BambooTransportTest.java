@@ -0,0 +1,112 @@
+/*
+ * Copyright 2007 Sebastien Brunot (sbrunot@gmail.com)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *   
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sourceforge.buildmonitor.monitors;
+
+import junit.framework.TestCase;
+
+import net.sourceforge.buildmonitor.metrics.MonitorMetrics;
+
+/**
+ * Tests of the requests that BambooTransport sends to the server, and of how it reads the responses.
+ * @author vegarwe
+ *
+ */
+public class BambooTransportTest extends TestCase
+{
+	public void testCompressedResponses() throws Exception
+	{
+		MonitorMetrics metrics = MonitorMetrics.getInstance();
+		for (String encoding : new String[] {"gzip", "deflate"})
+		{
+			BambooStubServer compressingServer = new BambooStubServer(50);
+			compressingServer.setContentEncoding(encoding);
+			compressingServer.start();
+			try
+			{
+				RecordingBuildMonitor buildMonitor = new RecordingBuildMonitor();
+				BambooMonitor monitor = new BambooMonitor(buildMonitor, MonitorTestSupport.createProperties(compressingServer));
+				long bytesReadBefore = metrics.getBytesRead();
+				long compressedBytesBefore = metrics.getCompressedBytesRead();
+				long decompressedBytesBefore = metrics.getDecompressedBytesRead();
+
+				assertTrue(encoding + ": " + buildMonitor.getMonitoringExceptions(), monitor.pollBuildStatus());
+
+				long compressedBytes = metrics.getCompressedBytesRead() - compressedBytesBefore;
+				long decompressedBytes = metrics.getDecompressedBytesRead() - decompressedBytesBefore;
+				assertEquals(compressingServer.getNumberOfBytesSent(), compressedBytes);
+				assertEquals(compressedBytes, metrics.getBytesRead() - bytesReadBefore);
+				assertTrue(encoding + ": " + decompressedBytes + " bytes decompressed from " + compressedBytes, decompressedBytes > 2 * compressedBytes);
+				assertEquals(compressingServer.getNumberOfPlans(), buildMonitor.getLastBuildStatus().size());
+				monitor.stop();
+			}
+			finally
+			{
+				compressingServer.stop();
+			}
+		}
+	}
+
+	public void testHttp2MultiplexesTheRequests() throws Exception
+	{
+		MonitorMetrics metrics = MonitorMetrics.getInstance();
+		H2cBambooServer h2cServer = new H2cBambooServer(40);
+		h2cServer.setLatencyInMillis(20);
+		h2cServer.start();
+		try
+		{
+			BambooProperties properties = MonitorTestSupport.createProperties(h2cServer);
+			properties.setHttp2(true);
+			properties.setMaxConcurrentRequests(10);
+			RecordingBuildMonitor buildMonitor = new RecordingBuildMonitor();
+			BambooMonitor monitor = new BambooMonitor(buildMonitor, properties);
+			long http2RequestsBefore = metrics.getHttp2RequestLatency().getCount();
+			assertTrue(buildMonitor.getMonitoringExceptions().toString(), monitor.pollBuildStatus());
+			assertTrue(buildMonitor.getMonitoringExceptions().toString(), monitor.pollBuildStatus());
+			monitor.stop();
+			assertEquals(40, buildMonitor.getLastBuildStatus().size());
+			assertEquals(1, h2cServer.getNumberOfConnections());
+			assertTrue(h2cServer.getNumberOfHttp2Requests() > 0);
+			assertTrue(h2cServer.getPeakConcurrentStreams() + " streams at once", h2cServer.getPeakConcurrentStreams() > 1);
+			assertTrue(h2cServer.getPeakConcurrentStreams() + " streams at once", h2cServer.getPeakConcurrentStreams() <= 10);
+			assertEquals(h2cServer.getNumberOfHttp2Requests(), metrics.getHttp2RequestLatency().getCount() - http2RequestsBefore);
+		}
+		finally
+		{
+			h2cServer.stop();
+		}
+
+		// A server that does not support HTTP/2 is monitored with HTTP/1.1
+		H2cBambooServer http1Server = new H2cBambooServer(40);
+		http1Server.setHttp2Enabled(false);
+		http1Server.start();
+		try
+		{
+			BambooProperties properties = MonitorTestSupport.createProperties(http1Server);
+			properties.setHttp2(true);
+			RecordingBuildMonitor buildMonitor = new RecordingBuildMonitor();
+			BambooMonitor monitor = new BambooMonitor(buildMonitor, properties);
+			assertTrue(buildMonitor.getMonitoringExceptions().toString(), monitor.pollBuildStatus());
+			monitor.stop();
+			assertEquals(40, buildMonitor.getLastBuildStatus().size());
+			assertTrue(http1Server.getNumberOfHttp1Requests() > 0);
+			assertEquals(0, http1Server.getNumberOfHttp2Requests());
+		}
+		finally
+		{
+			http1Server.stop();
+		}
+	}
+}
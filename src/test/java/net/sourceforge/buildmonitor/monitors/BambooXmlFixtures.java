@@ -0,0 +1,293 @@
+/*
+ * Copyright 2007 Sebastien Brunot (sbrunot@gmail.com)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *   
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sourceforge.buildmonitor.monitors;
+
+/**
+ * Generate synthetic Bamboo REST api documents for tests and benchmarks.
+ * @author vegarwe
+ *
+ */
+public class BambooXmlFixtures
+{
+	private BambooXmlFixtures()
+	{
+	}
+
+	/**
+	 * Get the key of the Nth synthetic plan
+	 * @param index index of the plan
+	 * @return the key of the plan
+	 */
+	public static String getPlanKey(int index)
+	{
+		return "PROJ" + (index / 100) + "-PLAN" + index;
+	}
+
+	/**
+	 * Get the name of the Nth synthetic plan
+	 * @param index index of the plan
+	 * @return the name of the plan
+	 */
+	public static String getPlanName(int index)
+	{
+		return "Project " + (index / 100) + " - Plan " + index;
+	}
+
+	/**
+	 * Generate the response of /rest/api/latest/plan for a list of plans
+	 * @param firstIndex index of the first plan of the list
+	 * @param numberOfPlans number of plans in the list
+	 * @param totalNumberOfPlans total number of plans on the server
+	 * @return the generated document
+	 */
+	public static String getPlanList(int firstIndex, int numberOfPlans, int totalNumberOfPlans)
+	{
+		StringBuffer document = new StringBuffer();
+		document.append("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>");
+		document.append("<plans expand=\"plans\"><link href=\"http://localhost:8085/rest/api/latest/plan\" rel=\"self\"/>");
+		appendPlans(document, firstIndex, numberOfPlans, firstIndex, totalNumberOfPlans);
+		document.append("</plans>");
+		return document.toString();
+	}
+
+	/**
+	 * Generate the response of /rest/api/latest/project/{key}?expand=plans for a list of plans
+	 * of a project
+	 * @param projectIndex index of the project
+	 * @param startIndex index of the first plan of the list in the plans of the project
+	 * @param numberOfPlans number of plans in the list
+	 * @param projectNumberOfPlans total number of plans of the project
+	 * @return the generated document
+	 */
+	public static String getProjectPlanList(int projectIndex, int startIndex, int numberOfPlans, int projectNumberOfPlans)
+	{
+		String key = "PROJ" + projectIndex;
+		StringBuffer document = new StringBuffer();
+		document.append("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>");
+		document.append("<project key=\"" + key + "\" name=\"Project " + projectIndex + "\" expand=\"plans\">");
+		document.append("<link href=\"http://localhost:8085/rest/api/latest/project/" + key + "\" rel=\"self\"/>");
+		appendPlans(document, projectIndex * 100 + startIndex, numberOfPlans, startIndex, projectNumberOfPlans);
+		document.append("</project>");
+		return document.toString();
+	}
+
+	/**
+	 * Generate the response of /rest/api/latest/plan for a list of plans
+	 * @param numberOfPlans number of plans in the list
+	 * @return the generated document
+	 */
+	public static String getPlanList(int numberOfPlans)
+	{
+		return getPlanList(0, numberOfPlans, numberOfPlans);
+	}
+
+	private static void appendPlans(StringBuffer document, int firstIndex, int numberOfPlans, int startIndex, int size)
+	{
+		document.append("<plans size=\"" + size + "\" max-result=\"" + numberOfPlans + "\" start-index=\"" + startIndex + "\" expand=\"plan\">");
+		for (int i = firstIndex; i < firstIndex + numberOfPlans; i++)
+		{
+			String key = getPlanKey(i);
+			document.append("<plan shortName=\"Plan " + i + "\" shortKey=\"PLAN" + i + "\" type=\"chain\" enabled=\"true\"");
+			document.append(" link=\"http://localhost:8085/rest/api/latest/plan/" + key + "\" key=\"" + key + "\" name=\"" + getPlanName(i) + "\">");
+			document.append("<link href=\"http://localhost:8085/rest/api/latest/plan/" + key + "\" rel=\"self\"/></plan>");
+		}
+		document.append("</plans>");
+	}
+
+	/**
+	 * Generate a result element of the /rest/api/latest/result api
+	 * @param planIndex index of the plan of the result
+	 * @param buildNumber number of the build
+	 * @param successful is the build successful ?
+	 * @return the generated result element
+	 */
+	public static String getResult(int planIndex, int buildNumber, boolean successful)
+	{
+		String key = getPlanKey(planIndex) + "-" + buildNumber;
+		String state = successful ? "Successful" : "Failed";
+		StringBuffer document = new StringBuffer();
+		document.append("<result expand=\"changes,metadata,artifacts,comments,labels,jiraIssues,stages\" key=\"" + key + "\" state=\"" + state + "\" lifeCycleState=\"Finished\" number=\"" + buildNumber + "\" id=\"" + (planIndex * 1000 + buildNumber) + "\">");
+		document.append("<link href=\"http://localhost:8085/rest/api/latest/result/" + key + "\" rel=\"self\"/>");
+		document.append("<planName>Plan " + planIndex + "</planName><projectName>Project " + (planIndex / 100) + "</projectName>");
+		document.append("<buildStartedTime>2011-08-12T11:20:48.000+02:00</buildStartedTime>");
+		document.append("<buildCompletedTime>2011-08-12T11:25:48.000+02:00</buildCompletedTime>");
+		document.append("<buildDurationInSeconds>300</buildDurationInSeconds><buildRelativeTime>2 hours ago</buildRelativeTime>");
+		document.append("<buildTestSummary>" + (successful ? "12 passed" : "1 of 12 failed") + "</buildTestSummary>");
+		document.append("<successfulTestCount>" + (successful ? 12 : 11) + "</successfulTestCount><failedTestCount>" + (successful ? 0 : 1) + "</failedTestCount>");
+		document.append("<buildReason>Code has changed</buildReason><buildNumber>" + buildNumber + "</buildNumber>");
+		document.append("</result>");
+		return document.toString();
+	}
+
+	/**
+	 * Generate the response of /rest/api/latest/result/{key} for a single plan
+	 * @param planIndex index of the plan
+	 * @param buildNumber number of the latest build of the plan
+	 * @param successful is the latest build successful ?
+	 * @return the generated document
+	 */
+	public static String getPlanResults(int planIndex, int buildNumber, boolean successful)
+	{
+		return "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>"
+				+ "<results expand=\"results\"><link href=\"http://localhost:8085/rest/api/latest/result/" + getPlanKey(planIndex) + "\" rel=\"self\"/>"
+				+ "<results size=\"1\" max-result=\"1\" start-index=\"0\" expand=\"result\">"
+				+ getResult(planIndex, buildNumber, successful)
+				+ "</results></results>";
+	}
+
+	/**
+	 * Generate a /rest/api/latest/result document that lists the latest result of many plans
+	 * (every tenth plan is failed).
+	 * @param numberOfPlans number of plans
+	 * @return the generated document
+	 */
+	public static String getResults(int numberOfPlans)
+	{
+		StringBuffer document = new StringBuffer();
+		document.append("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>");
+		document.append("<results expand=\"results\"><link href=\"http://localhost:8085/rest/api/latest/result\" rel=\"self\"/>");
+		document.append("<results size=\"" + numberOfPlans + "\" max-result=\"" + numberOfPlans + "\" start-index=\"0\" expand=\"result\">");
+		for (int i = 0; i < numberOfPlans; i++)
+		{
+			document.append(getResult(i, 42, (i % 10) != 0));
+		}
+		document.append("</results></results>");
+		return document.toString();
+	}
+
+	/**
+	 * Generate a page of the /rest/api/latest/result document that lists the latest result of
+	 * each plan, as Bamboo returns it when the results are not expanded
+	 * @param firstIndex index of the first plan of the page
+	 * @param buildNumbers number of the latest build of each plan of the page
+	 * @param successfulBuilds is the latest build of each plan of the page successful ?
+	 * @param totalNumberOfPlans total number of plans on the server
+	 * @return the generated document
+	 */
+	public static String getLatestResults(int firstIndex, int[] buildNumbers, boolean[] successfulBuilds, int totalNumberOfPlans)
+	{
+		StringBuffer document = new StringBuffer();
+		document.append("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>");
+		document.append("<results expand=\"results\"><link href=\"http://localhost:8085/rest/api/latest/result\" rel=\"self\"/>");
+		document.append("<results size=\"" + totalNumberOfPlans + "\" max-result=\"" + buildNumbers.length + "\" start-index=\"" + firstIndex + "\" expand=\"result\">");
+		for (int i = 0; i < buildNumbers.length; i++)
+		{
+			String key = getPlanKey(firstIndex + i) + "-" + buildNumbers[i];
+			String state = successfulBuilds[i] ? "Successful" : "Failed";
+			document.append("<result key=\"" + key + "\" state=\"" + state + "\" lifeCycleState=\"Finished\" number=\"" + buildNumbers[i] + "\" id=\"" + ((firstIndex + i) * 1000 + buildNumbers[i]) + "\">");
+			document.append("<link href=\"http://localhost:8085/rest/api/latest/result/" + key + "\" rel=\"self\"/></result>");
+		}
+		document.append("</results></results>");
+		return document.toString();
+	}
+
+	/**
+	 * Generate a result element of the /rest/api/latest/result api for a running build
+	 * @param planIndex index of the plan of the result
+	 * @param buildNumber number of the build
+	 * @return the generated result element
+	 */
+	public static String getRunningResult(int planIndex, int buildNumber)
+	{
+		String key = getPlanKey(planIndex) + "-" + buildNumber;
+		StringBuffer document = new StringBuffer();
+		document.append("<result expand=\"changes,metadata,artifacts,comments,labels,jiraIssues,stages\" key=\"" + key + "\" state=\"Unknown\" lifeCycleState=\"InProgress\" number=\"" + buildNumber + "\" id=\"" + (planIndex * 1000 + buildNumber) + "\">");
+		document.append("<link href=\"http://localhost:8085/rest/api/latest/result/" + key + "\" rel=\"self\"/>");
+		document.append("<planName>Plan " + planIndex + "</planName><projectName>Project " + (planIndex / 100) + "</projectName>");
+		document.append("<buildStartedTime>2011-08-12T13:20:48.000+02:00</buildStartedTime>");
+		document.append("<buildReason>Code has changed</buildReason><buildNumber>" + buildNumber + "</buildNumber>");
+		document.append("</result>");
+		return document.toString();
+	}
+
+	/**
+	 * Generate the response of /rest/api/latest/result?includeAllStates=true&lifeCycleState=InProgress
+	 * @param planIndexes indexes of the plans of the running builds
+	 * @param buildNumbers numbers of the running builds
+	 * @return the generated document
+	 */
+	public static String getRunningResults(int[] planIndexes, int[] buildNumbers)
+	{
+		StringBuffer document = new StringBuffer();
+		document.append("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>");
+		document.append("<results expand=\"results\"><link href=\"http://localhost:8085/rest/api/latest/result\" rel=\"self\"/>");
+		document.append("<results size=\"" + planIndexes.length + "\" max-result=\"" + planIndexes.length + "\" start-index=\"0\" expand=\"result\">");
+		for (int i = 0; i < planIndexes.length; i++)
+		{
+			document.append(getRunningResult(planIndexes[i], buildNumbers[i]));
+		}
+		document.append("</results></results>");
+		return document.toString();
+	}
+
+	/**
+	 * Generate the response of /rest/api/latest/queue
+	 * @param planIndexes indexes of the plans of the queued builds
+	 * @param buildNumbers numbers of the queued builds
+	 * @return the generated document
+	 */
+	public static String getQueue(int[] planIndexes, int[] buildNumbers)
+	{
+		StringBuffer document = new StringBuffer();
+		document.append("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>");
+		document.append("<restQueuedBuilds expand=\"queuedBuilds\"><link href=\"http://localhost:8085/rest/api/latest/queue\" rel=\"self\"/>");
+		document.append("<queuedBuilds size=\"" + planIndexes.length + "\" max-result=\"" + planIndexes.length + "\" start-index=\"0\" expand=\"queuedBuild\">");
+		for (int i = 0; i < planIndexes.length; i++)
+		{
+			String key = getPlanKey(planIndexes[i]);
+			document.append("<queuedBuild planKey=\"" + key + "\" buildNumber=\"" + buildNumbers[i] + "\" buildResultKey=\"" + key + "-" + buildNumbers[i] + "\" triggerReason=\"Code has changed\">");
+			document.append("<link href=\"http://localhost:8085/rest/api/latest/result/" + key + "-" + buildNumbers[i] + "\" rel=\"self\"/></queuedBuild>");
+		}
+		document.append("</queuedBuilds></restQueuedBuilds>");
+		return document.toString();
+	}
+
+	/**
+	 * Generate the response of /rest/api/latest/result/{buildKey} expanded with the stages, the
+	 * jobs and the failed tests of a failed build (its second job fails one test)
+	 * @param planIndex index of the plan of the build
+	 * @param buildNumber number of the build
+	 * @return the generated document
+	 */
+	public static String getFailureDetails(int planIndex, int buildNumber)
+	{
+		String key = getPlanKey(planIndex) + "-" + buildNumber;
+		StringBuffer document = new StringBuffer();
+		document.append("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>");
+		document.append("<result expand=\"stages\" key=\"" + key + "\" state=\"Failed\" lifeCycleState=\"Finished\" number=\"" + buildNumber + "\">");
+		document.append("<planName>Plan " + planIndex + "</planName><projectName>Project " + (planIndex / 100) + "</projectName>");
+		document.append("<successfulTestCount>11</successfulTestCount><failedTestCount>1</failedTestCount>");
+		document.append("<stages size=\"1\" max-result=\"1\" start-index=\"0\"><stage name=\"Default Stage\" state=\"Failed\"><results size=\"2\">");
+		document.append("<result key=\"" + getPlanKey(planIndex) + "-COMPILE-" + buildNumber + "\" state=\"Successful\"><planName>Compile</planName></result>");
+		document.append("<result key=\"" + getPlanKey(planIndex) + "-TEST-" + buildNumber + "\" state=\"Failed\"><planName>Unit tests</planName>");
+		document.append("<testResults failedTestCount=\"1\"><failedTests size=\"1\"><testResult className=\"net.example.FooTest\" methodName=\"testFoo\" status=\"failed\"/></failedTests></testResults>");
+		document.append("</result></results></stage></stages></result>");
+		return document.toString();
+	}
+
+	/**
+	 * Generate the response of /rest/api/latest/info
+	 * @return the generated document
+	 */
+	public static String getServerInfo()
+	{
+		StringBuffer document = new StringBuffer();
+		document.append("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>");
+		document.append("<info><version>5.0</version><edition></edition><buildDate>2013-04-23T00:00:00.000+02:00</buildDate>");
+		document.append("<buildNumber>3212</buildNumber><state>RUNNING</state></info>");
+		return document.toString();
+	}
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2007 Sebastien Brunot (sbrunot@gmail.com)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *   
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sourceforge.buildmonitor.monitors;
+
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import net.sourceforge.buildmonitor.metrics.MonitorMetrics;
+
+/**
+ * Unit tests for the CircuitBreaker class.
+ * @author vegarwe
+ *
+ */
+public class CircuitBreakerTest extends TestCase
+{
+	private static final long FAST = TimeUnit.MILLISECONDS.toNanos(10);
+	private static final long SLOW = TimeUnit.SECONDS.toNanos(10);
+
+	private CircuitBreaker circuitBreaker = null;
+
+	protected void setUp() throws Exception
+	{
+		BambooProperties properties = new BambooProperties();
+		properties.setServerBaseUrl("http://bamboo:8085");
+		this.circuitBreaker = new CircuitBreaker(new BambooConfig(properties, 1), MonitorMetrics.getInstance());
+	}
+
+	public void testCircuitOpensOnceTheWindowHasEnoughFailures()
+	{
+		for (int i = 0; i < CircuitBreaker.MINIMUM_NUMBER_OF_REQUESTS - 1; i++)
+		{
+			this.circuitBreaker.recordRequest(true, FAST);
+		}
+		assertEquals(CircuitBreaker.State.CLOSED, this.circuitBreaker.getState());
+		this.circuitBreaker.recordRequest(true, FAST);
+		assertEquals(CircuitBreaker.State.OPEN, this.circuitBreaker.getState());
+	}
+
+	public void testOccasionalFailuresDoNotOpenTheCircuit()
+	{
+		for (int i = 0; i < 3 * CircuitBreaker.WINDOW_SIZE; i++)
+		{
+			this.circuitBreaker.recordRequest(i % 3 == 0, FAST);
+		}
+		assertEquals(CircuitBreaker.State.CLOSED, this.circuitBreaker.getState());
+	}
+
+	public void testSlowRequestsOpenTheCircuit()
+	{
+		for (int i = 0; i < CircuitBreaker.WINDOW_SIZE; i++)
+		{
+			this.circuitBreaker.recordRequest(false, FAST);
+		}
+		// The fast requests leave the window as the slow ones come in
+		for (int i = 0; i < CircuitBreaker.WINDOW_SIZE && this.circuitBreaker.getState() == CircuitBreaker.State.CLOSED; i++)
+		{
+			this.circuitBreaker.recordRequest(false, SLOW);
+		}
+		assertEquals(CircuitBreaker.State.OPEN, this.circuitBreaker.getState());
+	}
+
+	public void testTrialCycleClosesOrOpensTheCircuit()
+	{
+		for (int i = 0; i < CircuitBreaker.MINIMUM_NUMBER_OF_REQUESTS; i++)
+		{
+			this.circuitBreaker.recordRequest(true, FAST);
+		}
+		this.circuitBreaker.recordProbe(false);
+		assertEquals(CircuitBreaker.State.OPEN, this.circuitBreaker.getState());
+
+		// A failed trial opens the circuit again
+		this.circuitBreaker.recordProbe(true);
+		assertEquals(CircuitBreaker.State.HALF_OPEN, this.circuitBreaker.getState());
+		this.circuitBreaker.recordRequest(true, FAST);
+		this.circuitBreaker.recordRequest(false, FAST);
+		this.circuitBreaker.recordCycle(true);
+		assertEquals(CircuitBreaker.State.OPEN, this.circuitBreaker.getState());
+
+		this.circuitBreaker.recordProbe(true);
+		this.circuitBreaker.recordRequest(false, FAST);
+		this.circuitBreaker.recordCycle(true);
+		assertEquals(CircuitBreaker.State.CLOSED, this.circuitBreaker.getState());
+	}
+}
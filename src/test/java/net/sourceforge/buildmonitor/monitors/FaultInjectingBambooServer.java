@@ -0,0 +1,490 @@
+/*
+ * Copyright 2007 Sebastien Brunot (sbrunot@gmail.com)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *   
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sourceforge.buildmonitor.monitors;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A local HTTP stand-in for a Bamboo server on a degraded network. It serves the same
+ * content as BambooStubServer, but each request can be answered with a fault: latency
+ * spike, connection reset, slow-drip body, stall in the middle of the body, truncated body,
+ * server error or malformed XML.
+ * The faults are scripted: the faults given to {@link #script(Fault...)} are applied to the
+ * next requests, one fault per request, and the default fault is applied once the script
+ * is exhausted. The requests listing the builds in progress are always answered normally,
+ * the probes of the server info only get the default fault, and the requests of the change
+ * probe only get their own fault.
+ * It is written on top of raw sockets (and not of the JDK HttpServer) so that it can
+ * misbehave at the TCP level.
+ * @author vegarwe
+ *
+ */
+public class FaultInjectingBambooServer
+{
+	/**
+	 * A fault to inject in the response to a request
+	 */
+	public static class Fault
+	{
+		enum Type {NONE, LATENCY, RESET, SLOW_DRIP, STALL, TRUNCATED, HTTP_ERROR, MALFORMED_XML};
+
+		private final Type type;
+		private final long delayInMillis;
+		private final int value;
+
+		private Fault(Type type, long delayInMillis, int value)
+		{
+			this.type = type;
+			this.delayInMillis = delayInMillis;
+			this.value = value;
+		}
+
+		/**
+		 * Answer normally
+		 */
+		public static Fault none()
+		{
+			return new Fault(Type.NONE, 0, 0);
+		}
+
+		/**
+		 * Answer normally after a delay
+		 * @param delayInMillis the delay before the response
+		 */
+		public static Fault latency(long delayInMillis)
+		{
+			return new Fault(Type.LATENCY, delayInMillis, 0);
+		}
+
+		/**
+		 * Reset the connection (TCP RST) instead of answering
+		 */
+		public static Fault reset()
+		{
+			return new Fault(Type.RESET, 0, 0);
+		}
+
+		/**
+		 * Send the body a few bytes at a time
+		 * @param bytesPerChunk the number of bytes sent at once
+		 * @param delayBetweenChunksInMillis the delay between two chunks
+		 */
+		public static Fault slowDrip(int bytesPerChunk, long delayBetweenChunksInMillis)
+		{
+			return new Fault(Type.SLOW_DRIP, delayBetweenChunksInMillis, bytesPerChunk);
+		}
+
+		/**
+		 * Accept the request and stall, either before the response (half-open connection)
+		 * or in the middle of the body, then close the connection.
+		 * @param stallInMillis how long the server stalls before closing the connection
+		 * @param beforeResponse true to stall before sending anything, false to stall in the
+		 * middle of the body
+		 */
+		public static Fault stall(long stallInMillis, boolean beforeResponse)
+		{
+			return new Fault(Type.STALL, stallInMillis, beforeResponse ? 1 : 0);
+		}
+
+		/**
+		 * Send half of the body (with the Content-Length of the full body) and close the connection
+		 */
+		public static Fault truncated()
+		{
+			return new Fault(Type.TRUNCATED, 0, 0);
+		}
+
+		/**
+		 * Answer with an HTTP error
+		 * @param statusCode the HTTP status code of the response
+		 */
+		public static Fault httpError(int statusCode)
+		{
+			return new Fault(Type.HTTP_ERROR, 0, statusCode);
+		}
+
+		/**
+		 * Answer with a body that is not well-formed XML
+		 */
+		public static Fault malformedXml()
+		{
+			return new Fault(Type.MALFORMED_XML, 0, 0);
+		}
+	}
+
+	private final BambooStubServer content;
+	private final LinkedList<Fault> script = new LinkedList<Fault>();
+	private volatile Fault defaultFault = Fault.none();
+	private volatile Fault changeProbeFault = Fault.none();
+	private final AtomicInteger numberOfRequests = new AtomicInteger();
+	private final AtomicInteger numberOfConnections = new AtomicInteger();
+	private final List<Socket> sockets = Collections.synchronizedList(new ArrayList<Socket>());
+	private final List<Thread> threads = Collections.synchronizedList(new ArrayList<Thread>());
+	private final CountDownLatch stopped = new CountDownLatch(1);
+	private ServerSocket serverSocket = null;
+
+	/**
+	 * Create a new server (call {@link #start()} to start it)
+	 * @param numberOfPlans number of plans defined on the server
+	 */
+	public FaultInjectingBambooServer(int numberOfPlans)
+	{
+		this.content = new BambooStubServer(numberOfPlans);
+	}
+
+	/**
+	 * Set the fault applied to the requests once the script is exhausted
+	 * @param fault the default fault
+	 */
+	public void setDefaultFault(Fault fault)
+	{
+		this.defaultFault = fault;
+	}
+
+	/**
+	 * Set the fault applied to the requests listing the latest result of each plan (the
+	 * change probe)
+	 * @param fault the fault of the change probe
+	 */
+	public void setChangeProbeFault(Fault fault)
+	{
+		this.changeProbeFault = fault;
+	}
+
+	/**
+	 * Add faults to the script: they will be applied to the next requests, one fault per request
+	 * @param faults the faults to apply
+	 */
+	public void script(Fault... faults)
+	{
+		synchronized (this.script)
+		{
+			for (Fault fault : faults)
+			{
+				this.script.add(fault);
+			}
+		}
+	}
+
+	/**
+	 * Start the server on a free port of the loopback interface
+	 */
+	public void start() throws IOException
+	{
+		this.serverSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+		startThread(new Runnable()
+		{
+			public void run()
+			{
+				acceptConnections();
+			}
+		}, "Fault injecting server");
+	}
+
+	/**
+	 * Stop the server: close all the connections and wait for the server threads to end
+	 */
+	public void stop() throws InterruptedException
+	{
+		this.stopped.countDown();
+		closeQuietly(this.serverSocket);
+		synchronized (this.sockets)
+		{
+			for (Socket socket : this.sockets)
+			{
+				closeQuietly(socket);
+			}
+		}
+		List<Thread> threadsToJoin = null;
+		synchronized (this.threads)
+		{
+			threadsToJoin = new ArrayList<Thread>(this.threads);
+		}
+		for (Thread thread : threadsToJoin)
+		{
+			thread.join(5000);
+		}
+	}
+
+	/**
+	 * Get the base URL of the server
+	 * @return the base URL of the server
+	 */
+	public String getBaseUrl()
+	{
+		return "http://127.0.0.1:" + this.serverSocket.getLocalPort();
+	}
+
+	/**
+	 * Get the number of plans defined on the server
+	 */
+	public int getNumberOfPlans()
+	{
+		return this.content.getNumberOfPlans();
+	}
+
+	/**
+	 * Get the number of requests received so far
+	 */
+	public int getNumberOfRequests()
+	{
+		return this.numberOfRequests.get();
+	}
+
+	/**
+	 * Get the number of connections accepted so far
+	 */
+	public int getNumberOfConnections()
+	{
+		return this.numberOfConnections.get();
+	}
+
+	private void acceptConnections()
+	{
+		while (this.stopped.getCount() > 0)
+		{
+			try
+			{
+				final Socket socket = this.serverSocket.accept();
+				this.numberOfConnections.incrementAndGet();
+				this.sockets.add(socket);
+				if (this.stopped.getCount() == 0)
+				{
+					// Accepted while the server was being stopped: stop() may have missed it
+					closeQuietly(socket);
+				}
+				startThread(new Runnable()
+				{
+					public void run()
+					{
+						try
+						{
+							handleConnection(socket);
+						}
+						catch (IOException e)
+						{
+							// The client went away
+						}
+						catch (InterruptedException e)
+						{
+							// The server is being stopped
+						}
+						finally
+						{
+							closeQuietly(socket);
+							sockets.remove(socket);
+						}
+					}
+				}, "Fault injecting connection");
+			}
+			catch (IOException e)
+			{
+				// The server socket has been closed
+			}
+		}
+	}
+
+	private void handleConnection(Socket socket) throws IOException, InterruptedException
+	{
+		// Read the request line and the headers (the requests never have a body)
+		BufferedReader requestReader = new BufferedReader(new InputStreamReader(socket.getInputStream(), "ISO-8859-1"));
+		String requestLine = requestReader.readLine();
+		if (requestLine == null)
+		{
+			return;
+		}
+		String header = null;
+		do
+		{
+			header = requestReader.readLine();
+		}
+		while (header != null && header.length() > 0);
+		this.numberOfRequests.incrementAndGet();
+
+		String path = requestLine.split(" ")[1];
+		String query = null;
+		if (path.indexOf('?') >= 0)
+		{
+			query = path.substring(path.indexOf('?') + 1);
+			path = path.substring(0, path.indexOf('?'));
+		}
+		String body = this.content.getResponseBody(path, query);
+		int statusCode = (body == null) ? 404 : 200;
+		if (body == null)
+		{
+			body = "<html><body>Not found</body></html>";
+		}
+
+		Fault fault = nextFault(path, query);
+		OutputStream out = socket.getOutputStream();
+		switch (fault.type)
+		{
+			case LATENCY:
+				if (sleep(fault.delayInMillis))
+				{
+					sendResponse(out, statusCode, body.getBytes("UTF-8"));
+				}
+				break;
+			case RESET:
+				socket.setSoLinger(true, 0);
+				socket.close();
+				break;
+			case SLOW_DRIP:
+				byte[] bytes = body.getBytes("UTF-8");
+				sendHeaders(out, statusCode, bytes.length);
+				for (int i = 0; i < bytes.length; i += fault.value)
+				{
+					out.write(bytes, i, Math.min(fault.value, bytes.length - i));
+					out.flush();
+					if (!sleep(fault.delayInMillis))
+					{
+						break;
+					}
+				}
+				break;
+			case STALL:
+				if (fault.value == 0)
+				{
+					byte[] stalledBytes = body.getBytes("UTF-8");
+					sendHeaders(out, statusCode, stalledBytes.length);
+					out.write(stalledBytes, 0, stalledBytes.length / 2);
+					out.flush();
+				}
+				sleep(fault.delayInMillis);
+				break;
+			case TRUNCATED:
+				byte[] truncatedBytes = body.getBytes("UTF-8");
+				sendHeaders(out, statusCode, truncatedBytes.length);
+				out.write(truncatedBytes, 0, truncatedBytes.length / 2);
+				out.flush();
+				break;
+			case HTTP_ERROR:
+				sendResponse(out, fault.value, ("<html><body>Error " + fault.value + "</body></html>").getBytes("UTF-8"));
+				break;
+			case MALFORMED_XML:
+				sendResponse(out, statusCode, body.substring(0, body.length() / 2).replace("<", "<<").getBytes("UTF-8"));
+				break;
+			default:
+				sendResponse(out, statusCode, body.getBytes("UTF-8"));
+		}
+	}
+
+	/**
+	 * Get the fault to apply to a request. The builds in progress are listed on the side of
+	 * every cycle, and the server info and the latest results are probed before the plans are
+	 * fetched: they are left out of the script.
+	 * @param path the path of the requested URL
+	 * @param query the query of the requested URL (may be null)
+	 */
+	private Fault nextFault(String path, String query)
+	{
+		if (BambooStubServer.isLatestResultsRequest(path, query))
+		{
+			return this.changeProbeFault;
+		}
+		if (BambooStubServer.isBuildsInProgressPath(path))
+		{
+			return Fault.none();
+		}
+		if (BambooStubServer.isServerInfoPath(path))
+		{
+			return this.defaultFault;
+		}
+		synchronized (this.script)
+		{
+			if (!this.script.isEmpty())
+			{
+				return this.script.removeFirst();
+			}
+		}
+		return this.defaultFault;
+	}
+
+	private void sendHeaders(OutputStream out, int statusCode, int contentLength) throws IOException
+	{
+		String headers = "HTTP/1.1 " + statusCode + " " + (statusCode == 200 ? "OK" : "Error") + "\r\n"
+				+ "Content-Type: application/xml;charset=UTF-8\r\n"
+				+ "Content-Length: " + contentLength + "\r\n"
+				+ "Connection: close\r\n"
+				+ "\r\n";
+		out.write(headers.getBytes("ISO-8859-1"));
+		out.flush();
+	}
+
+	private void sendResponse(OutputStream out, int statusCode, byte[] body) throws IOException
+	{
+		sendHeaders(out, statusCode, body.length);
+		out.write(body);
+		out.flush();
+	}
+
+	/**
+	 * Sleep, unless the server is stopped
+	 * @return true if the delay has elapsed, false if the server has been stopped
+	 */
+	private boolean sleep(long delayInMillis) throws InterruptedException
+	{
+		return !this.stopped.await(delayInMillis, TimeUnit.MILLISECONDS);
+	}
+
+	private void startThread(Runnable runnable, String name)
+	{
+		Thread thread = new Thread(runnable, name);
+		thread.setDaemon(true);
+		this.threads.add(thread);
+		thread.start();
+	}
+
+	private static void closeQuietly(Socket socket)
+	{
+		try
+		{
+			socket.close();
+		}
+		catch (IOException e)
+		{
+			// Nothing to do here
+		}
+	}
+
+	private static void closeQuietly(ServerSocket socket)
+	{
+		try
+		{
+			if (socket != null)
+			{
+				socket.close();
+			}
+		}
+		catch (IOException e)
+		{
+			// Nothing to do here
+		}
+	}
+}
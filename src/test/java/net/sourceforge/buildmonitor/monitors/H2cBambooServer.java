@@ -0,0 +1,899 @@
+/*
+ * Copyright 2007 Sebastien Brunot (sbrunot@gmail.com)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *   
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sourceforge.buildmonitor.monitors;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A local stand-in for an HTTP/2 capable proxy in front of a Bamboo server. It serves the same
+ * content as BambooStubServer, and upgrades the connections that ask for it to h2c (HTTP/2 over
+ * plain TCP, as described in section 3.2 of RFC 7540). The streams of a connection are served in
+ * parallel, each after the latency of the server, so that they are answered out of order.
+ * The requests that do not ask for the upgrade, or all the requests when HTTP/2 is disabled,
+ * are answered with HTTP/1.1.
+ * It implements just enough of HTTP/2 and HPACK (RFC 7541) for the HTTP client of the JDK:
+ * no server push, no priorities, and no padding or header indexing in the frames it sends.
+ * The requests are not authenticated.
+ * @author vegarwe
+ *
+ */
+public class H2cBambooServer
+{
+	private static final byte[] CLIENT_PREFACE = getBytes("PRI * HTTP/2.0\r\n\r\nSM\r\n\r\n");
+
+	private static final int DATA = 0x0;
+	private static final int HEADERS = 0x1;
+	private static final int RST_STREAM = 0x3;
+	private static final int SETTINGS = 0x4;
+	private static final int PING = 0x6;
+	private static final int GOAWAY = 0x7;
+	private static final int WINDOW_UPDATE = 0x8;
+	private static final int CONTINUATION = 0x9;
+
+	private static final int FLAG_END_STREAM = 0x1;
+	private static final int FLAG_ACK = 0x1;
+	private static final int FLAG_END_HEADERS = 0x4;
+	private static final int FLAG_PADDED = 0x8;
+	private static final int FLAG_PRIORITY = 0x20;
+
+	private static final int SETTINGS_INITIAL_WINDOW_SIZE = 0x4;
+	private static final int DEFAULT_WINDOW_SIZE = 65535;
+	private static final int MAX_FRAME_SIZE = 16384;
+
+	// Indexes of the HPACK static table
+	private static final int STATUS_INDEX = 8;
+	private static final int CONTENT_LENGTH_INDEX = 28;
+	private static final int CONTENT_TYPE_INDEX = 31;
+
+	private final BambooStubServer content;
+	private volatile long latencyInMillis = 0;
+	private volatile boolean http2Enabled = true;
+	private final AtomicInteger numberOfConnections = new AtomicInteger();
+	private final AtomicInteger numberOfHttp1Requests = new AtomicInteger();
+	private final AtomicInteger numberOfHttp2Requests = new AtomicInteger();
+	private final AtomicInteger numberOfConcurrentStreams = new AtomicInteger();
+	private final AtomicInteger peakConcurrentStreams = new AtomicInteger();
+	private final List<Socket> sockets = Collections.synchronizedList(new ArrayList<Socket>());
+	private final List<Thread> threads = Collections.synchronizedList(new ArrayList<Thread>());
+	private final CountDownLatch stopped = new CountDownLatch(1);
+	private ServerSocket serverSocket = null;
+
+	/**
+	 * Create a new server (call {@link #start()} to start it)
+	 * @param numberOfPlans number of plans defined on the server
+	 */
+	public H2cBambooServer(int numberOfPlans)
+	{
+		this.content = new BambooStubServer(numberOfPlans);
+	}
+
+	/**
+	 * Set the latency added to every request
+	 * @param latencyInMillis the latency, in milliseconds
+	 */
+	public void setLatencyInMillis(long latencyInMillis)
+	{
+		this.latencyInMillis = latencyInMillis;
+	}
+
+	/**
+	 * Enable or disable HTTP/2: when it is disabled, the server ignores the requests to
+	 * upgrade the connections, as an HTTP/1.1 server does
+	 * @param http2Enabled true to upgrade the connections that ask for it
+	 */
+	public void setHttp2Enabled(boolean http2Enabled)
+	{
+		this.http2Enabled = http2Enabled;
+	}
+
+	/**
+	 * Start the server on a free port of the loopback interface
+	 */
+	public void start() throws IOException
+	{
+		this.serverSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+		startThread(new Runnable()
+		{
+			public void run()
+			{
+				acceptConnections();
+			}
+		}, "h2c server");
+	}
+
+	/**
+	 * Stop the server: close all the connections and wait for the server threads to end
+	 */
+	public void stop() throws InterruptedException
+	{
+		this.stopped.countDown();
+		closeQuietly(this.serverSocket);
+		synchronized (this.sockets)
+		{
+			for (Socket socket : this.sockets)
+			{
+				closeQuietly(socket);
+			}
+		}
+		List<Thread> threadsToJoin = null;
+		synchronized (this.threads)
+		{
+			threadsToJoin = new ArrayList<Thread>(this.threads);
+		}
+		for (Thread thread : threadsToJoin)
+		{
+			thread.join(5000);
+		}
+	}
+
+	/**
+	 * Get the base URL of the server
+	 * @return the base URL of the server
+	 */
+	public String getBaseUrl()
+	{
+		return "http://127.0.0.1:" + this.serverSocket.getLocalPort();
+	}
+
+	/**
+	 * Get the number of connections accepted so far
+	 */
+	public int getNumberOfConnections()
+	{
+		return this.numberOfConnections.get();
+	}
+
+	/**
+	 * Get the number of requests answered with HTTP/1.1 so far (the requests that upgrade
+	 * their connection are answered with HTTP/2)
+	 */
+	public int getNumberOfHttp1Requests()
+	{
+		return this.numberOfHttp1Requests.get();
+	}
+
+	/**
+	 * Get the number of requests answered with HTTP/2 so far
+	 */
+	public int getNumberOfHttp2Requests()
+	{
+		return this.numberOfHttp2Requests.get();
+	}
+
+	/**
+	 * Get the highest number of HTTP/2 streams served at the same time so far
+	 */
+	public int getPeakConcurrentStreams()
+	{
+		return this.peakConcurrentStreams.get();
+	}
+
+	private void acceptConnections()
+	{
+		while (this.stopped.getCount() > 0)
+		{
+			try
+			{
+				final Socket socket = this.serverSocket.accept();
+				this.numberOfConnections.incrementAndGet();
+				this.sockets.add(socket);
+				startThread(new Runnable()
+				{
+					public void run()
+					{
+						try
+						{
+							handleConnection(socket);
+						}
+						catch (IOException e)
+						{
+							// The client went away
+						}
+						catch (InterruptedException e)
+						{
+							// The server is being stopped
+						}
+						finally
+						{
+							closeQuietly(socket);
+							sockets.remove(socket);
+						}
+					}
+				}, "h2c connection");
+			}
+			catch (IOException e)
+			{
+				// The server socket has been closed
+			}
+		}
+	}
+
+	private void handleConnection(Socket socket) throws IOException, InterruptedException
+	{
+		socket.setTcpNoDelay(true);
+		InputStream in = new BufferedInputStream(socket.getInputStream());
+		OutputStream out = new BufferedOutputStream(socket.getOutputStream());
+		while (true)
+		{
+			// Read the request line and the headers (the requests never have a body)
+			String requestLine = readLine(in);
+			if (requestLine == null)
+			{
+				return;
+			}
+			Map<String, String> headers = new HashMap<String, String>();
+			for (String header = readLine(in); header != null && header.length() > 0; header = readLine(in))
+			{
+				int colon = header.indexOf(':');
+				if (colon > 0)
+				{
+					headers.put(header.substring(0, colon).trim().toLowerCase(), header.substring(colon + 1).trim());
+				}
+			}
+			String target = requestLine.split(" ")[1];
+			if (this.http2Enabled && "h2c".equalsIgnoreCase(headers.get("upgrade")))
+			{
+				out.write(getBytes("HTTP/1.1 101 Switching Protocols\r\nConnection: Upgrade\r\nUpgrade: h2c\r\n\r\n"));
+				new Http2Connection(in, out).serve(target);
+				return;
+			}
+
+			this.numberOfHttp1Requests.incrementAndGet();
+			if (!sleep(this.latencyInMillis))
+			{
+				return;
+			}
+			Response response = getResponse(target);
+			out.write(getBytes("HTTP/1.1 " + response.statusCode + " " + (response.statusCode == 200 ? "OK" : "Error") + "\r\n"
+				+ "Content-Type: application/xml;charset=UTF-8\r\n"
+				+ "Content-Length: " + response.body.length + "\r\n"
+				+ "\r\n"));
+			out.write(response.body);
+			out.flush();
+		}
+	}
+
+	/**
+	 * A response of the server
+	 */
+	private static class Response
+	{
+		int statusCode;
+		byte[] body;
+	}
+
+	private Response getResponse(String target) throws IOException
+	{
+		String path = target;
+		String query = null;
+		if (path.indexOf('?') >= 0)
+		{
+			query = path.substring(path.indexOf('?') + 1);
+			path = path.substring(0, path.indexOf('?'));
+		}
+		String body = this.content.getResponseBody(path, query);
+		Response response = new Response();
+		response.statusCode = (body == null) ? 404 : 200;
+		response.body = ((body == null) ? "<html><body>Not found</body></html>" : body).getBytes("UTF-8");
+		return response;
+	}
+
+	/**
+	 * An HTTP/2 connection, once upgraded. The frames are read by the thread of the connection,
+	 * and each stream is answered in a thread of its own.
+	 */
+	private class Http2Connection
+	{
+		private final InputStream in;
+		private final OutputStream out;
+		private final HpackDecoder decoder = new HpackDecoder();
+		private final Map<Integer, Integer> streamWindows = new HashMap<Integer, Integer>();
+		private int connectionWindow = DEFAULT_WINDOW_SIZE;
+		private int initialStreamWindow = DEFAULT_WINDOW_SIZE;
+		private boolean closed = false;
+
+		Http2Connection(InputStream in, OutputStream out)
+		{
+			this.in = in;
+			this.out = out;
+		}
+
+		/**
+		 * Serve the connection until the client closes it
+		 * @param upgradeTarget the target of the request that has upgraded the connection (stream 1)
+		 */
+		void serve(String upgradeTarget) throws IOException
+		{
+			try
+			{
+				// The server preface is a SETTINGS frame: the default settings are fine
+				writeFrame(SETTINGS, 0, 0, new byte[0], 0, 0);
+				byte[] preface = readFully(this.in, CLIENT_PREFACE.length);
+				if (!Arrays.equals(preface, CLIENT_PREFACE))
+				{
+					throw new IOException("Invalid HTTP/2 client preface");
+				}
+				startStream(1, upgradeTarget);
+
+				ByteArrayOutputStream headerBlock = new ByteArrayOutputStream();
+				while (true)
+				{
+					byte[] frameHeader = readFully(this.in, 9);
+					int length = ((frameHeader[0] & 0xff) << 16) | ((frameHeader[1] & 0xff) << 8) | (frameHeader[2] & 0xff);
+					int type = frameHeader[3] & 0xff;
+					int flags = frameHeader[4] & 0xff;
+					int streamId = readInt(frameHeader, 5) & 0x7fffffff;
+					byte[] payload = readFully(this.in, length);
+					switch (type)
+					{
+						case SETTINGS:
+							if ((flags & FLAG_ACK) == 0)
+							{
+								applySettings(payload);
+								writeFrame(SETTINGS, FLAG_ACK, 0, new byte[0], 0, 0);
+							}
+							break;
+						case HEADERS:
+							int start = 0;
+							int end = payload.length;
+							if ((flags & FLAG_PADDED) != 0)
+							{
+								end -= payload[0] & 0xff;
+								start++;
+							}
+							if ((flags & FLAG_PRIORITY) != 0)
+							{
+								start += 5;
+							}
+							headerBlock.reset();
+							headerBlock.write(payload, start, end - start);
+							if ((flags & FLAG_END_HEADERS) != 0)
+							{
+								startStream(streamId, headerBlock.toByteArray());
+							}
+							break;
+						case CONTINUATION:
+							headerBlock.write(payload, 0, payload.length);
+							if ((flags & FLAG_END_HEADERS) != 0)
+							{
+								startStream(streamId, headerBlock.toByteArray());
+							}
+							break;
+						case WINDOW_UPDATE:
+							increaseWindow(streamId, readInt(payload, 0) & 0x7fffffff);
+							break;
+						case PING:
+							if ((flags & FLAG_ACK) == 0)
+							{
+								writeFrame(PING, FLAG_ACK, 0, payload, 0, payload.length);
+							}
+							break;
+						case RST_STREAM:
+							closeStream(streamId);
+							break;
+						case GOAWAY:
+							return;
+						default:
+							// DATA (the requests have no body), PRIORITY and unknown frames are ignored
+							break;
+					}
+				}
+			}
+			finally
+			{
+				synchronized (this)
+				{
+					this.closed = true;
+					notifyAll();
+				}
+			}
+		}
+
+		private void startStream(int streamId, byte[] headerBlock) throws IOException
+		{
+			Map<String, String> headers = this.decoder.decode(headerBlock);
+			startStream(streamId, headers.get(":path"));
+		}
+
+		private void startStream(final int streamId, final String target)
+		{
+			synchronized (this)
+			{
+				this.streamWindows.put(streamId, this.initialStreamWindow);
+			}
+			startThread(new Runnable()
+			{
+				public void run()
+				{
+					try
+					{
+						serveStream(streamId, target);
+					}
+					catch (IOException e)
+					{
+						// The client went away
+					}
+					catch (InterruptedException e)
+					{
+						// The server is being stopped
+					}
+				}
+			}, "h2c stream " + streamId);
+		}
+
+		private void serveStream(int streamId, String target) throws IOException, InterruptedException
+		{
+			numberOfHttp2Requests.incrementAndGet();
+			int concurrentStreams = numberOfConcurrentStreams.incrementAndGet();
+			int peak = peakConcurrentStreams.get();
+			while (concurrentStreams > peak && !peakConcurrentStreams.compareAndSet(peak, concurrentStreams))
+			{
+				peak = peakConcurrentStreams.get();
+			}
+			Response response = null;
+			try
+			{
+				if (!sleep(latencyInMillis))
+				{
+					return;
+				}
+				response = getResponse(target);
+			}
+			finally
+			{
+				numberOfConcurrentStreams.decrementAndGet();
+			}
+
+			ByteArrayOutputStream headerBlock = new ByteArrayOutputStream();
+			writeHeader(headerBlock, STATUS_INDEX, "" + response.statusCode);
+			writeHeader(headerBlock, CONTENT_TYPE_INDEX, "application/xml;charset=UTF-8");
+			writeHeader(headerBlock, CONTENT_LENGTH_INDEX, "" + response.body.length);
+			byte[] headers = headerBlock.toByteArray();
+			writeFrame(HEADERS, FLAG_END_HEADERS | (response.body.length == 0 ? FLAG_END_STREAM : 0), streamId, headers, 0, headers.length);
+			int offset = 0;
+			while (offset < response.body.length)
+			{
+				int length = reserveWindow(streamId, Math.min(response.body.length - offset, MAX_FRAME_SIZE));
+				if (length < 0)
+				{
+					// The stream has been reset
+					return;
+				}
+				writeFrame(DATA, offset + length == response.body.length ? FLAG_END_STREAM : 0, streamId, response.body, offset, length);
+				offset += length;
+			}
+			closeStream(streamId);
+		}
+
+		private synchronized void applySettings(byte[] payload)
+		{
+			for (int i = 0; i + 6 <= payload.length; i += 6)
+			{
+				int identifier = ((payload[i] & 0xff) << 8) | (payload[i + 1] & 0xff);
+				int value = readInt(payload, i + 2);
+				if (identifier == SETTINGS_INITIAL_WINDOW_SIZE)
+				{
+					int delta = value - this.initialStreamWindow;
+					this.initialStreamWindow = value;
+					for (Map.Entry<Integer, Integer> streamWindow : this.streamWindows.entrySet())
+					{
+						streamWindow.setValue(streamWindow.getValue() + delta);
+					}
+					notifyAll();
+				}
+			}
+		}
+
+		private synchronized void increaseWindow(int streamId, int increment)
+		{
+			if (streamId == 0)
+			{
+				this.connectionWindow += increment;
+			}
+			else if (this.streamWindows.containsKey(streamId))
+			{
+				this.streamWindows.put(streamId, this.streamWindows.get(streamId) + increment);
+			}
+			notifyAll();
+		}
+
+		/**
+		 * Wait until some data can be sent on a stream, within the flow control windows
+		 * @return the number of bytes that can be sent, or -1 if the stream or the connection is closed
+		 */
+		private synchronized int reserveWindow(int streamId, int length) throws InterruptedException
+		{
+			while (true)
+			{
+				Integer streamWindow = this.streamWindows.get(streamId);
+				if (streamWindow == null || this.closed)
+				{
+					return -1;
+				}
+				int available = Math.min(length, Math.min(streamWindow, this.connectionWindow));
+				if (available > 0)
+				{
+					this.connectionWindow -= available;
+					this.streamWindows.put(streamId, streamWindow - available);
+					return available;
+				}
+				wait();
+			}
+		}
+
+		private synchronized void closeStream(int streamId)
+		{
+			this.streamWindows.remove(streamId);
+			notifyAll();
+		}
+
+		private void writeFrame(int type, int flags, int streamId, byte[] payload, int offset, int length) throws IOException
+		{
+			byte[] frameHeader = new byte[] {(byte) (length >>> 16), (byte) (length >>> 8), (byte) length, (byte) type, (byte) flags,
+				(byte) (streamId >>> 24), (byte) (streamId >>> 16), (byte) (streamId >>> 8), (byte) streamId};
+			synchronized (this.out)
+			{
+				this.out.write(frameHeader);
+				this.out.write(payload, offset, length);
+				this.out.flush();
+			}
+		}
+	}
+
+	/**
+	 * Write a header as a literal header field without indexing, with an indexed name
+	 */
+	private static void writeHeader(ByteArrayOutputStream headerBlock, int nameIndex, String value)
+	{
+		writeInteger(headerBlock, 0x00, 4, nameIndex);
+		byte[] bytes = getBytes(value);
+		writeInteger(headerBlock, 0x00, 7, bytes.length);
+		headerBlock.write(bytes, 0, bytes.length);
+	}
+
+	/**
+	 * Write an integer with an N-bit prefix (section 5.1 of RFC 7541)
+	 */
+	private static void writeInteger(ByteArrayOutputStream headerBlock, int flags, int prefixBits, int value)
+	{
+		int maxPrefixValue = (1 << prefixBits) - 1;
+		if (value < maxPrefixValue)
+		{
+			headerBlock.write(flags | value);
+			return;
+		}
+		headerBlock.write(flags | maxPrefixValue);
+		value -= maxPrefixValue;
+		while (value >= 128)
+		{
+			headerBlock.write((value & 0x7f) | 0x80);
+			value >>>= 7;
+		}
+		headerBlock.write(value);
+	}
+
+	/**
+	 * The HPACK decoder of the header blocks of a connection (RFC 7541)
+	 */
+	private static class HpackDecoder
+	{
+		private static final String[][] STATIC_TABLE = {
+			{":authority", ""}, {":method", "GET"}, {":method", "POST"}, {":path", "/"}, {":path", "/index.html"},
+			{":scheme", "http"}, {":scheme", "https"}, {":status", "200"}, {":status", "204"}, {":status", "206"},
+			{":status", "304"}, {":status", "400"}, {":status", "404"}, {":status", "500"}, {"accept-charset", ""},
+			{"accept-encoding", "gzip, deflate"}, {"accept-language", ""}, {"accept-ranges", ""}, {"accept", ""},
+			{"access-control-allow-origin", ""}, {"age", ""}, {"allow", ""}, {"authorization", ""},
+			{"cache-control", ""}, {"content-disposition", ""}, {"content-encoding", ""}, {"content-language", ""},
+			{"content-length", ""}, {"content-location", ""}, {"content-range", ""}, {"content-type", ""},
+			{"cookie", ""}, {"date", ""}, {"etag", ""}, {"expect", ""}, {"expires", ""}, {"from", ""}, {"host", ""},
+			{"if-match", ""}, {"if-modified-since", ""}, {"if-none-match", ""}, {"if-range", ""},
+			{"if-unmodified-since", ""}, {"last-modified", ""}, {"link", ""}, {"location", ""}, {"max-forwards", ""},
+			{"proxy-authenticate", ""}, {"proxy-authorization", ""}, {"range", ""}, {"referer", ""}, {"refresh", ""},
+			{"retry-after", ""}, {"server", ""}, {"set-cookie", ""}, {"strict-transport-security", ""},
+			{"transfer-encoding", ""}, {"user-agent", ""}, {"vary", ""}, {"via", ""}, {"www-authenticate", ""}};
+
+		/**
+		 * Lengths of the codes of the Huffman code of HPACK (appendix B of RFC 7541), by symbol.
+		 * The code is canonical: the codes themselves follow from their lengths.
+		 */
+		private static final int[] HUFFMAN_CODE_LENGTHS = {
+			13, 23, 28, 28, 28, 28, 28, 28, 28, 24, 30, 28, 28, 30, 28, 28,
+			28, 28, 28, 28, 28, 28, 30, 28, 28, 28, 28, 28, 28, 28, 28, 28,
+			6, 10, 10, 12, 13, 6, 8, 11, 10, 10, 8, 11, 8, 6, 6, 6,
+			5, 5, 5, 6, 6, 6, 6, 6, 6, 6, 7, 8, 15, 6, 12, 10,
+			13, 6, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7,
+			7, 7, 7, 7, 7, 7, 7, 7, 8, 7, 8, 13, 19, 13, 14, 6,
+			15, 5, 6, 5, 6, 5, 6, 6, 6, 5, 7, 7, 6, 6, 6, 5,
+			6, 7, 6, 5, 5, 6, 7, 7, 7, 7, 7, 15, 11, 14, 13, 28,
+			20, 22, 20, 20, 22, 22, 22, 23, 22, 23, 23, 23, 23, 23, 24, 23,
+			24, 24, 22, 23, 24, 23, 23, 23, 23, 21, 22, 23, 22, 23, 23, 24,
+			22, 21, 20, 22, 22, 23, 23, 21, 23, 22, 22, 24, 21, 22, 23, 23,
+			21, 21, 22, 21, 23, 22, 23, 23, 20, 22, 22, 22, 23, 22, 22, 23,
+			26, 26, 20, 19, 22, 23, 22, 25, 26, 26, 26, 27, 27, 26, 24, 25,
+			19, 21, 26, 27, 27, 26, 27, 24, 21, 21, 26, 26, 28, 27, 27, 27,
+			20, 24, 20, 21, 22, 21, 21, 23, 22, 22, 25, 25, 24, 24, 26, 23,
+			26, 27, 26, 26, 27, 27, 27, 27, 27, 28, 27, 27, 27, 27, 27, 26,
+			30};
+
+		/**
+		 * The symbols of the Huffman code, by code (the key is the length of the code followed by the code)
+		 */
+		private static final Map<Long, Integer> HUFFMAN_SYMBOLS = new HashMap<Long, Integer>();
+
+		static
+		{
+			long code = 0;
+			int previousLength = 0;
+			for (int length = 1; length <= 30; length++)
+			{
+				for (int symbol = 0; symbol < HUFFMAN_CODE_LENGTHS.length; symbol++)
+				{
+					if (HUFFMAN_CODE_LENGTHS[symbol] == length)
+					{
+						code <<= length - previousLength;
+						previousLength = length;
+						HUFFMAN_SYMBOLS.put(((long) length << 32) | code, symbol);
+						code++;
+					}
+				}
+			}
+		}
+
+		private final LinkedList<String[]> dynamicTable = new LinkedList<String[]>();
+		private int dynamicTableSize = 0;
+		private int maxDynamicTableSize = 4096;
+		private byte[] block = null;
+		private int position = 0;
+
+		/**
+		 * Decode a header block
+		 * @return the headers, by name
+		 */
+		Map<String, String> decode(byte[] headerBlock) throws IOException
+		{
+			this.block = headerBlock;
+			this.position = 0;
+			Map<String, String> headers = new HashMap<String, String>();
+			while (this.position < this.block.length)
+			{
+				int firstByte = this.block[this.position] & 0xff;
+				if ((firstByte & 0x80) != 0)
+				{
+					// Indexed header field
+					String[] field = getField(readInteger(7));
+					headers.put(field[0], field[1]);
+				}
+				else if ((firstByte & 0x40) != 0)
+				{
+					// Literal header field with incremental indexing
+					int nameIndex = readInteger(6);
+					String name = (nameIndex == 0) ? readString() : getField(nameIndex)[0];
+					String value = readString();
+					addField(name, value);
+					headers.put(name, value);
+				}
+				else if ((firstByte & 0x20) != 0)
+				{
+					// Dynamic table size update
+					this.maxDynamicTableSize = readInteger(5);
+					evictFields();
+				}
+				else
+				{
+					// Literal header field without indexing, or never indexed
+					int nameIndex = readInteger(4);
+					String name = (nameIndex == 0) ? readString() : getField(nameIndex)[0];
+					headers.put(name, readString());
+				}
+			}
+			return headers;
+		}
+
+		private String[] getField(int index) throws IOException
+		{
+			if (index >= 1 && index <= STATIC_TABLE.length)
+			{
+				return STATIC_TABLE[index - 1];
+			}
+			int dynamicIndex = index - STATIC_TABLE.length - 1;
+			if (dynamicIndex < 0 || dynamicIndex >= this.dynamicTable.size())
+			{
+				throw new IOException("Invalid HPACK index: " + index);
+			}
+			return this.dynamicTable.get(dynamicIndex);
+		}
+
+		private void addField(String name, String value)
+		{
+			this.dynamicTable.addFirst(new String[] {name, value});
+			this.dynamicTableSize += name.length() + value.length() + 32;
+			evictFields();
+		}
+
+		private void evictFields()
+		{
+			while (this.dynamicTableSize > this.maxDynamicTableSize)
+			{
+				String[] evictedField = this.dynamicTable.removeLast();
+				this.dynamicTableSize -= evictedField[0].length() + evictedField[1].length() + 32;
+			}
+		}
+
+		private int readInteger(int prefixBits)
+		{
+			int maxPrefixValue = (1 << prefixBits) - 1;
+			int value = this.block[this.position++] & maxPrefixValue;
+			if (value < maxPrefixValue)
+			{
+				return value;
+			}
+			int shift = 0;
+			int nextByte = 0;
+			do
+			{
+				nextByte = this.block[this.position++] & 0xff;
+				value += (nextByte & 0x7f) << shift;
+				shift += 7;
+			}
+			while ((nextByte & 0x80) != 0);
+			return value;
+		}
+
+		private String readString() throws IOException
+		{
+			boolean huffmanEncoded = (this.block[this.position] & 0x80) != 0;
+			int length = readInteger(7);
+			int start = this.position;
+			this.position += length;
+			if (!huffmanEncoded)
+			{
+				return new String(this.block, start, length, "ISO-8859-1");
+			}
+			StringBuilder decoded = new StringBuilder();
+			long code = 0;
+			int codeLength = 0;
+			for (int i = start; i < start + length; i++)
+			{
+				for (int bit = 7; bit >= 0; bit--)
+				{
+					code = (code << 1) | ((this.block[i] >>> bit) & 1);
+					codeLength++;
+					Integer symbol = HUFFMAN_SYMBOLS.get(((long) codeLength << 32) | code);
+					if (symbol != null)
+					{
+						decoded.append((char) symbol.intValue());
+						code = 0;
+						codeLength = 0;
+					}
+				}
+			}
+			// The remaining bits are the padding
+			return decoded.toString();
+		}
+	}
+
+	private static String readLine(InputStream in) throws IOException
+	{
+		StringBuilder line = new StringBuilder();
+		int c = 0;
+		while ((c = in.read()) != -1)
+		{
+			if (c == '\n')
+			{
+				int length = line.length();
+				return (length > 0 && line.charAt(length - 1) == '\r') ? line.substring(0, length - 1) : line.toString();
+			}
+			line.append((char) c);
+		}
+		return line.length() > 0 ? line.toString() : null;
+	}
+
+	private static byte[] readFully(InputStream in, int length) throws IOException
+	{
+		byte[] bytes = new byte[length];
+		int offset = 0;
+		while (offset < length)
+		{
+			int numberOfBytesRead = in.read(bytes, offset, length - offset);
+			if (numberOfBytesRead == -1)
+			{
+				throw new EOFException();
+			}
+			offset += numberOfBytesRead;
+		}
+		return bytes;
+	}
+
+	private static int readInt(byte[] bytes, int offset)
+	{
+		return ((bytes[offset] & 0xff) << 24) | ((bytes[offset + 1] & 0xff) << 16) | ((bytes[offset + 2] & 0xff) << 8) | (bytes[offset + 3] & 0xff);
+	}
+
+	private static byte[] getBytes(String value)
+	{
+		try
+		{
+			return value.getBytes("ISO-8859-1");
+		}
+		catch (IOException e)
+		{
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Sleep, unless the server is stopped
+	 * @return true if the delay has elapsed, false if the server has been stopped
+	 */
+	private boolean sleep(long delayInMillis) throws InterruptedException
+	{
+		return !this.stopped.await(delayInMillis, TimeUnit.MILLISECONDS);
+	}
+
+	private void startThread(Runnable runnable, String name)
+	{
+		Thread thread = new Thread(runnable, name);
+		thread.setDaemon(true);
+		this.threads.add(thread);
+		thread.start();
+	}
+
+	private static void closeQuietly(Socket socket)
+	{
+		try
+		{
+			socket.close();
+		}
+		catch (IOException e)
+		{
+			// Nothing to do here
+		}
+	}
+
+	private static void closeQuietly(ServerSocket socket)
+	{
+		try
+		{
+			if (socket != null)
+			{
+				socket.close();
+			}
+		}
+		catch (IOException e)
+		{
+			// Nothing to do here
+		}
+	}
+}
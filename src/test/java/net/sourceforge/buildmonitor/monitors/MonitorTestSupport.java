@@ -0,0 +1,130 @@
+/*
+ * Copyright 2007 Sebastien Brunot (sbrunot@gmail.com)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *   
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sourceforge.buildmonitor.monitors;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.Assert;
+
+import net.sourceforge.buildmonitor.BuildReport;
+
+/**
+ * Helpers shared by the tests that run a BambooMonitor against a stand-in Bamboo server.
+ * @author vegarwe
+ *
+ */
+final class MonitorTestSupport
+{
+	// Every cycle also asks for the build queue and the running builds
+	static final int BUILDS_IN_PROGRESS_REQUESTS = 2;
+
+	// The first cycle is preceded by a probe of the server info
+	static final int HEALTH_PROBE_REQUESTS = 1;
+
+	private MonitorTestSupport()
+	{
+	}
+
+	/**
+	 * Create properties to monitor a stub server
+	 * @param server the stub server
+	 * @return the properties
+	 */
+	static BambooProperties createProperties(BambooStubServer server)
+	{
+		return createProperties(server.getBaseUrl());
+	}
+
+	/**
+	 * Create properties to monitor an h2c stand-in server
+	 * @param server the h2c server
+	 * @return the properties
+	 */
+	static BambooProperties createProperties(H2cBambooServer server)
+	{
+		return createProperties(server.getBaseUrl());
+	}
+
+	/**
+	 * Create properties to monitor a server
+	 * @param baseUrl the base URL of the server
+	 * @return the properties
+	 */
+	static BambooProperties createProperties(String baseUrl)
+	{
+		BambooProperties properties = new BambooProperties();
+		properties.setServerBaseUrl(baseUrl);
+		properties.setUsername("user");
+		properties.setPassword("password");
+		// The cycles follow each other without waiting: poll all the plans at each cycle
+		properties.setMaxPlanPollPeriodInSeconds(0);
+		// Fetch the results of all the plans, even those that have no new build
+		properties.setChangeProbe(false);
+		return properties;
+	}
+
+	/**
+	 * Wait until a build is reported with a given status
+	 * @return the build status that reports it
+	 */
+	static List<BuildReport> awaitBuildStatus(RecordingBuildMonitor buildMonitor, String buildId, BuildReport.Status status) throws InterruptedException
+	{
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+		while (System.nanoTime() < deadline)
+		{
+			List<BuildReport> buildStatus = buildMonitor.getLastBuildStatus();
+			if (buildStatus != null && getStatus(buildStatus, buildId) == status)
+			{
+				return buildStatus;
+			}
+			Thread.sleep(20);
+		}
+		Assert.fail(buildId + " is not reported as " + status + ": " + buildMonitor.getMonitoringExceptions());
+		return null;
+	}
+
+	/**
+	 * Get the status of a build (null if it is not reported)
+	 */
+	static BuildReport.Status getStatus(List<BuildReport> buildStatus, String buildId)
+	{
+		for (BuildReport buildReport : buildStatus)
+		{
+			if (buildReport.getId().equals(buildId))
+			{
+				return buildReport.getStatus();
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Get the number of times a build is reported
+	 */
+	static int countBuilds(List<BuildReport> buildStatus, String buildId)
+	{
+		int returnedValue = 0;
+		for (BuildReport buildReport : buildStatus)
+		{
+			if (buildReport.getId().equals(buildId))
+			{
+				returnedValue++;
+			}
+		}
+		return returnedValue;
+	}
+}
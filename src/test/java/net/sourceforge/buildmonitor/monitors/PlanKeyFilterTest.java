@@ -0,0 +1,143 @@
+/*
+ * Copyright 2007 Sebastien Brunot (sbrunot@gmail.com)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *   
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sourceforge.buildmonitor.monitors;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import net.sourceforge.buildmonitor.BuildReport;
+
+/**
+ * Unit tests for the PlanKeyFilter class, and for the plans that a filtered BambooMonitor requests.
+ * @author vegarwe
+ *
+ */
+public class PlanKeyFilterTest extends TestCase
+{
+	public void testEmptyFilterAcceptsAllPlans()
+	{
+		PlanKeyFilter filter = PlanKeyFilter.compile("", null);
+		assertTrue(filter.acceptsAll());
+		assertTrue(filter.accept("PROJ-PLAN"));
+		assertNull(filter.getExactPlanKeys());
+	}
+
+	public void testProjectKeyIncludesAllThePlansOfTheProject()
+	{
+		PlanKeyFilter filter = PlanKeyFilter.compile("proj, OTHER-PLAN", null);
+		assertTrue(filter.accept("PROJ-PLAN1"));
+		assertTrue(filter.accept("PROJ-PLAN2"));
+		assertTrue(filter.accept("OTHER-PLAN"));
+		assertFalse(filter.accept("OTHER-PLAN2"));
+		assertFalse(filter.accept("PROJECT-PLAN"));
+		assertNull(filter.getExactPlanKeys());
+	}
+
+	public void testWildcardsAndExclusions()
+	{
+		PlanKeyFilter filter = PlanKeyFilter.compile("PROJ*-*", "PROJ2 *-NIGHTLY? ");
+		assertTrue(filter.accept("PROJ-PLAN"));
+		assertTrue(filter.accept("PROJ1-PLAN"));
+		assertFalse(filter.accept("PROJ2-PLAN"));
+		assertFalse(filter.accept("PROJ1-NIGHTLY1"));
+		assertTrue(filter.accept("PROJ1-NIGHTLY"));
+		assertFalse(filter.accept("OTHER-PLAN"));
+	}
+
+	public void testExactPlanKeys()
+	{
+		PlanKeyFilter filter = PlanKeyFilter.compile("PROJ-PLAN1,proj-plan2", "PROJ-PLAN2");
+		assertEquals(Arrays.asList("PROJ-PLAN1", "PROJ-PLAN2"), filter.getExactPlanKeys());
+		assertFalse(filter.accept("PROJ-PLAN2"));
+	}
+
+	public void testProjectKeys()
+	{
+		PlanKeyFilter filter = PlanKeyFilter.compile("PROJ1 proj2, PROJ1", "PROJ1-PLAN1");
+		assertEquals(Arrays.asList("PROJ1", "PROJ2"), filter.getProjectKeys());
+		assertNull(filter.getExactPlanKeys());
+		assertFalse(filter.accept("PROJ1-PLAN1"));
+		// A plan key or a wildcard needs the plans of all the projects
+		assertNull(PlanKeyFilter.compile("PROJ1, PROJ2-PLAN1", null).getProjectKeys());
+		assertNull(PlanKeyFilter.compile("PROJ*", null).getProjectKeys());
+		assertNull(PlanKeyFilter.compile("", "PROJ1").getProjectKeys());
+	}
+
+	public void testInvalidPatterns()
+	{
+		assertTrue(PlanKeyFilter.isValid(" PROJ, PROJ-PLAN ,P*-?"));
+		assertFalse(PlanKeyFilter.isValid("PROJ-PLAN-JOB"));
+		assertFalse(PlanKeyFilter.isValid("PROJ.*"));
+		try
+		{
+			PlanKeyFilter.compile("PROJ;", null);
+			fail("An invalid pattern has been compiled");
+		}
+		catch (IllegalArgumentException e)
+		{
+			// Expected
+		}
+	}
+
+	public void testFilteredPlansAreNotRequested() throws Exception
+	{
+		BambooStubServer filteredServer = new BambooStubServer(230);
+		filteredServer.start();
+		try
+		{
+			BambooProperties properties = MonitorTestSupport.createProperties(filteredServer);
+			properties.setProjectKeys("PROJ1");
+			properties.setExcludedProjectKeys("PROJ1-PLAN10?");
+			RecordingBuildMonitor buildMonitor = new RecordingBuildMonitor();
+			BambooMonitor monitor = new BambooMonitor(buildMonitor, properties);
+			assertTrue(buildMonitor.getMonitoringExceptions().toString(), monitor.pollBuildStatus());
+			assertEquals(90, buildMonitor.getLastBuildStatus().size());
+			// Only the 4 pages of the 100 plans of the project are listed
+			assertEquals(MonitorTestSupport.HEALTH_PROBE_REQUESTS + 4 + 90 + MonitorTestSupport.BUILDS_IN_PROGRESS_REQUESTS, filteredServer.getNumberOfRequests());
+
+			// A project that does not exist has no plans: the 2 pages of the 30 plans of PROJ2, and the missing PROJ9
+			properties.setProjectKeys("PROJ2, PROJ9");
+			monitor.updateConfig();
+			long requestsBefore = filteredServer.getNumberOfRequests();
+			assertTrue(buildMonitor.getMonitoringExceptions().toString(), monitor.pollBuildStatus());
+			assertEquals(2 + 1 + 30 + MonitorTestSupport.BUILDS_IN_PROGRESS_REQUESTS, filteredServer.getNumberOfRequests() - requestsBefore);
+			assertEquals(30, buildMonitor.getLastBuildStatus().size());
+
+			// Exact plan keys: the plans are not listed
+			properties.setProjectKeys("PROJ0-PLAN3, PROJ2-PLAN207, PROJ9-PLAN999");
+			properties.setExcludedProjectKeys("");
+			monitor.updateConfig();
+			requestsBefore = filteredServer.getNumberOfRequests();
+			assertTrue(buildMonitor.getMonitoringExceptions().toString(), monitor.pollBuildStatus());
+			monitor.stop();
+			assertEquals(3 + MonitorTestSupport.BUILDS_IN_PROGRESS_REQUESTS, filteredServer.getNumberOfRequests() - requestsBefore);
+			assertEquals(2, buildMonitor.getLastBuildStatus().size());
+			Set<String> planNames = new HashSet<String>();
+			for (BuildReport report : buildMonitor.getLastBuildStatus())
+			{
+				planNames.add(report.getName());
+			}
+			assertEquals(new HashSet<String>(Arrays.asList(BambooXmlFixtures.getPlanName(3), BambooXmlFixtures.getPlanName(207))), planNames);
+		}
+		finally
+		{
+			filteredServer.stop();
+		}
+	}
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2007 Sebastien Brunot (sbrunot@gmail.com)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *   
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sourceforge.buildmonitor.monitors;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for the PlanScheduler class.
+ * @author vegarwe
+ *
+ */
+public class PlanSchedulerTest extends TestCase
+{
+	private static final long UPDATE_PERIOD = TimeUnit.SECONDS.toNanos(60);
+
+	private long now = 1000;
+
+	private PlanScheduler createScheduler(int maxPollPeriodInSeconds, int maxRequestsPerCycle)
+	{
+		BambooProperties properties = new BambooProperties();
+		properties.setUpdatePeriodInSeconds(60);
+		properties.setMaxPlanPollPeriodInSeconds(maxPollPeriodInSeconds);
+		properties.setMaxPlanRequestsPerCycle(maxRequestsPerCycle);
+		BambooConfig config = new BambooConfig(properties, 1);
+		assertTrue(config.isAdaptiveScheduling());
+		return new PlanScheduler(config);
+	}
+
+	public void testIdlePlanIsPolledLessAndLessOften()
+	{
+		PlanScheduler scheduler = createScheduler(300, 0);
+		scheduler.recordPoll("PROJ-IDLE", false, this.now);
+		assertTrue(scheduler.contains("PROJ-IDLE"));
+
+		// 60 s, 120 s, 240 s, then the maximum poll period
+		long[] expectedIntervals = new long[] {UPDATE_PERIOD, 2 * UPDATE_PERIOD, 4 * UPDATE_PERIOD, 5 * UPDATE_PERIOD, 5 * UPDATE_PERIOD};
+		for (long expectedInterval : expectedIntervals)
+		{
+			assertTrue(scheduler.takeDuePlans(this.now + expectedInterval - UPDATE_PERIOD).isEmpty());
+			this.now += expectedInterval;
+			assertEquals(Collections.singleton("PROJ-IDLE"), scheduler.takeDuePlans(this.now));
+			scheduler.recordPoll("PROJ-IDLE", false, this.now);
+		}
+	}
+
+	public void testActivePlanIsPolledAtEachUpdate()
+	{
+		PlanScheduler scheduler = createScheduler(3600, 0);
+		scheduler.recordPoll("PROJ-IDLE", false, this.now);
+		scheduler.recordPoll("PROJ-ACTIVE", false, this.now);
+		for (int i = 0; i < 5; i++)
+		{
+			this.now += UPDATE_PERIOD;
+			assertTrue(scheduler.takeDuePlans(this.now).contains("PROJ-ACTIVE"));
+			scheduler.recordPoll("PROJ-ACTIVE", true, this.now);
+		}
+		assertEquals(2, scheduler.size());
+	}
+
+	public void testPlansDueTheLongestArePolledFirstWithinTheBudget()
+	{
+		PlanScheduler scheduler = createScheduler(3600, 2);
+		for (int i = 0; i < 5; i++)
+		{
+			scheduler.recordPoll("PROJ-PLAN" + i, false, this.now + i);
+		}
+		this.now += 10 * UPDATE_PERIOD;
+		assertEquals(new HashSet<String>(Arrays.asList("PROJ-PLAN0", "PROJ-PLAN1")), scheduler.takeDuePlans(this.now));
+		// A plan that could not be polled is due again at once
+		scheduler.recordMissedPoll("PROJ-PLAN0", this.now);
+		assertEquals(new HashSet<String>(Arrays.asList("PROJ-PLAN2", "PROJ-PLAN3")), scheduler.takeDuePlans(this.now));
+		assertEquals(new HashSet<String>(Arrays.asList("PROJ-PLAN4", "PROJ-PLAN0")), scheduler.takeDuePlans(this.now));
+		assertTrue(scheduler.takeDuePlans(this.now).isEmpty());
+	}
+
+	public void testPlanWithABuildInProgressIsWokenUp()
+	{
+		PlanScheduler scheduler = createScheduler(3600, 0);
+		scheduler.recordPoll("PROJ-PLAN", false, this.now);
+		this.now += UPDATE_PERIOD;
+		scheduler.takeDuePlans(this.now);
+		scheduler.recordPoll("PROJ-PLAN", false, this.now);
+		assertTrue(scheduler.takeDuePlans(this.now + UPDATE_PERIOD).isEmpty());
+
+		scheduler.wakeUp("PROJ-PLAN", this.now);
+		assertEquals(Collections.singleton("PROJ-PLAN"), scheduler.takeDuePlans(this.now));
+
+		scheduler.retainAll(Collections.<String>emptySet());
+		assertFalse(scheduler.contains("PROJ-PLAN"));
+	}
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2007 Sebastien Brunot (sbrunot@gmail.com)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *   
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sourceforge.buildmonitor.monitors;
+
+import java.awt.Image;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import net.sourceforge.buildmonitor.BuildMonitor;
+import net.sourceforge.buildmonitor.BuildReport;
+import net.sourceforge.buildmonitor.MonitoringException;
+
+/**
+ * A BuildMonitor without GUI that records what the monitors report to it.
+ * @author vegarwe
+ *
+ */
+public class RecordingBuildMonitor implements BuildMonitor
+{
+	private List<List<BuildReport>> buildStatusUpdates = Collections.synchronizedList(new ArrayList<List<BuildReport>>());
+	private List<MonitoringException> monitoringExceptions = Collections.synchronizedList(new ArrayList<MonitoringException>());
+	private volatile int numberOfConfigurationUpdates = 0;
+
+	public void panic(Throwable unexpectedProblem)
+	{
+		throw new RuntimeException(unexpectedProblem);
+	}
+
+	public void panic(String errorMessage)
+	{
+		throw new RuntimeException(errorMessage);
+	}
+
+	public String getMessage(String messageKey)
+	{
+		return messageKey;
+	}
+
+	public Image getDialogsDefaultIcon()
+	{
+		return null;
+	}
+
+	public void updateBuildStatus(List<BuildReport> buildsStatus)
+	{
+		this.buildStatusUpdates.add(new ArrayList<BuildReport>(buildsStatus));
+	}
+
+	public void reportMonitoringException(MonitoringException monitoringException)
+	{
+		this.monitoringExceptions.add(monitoringException);
+	}
+
+	public void reportConfigurationUpdatedToBeTakenIntoAccountImmediately()
+	{
+		this.numberOfConfigurationUpdates++;
+	}
+
+	/**
+	 * Get the build status reported so far, in the order they have been reported
+	 */
+	public List<List<BuildReport>> getBuildStatusUpdates()
+	{
+		return this.buildStatusUpdates;
+	}
+
+	/**
+	 * Get the last build status reported (null if none)
+	 */
+	public List<BuildReport> getLastBuildStatus()
+	{
+		synchronized (this.buildStatusUpdates)
+		{
+			return this.buildStatusUpdates.isEmpty() ? null : this.buildStatusUpdates.get(this.buildStatusUpdates.size() - 1);
+		}
+	}
+
+	/**
+	 * Get the monitoring exceptions reported so far, in the order they have been reported
+	 */
+	public List<MonitoringException> getMonitoringExceptions()
+	{
+		return this.monitoringExceptions;
+	}
+
+	/**
+	 * Get the number of times a configuration update has been reported
+	 */
+	public int getNumberOfConfigurationUpdates()
+	{
+		return this.numberOfConfigurationUpdates;
+	}
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2007 Sebastien Brunot (sbrunot@gmail.com)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *   
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sourceforge.buildmonitor.monitors;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import net.sourceforge.buildmonitor.BuildReport;
+
+/**
+ * Tests of the replay of the traffic recorded in a TrafficArchive by ReplayTransport.
+ * @author vegarwe
+ *
+ */
+public class ReplayTransportTest extends TestCase
+{
+	public void testARecordedSessionIsReplayedWithoutTheServer() throws Exception
+	{
+		File archive = File.createTempFile("bamboo-traffic", ".bin");
+		archive.deleteOnExit();
+		BambooStubServer recordedServer = new BambooStubServer(20);
+		recordedServer.setLatencyInMillis(50);
+		recordedServer.setChurn(0.5);
+		recordedServer.start();
+		String baseUrl = recordedServer.getBaseUrl();
+		Map<String, BuildReport.Status> recordedStatus = null;
+		try
+		{
+			BambooProperties properties = MonitorTestSupport.createProperties(recordedServer);
+			properties.setHedgedRequests(false);
+			properties.setTrafficRecordFile(archive.getPath());
+			RecordingBuildMonitor buildMonitor = new RecordingBuildMonitor();
+			BambooMonitor monitor = new BambooMonitor(buildMonitor, properties);
+			assertTrue(buildMonitor.getMonitoringExceptions().toString(), monitor.pollBuildStatus());
+			assertTrue(buildMonitor.getMonitoringExceptions().toString(), monitor.pollBuildStatus());
+			monitor.stop();
+			recordedStatus = getStatusById(buildMonitor.getLastBuildStatus());
+		}
+		finally
+		{
+			recordedServer.stop();
+		}
+
+		// The server is gone: the same cycles are replayed from the archive, at the recorded speed...
+		BambooProperties properties = MonitorTestSupport.createProperties(baseUrl);
+		properties.setHedgedRequests(false);
+		properties.setTrafficReplayFile(archive.getPath());
+		RecordingBuildMonitor buildMonitor = new RecordingBuildMonitor();
+		BambooMonitor monitor = new BambooMonitor(buildMonitor, properties);
+		long startTime = System.nanoTime();
+		assertTrue(buildMonitor.getMonitoringExceptions().toString(), monitor.pollBuildStatus());
+		assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime) >= 50);
+		assertTrue(buildMonitor.getMonitoringExceptions().toString(), monitor.pollBuildStatus());
+		monitor.stop();
+		assertEquals(recordedStatus, getStatusById(buildMonitor.getLastBuildStatus()));
+
+		// ...or as fast as they can be parsed
+		properties.setTrafficReplaySpeed(0);
+		buildMonitor = new RecordingBuildMonitor();
+		monitor = new BambooMonitor(buildMonitor, properties);
+		assertTrue(buildMonitor.getMonitoringExceptions().toString(), monitor.pollBuildStatus());
+		assertTrue(buildMonitor.getMonitoringExceptions().toString(), monitor.pollBuildStatus());
+		monitor.stop();
+		assertEquals(recordedStatus, getStatusById(buildMonitor.getLastBuildStatus()));
+	}
+
+	private static Map<String, BuildReport.Status> getStatusById(List<BuildReport> buildStatus)
+	{
+		Map<String, BuildReport.Status> statusById = new HashMap<String, BuildReport.Status>();
+		for (BuildReport report : buildStatus)
+		{
+			statusById.put(report.getId(), report.getStatus());
+		}
+		return statusById;
+	}
+}
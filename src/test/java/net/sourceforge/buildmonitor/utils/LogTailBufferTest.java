@@ -0,0 +1,101 @@
+/*
+ * Copyright 2007 Sebastien Brunot (sbrunot@gmail.com)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *   
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sourceforge.buildmonitor.utils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for the LogTailBuffer class.
+ * @author vegarwe
+ *
+ */
+public class LogTailBufferTest extends TestCase
+{
+	public void testOnlyTheLastLinesAreKept()
+	{
+		LogTailBuffer buffer = new LogTailBuffer(2);
+		append(buffer, "one\ntwo\r\nthree\nfour");
+		assertEquals(Arrays.asList("three", "four"), buffer.getLines());
+		append(buffer, " and more\n");
+		assertEquals(Arrays.asList("three", "four and more"), buffer.getLines());
+	}
+
+	public void testACharacterSplitBetweenTwoChunksIsDecoded()
+	{
+		LogTailBuffer buffer = new LogTailBuffer(10);
+		byte[] bytes = "d\u00e9j\u00e0 vu\n".getBytes(StandardCharsets.UTF_8);
+		// The first chunk ends in the middle of the two bytes of the e acute
+		buffer.append(bytes, 0, 2);
+		buffer.append(bytes, 2, bytes.length - 2);
+		assertEquals(Arrays.asList("d\u00e9j\u00e0 vu"), buffer.getLines());
+	}
+
+	public void testTheLineCutByTheStartOfAChunkIsSkipped()
+	{
+		LogTailBuffer buffer = new LogTailBuffer(10);
+		append(buffer, "old line\n");
+		buffer.clear();
+		buffer.skipToNextLine();
+		byte[] bytes = "\u00e9nd of a line\nfirst line\nsecond line\n".getBytes(StandardCharsets.UTF_8);
+		// The chunk starts in the middle of the e acute
+		buffer.append(bytes, 1, bytes.length - 1);
+		assertEquals(Arrays.asList("first line", "second line"), buffer.getLines());
+	}
+
+	public void testALongLineIsBrokenAtTheMaximumLength()
+	{
+		LogTailBuffer buffer = new LogTailBuffer(10);
+		StringBuilder line = new StringBuilder();
+		for (int i = 0; i < LogTailBuffer.MAX_LINE_LENGTH; i++)
+		{
+			line.append('x');
+		}
+		// A line of the maximum length is kept whole
+		append(buffer, line + "\n");
+		assertEquals(Arrays.asList(line.toString()), buffer.getLines());
+
+		// A log without ends of line is broken into lines of the maximum length
+		buffer.clear();
+		for (int i = 0; i < 3; i++)
+		{
+			append(buffer, line.toString());
+		}
+		append(buffer, "end");
+		assertEquals(Arrays.asList(line.toString(), line.toString(), line.toString(), "end"), buffer.getLines());
+	}
+
+	public void testCallingConstructorWithoutLinesThrowsAnIllegalArgumentException()
+	{
+		try
+		{
+			new LogTailBuffer(0);
+			fail("An IllegalArgumentException should have been thrown");
+		}
+		catch (IllegalArgumentException e)
+		{
+			// This is the expected behaviour
+		}
+	}
+
+	private static void append(LogTailBuffer buffer, String text)
+	{
+		byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+		buffer.append(bytes, 0, bytes.length);
+	}
+}